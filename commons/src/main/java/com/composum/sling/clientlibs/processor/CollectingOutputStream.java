@@ -0,0 +1,59 @@
+package com.composum.sling.clientlibs.processor;
+
+import org.apache.commons.io.output.ByteArrayOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * An output stream for push based processors which need the complete content to do their work (e.g. a CSS
+ * compressor): the content written is collected and transformed as a whole into the target stream on close.
+ */
+public abstract class CollectingOutputStream extends OutputStream {
+
+    protected final OutputStream target;
+    protected final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    private boolean closed = false;
+
+    public CollectingOutputStream(OutputStream target) {
+        this.target = target;
+    }
+
+    /**
+     * Transforms the collected content.
+     *
+     * @param content the complete content written to this stream
+     * @param target  the stream to write the transformation result to; closed by the caller
+     */
+    protected abstract void transform(InputStream content, OutputStream target) throws IOException;
+
+    @Override
+    public void write(int b) throws IOException {
+        buffer.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        buffer.write(b, off, len);
+    }
+
+    /** Does nothing - the content can only be transformed as a whole on close. */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            try (InputStream content = buffer.toInputStream()) {
+                transform(content, target);
+                target.flush();
+            } finally {
+                target.close();
+            }
+        }
+    }
+}
@@ -1,28 +1,39 @@
 package com.composum.sling.clientlibs.processor;
 
+import com.composum.sling.clientlibs.service.ClientlibOutputProcessor;
 import com.composum.sling.clientlibs.service.ClientlibProcessor;
 import com.composum.sling.core.util.LinkUtil;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.WriterOutputStream;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.io.Reader;
 import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * A simple processor to map URLs embedded in CSS files.
  */
-public class CssUrlMapper implements ClientlibProcessor {
+public class CssUrlMapper implements ClientlibProcessor, ClientlibOutputProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(CssUrlMapper.class);
 
+    /** The size of the buffer used to decode the content. */
+    public static final int BUFFER_SIZE = 8192;
+
     public static final Pattern URL_PATTERN = Pattern.compile("(url\\s*\\(\\s*['\"]?)([^'\")]+)([\"']?\\s*\\))");
 
     @Override
@@ -31,10 +42,9 @@ public class CssUrlMapper implements ClientlibProcessor {
         final PipedOutputStream outputStream = new PipedOutputStream();
         InputStream result = new PipedInputStream(outputStream);
         context.execute(() -> {
-            try (OutputStreamWriter writer = new OutputStreamWriter(outputStream)) {
-                String css = IOUtils.toString(source, DEFAULT_CHARSET);
-                map(css, writer, context);
-                writer.flush();
+            try (Writer writer = mappingWriter(new OutputStreamWriter(outputStream), context);
+                 Reader reader = new InputStreamReader(source, DEFAULT_CHARSET)) {
+                IOUtils.copy(reader, writer);
             } catch (IOException ex) {
                 LOG.error(ex.getMessage(), ex);
             }
@@ -42,6 +52,26 @@ public class CssUrlMapper implements ClientlibProcessor {
         return result;
     }
 
+    /**
+     * Maps the content while it is written; the bytes are decoded like {@link IOUtils#toString(InputStream, Charset)}
+     * does (malformed input replaced by U+FFFD), so the result is the same as mapping the whole content at once.
+     */
+    @Override
+    public OutputStream processOutput(final OutputStream target, final ProcessorContext context) {
+        CharsetDecoder decoder = Charset.forName(DEFAULT_CHARSET).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return new WriterOutputStream(mappingWriter(new OutputStreamWriter(target, DEFAULT_CHARSET), context),
+                decoder, BUFFER_SIZE, false);
+    }
+
+    /**
+     * @return a writer mapping the URLs of the CSS written to it into the target; closes the target on close
+     */
+    public Writer mappingWriter(final Writer target, final ProcessorContext context) {
+        return new CssUrlMappingWriter(target, (url) -> map(context, url));
+    }
+
     public void map(String css, Writer writer, ProcessorContext context) {
 
         try {
@@ -68,8 +98,10 @@ public class CssUrlMapper implements ClientlibProcessor {
 
     public String map(ProcessorContext context, String url) {
         SlingHttpServletRequest request = context.getRequest();
-        return context.mapClientlibURLs()
-                ? LinkUtil.getUrl(request, url)
-                : LinkUtil.getUnmappedUrl(request, url);
+        synchronized (request) { // the files of a clientlib can be processed in parallel; the resolver isn't thread safe
+            return context.mapClientlibURLs()
+                    ? LinkUtil.getUrl(request, url)
+                    : LinkUtil.getUnmappedUrl(request, url);
+        }
     }
 }
@@ -0,0 +1,100 @@
+package com.composum.sling.clientlibs.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+
+/**
+ * Maps the URLs in CSS written to it like {@link CssUrlMapper#map(String, Writer, ProcessorContext)} does for a
+ * complete text, but without keeping the whole text in memory. A match of the {@link CssUrlMapper#URL_PATTERN}
+ * ends with the first ')' after its start, so the text is mapped in segments each ending with a ')' which yields
+ * exactly the same result. Text which can't be the start of a match is written as soon as a segment gets large; only
+ * an unclosed 'url(' (e.g. a large data URI) is kept until its ')' arrives.
+ */
+public class CssUrlMappingWriter extends Writer {
+
+    /** The segment length from which the text before a possible match is written without waiting for a ')'. */
+    protected static final int SEGMENT_THRESHOLD = 8192;
+
+    protected final Writer target;
+    protected final UnaryOperator<String> mapping;
+    protected final StringBuilder segment = new StringBuilder();
+
+    private boolean closed = false;
+
+    /**
+     * @param target  the writer for the mapped text; closed on {@link #close()}
+     * @param mapping maps each URL found in the text
+     */
+    public CssUrlMappingWriter(Writer target, UnaryOperator<String> mapping) {
+        this.target = target;
+        this.mapping = mapping;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        int start = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            if (cbuf[i] == ')') {
+                segment.append(cbuf, start, i + 1 - start);
+                writeSegment();
+                start = i + 1;
+            }
+        }
+        segment.append(cbuf, start, end - start);
+        if (segment.length() > SEGMENT_THRESHOLD) {
+            writeUnmatchable();
+        }
+    }
+
+    /** Maps the collected segment, which ends with a ')' or with the text. */
+    protected void writeSegment() throws IOException {
+        Matcher matcher = CssUrlMapper.URL_PATTERN.matcher(segment);
+        int len = segment.length();
+        int pos = 0;
+        while (matcher.find(pos)) {
+            target.append(segment, pos, matcher.start());
+            target.write(matcher.group(1));
+            target.write(mapping.apply(matcher.group(2)));
+            target.write(matcher.group(3));
+            pos = matcher.end();
+        }
+        if (pos < len) {
+            target.append(segment, pos, len);
+        }
+        segment.setLength(0);
+    }
+
+    /** Writes the text of the segment up to the first position where a match could start. */
+    protected void writeUnmatchable() throws IOException {
+        int candidate = segment.indexOf("url");
+        if (candidate < 0) { // the end could be the beginning of an 'url'
+            candidate = Math.max(0, segment.length() - 2);
+        }
+        if (candidate > 0) {
+            target.append(segment, 0, candidate);
+            segment.delete(0, candidate);
+        }
+    }
+
+    /** Flushes the mapped text; a segment which is not complete is kept since it could contain an URL. */
+    @Override
+    public void flush() throws IOException {
+        target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            try {
+                writeSegment();
+                target.flush();
+            } finally {
+                target.close();
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.composum.sling.clientlibs.processor;
 
+import com.composum.sling.clientlibs.service.ClientlibOutputProcessor;
 import com.composum.sling.clientlibs.service.ClientlibService;
 import com.composum.sling.core.util.ResourceUtil;
 import org.apache.commons.io.IOUtils;
@@ -10,6 +11,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.util.zip.GZIPOutputStream;
@@ -19,10 +21,12 @@ import java.util.zip.GZIPOutputStream;
                 Constants.SERVICE_DESCRIPTION + "=Composum Nodes Clientlib Default Zip Processor"
         }
 )
-public class DefaultGzipProcessor implements GzipProcessor {
+public class DefaultGzipProcessor implements GzipProcessor, ClientlibOutputProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(DefaultGzipProcessor.class);
 
+    protected static final int BUFFER_SIZE = 8192;
+
     @Override
     public InputStream processContent(final InputStream source, ProcessorContext context)
             throws IOException {
@@ -45,4 +49,11 @@ public class DefaultGzipProcessor implements GzipProcessor {
         }
         return result;
     }
+
+    @Override
+    public OutputStream processOutput(OutputStream target, ProcessorContext context)
+            throws IOException {
+        context.hint(ResourceUtil.PROP_ENCODING, ClientlibService.ENCODING_GZIP);
+        return new GZIPOutputStream(target, BUFFER_SIZE);
+    }
 }
@@ -1,6 +1,7 @@
 package com.composum.sling.clientlibs.processor;
 
 import com.composum.sling.clientlibs.service.ClientlibConfiguration;
+import com.composum.sling.clientlibs.service.ClientlibOutputProcessor;
 import com.composum.sling.core.util.ResourceUtil;
 import org.osgi.framework.Constants;
 import org.osgi.service.component.annotations.Component;
@@ -9,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Since there is currently (as of mid-2017) no Java javascript minifier library that works sufficiently well, this does nothing
@@ -19,7 +21,7 @@ import java.io.InputStream;
                 Constants.SERVICE_DESCRIPTION + "=Composum Nodes Clientlib Default Javascript Processor"
         }
 )
-public class DefaultJavascriptProcessor extends AbstractClientlibRenderer implements JavascriptProcessor {
+public class DefaultJavascriptProcessor extends AbstractClientlibRenderer implements JavascriptProcessor, ClientlibOutputProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(DefaultJavascriptProcessor.class);
 
@@ -37,4 +39,10 @@ public class DefaultJavascriptProcessor extends AbstractClientlibRenderer implem
         return source;
     }
 
+    @Override
+    public OutputStream processOutput(OutputStream target, ProcessorContext context) {
+        context.hint(ResourceUtil.PROP_MIME_TYPE, "application/javascript");
+        return target;
+    }
+
 }
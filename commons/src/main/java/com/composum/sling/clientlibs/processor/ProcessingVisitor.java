@@ -7,17 +7,28 @@ import com.composum.sling.clientlibs.handle.ClientlibRef;
 import com.composum.sling.clientlibs.handle.ClientlibResourceFolder;
 import com.composum.sling.clientlibs.handle.ClientlibVisitor;
 import com.composum.sling.clientlibs.handle.FileHandle;
+import com.composum.sling.clientlibs.service.ClientlibOutputProcessor;
 import com.composum.sling.clientlibs.service.ClientlibProcessor;
 import com.composum.sling.clientlibs.service.ClientlibService;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.slf4j.Logger;
 
+import javax.jcr.RepositoryException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.LinkedHashSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import static com.composum.sling.clientlibs.handle.ClientlibVisitor.VisitorMode.EMBEDDED;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -31,7 +42,12 @@ public class ProcessingVisitor extends AbstractClientlibVisitor {
 
     protected final OutputStream output;
     protected final ClientlibProcessor processor;
+    protected final ClientlibOutputProcessor outputProcessor;
     protected final ProcessorContext context;
+    protected final int parallelism;
+
+    /** The files processed in parallel which are not written yet - in the order of the files. */
+    protected final Deque<FutureTask<byte[]>> pending = new ArrayDeque<>();
 
     /**
      * Instantiates a new Processing visitor.
@@ -43,10 +59,64 @@ public class ProcessingVisitor extends AbstractClientlibVisitor {
      */
     public ProcessingVisitor(ClientlibElement owner, ClientlibService service, OutputStream output,
                              ClientlibProcessor processor, ProcessorContext context) {
+        this(owner, service, output, processor, context, false);
+    }
+
+    /**
+     * Instantiates a new Processing visitor.
+     *
+     * @param service        the service
+     * @param output         the output stream to write to. Is not closed in this class - remember to close it outside.
+     * @param processor      optional processor we pipe our output through.
+     * @param context        the context where we keep some data
+     * @param pushProcessing if true, the processor is stacked as {@link ClientlibOutputProcessor} onto the output
+     *                       for each file and the content is processed on the current thread without pipes
+     */
+    public ProcessingVisitor(ClientlibElement owner, ClientlibService service, OutputStream output,
+                             ClientlibProcessor processor, ProcessorContext context, boolean pushProcessing) {
+        this(owner, service, output, processor, context, pushProcessing, 1);
+    }
+
+    /**
+     * Instantiates a new Processing visitor.
+     *
+     * @param service        the service
+     * @param output         the output stream to write to. Is not closed in this class - remember to close it outside.
+     * @param processor      optional processor we pipe our output through.
+     * @param context        the context where we keep some data
+     * @param pushProcessing if true, the processor is stacked as {@link ClientlibOutputProcessor} onto the output
+     *                       for each file and the content is processed on the current thread without pipes
+     * @param parallelism    if &gt; 1 and pushProcessing is on the files are processed in parallel by the executor
+     *                       of the context; the results are written in the order of the files, at most twice this
+     *                       number of results are kept in memory
+     */
+    public ProcessingVisitor(ClientlibElement owner, ClientlibService service, OutputStream output,
+                             ClientlibProcessor processor, ProcessorContext context, boolean pushProcessing,
+                             int parallelism) {
         super(owner, service, context.getResolver(), null);
         this.output = output;
         this.processor = processor;
+        this.outputProcessor = pushProcessing && processor != null ? ProcessorPipeline.adapt(processor) : null;
         this.context = context;
+        this.parallelism = outputProcessor != null ? parallelism : 1;
+    }
+
+    @Override
+    public ProcessingVisitor execute() throws IOException, RepositoryException {
+        boolean success = false;
+        try {
+            super.execute();
+            writePending(0);
+            success = true;
+        } finally {
+            if (!success) {
+                for (FutureTask<byte[]> task : pending) {
+                    task.cancel(false);
+                }
+                pending.clear();
+            }
+        }
+        return this;
     }
 
     @Override
@@ -68,13 +138,25 @@ public class ProcessingVisitor extends AbstractClientlibVisitor {
         InputStream content = file.getStream();
         if (content != null) {
             try {
-                if (processor != null) {
-                    content = processor.processContent(content, context);
+                if (parallelism > 1) {
+                    // the content is read here since the resolver must not be used concurrently
+                    final byte[] bytes = IOUtils.toByteArray(content);
+                    FutureTask<byte[]> task = new FutureTask<>(() -> {
+                        ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.length);
+                        process(new ByteArrayInputStream(bytes), buffer);
+                        return buffer.toByteArray();
+                    });
+                    pending.add(task);
+                    try {
+                        context.execute(task);
+                    } catch (RejectedExecutionException ex) {
+                        task.run();
+                    }
+                    writePending(2 * parallelism);
+                } else {
+                    process(content, output);
+                    output.flush();
                 }
-                IOUtils.copy(content, output);
-                output.write('\n');
-                output.write('\n');
-                output.flush();
             } finally {
                 content.close();
             }
@@ -86,6 +168,47 @@ public class ProcessingVisitor extends AbstractClientlibVisitor {
         if (time > 0.1) { LOG.info("Large processing time: {} in {} s", clientlibFile, time); }
     }
 
+    /** Writes the processed content of a file followed by an empty line to the target. */
+    protected void process(InputStream content, OutputStream target) throws IOException {
+        if (outputProcessor != null) {
+            // closing the processed stream finishes the processing of the file but keeps the target open
+            try (OutputStream processed = outputProcessor.processOutput(new CloseShieldOutputStream(target), context)) {
+                IOUtils.copy(content, processed);
+            }
+        } else {
+            if (processor != null) {
+                content = processor.processContent(content, context);
+            }
+            IOUtils.copy(content, target);
+        }
+        target.write('\n');
+        target.write('\n');
+    }
+
+    /**
+     * Writes the results of the files processed in parallel in their order until at most maxPending are left.
+     * A file which is not yet started by the executor is processed on the current thread - that avoids waiting
+     * for a pool which is busy with the processing of other clientlibs.
+     */
+    protected void writePending(int maxPending) throws IOException {
+        while (pending.size() > maxPending) {
+            FutureTask<byte[]> task = pending.removeFirst();
+            task.run();
+            try {
+                output.write(task.get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while processing " + owner);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IOException(cause);
+            }
+            output.flush();
+        }
+    }
+
     protected void logNotAvailable(Resource resource, String reference, boolean optional) {
         if (optional)
             LOG.debug("Clientlib entry ''{}'' of ''{}'' not available but optional.", reference, resource.getPath());
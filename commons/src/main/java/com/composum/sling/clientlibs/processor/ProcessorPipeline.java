@@ -1,13 +1,21 @@
 package com.composum.sling.clientlibs.processor;
 
+import com.composum.sling.clientlibs.service.ClientlibOutputProcessor;
 import com.composum.sling.clientlibs.service.ClientlibProcessor;
+import org.apache.commons.io.IOUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
-public class ProcessorPipeline implements ClientlibProcessor {
+/**
+ * A sequence of processors. Used as {@link ClientlibProcessor} the content is pulled through the processors;
+ * used as {@link ClientlibOutputProcessor} the processors are stacked as filters on the target stream and the
+ * whole processing is done by the writing thread.
+ */
+public class ProcessorPipeline implements ClientlibProcessor, ClientlibOutputProcessor {
 
     protected List<ClientlibProcessor> processors;
 
@@ -41,6 +49,38 @@ public class ProcessorPipeline implements ClientlibProcessor {
         return stream;
     }
 
+    /**
+     * Stacks the processors as filters on the target stream - the first processor of the pipeline receives the
+     * content written to the returned stream.
+     */
+    @Override
+    public OutputStream processOutput(OutputStream stream, ProcessorContext context)
+            throws IOException {
+        for (int i = processors.size(); --i >= 0; ) {
+            stream = adapt(processors.get(i)).processOutput(stream, context);
+        }
+        return stream;
+    }
+
+    /**
+     * Returns the push based variant of a processor; processors which are not implementing the
+     * {@link ClientlibOutputProcessor} interface are adapted: their input is collected and pulled through the
+     * processor on close.
+     */
+    public static ClientlibOutputProcessor adapt(final ClientlibProcessor processor) {
+        if (processor instanceof ClientlibOutputProcessor) {
+            return (ClientlibOutputProcessor) processor;
+        }
+        return (target, context) -> new CollectingOutputStream(target) {
+            @Override
+            protected void transform(InputStream content, OutputStream target) throws IOException {
+                try (InputStream result = processor.processContent(content, context)) {
+                    IOUtils.copy(result, target);
+                }
+            }
+        };
+    }
+
     @Override
     public String toString() {
         StringBuffer buf = new StringBuffer();
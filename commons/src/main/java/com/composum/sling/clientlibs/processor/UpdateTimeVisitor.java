@@ -13,7 +13,9 @@ import org.slf4j.Logger;
 import javax.jcr.RepositoryException;
 import java.io.IOException;
 import java.util.Calendar;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.Set;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -26,13 +28,22 @@ public class UpdateTimeVisitor extends AbstractClientlibVisitor {
 
     protected Calendar lastUpdateTime = null;
 
+    /** The paths of all resources which contributed to the hashes; shared with the visitors of the dependencies. */
+    protected final Set<String> dependencies;
+
     public UpdateTimeVisitor(ClientlibElement owner, ClientlibService service, ResourceResolver resolver) {
         this(owner, service, resolver, null);
     }
 
     protected UpdateTimeVisitor(ClientlibElement owner, ClientlibService service, ResourceResolver resolver,
                                 LinkedHashSet<ClientlibLink> processedElements) {
+        this(owner, service, resolver, processedElements, null);
+    }
+
+    protected UpdateTimeVisitor(ClientlibElement owner, ClientlibService service, ResourceResolver resolver,
+                                LinkedHashSet<ClientlibLink> processedElements, Set<String> dependencies) {
         super(owner, service, resolver, processedElements);
+        this.dependencies = null != dependencies ? dependencies : new HashSet<>();
     }
 
     @Override
@@ -53,9 +64,24 @@ public class UpdateTimeVisitor extends AbstractClientlibVisitor {
         return lastUpdateTime;
     }
 
+    /**
+     * Returns the paths of the resources (clientlibs, folders and embedded files) the hash and the update time are
+     * determined from. The results stay valid as long as none of these resources is changed and no resource is
+     * added or removed which changes the resolution of the references.
+     */
+    public Set<String> getDependencies() {
+        return dependencies;
+    }
+
     @Override
     protected ClientlibVisitor createVisitorFor(ClientlibElement element) {
-        return new UpdateTimeVisitor(element, service, resolver, processedElements);
+        return new UpdateTimeVisitor(element, service, resolver, processedElements, dependencies);
+    }
+
+    @Override
+    protected void updateHash(String path, Calendar updatetime) {
+        dependencies.add(path);
+        super.updateHash(path, updatetime);
     }
 
     @Override
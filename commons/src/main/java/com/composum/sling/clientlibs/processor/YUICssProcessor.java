@@ -1,6 +1,7 @@
 package com.composum.sling.clientlibs.processor;
 
 import com.composum.sling.clientlibs.service.ClientlibConfiguration;
+import com.composum.sling.clientlibs.service.ClientlibOutputProcessor;
 import com.composum.sling.core.util.ResourceUtil;
 import com.yahoo.platform.yui.compressor.CssCompressor;
 import org.osgi.framework.Constants;
@@ -12,6 +13,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
@@ -21,7 +23,7 @@ import java.io.PipedOutputStream;
                 Constants.SERVICE_DESCRIPTION + "=Composum Nodes Clientlib CSS Processor (YUI)"
         }
 )
-public class YUICssProcessor extends AbstractClientlibRenderer implements CssProcessor {
+public class YUICssProcessor extends AbstractClientlibRenderer implements CssProcessor, ClientlibOutputProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(YUICssProcessor.class);
 
@@ -56,4 +58,22 @@ public class YUICssProcessor extends AbstractClientlibRenderer implements CssPro
         }
         return result;
     }
+
+    @Override
+    public OutputStream processOutput(OutputStream target, ProcessorContext context) {
+        OutputStream result = target;
+        context.hint(ResourceUtil.PROP_MIME_TYPE, "text/css");
+        if (context.useMinifiedFiles() && clientlibConfig.getConfig().css_minimize()) {
+            result = new CollectingOutputStream(target) {
+                @Override
+                protected void transform(InputStream content, OutputStream target) throws IOException {
+                    OutputStreamWriter writer = new OutputStreamWriter(target, DEFAULT_CHARSET);
+                    final CssCompressor compressor = new CssCompressor(new InputStreamReader(content, DEFAULT_CHARSET));
+                    compressor.compress(writer, clientlibConfig.getConfig().css_line_break());
+                    writer.flush();
+                }
+            };
+        }
+        return result;
+    }
 }
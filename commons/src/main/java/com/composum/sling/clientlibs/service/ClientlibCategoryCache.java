@@ -0,0 +1,157 @@
+package com.composum.sling.clientlibs.service;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Caches the paths of the client libraries of a category without a global lock. Each category is loaded only once
+ * at a time - concurrent requests for a category which is loading wait for that result instead of running the
+ * query again. Entries used in the last quarter of their lifetime are refreshed ahead in the background, so
+ * frequently used categories don't expire at all while the content is unchanged.
+ */
+public class ClientlibCategoryCache {
+
+    private static final Logger LOG = getLogger(ClientlibCategoryCache.class);
+
+    protected static class Entry {
+
+        protected final List<String> paths;
+        protected final long loaded;
+        protected final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+        protected Entry(List<String> paths, long loaded) {
+            this.paths = paths;
+            this.loaded = loaded;
+        }
+    }
+
+    protected final Map<String, CompletableFuture<Entry>> cache = new ConcurrentHashMap<>();
+
+    protected final Function<String, List<String>> loader;
+    protected final Executor refreshExecutor;
+    protected final int maxSize;
+    protected final long timeToLive;
+
+    /**
+     * @param loader          determines the paths for a category
+     * @param refreshExecutor the executor for refreshing entries ahead; no refresh ahead if 'null'
+     * @param maxSize         the maximum number of cached categories
+     * @param timeToLive      the time in milliseconds an entry is valid
+     */
+    public ClientlibCategoryCache(@NotNull Function<String, List<String>> loader, @Nullable Executor refreshExecutor,
+                                  int maxSize, long timeToLive) {
+        this.loader = loader;
+        this.refreshExecutor = refreshExecutor;
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * @return the cached paths of the category; loaded if not cached or expired
+     */
+    @NotNull
+    public List<String> get(@NotNull final String category) {
+        CompletableFuture<Entry> future = cache.get(category);
+        if (future != null && future.isDone()) {
+            Entry entry = future.isCompletedExceptionally() ? null : future.join();
+            long age = entry != null ? System.currentTimeMillis() - entry.loaded : Long.MAX_VALUE;
+            if (age <= timeToLive) {
+                if (age > timeToLive / 4 * 3) {
+                    refreshAhead(category, future, entry);
+                }
+                return entry.paths;
+            }
+            cache.remove(category, future);
+            future = null;
+        }
+        if (future == null) {
+            CompletableFuture<Entry> loading = new CompletableFuture<>();
+            future = cache.putIfAbsent(category, loading);
+            if (future == null) { // we are the one who loads; all others wait for our result
+                future = loading;
+                if (cache.size() > maxSize) {
+                    evict();
+                }
+                try {
+                    loading.complete(new Entry(loader.apply(category), System.currentTimeMillis()));
+                } catch (RuntimeException ex) {
+                    cache.remove(category, loading);
+                    loading.completeExceptionally(ex);
+                }
+            }
+        }
+        try {
+            return future.join().paths;
+        } catch (CompletionException ex) {
+            throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+        }
+    }
+
+    /** Drops all cached entries; loadings in progress are finished but not cached. */
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    protected void refreshAhead(final String category, final CompletableFuture<Entry> current, final Entry entry) {
+        if (refreshExecutor != null && entry.refreshing.compareAndSet(false, true)) {
+            try {
+                refreshExecutor.execute(() -> {
+                    try {
+                        Entry refreshed = new Entry(loader.apply(category), System.currentTimeMillis());
+                        cache.replace(category, current, CompletableFuture.completedFuture(refreshed));
+                    } catch (RuntimeException ex) {
+                        LOG.warn("refresh of category '{}' failed: {}", category, ex.toString());
+                        entry.refreshing.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                entry.refreshing.set(false); // the entry is loaded on expiry in that case
+            }
+        }
+    }
+
+    /**
+     * Drops the expired entries and, if that is not enough, the oldest entries down to three quarters of the
+     * maximum size; entries which are loading are kept.
+     */
+    protected void evict() {
+        long expired = System.currentTimeMillis() - timeToLive;
+        List<Map.Entry<String, CompletableFuture<Entry>>> loaded = new ArrayList<>();
+        for (Map.Entry<String, CompletableFuture<Entry>> item : cache.entrySet()) {
+            CompletableFuture<Entry> future = item.getValue();
+            if (future.isDone()) {
+                if (future.isCompletedExceptionally() || future.join().loaded < expired) {
+                    cache.remove(item.getKey(), future);
+                } else {
+                    loaded.add(item);
+                }
+            }
+        }
+        int toRemove = cache.size() - maxSize / 4 * 3;
+        if (toRemove > 0) {
+            loaded.sort(Comparator.comparingLong(item -> item.getValue().join().loaded));
+            for (int i = 0; i < toRemove && i < loaded.size(); i++) {
+                cache.remove(loaded.get(i).getKey(), loaded.get(i).getValue());
+            }
+        }
+    }
+}
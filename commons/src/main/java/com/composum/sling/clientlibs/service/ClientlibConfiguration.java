@@ -84,6 +84,12 @@ public interface ClientlibConfiguration {
         )
         String clientlibs_cache_root() default "/var/composum/clientlibs";
 
+        @AttributeDefinition(
+                name = "File cache",
+                description = "if set, a local directory where the cached clientlib content is mirrored once per content hash to deliver it from the file system instead of the repository; default: empty (switched off)"
+        )
+        String clientlibs_file_cache() default "";
+
         @AttributeDefinition(
                 name = "Use minified variation",
                 description = "if 'on' for all clientlib files which have a '.min' sibling the '.min' files is used; default: 'on'"
@@ -102,6 +108,24 @@ public interface ClientlibConfiguration {
         )
         int clientlibs_resolver_cache_time() default 60;
 
+        @AttributeDefinition(
+                name = "Resolver Cache Size",
+                description = "the maximum number of resolutions of clientlib references to resources kept in the resolver cache. <=0 means no caching."
+        )
+        int clientlibs_resolver_cache_size() default 1000;
+
+        @AttributeDefinition(
+                name = "Category Cache Size",
+                description = "the maximum number of categories the clientlib resolver caches the locations of the client libraries for."
+        )
+        int clientlibs_category_cache_size() default 500;
+
+        @AttributeDefinition(
+                name = "Hash Cache Size",
+                description = "the maximum number of clientlib hashes kept for the recency check of the cached clientlib files; a cached hash is dropped on changes of the embedded files and expires after the resolver cache time. <=0 means no caching."
+        )
+        int clientlibs_hash_cache_size() default 500;
+
         @AttributeDefinition(
                 name = "Threadpool min",
                 description = "the minimum size of the thread pool for clientlib processing (must be '10' or greater)"
@@ -114,6 +138,18 @@ public interface ClientlibConfiguration {
         )
         int clientlibs_threadpool_max() default 20;
 
+        @AttributeDefinition(
+                name = "Push Processing",
+                description = "if 'on' the clientlib processors are stacked on the output and the content is processed by the requesting thread without piped streams; default: 'on'"
+        )
+        boolean clientlibs_processing_push() default true;
+
+        @AttributeDefinition(
+                name = "Processing Parallelism",
+                description = "the number of files of a clientlib processed in parallel by the thread pool if push processing is 'on'; the results are written in the order of the files. <=1 means sequential processing; default: 4"
+        )
+        int clientlibs_processing_parallelism() default 4;
+
     }
 
     Config getConfig();
@@ -0,0 +1,153 @@
+package com.composum.sling.clientlibs.service;
+
+import com.composum.sling.clientlibs.handle.ClientlibElement;
+import com.composum.sling.clientlibs.handle.ClientlibRef;
+import com.composum.sling.clientlibs.processor.UpdateTimeVisitor;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.jcr.RepositoryException;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the hash and the last update time determined by the {@link UpdateTimeVisitor} for a clientlib reference,
+ * so that the recency check of a cached clientlib doesn't need to walk all embedded files again. Each entry knows
+ * the paths of the resources it was determined from; a change of one of these resources drops only the entries
+ * depending on it - see {@link #invalidate(String)}. Since the visited resources depend on the read permissions
+ * the entries are kept per user of the resolver. The entries expire after a configured time as a safety net for
+ * changes which are not observed.
+ */
+public class ClientlibHashCache {
+
+    public static class Entry {
+
+        protected final String hash;
+        protected final Calendar lastUpdateTime;
+        protected final long created;
+
+        protected Entry(String hash, Calendar lastUpdateTime, long created) {
+            this.hash = hash;
+            this.lastUpdateTime = lastUpdateTime;
+            this.created = created;
+        }
+
+        /** @see UpdateTimeVisitor#getHash() */
+        public String getHash() {
+            return hash;
+        }
+
+        /** @see UpdateTimeVisitor#getLastUpdateTime() */
+        @Nullable
+        public Calendar getLastUpdateTime() {
+            return lastUpdateTime;
+        }
+    }
+
+    protected final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    /** The keys of the entries depending on a resource path. */
+    protected final Map<String, Set<String>> dependents = new ConcurrentHashMap<>();
+
+    /**
+     * Counts the invalidations; a result is only cached if no invalidation happened while it was determined, since
+     * it could have been determined from outdated content otherwise.
+     */
+    protected final AtomicLong modificationCount = new AtomicLong();
+
+    protected final int maxSize;
+    protected final long timeToLive;
+
+    /**
+     * @param maxSize    the maximum number of entries; &lt;= 0 switches the cache off
+     * @param timeToLive the time in milliseconds an entry is valid; &lt;= 0 switches the cache off
+     */
+    public ClientlibHashCache(int maxSize, long timeToLive) {
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0 && timeToLive > 0;
+    }
+
+    /**
+     * Returns the cached result or determines it with an {@link UpdateTimeVisitor} for the element.
+     *
+     * @param ref      the reference the element is resolved from
+     * @param element  the resolved element
+     * @param service  the service to use for the visitor
+     * @param resolver the resolver used to resolve the element
+     */
+    @NotNull
+    public Entry get(@NotNull ClientlibRef ref, @NotNull ClientlibElement element,
+                     @NotNull ClientlibService service, @NotNull ResourceResolver resolver)
+            throws IOException, RepositoryException {
+        String key = key(ref, resolver);
+        if (isEnabled()) {
+            Entry entry = cache.get(key);
+            if (entry != null && entry.created >= System.currentTimeMillis() - timeToLive) {
+                return entry;
+            }
+        }
+        long modification = modificationCount.get();
+        UpdateTimeVisitor visitor = new UpdateTimeVisitor(element, service, resolver);
+        visitor.execute();
+        Entry entry = new Entry(visitor.getHash(), visitor.getLastUpdateTime(), System.currentTimeMillis());
+        if (isEnabled()) {
+            put(key, entry, visitor.getDependencies(), modification);
+        }
+        return entry;
+    }
+
+    protected void put(String key, Entry entry, Set<String> dependencies, long modification) {
+        if (cache.size() >= maxSize) { // the entries in use are determined again soon
+            cache.clear();
+            dependents.clear();
+        }
+        for (String path : dependencies) {
+            dependents.computeIfAbsent(path, (k) -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+        cache.put(key, entry);
+        if (modificationCount.get() != modification) { // invalidated meanwhile - maybe determined from old content
+            cache.remove(key, entry);
+        }
+    }
+
+    /**
+     * Drops the entries depending on the resource at the path or on one of its ancestors (e.g. the content of a
+     * file is changed below the file resource).
+     */
+    public void invalidate(@NotNull String path) {
+        modificationCount.incrementAndGet();
+        for (String dependency = path; StringUtils.isNotEmpty(dependency);
+             dependency = StringUtils.substringBeforeLast(dependency, "/")) {
+            Set<String> keys = dependents.remove(dependency);
+            if (keys != null) {
+                for (String key : keys) {
+                    cache.remove(key);
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        modificationCount.incrementAndGet();
+        cache.clear();
+        dependents.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    protected String key(@NotNull ClientlibRef ref, @NotNull ResourceResolver resolver) {
+        return StringUtils.defaultString(resolver.getUserID()) + ':' + ref;
+    }
+}
@@ -0,0 +1,24 @@
+package com.composum.sling.clientlibs.service;
+
+import com.composum.sling.clientlibs.processor.ProcessorContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Push based variant of a {@link ClientlibProcessor}: the content is transformed while it is written to a stream
+ * instead of being pulled through piped streams filled by other threads. Processors implementing this can be
+ * stacked on one thread by the {@link com.composum.sling.clientlibs.processor.ProcessorPipeline}.
+ */
+public interface ClientlibOutputProcessor {
+
+    /**
+     * Wraps the target stream with a stream that transforms all content written to it.
+     *
+     * @param targetStream the stream the transformed content has to be written to; it is closed if the returned
+     *                     stream is closed
+     * @return the stream to write the content to - might also be the original targetStream if switched off
+     */
+    OutputStream processOutput(OutputStream targetStream, ProcessorContext context)
+            throws IOException;
+}
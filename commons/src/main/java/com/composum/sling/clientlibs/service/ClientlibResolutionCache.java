@@ -0,0 +1,109 @@
+package com.composum.sling.clientlibs.service;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded cache for the resolution of clientlib references to resource paths which stores hits and misses.
+ * Since the result of a resolution depends on the read permissions the entries are kept per user of the resolver.
+ * The entries expire after a configured time; the cache is cleared completely by the service on changes of
+ * resources in the search path.
+ */
+public class ClientlibResolutionCache {
+
+    /** The value returned by {@link #get(String, String, ResourceResolver)} for a cached miss. */
+    public static final String MISSING = "";
+
+    protected static class Entry {
+
+        protected final String path;
+        protected final long created;
+
+        protected Entry(String path, long created) {
+            this.path = path;
+            this.created = created;
+        }
+    }
+
+    protected final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    protected final int maxSize;
+    protected final long timeToLive;
+
+    /**
+     * @param maxSize    the maximum number of entries; &lt;= 0 switches the cache off
+     * @param timeToLive the time in milliseconds an entry is valid; &lt;= 0 switches the cache off
+     */
+    public ClientlibResolutionCache(int maxSize, long timeToLive) {
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0 && timeToLive > 0;
+    }
+
+    /**
+     * @param kind     the kind of the resolution, distinguishes different resolutions of the same path
+     * @param path     the path to resolve
+     * @param resolver the resolver of the user which needs the resolution
+     * @return the cached path, {@link #MISSING} for a cached miss or 'null' if nothing valid is cached
+     */
+    @Nullable
+    public String get(@NotNull String kind, @NotNull String path, @NotNull ResourceResolver resolver) {
+        if (isEnabled()) {
+            Entry entry = cache.get(key(kind, path, resolver));
+            if (entry != null && entry.created >= System.currentTimeMillis() - timeToLive) {
+                return entry.path != null ? entry.path : MISSING;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param resolvedPath the path of the resolved resource; 'null' for a miss
+     */
+    public void put(@NotNull String kind, @NotNull String path, @NotNull ResourceResolver resolver,
+                    @Nullable String resolvedPath) {
+        if (isEnabled()) {
+            if (cache.size() >= maxSize) {
+                evict();
+            }
+            cache.put(key(kind, path, resolver), new Entry(resolvedPath, System.currentTimeMillis()));
+        }
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Drops the expired entries; if that doesn't make room the whole cache is dropped since references which
+     * are not used anymore can't be distinguished from the used ones without tracking each access.
+     */
+    protected void evict() {
+        long expired = System.currentTimeMillis() - timeToLive;
+        for (Iterator<Entry> iterator = cache.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().created < expired) {
+                iterator.remove();
+            }
+        }
+        if (cache.size() >= maxSize) {
+            cache.clear();
+        }
+    }
+
+    protected String key(@NotNull String kind, @NotNull String path, @NotNull ResourceResolver resolver) {
+        return kind + ':' + StringUtils.defaultString(resolver.getUserID()) + ':' + path;
+    }
+}
@@ -10,6 +10,7 @@ import com.composum.sling.clientlibs.handle.ClientlibLink;
 import com.composum.sling.clientlibs.handle.ClientlibRef;
 import com.composum.sling.clientlibs.handle.ClientlibResourceFolder;
 import com.composum.sling.clientlibs.handle.FileHandle;
+import com.composum.sling.clientlibs.processor.AbstractClientlibVisitor;
 import com.composum.sling.clientlibs.processor.CssProcessor;
 import com.composum.sling.clientlibs.processor.CssUrlMapper;
 import com.composum.sling.clientlibs.processor.GzipProcessor;
@@ -19,17 +20,16 @@ import com.composum.sling.clientlibs.processor.ProcessingVisitor;
 import com.composum.sling.clientlibs.processor.ProcessorContext;
 import com.composum.sling.clientlibs.processor.ProcessorPipeline;
 import com.composum.sling.clientlibs.processor.RendererContext;
-import com.composum.sling.clientlibs.processor.UpdateTimeVisitor;
 import com.composum.sling.core.ResourceHandle;
 import com.composum.sling.core.concurrent.LazyCreationService;
 import com.composum.sling.core.concurrent.SequencerService;
 import com.composum.sling.core.filter.ResourceFilter;
 import com.composum.sling.core.util.ResourceUtil;
 import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.collections.map.LRUMap;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.Pair;
 import org.apache.sling.api.SlingException;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.LoginException;
@@ -39,6 +39,9 @@ import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.osgi.framework.Constants;
@@ -57,6 +60,8 @@ import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.query.Query;
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -64,6 +69,15 @@ import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -97,11 +111,14 @@ import static org.slf4j.LoggerFactory.getLogger;
  * Service related to {@link Clientlib} .
  */
 @Component(
+        service = {ClientlibService.class, ResourceChangeListener.class},
         property = {
-                Constants.SERVICE_DESCRIPTION + "=Composum Nodes Clientlib Service: Delivers the composed clientlib content bundled and compressed."
+                Constants.SERVICE_DESCRIPTION + "=Composum Nodes Clientlib Service: Delivers the composed clientlib content bundled and compressed.",
+                ResourceChangeListener.PATHS + "=/apps",
+                ResourceChangeListener.PATHS + "=/libs"
         }
 )
-public class DefaultClientlibService implements ClientlibService {
+public class DefaultClientlibService implements ClientlibService, ResourceChangeListener, ExternalResourceChangeListener {
 
     public static final String MINIFIED_SELECTOR = ".min";
     public static final Pattern UNMINIFIED_PATTERN = Pattern.compile("^(.+/)([^/]+)(\\.min)?(\\.[^.]+)$");
@@ -120,6 +137,19 @@ public class DefaultClientlibService implements ClientlibService {
      */
     protected static final String CATEGORYCACHE = "categorycache";
 
+    /**
+     * Size up to which the content generated by push processing is kept in memory before it is spooled to a
+     * temporary file.
+     */
+    protected static final int PROCESSING_SPOOL_THRESHOLD = 1024 * 1024;
+
+    /** Kinds of the resolutions cached in the {@link #resolutionCache}. */
+    protected static final String RESOLUTION_RESOURCE = "resource";
+    protected static final String RESOLUTION_MINIFIED = "minified";
+
+    /** The pattern of the hash suffix of the files mirrored in the {@link ClientlibConfiguration.Config#clientlibs_file_cache()}. */
+    protected static final Pattern FILE_CACHE_HASH_SUFFIX = Pattern.compile("\\.[0-9a-zA-Z_-]+$");
+
     static {
         CRUD_CACHE_FOLDER_PROPS = new HashMap<>();
         CRUD_CACHE_FOLDER_PROPS.put(com.composum.sling.core.util.ResourceUtil.PROP_PRIMARY_TYPE, ResourceUtil
@@ -167,20 +197,63 @@ public class DefaultClientlibService implements ClientlibService {
     protected EnumMap<Type, ClientlibProcessor> processorMap;
 
     /**
-     * Cache (String, Pair<Long, List<String>>) that maps categories to a pair of the query time and the resulting list
-     * of paths to client libraries with that path. We set an arbitrary limit of 100 since otherwise we'd be open to a
+     * Cache that maps categories to the list of paths to client libraries with that category. The size is limited
+     * by {@link ClientlibConfiguration.Config#clientlibs_category_cache_size()} since otherwise we'd be open to a
      * DOS attack by retrieving random categories.
      */
-    protected final LRUMap /*String, Pair<Long, List<String>>*/ categoryToPathCache = new LRUMap(100);
+    protected volatile ClientlibCategoryCache categoryToPathCache = null;
+
+    /**
+     * Caches the resolution of paths to resources and of files to their minified siblings (hits and misses), see
+     * {@link #retrieveResource(String, ResourceResolver)} and {@link #getMinifiedSibling(Resource)}.
+     */
+    protected volatile ClientlibResolutionCache resolutionCache = new ClientlibResolutionCache(0, 0);
+
+    /**
+     * Caches the hashes of the clientlibs determined for the recency check in
+     * {@link #prepareContent(SlingHttpServletRequest, ClientlibRef, boolean, String, boolean, String, long)}.
+     */
+    protected volatile ClientlibHashCache hashCache = new ClientlibHashCache(0, 0);
 
     protected synchronized void bindPermissionPlugin(ClientlibPermissionPlugin permissionPlugin) {
         permissionPlugins.add(permissionPlugin);
-        categoryToPathCache.clear();
+        clearCategoryCache();
     }
 
     protected synchronized void unbindPermissionPlugin(ClientlibPermissionPlugin permissionPlugin) {
         permissionPlugins.remove(permissionPlugin);
-        categoryToPathCache.clear();
+        clearCategoryCache();
+    }
+
+    protected void clearCategoryCache() {
+        ClientlibCategoryCache cache = categoryToPathCache;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Drops the cached resolutions and categories on each change in the search path - the clientlib references are
+     * relative to the search path in most cases and each change can add or remove a clientlib of a category, so the
+     * affected entries can't be determined from the changed paths. The cached hashes are dropped completely only if
+     * resources are added or removed; a modification drops only the hashes of the clientlibs embedding the resource.
+     */
+    @Override
+    public void onChange(@NotNull List<ResourceChange> changes) {
+        if (!changes.isEmpty()) {
+            LOG.debug("clearing resolution caches on {} changes, e.g. {}", changes.size(), changes.get(0).getPath());
+            resolutionCache.clear();
+            clearCategoryCache();
+            ClientlibHashCache hashes = hashCache;
+            for (ResourceChange change : changes) {
+                if (change.getType() == ResourceChange.ChangeType.CHANGED) {
+                    hashes.invalidate(change.getPath());
+                } else {
+                    hashes.clear();
+                    break;
+                }
+            }
+        }
     }
 
     @Modified
@@ -197,6 +270,13 @@ public class DefaultClientlibService implements ClientlibService {
         processorMap.put(Type.js, javascriptProcessor);
         processorMap.put(Type.css, getClientlibConfig().clientlibs_url_map() ? new ProcessorPipeline(new
                 CssUrlMapper(), cssProcessor) : cssProcessor);
+        resolutionCache = new ClientlibResolutionCache(config.clientlibs_resolver_cache_size(),
+                TimeUnit.SECONDS.toMillis(config.clientlibs_resolver_cache_time()));
+        categoryToPathCache = new ClientlibCategoryCache(this::retrieveCategoryPaths, executorService,
+                config.clientlibs_category_cache_size(),
+                TimeUnit.SECONDS.toMillis(config.clientlibs_resolver_cache_time()));
+        hashCache = new ClientlibHashCache(config.clientlibs_hash_cache_size(),
+                TimeUnit.SECONDS.toMillis(config.clientlibs_resolver_cache_time()));
     }
 
     @Deactivate
@@ -255,8 +335,25 @@ public class DefaultClientlibService implements ClientlibService {
 
     /**
      * Retrieve a resource from a resolver; if we don't find it, we try to retrieve the (un)minified sibling.
+     * The result (also a miss) is cached in the {@link #resolutionCache}.
      */
     protected Resource retrieveResource(String path, ResourceResolver resolver) {
+        String cachedPath = resolutionCache.get(RESOLUTION_RESOURCE, path, resolver);
+        if (cachedPath != null) {
+            if (ClientlibResolutionCache.MISSING.equals(cachedPath)) {
+                return null;
+            }
+            Resource resource = resolver.getResource(cachedPath);
+            if (resource != null) {
+                return resource;
+            }
+        }
+        Resource pathResource = retrieveResourceUncached(path, resolver);
+        resolutionCache.put(RESOLUTION_RESOURCE, path, resolver, pathResource != null ? pathResource.getPath() : null);
+        return pathResource;
+    }
+
+    protected Resource retrieveResourceUncached(String path, ResourceResolver resolver) {
         Resource pathResource = retrieveResourceRaw(path, resolver);
         if (null == pathResource) {
             String unminifiedPath = getUnminifiedSibling(path);
@@ -311,9 +408,32 @@ public class DefaultClientlibService implements ClientlibService {
         return path;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>The result is cached in the {@link #resolutionCache}.</p>
+     */
     @Override
     @NotNull
     public Resource getMinifiedSibling(@NotNull Resource resource) {
+        String path = resource.getPath();
+        ResourceResolver resolver = resource.getResourceResolver();
+        String cachedPath = resolutionCache.get(RESOLUTION_MINIFIED, path, resolver);
+        if (cachedPath != null) {
+            if (path.equals(cachedPath)) {
+                return resource;
+            }
+            Resource minified = resolver.getResource(cachedPath);
+            if (minified != null) {
+                return minified;
+            }
+        }
+        Resource minified = getMinifiedSiblingUncached(resource);
+        resolutionCache.put(RESOLUTION_MINIFIED, path, resolver, minified.getPath());
+        return minified;
+    }
+
+    @NotNull
+    protected Resource getMinifiedSiblingUncached(@NotNull Resource resource) {
         String path = resource.getPath();
         String minifiedPath = getMinifiedSibling(path);
         if (!path.equals(minifiedPath)) {
@@ -333,29 +453,10 @@ public class DefaultClientlibService implements ClientlibService {
      */
     protected List<Resource> retrieveCategoryResources(String category, ResourceResolver resolver) {
         long cacheTime = TimeUnit.SECONDS.toMillis(getClientlibConfig().clientlibs_resolver_cache_time());
-        if (cacheTime <= 0) return retrieveResourcesForCategoryUncached(category, resolver);
-
-        List<String> paths = null;
-        long currentTimeMillis = System.currentTimeMillis();
-        synchronized (categoryToPathCache) {
-            @SuppressWarnings("unchecked")
-            Pair<Long, List<String>> cacheEntry = (Pair<Long, List<String>>) categoryToPathCache.get(category);
-            if (null != cacheEntry && cacheEntry.getLeft() >= (currentTimeMillis - cacheTime))
-                paths = cacheEntry.getRight();
-        }
+        ClientlibCategoryCache cache = categoryToPathCache;
+        if (cacheTime <= 0 || cache == null) return retrieveResourcesForCategoryUncached(category, resolver);
 
-        if (null == paths) {
-            paths = new ArrayList<>();
-            try (ResourceResolver administrativeResolver = createAdministrativeResolver()) {
-                List<Resource> resourcesForAdmin = retrieveResourcesForCategoryUncached(category,
-                        administrativeResolver);
-                for (Resource resource : resourcesForAdmin) paths.add(resource.getPath());
-            }
-
-            synchronized (categoryToPathCache) {
-                categoryToPathCache.put(category, Pair.of(currentTimeMillis, paths));
-            }
-        }
+        List<String> paths = cache.get(category);
 
         // retrieve with the users resolver
         List<Resource> resources = new ArrayList<>();
@@ -368,6 +469,19 @@ public class DefaultClientlibService implements ClientlibService {
         return resources;
     }
 
+    /**
+     * Loads the paths of all client libraries of a category for the {@link #categoryToPathCache}.
+     */
+    protected List<String> retrieveCategoryPaths(String category) {
+        List<String> paths = new ArrayList<>();
+        try (ResourceResolver administrativeResolver = createAdministrativeResolver()) {
+            List<Resource> resourcesForAdmin = retrieveResourcesForCategoryUncached(category,
+                    administrativeResolver);
+            for (Resource resource : resourcesForAdmin) paths.add(resource.getPath());
+        }
+        return Collections.unmodifiableList(paths);
+    }
+
     protected List<Resource> retrieveResourcesForCategoryUncached(String category, ResourceResolver resolver) {
         List<Resource> resources = new ArrayList<>();
         Set<String> foundlibs = new HashSet<>();
@@ -499,16 +613,15 @@ public class DefaultClientlibService implements ClientlibService {
                 }
                 element = resolve(clientlibRef, adminResolver);
 
-                UpdateTimeVisitor updateTimeVisitor = new UpdateTimeVisitor(element, this, adminResolver);
-                updateTimeVisitor.execute();
-                final String hash = updateTimeVisitor.getHash();
+                ClientlibHashCache.Entry updateTime = hashCache.get(clientlibRef, element, this, adminResolver);
+                final String hash = updateTime.getHash();
                 String cacheFileHash = cacheFile.getContent().getProperty(PROP_HASH);
 
                 if (!StringUtils.equals(requestedHash, hash)) {
                     // safety check to make sure continual up to date checks because of wrong permissions get noticed
-                    UpdateTimeVisitor updateTimeVisitorAsUser = new UpdateTimeVisitor(element, this, request.getResourceResolver());
-                    updateTimeVisitorAsUser.execute();
-                    if (!StringUtils.equals(hash, updateTimeVisitorAsUser.getHash())) {
+                    ClientlibHashCache.Entry updateTimeAsUser = hashCache.get(clientlibRef, element, this,
+                            request.getResourceResolver());
+                    if (!StringUtils.equals(hash, updateTimeAsUser.getHash())) {
                         LOG.error("Clientlib hash for {} as {} and admin disagree - " +
                                         "likely a permission problem that results in performance problems",
                                 request.getUserPrincipal(), clientlibRef);
@@ -517,8 +630,8 @@ public class DefaultClientlibService implements ClientlibService {
 
                 boolean refreshNeeded = refreshForced || !hash.equals(cacheFileHash);
                 // if the clientlib seems newer than the clientlib last modified, we rather regenerate things, too.
-                if (null != cacheFile.getLastModified() && null != updateTimeVisitor.getLastUpdateTime() &&
-                        updateTimeVisitor.getLastUpdateTime().after(cacheFile.getLastModified()))
+                if (null != cacheFile.getLastModified() && null != updateTime.getLastUpdateTime() &&
+                        updateTime.getLastUpdateTime().after(cacheFile.getLastModified()))
                     refreshNeeded = true;
 
                 if (refreshNeeded) {
@@ -571,23 +684,44 @@ public class DefaultClientlibService implements ClientlibService {
                     LOG.debug("create clientlib cache content ''{}''...", cacheFile.getResource()
                             .getPath());
 
-                    final PipedOutputStream outputStream = new PipedOutputStream();
-                    InputStream inputStream = new PipedInputStream(outputStream);
-                    Future<Void> result = startProcessing(clientlibRef, encoding, context, outputStream);
-                    if (ENCODING_GZIP.equals(encoding)) {
-                        inputStream = gzipProcessor.processContent(inputStream, context);
+                    InputStream inputStream;
+                    Future<Void> result = null;
+                    DeferredFileOutputStream spool = null;
+                    if (getClientlibConfig().clientlibs_processing_push()) {
+                        spool = processContent(clientlibRef, encoding, context, adminResolver);
+                        inputStream = spool.isInMemory()
+                                ? new ByteArrayInputStream(spool.getData())
+                                : new FileInputStream(spool.getFile());
+                    } else {
+                        final PipedOutputStream outputStream = new PipedOutputStream();
+                        inputStream = new PipedInputStream(outputStream);
+                        result = startProcessing(clientlibRef, encoding, context, outputStream);
+                        if (ENCODING_GZIP.equals(encoding)) {
+                            inputStream = gzipProcessor.processContent(inputStream, context);
+                        }
                     }
-                    cacheFile.storeContent(inputStream);
+                    try {
+                        cacheFile.storeContent(inputStream);
 
-                    ModifiableValueMap contentValues = Objects.requireNonNull(cacheFile.getContent().adaptTo
-                            (ModifiableValueMap.class));
-                    contentValues.put(ResourceUtil.PROP_LAST_MODIFIED,
-                            Calendar.getInstance());
-                    contentValues.putAll(context.getHints());
-                    contentValues.put(PROP_HASH, hash);
+                        ModifiableValueMap contentValues = Objects.requireNonNull(cacheFile.getContent().adaptTo
+                                (ModifiableValueMap.class));
+                        contentValues.put(ResourceUtil.PROP_LAST_MODIFIED,
+                                Calendar.getInstance());
+                        contentValues.putAll(context.getHints());
+                        contentValues.put(PROP_HASH, hash);
 
-                    adminResolver.commit();
-                    result.get(); // transport any exceptions here
+                        adminResolver.commit();
+                        if (result != null) {
+                            result.get(); // transport any exceptions here
+                        }
+                    } finally {
+                        if (spool != null) {
+                            IOUtils.closeQuietly(inputStream);
+                            if (!spool.isInMemory()) {
+                                FileUtils.deleteQuietly(spool.getFile());
+                            }
+                        }
+                    }
 
                     LOG.info("clientlib cache content ''{}'' created", cacheFile.getResource().getPath());
                 } else {
@@ -623,6 +757,39 @@ public class DefaultClientlibService implements ClientlibService {
         });
     }
 
+    /**
+     * Generates the embedded content of the clientlib / -category on the current thread: the processors are stacked
+     * as filters onto the output, so no piped streams are involved. The threads of the {@link #executorService} are
+     * only used to process several files in parallel if configured.
+     * The result is spooled since the repository needs an input stream to store the content.
+     *
+     * @return the closed spool containing the generated content; its file (if any) has to be deleted by the caller
+     */
+    protected DeferredFileOutputStream processContent(final ClientlibRef clientlibRef, String encoding,
+                                                      final ProcessorContext context, ResourceResolver adminResolver)
+            throws IOException, RepositoryException {
+        final ClientlibProcessor processor = processorMap.get(clientlibRef.type);
+        DeferredFileOutputStream spool = new DeferredFileOutputStream(PROCESSING_SPOOL_THRESHOLD,
+                "clientlib", ".tmp", null);
+        boolean success = false;
+        try {
+            try (OutputStream outputStream = ENCODING_GZIP.equals(encoding)
+                    ? ProcessorPipeline.adapt(gzipProcessor).processOutput(spool, context) : spool) {
+                ClientlibElement element = resolve(clientlibRef, adminResolver);
+                ProcessingVisitor visitor = new ProcessingVisitor(element, this, outputStream, processor, context,
+                        true, getClientlibConfig().clientlibs_processing_parallelism());
+                visitor.execute();
+            }
+            success = true;
+        } finally {
+            IOUtils.closeQuietly(spool);
+            if (!success && !spool.isInMemory()) {
+                FileUtils.deleteQuietly(spool.getFile());
+            }
+        }
+        return spool;
+    }
+
     protected ClientlibInfo getFileHints(final FileHandle file, ClientlibLink link) {
         if (file.isValid()) {
             ClientlibInfo hints = new ClientlibInfo();
@@ -647,6 +814,11 @@ public class DefaultClientlibService implements ClientlibService {
         Resource resource = lazyCreationService.waitForInitialization(resolver, cachePath);
         FileHandle file = new FileHandle(resource);
         if (file.isValid()) {
+            Path mirror = getFileCacheMirror(file, cachePath);
+            if (mirror != null) {
+                transferFile(mirror, outputStream);
+                return;
+            }
             InputStream content = file.getStream();
             if (content != null) {
                 try {
@@ -660,6 +832,87 @@ public class DefaultClientlibService implements ClientlibService {
         }
     }
 
+    /**
+     * Returns the mirror of a cache file in the {@link ClientlibConfiguration.Config#clientlibs_file_cache()}; the
+     * mirror is written once per content hash on first use, so the repository binary has to be read only once.
+     *
+     * @return the mirror file or 'null' if the file cache is switched off or not usable for this file
+     */
+    @Nullable
+    protected Path getFileCacheMirror(@NotNull final FileHandle cacheFile, @NotNull final String cachePath) {
+        Path root = getFileCacheRoot();
+        String hash = cacheFile.getContent().getProperty(PROP_HASH, "");
+        if (root != null && AbstractClientlibVisitor.HASH_PATTERN.matcher(hash).matches()) {
+            Path mirror = root.resolve(StringUtils.removeStart(cachePath, "/") + "." + hash).normalize();
+            if (mirror.startsWith(root)) { // paths are built from request data
+                try {
+                    Long size = cacheFile.getSize();
+                    if (!Files.isRegularFile(mirror) || (size != null && size != Files.size(mirror))) {
+                        writeFileCacheMirror(cacheFile, mirror);
+                    }
+                    return mirror;
+                } catch (IOException ex) {
+                    LOG.warn("can't use file cache for ''{}'': {}", cachePath, ex.toString());
+                }
+            }
+        }
+        return null;
+    }
+
+    protected void writeFileCacheMirror(@NotNull final FileHandle cacheFile, @NotNull final Path mirror)
+            throws IOException {
+        Path folder = Objects.requireNonNull(mirror.getParent());
+        Files.createDirectories(folder);
+        String name = mirror.getFileName().toString();
+        // written to a temporary file and moved to avoid delivering partial content on concurrent requests
+        Path tmpFile = Files.createTempFile(folder, name, ".tmp");
+        try (InputStream content = cacheFile.getStream()) {
+            if (content == null) {
+                throw new FileNotFoundException("no content in " + cacheFile.getPath());
+            }
+            Files.copy(content, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmpFile, mirror, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.debug("file cache mirror ''{}'' written", mirror);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+        // remove the mirrors of outdated content versions
+        final String base = FILE_CACHE_HASH_SUFFIX.matcher(name).replaceFirst("");
+        try (DirectoryStream<Path> outdated = Files.newDirectoryStream(folder, sibling -> {
+            String siblingName = sibling.getFileName().toString();
+            return !siblingName.equals(name) && FILE_CACHE_HASH_SUFFIX.matcher(siblingName).replaceFirst("").equals(base);
+        })) {
+            for (Path file : outdated) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * @return the normalized root of the {@link ClientlibConfiguration.Config#clientlibs_file_cache()}; 'null' if
+     * switched off
+     */
+    @Nullable
+    protected Path getFileCacheRoot() {
+        String fileCache = getClientlibConfig().clientlibs_file_cache();
+        return StringUtils.isNotBlank(fileCache) ? Paths.get(fileCache.trim()).toAbsolutePath().normalize() : null;
+    }
+
+    /**
+     * Transfers the file via the file channel to avoid copying the content through heap buffers if possible.
+     */
+    protected void transferFile(@NotNull final Path file, @NotNull final OutputStream outputStream)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, target);
+            }
+        }
+    }
+
     /**
      * Uses the category if given, or the single clientlib otherwise.
      *
@@ -817,6 +1070,13 @@ public class DefaultClientlibService implements ClientlibService {
                 resolver.delete(childResource);
             }
         }
+        Path fileCacheRoot = getFileCacheRoot();
+        if (fileCacheRoot != null) {
+            File fileCache = fileCacheRoot.resolve(StringUtils.removeStart(cacheRootPath, "/")).toFile();
+            LOG.info("Deleting file cache {}", fileCache);
+            FileUtils.deleteQuietly(fileCache);
+        }
+        hashCache.clear();
     }
 
     /**
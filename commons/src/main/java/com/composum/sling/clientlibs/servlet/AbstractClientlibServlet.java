@@ -51,7 +51,7 @@ public abstract class AbstractClientlibServlet extends SlingSafeMethodsServlet {
             String header;
 
             header = request.getHeader(HttpUtil.HEADER_ACCEPT_ENCODING);
-            if (StringUtils.isNotBlank(header) && header.contains("gzip")) {
+            if (HttpUtil.acceptsEncoding(header, ClientlibService.ENCODING_GZIP)) {
                 encoding = ClientlibService.ENCODING_GZIP;
             }
 
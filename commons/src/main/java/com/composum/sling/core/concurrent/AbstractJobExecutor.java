@@ -23,10 +23,8 @@ import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.SimpleCredentials;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
@@ -38,20 +36,22 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
-import static com.composum.sling.core.util.ResourceUtil.CONTENT_NODE;
-import static com.composum.sling.core.util.ResourceUtil.PROP_DATA;
-import static com.composum.sling.core.util.ResourceUtil.PROP_MIME_TYPE;
 import static com.composum.sling.core.util.ResourceUtil.PROP_PRIMARY_TYPE;
 import static com.composum.sling.core.util.ResourceUtil.PROP_RESOURCE_TYPE;
-import static com.composum.sling.core.util.ResourceUtil.TYPE_FILE;
-import static com.composum.sling.core.util.ResourceUtil.TYPE_RESOURCE;
 import static com.composum.sling.core.util.ResourceUtil.splitPathAndName;
 import static org.apache.sling.event.jobs.Job.JobState.ERROR;
 import static org.apache.sling.event.jobs.Job.JobState.GIVEN_UP;
@@ -77,6 +77,18 @@ public abstract class AbstractJobExecutor<Result> implements JobExecutor, EventH
 
     public static final String AUDIT_ROOT_PATH = "/var/audit/jobs/";
 
+    /** The default number of jobs of one executor running at the same time, see {@link #getWorkerPoolSize()}. */
+    public static final int DEFAULT_WORKER_POOL_SIZE = 5;
+
+    /**
+     * The interval (in milliseconds) in which a running job is checked for a stop request and its output is
+     * flushed to the outfile.
+     */
+    public static final long SUPERVISION_INTERVAL = 1000L;
+
+    /** The time (in milliseconds) to wait for the interrupted jobs on shutdown of the worker pool. */
+    public static final long WORKER_POOL_TERMINATION_TIMEOUT = 10000L;
+
     public static final Map<String, Object> CRUD_AUDIT_FOLDER_PROPS;
 
     static {
@@ -85,6 +97,11 @@ public abstract class AbstractJobExecutor<Result> implements JobExecutor, EventH
         CRUD_AUDIT_FOLDER_PROPS = Collections.unmodifiableMap(map);
     }
 
+    private final Object workerPoolLock = new Object();
+    private volatile ThreadPoolExecutor workerPool;
+    /** set on shutdown of the worker pool, guarded by the worker pool lock */
+    private boolean workerPoolStopped;
+
     @NotNull
     protected abstract ResourceResolverFactory getResolverFactory();
 
@@ -168,6 +185,15 @@ public abstract class AbstractJobExecutor<Result> implements JobExecutor, EventH
                 adminResolver.close();
                 return context.result().message(e.getMessage()).cancelled();
             }
+            try {
+                if (auditResource != null && JobAuditStore.index(adminResolver, job.getId(), job.getTopic(), auditResource)) {
+                    adminResolver.commit();
+                }
+            } catch (PersistenceException | RepositoryException e) {
+                // the audit is found by a query without the index entry
+                LOG.warn("Error indexing audit of job:" + reference, e);
+                adminResolver.revert();
+            }
         } finally {
             lock.unlock();
         }
@@ -175,22 +201,31 @@ public abstract class AbstractJobExecutor<Result> implements JobExecutor, EventH
         try {
             try (FileOutputStream fileOutputStream = new FileOutputStream(tempFile);
                  PrintWriter out = new PrintWriter(new OutputStreamWriter(fileOutputStream, "UTF-8"))) {
-                final ExecutorService executorService = Executors.newSingleThreadExecutor();
+                final Future<Result> submit = getWorkerPool().submit(
+                        createCallable(job, context, adminResolver, out));
                 try {
-                    final Future<Result> submit = executorService.submit(
-                            createCallable(job, context, adminResolver, out));
-                    while (!submit.isDone()) {
-                        Thread.yield();
-                        out.flush();
-                        if (context.isStopped()) {
-                            LOG.warn("context for job:{} stopped", reference);
-                            executorService.shutdownNow();
-                            // magic string. message must not be changed!
-                            return context.result().message("execution stopped").cancelled();
+                    while (true) {
+                        try {
+                            final Object run = submit.get(SUPERVISION_INTERVAL, TimeUnit.MILLISECONDS);
+                            return context.result().message(String.valueOf(run)).succeeded();
+                        } catch (TimeoutException running) {
+                            out.flush();
+                            if (context.isStopped()) {
+                                LOG.warn("context for job:{} stopped", reference);
+                                submit.cancel(true);
+                                // magic string. message must not be changed!
+                                return context.result().message("execution stopped").cancelled();
+                            }
                         }
                     }
-                    final Object run = submit.get();
-                    return context.result().message(String.valueOf(run)).succeeded();
+                } catch (CancellationException e) {
+                    LOG.warn("job:{} cancelled on shutdown", reference);
+                    return context.result().message("execution stopped").cancelled();
+                } catch (InterruptedException e) {
+                    LOG.warn("supervision of job:{} interrupted", reference);
+                    submit.cancel(true);
+                    Thread.currentThread().interrupt();
+                    return context.result().message("execution stopped").cancelled();
                 } catch (ExecutionException e) {
                     final Throwable cause = e.getCause();
                     if (cause instanceof JobFailureException) {
@@ -208,16 +243,7 @@ public abstract class AbstractJobExecutor<Result> implements JobExecutor, EventH
             return context.result().message(e.toString()).cancelled();
         } finally {
             try {
-                Resource logFileResource = adminResolver.create(auditResource, outfile.substring(outfile.lastIndexOf(File.separator) + 1), new HashMap<String, Object>() {{
-                    put(PROP_PRIMARY_TYPE, TYPE_FILE);
-                }});
-                try (final InputStream inputStream = new FileInputStream(tempFile)) {
-                    adminResolver.create(logFileResource, CONTENT_NODE, new HashMap<String, Object>() {{
-                        put(PROP_PRIMARY_TYPE, TYPE_RESOURCE);
-                        put(PROP_MIME_TYPE, "text/plain");
-                        put(PROP_DATA, inputStream);
-                    }});
-                }
+                JobAuditStore.storeLog(adminResolver, auditResource, outfile.substring(outfile.lastIndexOf(File.separator) + 1), tempFile);
                 final boolean deleted = tempFile.delete();
                 final Set<String> propertyNames = job.getPropertyNames();
                 final ModifiableValueMap map = auditResource.adaptTo(ModifiableValueMap.class);
@@ -237,6 +263,91 @@ public abstract class AbstractJobExecutor<Result> implements JobExecutor, EventH
         }
     }
 
+    /**
+     * The maximum number of jobs of this executor running at the same time - further jobs wait for a worker.
+     * Can be overwritten to make the size configurable; a changed size is applied to the pool with the next job.
+     */
+    protected int getWorkerPoolSize() {
+        return DEFAULT_WORKER_POOL_SIZE;
+    }
+
+    /**
+     * @return the pool of worker threads running the jobs of this executor; created on demand
+     * @throws RejectedExecutionException if the worker pool is already shut down
+     */
+    @NotNull
+    protected ExecutorService getWorkerPool() {
+        final int size = Math.max(1, getWorkerPoolSize());
+        ThreadPoolExecutor pool = workerPool;
+        if (pool == null || pool.getCorePoolSize() != size) {
+            synchronized (workerPoolLock) {
+                if (workerPoolStopped) {
+                    throw new RejectedExecutionException("worker pool of " + getClass().getSimpleName() + " stopped");
+                }
+                pool = workerPool;
+                if (pool == null) {
+                    pool = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                            new WorkerThreadFactory(getClass().getSimpleName()));
+                    pool.allowCoreThreadTimeOut(true);
+                    workerPool = pool;
+                } else if (size > pool.getMaximumPoolSize()) {
+                    pool.setMaximumPoolSize(size);
+                    pool.setCorePoolSize(size);
+                } else {
+                    pool.setCorePoolSize(size);
+                    pool.setMaximumPoolSize(size);
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Stops the worker pool - running jobs are interrupted, waiting jobs are cancelled. Should be called on
+     * deactivation; no further jobs are accepted after that.
+     */
+    protected void shutdownWorkerPool() {
+        ThreadPoolExecutor pool;
+        synchronized (workerPoolLock) {
+            workerPoolStopped = true;
+            pool = workerPool;
+            workerPool = null;
+        }
+        if (pool != null) {
+            // the waiting jobs are removed from the queue - their futures must be completed for the supervisors
+            for (Runnable waiting : pool.shutdownNow()) {
+                if (waiting instanceof Future) {
+                    ((Future<?>) waiting).cancel(false);
+                }
+            }
+            try {
+                if (!pool.awaitTermination(WORKER_POOL_TERMINATION_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    LOG.warn("worker pool of {} not terminated", getClass().getSimpleName());
+                }
+            } catch (InterruptedException e) {
+                LOG.warn("shutdown of worker pool interrupted");
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    protected static class WorkerThreadFactory implements ThreadFactory {
+
+        protected final String prefix;
+        protected final AtomicInteger count = new AtomicInteger();
+
+        public WorkerThreadFactory(String name) {
+            prefix = "composum-job-" + name + "-";
+        }
+
+        @Override
+        public Thread newThread(@NotNull Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     /**
      * Can be overwritten to handle some cleanup or logging when job is finished.
      */
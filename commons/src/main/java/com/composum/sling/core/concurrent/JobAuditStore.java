@@ -0,0 +1,296 @@
+package com.composum.sling.core.concurrent;
+
+import com.composum.sling.core.util.ResourceUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.composum.sling.core.util.ResourceUtil.CONTENT_NODE;
+import static com.composum.sling.core.util.ResourceUtil.PROP_DATA;
+import static com.composum.sling.core.util.ResourceUtil.PROP_LAST_MODIFIED;
+import static com.composum.sling.core.util.ResourceUtil.PROP_MIME_TYPE;
+import static com.composum.sling.core.util.ResourceUtil.PROP_PRIMARY_TYPE;
+import static com.composum.sling.core.util.ResourceUtil.TYPE_FILE;
+import static com.composum.sling.core.util.ResourceUtil.TYPE_SLING_FOLDER;
+import static com.composum.sling.core.util.ResourceUtil.TYPE_UNSTRUCTURED;
+
+/**
+ * The storage of the job audits beside the audit tree below {@link AbstractJobExecutor#AUDIT_ROOT_PATH}: an index
+ * which maps the job ids to their audit resources and the compressed storage of the job output.
+ * <p>
+ * The ids of the Sling jobs are built from the creation date and a unique name ('yyyy/M/d/H/m/name'), so the index
+ * entry of a job is found directly at {@link #INDEX_ROOT}/{jobId} and the index is bucketed by the date - an audit
+ * can be found without a query and the audits of a time range can be purged bucket by bucket.
+ * <p>
+ * The output of a job is stored as gzip file '{name}.gz' - a consistent file for the browser and for downloads;
+ * use {@link #getLog(Resource, String)} and {@link #openLog(Resource)} to read the uncompressed output.
+ */
+public class JobAuditStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JobAuditStore.class);
+
+    public static final String INDEX_ROOT = "/var/audit/jobindex";
+
+    /** the path of the audit resource of the job, stored in the index entry */
+    public static final String PROP_AUDIT = "audit";
+    /** the topic of the job, stored in the index entry */
+    public static final String PROP_TOPIC = "topic";
+
+    /** the length of the uncompressed output, stored in the content of a compressed output file */
+    public static final String PROP_CONTENT_LENGTH = "contentLength";
+
+    public static final String MIME_TYPE_GZIP = "application/gzip";
+    public static final String EXT_GZIP = ".gz";
+
+    /** the id format of the Sling jobs: 'yyyy/M/d/H/m/name' */
+    protected static final Pattern JOB_ID_PATTERN =
+            Pattern.compile("^\\d{4}/\\d{1,2}/\\d{1,2}/\\d{1,2}/\\d{1,2}/[A-Za-z0-9._\\-]+$");
+
+    /** the number of date levels of the index used by the purge: year, month and day */
+    protected static final int BUCKET_LEVELS = 3;
+
+    /**
+     * @return the path of the index entry of the job; null if the id doesn't have the expected format
+     */
+    @Nullable
+    public static String indexPath(@Nullable String jobId) {
+        return jobId != null && JOB_ID_PATTERN.matcher(jobId).matches() ? INDEX_ROOT + "/" + jobId : null;
+    }
+
+    /**
+     * Creates the index entry for a job; the changes are not committed.
+     *
+     * @return false if the job id doesn't have the expected format, so that the job isn't indexed
+     */
+    public static boolean index(@NotNull ResourceResolver resolver, @NotNull String jobId, @Nullable String topic,
+                                @NotNull Resource audit)
+            throws RepositoryException {
+        String path = indexPath(jobId);
+        if (path == null) {
+            LOG.warn("job id '{}' not indexable", jobId);
+            return false;
+        }
+        Resource entry = ResourceUtil.getOrCreateResource(resolver, path,
+                TYPE_SLING_FOLDER + "/" + TYPE_UNSTRUCTURED);
+        Node node = entry != null ? entry.adaptTo(Node.class) : null;
+        if (node == null) {
+            throw new RepositoryException("can't create job index entry " + path);
+        }
+        node.setProperty(PROP_AUDIT, audit.getPath());
+        node.setProperty(PROP_TOPIC, topic);
+        return true;
+    }
+
+    /**
+     * @return the audit resource of the job found by the index; null if the job isn't indexed
+     */
+    @Nullable
+    public static Resource getAudit(@NotNull ResourceResolver resolver, @Nullable String jobId) {
+        String path = indexPath(jobId);
+        Resource entry = path != null ? resolver.getResource(path) : null;
+        if (entry != null) {
+            String auditPath = entry.getValueMap().get(PROP_AUDIT, String.class);
+            if (StringUtils.isNotBlank(auditPath)) {
+                return resolver.getResource(auditPath);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the output of a job compressed as file '{name}.gz' below its audit resource; the changes are not
+     * committed.
+     *
+     * @param audit the audit resource of the job
+     * @param name  the name of the output file
+     * @param file  the output file of the job
+     */
+    public static void storeLog(@NotNull ResourceResolver resolver, @NotNull Resource audit, @NotNull String name,
+                                @NotNull File file)
+            throws IOException {
+        File compressed = File.createTempFile(file.getName(), ".gz", file.getAbsoluteFile().getParentFile());
+        try {
+            try (OutputStream output = new GZIPOutputStream(new FileOutputStream(compressed))) {
+                Files.copy(file.toPath(), output);
+            }
+            Resource logFile = resolver.create(audit, name + EXT_GZIP,
+                    Collections.<String, Object>singletonMap(PROP_PRIMARY_TYPE, TYPE_FILE));
+            try (InputStream input = new FileInputStream(compressed)) {
+                Map<String, Object> properties = new HashMap<>();
+                // unstructured content since nt:resource doesn't accept the additional length property
+                properties.put(PROP_PRIMARY_TYPE, TYPE_UNSTRUCTURED);
+                properties.put(PROP_MIME_TYPE, MIME_TYPE_GZIP);
+                properties.put(PROP_LAST_MODIFIED, Calendar.getInstance());
+                properties.put(PROP_CONTENT_LENGTH, file.length());
+                properties.put(PROP_DATA, input);
+                resolver.create(logFile, CONTENT_NODE, properties);
+            }
+        } finally {
+            if (!compressed.delete()) {
+                LOG.warn("can't delete '{}'", compressed.getPath());
+            }
+        }
+    }
+
+    /**
+     * @param audit the audit resource of the job
+     * @param name  the name of the output file
+     * @return the stored output file - compressed or, if stored before the compression was introduced, uncompressed
+     */
+    @Nullable
+    public static Resource getLog(@NotNull Resource audit, @NotNull String name) {
+        Resource logFile = audit.getChild(name + EXT_GZIP);
+        return logFile != null ? logFile : audit.getChild(name);
+    }
+
+    /**
+     * @return the uncompressed content of a job output file stored in an audit
+     */
+    @Nullable
+    public static InputStream openLog(@NotNull Resource logFile) throws IOException {
+        InputStream input = logFile.adaptTo(InputStream.class);
+        if (input != null && isCompressed(logFile)) {
+            input = new GZIPInputStream(input);
+        }
+        return input;
+    }
+
+    /**
+     * @return the length of the uncompressed content of a job output file stored in an audit
+     */
+    public static long getLogLength(@NotNull Resource logFile) {
+        Resource content = logFile.getChild(CONTENT_NODE);
+        if (content != null) {
+            ValueMap values = content.getValueMap();
+            Long length = values.get(PROP_CONTENT_LENGTH, Long.class);
+            if (length != null) {
+                return length;
+            }
+            Node node = content.adaptTo(Node.class);
+            if (node != null) {
+                try {
+                    return node.getProperty(PROP_DATA).getLength();
+                } catch (RepositoryException ex) {
+                    LOG.error(ex.getMessage(), ex);
+                }
+            }
+        }
+        return 0L;
+    }
+
+    protected static boolean isCompressed(@NotNull Resource logFile) {
+        Resource content = logFile.getChild(CONTENT_NODE);
+        return content != null && MIME_TYPE_GZIP.equals(content.getValueMap().get(PROP_MIME_TYPE, String.class));
+    }
+
+    /**
+     * Removes the audits of all indexed jobs created before the day of the given date - the date buckets of the
+     * index are processed as a whole and each day is committed separately.
+     *
+     * @param before the audits of the days before this date are removed
+     * @param topic  if not null only the audits of jobs of this topic are removed
+     * @return the number of removed audits
+     */
+    public static int purge(@NotNull ResourceResolver resolver, @NotNull Calendar before, @Nullable String topic)
+            throws PersistenceException {
+        Resource root = resolver.getResource(INDEX_ROOT);
+        if (root == null) {
+            return 0;
+        }
+        int[] limit = new int[]{
+                before.get(Calendar.YEAR), before.get(Calendar.MONTH) + 1, before.get(Calendar.DAY_OF_MONTH)
+        };
+        return purgeBuckets(resolver, root, 0, limit, topic);
+    }
+
+    /**
+     * Purges the date buckets below the parent down to the day level; each day is committed separately.
+     *
+     * @param limit the year, month and day of the limit; null if the parent is before the limit as a whole
+     */
+    protected static int purgeBuckets(@NotNull ResourceResolver resolver, @NotNull Resource parent, int level,
+                                      @Nullable int[] limit, @Nullable String topic)
+            throws PersistenceException {
+        int count = 0;
+        for (Resource bucket : children(parent)) {
+            int value = NumberUtils.toInt(bucket.getName(), -1);
+            if (value >= 0) {
+                boolean before = limit == null || value < limit[level];
+                if (before && level == BUCKET_LEVELS - 1) {
+                    count += purgeBucket(resolver, bucket, topic);
+                    resolver.commit();
+                } else if (before || (value == limit[level] && level < BUCKET_LEVELS - 1)) {
+                    count += purgeBuckets(resolver, bucket, level + 1, before ? null : limit, topic);
+                }
+            }
+        }
+        if (limit == null && !parent.hasChildren()) {
+            resolver.delete(parent);
+            resolver.commit();
+        }
+        return count;
+    }
+
+    /**
+     * Removes the audits and the index entries of a bucket, the bucket itself if it's empty then.
+     */
+    protected static int purgeBucket(@NotNull ResourceResolver resolver, @NotNull Resource bucket,
+                                     @Nullable String topic)
+            throws PersistenceException {
+        int count = 0;
+        for (Resource child : children(bucket)) {
+            ValueMap values = child.getValueMap();
+            String auditPath = values.get(PROP_AUDIT, String.class);
+            if (auditPath != null) {
+                if (topic == null || topic.equals(values.get(PROP_TOPIC, String.class))) {
+                    Resource audit = resolver.getResource(auditPath);
+                    if (audit != null) {
+                        resolver.delete(audit);
+                        count++;
+                    }
+                    resolver.delete(child);
+                }
+            } else {
+                count += purgeBucket(resolver, child, topic);
+            }
+        }
+        if (!bucket.hasChildren()) {
+            resolver.delete(bucket);
+        }
+        return count;
+    }
+
+    protected static List<Resource> children(@NotNull Resource parent) {
+        List<Resource> children = new ArrayList<>();
+        for (Resource child : parent.getChildren()) {
+            children.add(child);
+        }
+        return children;
+    }
+}
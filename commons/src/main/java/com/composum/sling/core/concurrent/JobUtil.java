@@ -28,6 +28,11 @@ public class JobUtil {
         Job job = jobManager.getJobById(jobId);
         if (job == null) {
             //fallback: use audit
+            final Resource indexed = JobAuditStore.getAudit(resolver, jobId);
+            if (indexed != null) {
+                return new JobFacade.AuditJob(indexed);
+            }
+            // not indexed (audits created before the index was introduced)
             final Iterator<Resource> resources = resolver.findResources("/jcr:root/var/audit/jobs//*[slingevent:eventId='" + jobId + "']", "xpath");
             if (resources.hasNext()) {
                 final Resource audit = resources.next();
@@ -39,8 +44,17 @@ public class JobUtil {
     }
 
     public static Collection<JobFacade> getAuditJobs(JobManager.QueryType state, final ResourceResolver resolver) {
+        return getAuditJobs(state, resolver, null);
+    }
+
+    /**
+     * @param topic if not blank only the audits of this topic are searched (in the audit tree of the topic)
+     */
+    public static Collection<JobFacade> getAuditJobs(JobManager.QueryType state, final ResourceResolver resolver,
+                                                     @Nullable final String topic) {
         final List<JobFacade> result = new ArrayList<>();
-        final Iterator<Resource> resources = resolver.findResources("/jcr:root/var/audit/jobs//*[@slingevent:eventId]", "xpath");
+        final String root = StringUtils.isNotBlank(topic) ? "/jcr:root/var/audit/jobs/" + topic.replace('/', '.') : "/jcr:root/var/audit/jobs";
+        final Iterator<Resource> resources = resolver.findResources(root + "//*[@slingevent:eventId]", "xpath");
         while (resources.hasNext()) {
             final JobFacade job = new JobFacade.AuditJob(resources.next());
             final Job.JobState jobState = job.getJobState();
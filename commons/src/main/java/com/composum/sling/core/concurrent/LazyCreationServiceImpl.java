@@ -6,7 +6,12 @@ import org.apache.commons.lang3.Validate;
 import org.apache.sling.api.SlingException;
 import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.*;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.annotations.*;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
@@ -19,8 +24,16 @@ import javax.jcr.lock.Lock;
 import javax.jcr.lock.LockException;
 import javax.jcr.lock.LockManager;
 import java.util.Calendar;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static com.composum.sling.core.util.ResourceUtil.*;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -30,6 +43,11 @@ import static org.slf4j.LoggerFactory.getLogger;
  * at least locally avoid conflicts by locking the parent of the created resource. If two nodes of a cluster
  * try to create the same resource, anyway, one of the transactions is rolled back. It will just be logged and
  * ignored.
+ * <p>
+ * Requests waiting for a resource in initialization are woken up as soon as the initialization is finished: by the
+ * initializing thread if it runs in the same JVM, by resource change events for the
+ * {@link Configuration#lazycreation_observed_paths()} if it runs on another cluster node. The polling with
+ * increasing intervals is just a fallback if no signal arrives.
  */
 @Component(
         property = {
@@ -50,6 +68,14 @@ public class LazyCreationServiceImpl implements LazyCreationService {
 
     protected volatile Configuration config;
 
+    /**
+     * Signals for the waiters on resources in initialization; completed and removed if the initialization state
+     * of the path might have changed.
+     */
+    protected final Map<String, CompletableFuture<Void>> initializationSignals = new ConcurrentHashMap<>();
+
+    protected ServiceRegistration<ResourceChangeListener> changeListenerRegistration;
+
     @Override
     public <T> T getOrCreate(ResourceResolver resolver, String path, RetrievalStrategy<T> getter,
                              CreationStrategy creator, final Map<String, Object> parentProperties)
@@ -244,36 +270,39 @@ public class LazyCreationServiceImpl implements LazyCreationService {
         long waitStep = 0;
         long restWait;
         Exception lastFail = null;
-        do {
-            try {
-                Thread.sleep(waitStep);
-            } catch (InterruptedException e) {
-            }
-            // We need sequencer because the JCR locking doesn't seem to distinguish between sessions on one instance, or something. Hard to test.
-            SequencerService.Token token = sequencer.acquire(path);
-            try {
-                refreshSession(adminResolver, false);
-                if (resourceIsInitialized(adminResolver, path)) return null;
-                boolean locked = lockManager.holdsLock(path);
-                LOG.debug("Path {} is locked={}", path, locked);
-                if (!locked) try {
-                    Lock lock = lockManager.lock(path, true, false, Long.MAX_VALUE, null);
-                    ResourceHandle.use(adminResolver.getResource(path)).setProperty(PROP_LAST_MODIFIED, Calendar
-                            .getInstance());
-                    adminResolver.commit();
-                    LOG.debug("Got lock on {} token {}", path, lock.getLockToken());
-                    return lock;
-                } catch (LockException | PersistenceException ex) {
-                    LOG.info("Could not lock {} : {}", path, ex.toString());
-                    lastFail = ex;
+        CompletableFuture<Void> signal = initializationSignal(path);
+        try {
+            do {
+                awaitSignal(signal, waitStep);
+                signal = initializationSignal(path); // taken before the check to not miss a signal
+                // We need sequencer because the JCR locking doesn't seem to distinguish between sessions on one instance, or something. Hard to test.
+                SequencerService.Token token = sequencer.acquire(path);
+                try {
+                    refreshSession(adminResolver, false);
+                    if (resourceIsInitialized(adminResolver, path)) return null;
+                    boolean locked = lockManager.holdsLock(path);
+                    LOG.debug("Path {} is locked={}", path, locked);
+                    if (!locked) try {
+                        Lock lock = lockManager.lock(path, true, false, Long.MAX_VALUE, null);
+                        ResourceHandle.use(adminResolver.getResource(path)).setProperty(PROP_LAST_MODIFIED, Calendar
+                                .getInstance());
+                        adminResolver.commit();
+                        LOG.debug("Got lock on {} token {}", path, lock.getLockToken());
+                        return lock;
+                    } catch (LockException | PersistenceException ex) {
+                        LOG.info("Could not lock {} : {}", path, ex.toString());
+                        lastFail = ex;
+                    }
+                } finally {
+                    sequencer.release(token);
                 }
-            } finally {
-                sequencer.release(token);
-            }
 
-            restWait = stopPollingTime - System.currentTimeMillis();
-            waitStep = Math.min(waitStep * 2 + 100, restWait); // iterative doubling to not try too often
-        } while (restWait > 0);
+                restWait = stopPollingTime - System.currentTimeMillis();
+                waitStep = Math.min(waitStep * 2 + 100, restWait); // iterative doubling to not try too often
+            } while (restWait > 0);
+        } finally {
+            discardSignal(path, signal);
+        }
 
         // we take over the lock from whoever locked it.
         SequencerService.Token token = sequencer.acquire(path);
@@ -347,6 +376,7 @@ public class LazyCreationServiceImpl implements LazyCreationService {
             }
         } finally {
             sequencer.release(token);
+            signalInitialization(path);
         }
     }
 
@@ -381,26 +411,87 @@ public class LazyCreationServiceImpl implements LazyCreationService {
         if (null == resource) return null;
         if (isInitialized(resource)) return resource;
 
+        CompletableFuture<Void> signal = initializationSignal(path); // the first loop cycle checks again
+
         final long stopPollingTime = System.currentTimeMillis() + getConfiguration().lazycreation_maximumlockwait() * 1000;
         long waitStep = 0;
         long restWait;
-        do {
+        try {
+            do {
+                awaitSignal(signal, waitStep);
+                signal = initializationSignal(path); // taken before the check to not miss a signal
+                refreshSession(resolver, true);
+                resource = resolver.getResource(path);
+                if (null == resource) {
+                    LOG.warn("Resource unexpectedly vanished during wait: {}", path);
+                    return null; // vanished again - how??
+                }
+                if (isInitialized(resource)) return resource;
+
+                restWait = stopPollingTime - System.currentTimeMillis();
+                waitStep = Math.min(waitStep * 2 + 100, restWait); // iterative doubling to not try too often
+            } while (restWait > 0);
+        } finally {
+            discardSignal(path, signal);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the signal which is completed if the initialization state of the path might have changed. To not miss
+     * a signal it has to be retrieved before the state is checked.
+     */
+    protected CompletableFuture<Void> initializationSignal(String path) {
+        return initializationSignals.computeIfAbsent(path, (key) -> new CompletableFuture<>());
+    }
+
+    /**
+     * Wakes up all waiters for the initialization of the path.
+     */
+    protected void signalInitialization(String path) {
+        CompletableFuture<Void> signal = initializationSignals.remove(path);
+        if (signal != null) {
+            signal.complete(null);
+        }
+    }
+
+    /**
+     * Removes the signal of a waiter which stops waiting, if the signal was not completed (and replaced) meanwhile -
+     * otherwise the signals of paths which are not initialized would be kept forever. Another waiter for the same
+     * path falls back to the polling then.
+     */
+    protected void discardSignal(String path, CompletableFuture<Void> signal) {
+        initializationSignals.remove(path, signal);
+    }
+
+    /**
+     * Waits until the signal is completed or the timeout is reached.
+     */
+    protected void awaitSignal(CompletableFuture<Void> signal, long timeout) {
+        if (timeout > 0) {
             try {
-                Thread.sleep(waitStep);
+                signal.get(timeout, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException ignore) {
             } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            refreshSession(resolver, true);
-            resource = resolver.getResource(path);
-            if (null == resource) {
-                LOG.warn("Resource unexpectedly vanished during wait: {}", path);
-                return null; // vanished again - how??
-            }
-            if (isInitialized(resource)) return resource;
+        }
+    }
 
-            restWait = stopPollingTime - System.currentTimeMillis();
-            waitStep = Math.min(waitStep * 2 + 100, restWait); // iterative doubling to not try too often
-        } while (restWait > 0);
-        return null;
+    /**
+     * Wakes up the waiters for resources which are changed - e.g. unlocked after the initialization on another
+     * cluster node.
+     */
+    protected class InitializationObserver implements ResourceChangeListener, ExternalResourceChangeListener {
+
+        @Override
+        public void onChange(@NotNull List<ResourceChange> changes) {
+            if (!initializationSignals.isEmpty()) {
+                for (ResourceChange change : changes) {
+                    signalInitialization(change.getPath());
+                }
+            }
+        }
     }
 
     /**
@@ -476,15 +567,37 @@ public class LazyCreationServiceImpl implements LazyCreationService {
     }
 
     @Activate @Modified
-    protected void activate(Configuration config) {
+    protected void activate(BundleContext bundleContext, Configuration config) {
         this.config = config;
+        unregisterObserver();
+        String[] observedPaths = config.lazycreation_observed_paths();
+        if (observedPaths != null && observedPaths.length > 0) {
+            Dictionary<String, Object> properties = new Hashtable<>();
+            properties.put(Constants.SERVICE_DESCRIPTION, "Composum Nodes Lazy Creation initialization observer");
+            properties.put(ResourceChangeListener.PATHS, observedPaths);
+            properties.put(ResourceChangeListener.CHANGES, new String[]{
+                    ResourceChange.ChangeType.CHANGED.name(), ResourceChange.ChangeType.REMOVED.name()});
+            changeListenerRegistration = bundleContext.registerService(ResourceChangeListener.class,
+                    new InitializationObserver(), properties);
+        }
     }
 
     @Deactivate
     protected void deactivate() {
+        unregisterObserver();
         this.config = null;
     }
 
+    protected synchronized void unregisterObserver() {
+        if (changeListenerRegistration != null) {
+            try {
+                changeListenerRegistration.unregister();
+            } catch (IllegalStateException ignore) { // already unregistered
+            }
+            changeListenerRegistration = null;
+        }
+    }
+
     @NotNull
     protected Configuration getConfiguration() {
         return Objects.requireNonNull(this.config, "Method called on deactivated service");
@@ -500,6 +613,11 @@ public class LazyCreationServiceImpl implements LazyCreationService {
                 // naming of this method is due to backwards compatibility
         int lazycreation_maximumlockwait() default 30;
 
+        @AttributeDefinition(name = "Observed paths", description =
+                "The paths observed for resource changes to notice the end of initializations on other cluster nodes " +
+                        "without polling; no observation if empty.")
+        String[] lazycreation_observed_paths() default {"/var"};
+
     }
 
 }
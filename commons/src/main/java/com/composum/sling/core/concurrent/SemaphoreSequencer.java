@@ -1,5 +1,7 @@
 package com.composum.sling.core.concurrent;
 
+import org.apache.commons.lang3.StringUtils;
+import org.osgi.framework.Constants;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -8,32 +10,61 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.jetbrains.annotations.NotNull;
-import java.lang.ref.WeakReference;
+import org.jetbrains.annotations.Nullable;
+import java.io.PrintWriter;
 import java.util.Map;
 import java.util.Objects;
-import java.util.WeakHashMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
-@Component(immediate = true)
+/**
+ * The {@link SequencerService} implementation based on a semaphore for each key. The semaphores are kept in a
+ * {@link ConcurrentHashMap} as long as they are held or waited for, so acquiring different keys doesn't contend on
+ * a common monitor. Statistics about the waiting and holding times are collected per key prefix (the first
+ * {@value #STATISTICS_PATH_DEPTH} segments of a path) and are printed in the 'Status' section of the web console.
+ */
+@Component(
+        service = SequencerService.class,
+        property = {
+                Constants.SERVICE_DESCRIPTION + "=Composum Nodes Semaphore Sequencer",
+                "felix.webconsole.label=composum-sequencer",
+                "felix.webconsole.title=Composum Sequencer",
+                "felix.webconsole.configprinter.modes=always"
+        },
+        immediate = true
+)
 public class SemaphoreSequencer implements SequencerService<SemaphoreSequencer.Token> {
 
     private static final Logger LOG = LoggerFactory.getLogger(SemaphoreSequencer.class);
 
+    /** The number of path segments of the keys used to aggregate the statistics. */
+    public static final int STATISTICS_PATH_DEPTH = 3;
+
+    /** The statistics key for all keys which are not absolute paths. */
+    public static final String STATISTICS_OTHER_KEYS = "(other)";
+
     public static final class Token implements SequencerService.Token {
         @NotNull
         protected final String key;
         protected final Semaphore semaphore;
+        protected final Entry entry;
+        protected final long acquired;
 
-        protected Token(@NotNull String key, Semaphore semaphore) {
+        protected Token(@NotNull String key, Entry entry) {
             this.key = key;
-            this.semaphore = semaphore;
+            this.entry = entry;
+            this.semaphore = entry.semaphore;
+            this.acquired = System.nanoTime();
         }
 
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
-            if (o == null) return false;
+            if (o == null || getClass() != o.getClass()) return false;
             Token token = (Token) o;
             return key.equals(token.key);
         }
@@ -45,81 +76,218 @@ public class SemaphoreSequencer implements SequencerService<SemaphoreSequencer.T
     }
 
     /**
-     * Memorizes the tokens we have passed out, so that a new acquire with the same key goes to exactly the same semaphore.
-     * The weakreference goes to the token itself.
-     * We use here a synchronized {@link WeakHashMap} so that the semaphores can be reclaimed once they are not used anymore.
-     * As long as the semaphore is in the token, it's not thrown away; afterwards GC can remove it at leisure.
+     * The semaphore of a key; the entry is removed from the {@link #activeEntries} if nobody holds or waits for it.
      */
-    volatile WeakHashMap<Token, WeakReference<Token>> activeTokens;
+    protected static final class Entry {
+
+        protected final Semaphore semaphore = new Semaphore(1);
+        protected final Statistics statistics;
+        /** The number of holders and waiters - modified only within the atomic map operations. */
+        protected int users = 0;
+
+        protected Entry(Statistics statistics) {
+            this.statistics = statistics;
+        }
+    }
+
+    /** The lock statistics for a key prefix; all times are in nanoseconds. */
+    public static final class Statistics {
+
+        protected final LongAdder acquired = new LongAdder();
+        protected final LongAdder contended = new LongAdder();
+        protected final LongAdder timedOut = new LongAdder();
+        protected final LongAdder waitTime = new LongAdder();
+        protected final AtomicLong maxWaitTime = new AtomicLong();
+        protected final LongAdder holdTime = new LongAdder();
+        protected final AtomicLong maxHoldTime = new AtomicLong();
+
+        /** The number of successful acquisitions. */
+        public long getAcquired() {
+            return acquired.sum();
+        }
+
+        /** The number of acquisitions which had to wait since the key was held by someone else. */
+        public long getContended() {
+            return contended.sum();
+        }
+
+        /** The number of acquisitions which gave up. */
+        public long getTimedOut() {
+            return timedOut.sum();
+        }
+
+        public long getWaitTime() {
+            return waitTime.sum();
+        }
+
+        public long getMaxWaitTime() {
+            return maxWaitTime.get();
+        }
+
+        public long getHoldTime() {
+            return holdTime.sum();
+        }
+
+        public long getMaxHoldTime() {
+            return maxHoldTime.get();
+        }
+
+        protected void waited(long nanos) {
+            waitTime.add(nanos);
+            maxWaitTime.accumulateAndGet(nanos, Math::max);
+        }
+
+        protected void held(long nanos) {
+            holdTime.add(nanos);
+            maxHoldTime.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    /** The entries for all keys currently held or waited for. */
+    protected volatile ConcurrentHashMap<String, Entry> activeEntries;
+
+    protected final Map<String, Statistics> statistics = new ConcurrentHashMap<>();
 
     @Override
     @NotNull
     public Token acquire(String key) {
-
-        Token token;
-        Semaphore semaphore;
-
-        synchronized (this) {
-            WeakReference<Token> ref = activeTokens.get(new Token(key, null));
-            token = ref != null ? ref.get() : null;
-            if (token == null) {
-                semaphore = new Semaphore(1);
-                token = new Token(key, semaphore);
-                activeTokens.put(token, new WeakReference<>(token));
-            } else {
-                semaphore = token.semaphore;
-            }
+        Token token = acquire(key, 1, TimeUnit.HOURS);
+        if (token == null) {
+            LOG.error("Could not acquire lock for {} for an hour. There must be something broken.", key);
+            throw new java.lang.IllegalStateException("Could not acquire lock for a loong time: " + key);
         }
+        return token;
+    }
 
+    @Override
+    @Nullable
+    public Token acquire(@NotNull String key, long timeout, @NotNull TimeUnit unit) {
         if (Thread.currentThread().isInterrupted()) {
             // tryAcquire would fail, and it doesn't make sense to continue here.
             throw new java.lang.IllegalStateException("Can't acquire lock since our thread is interrupted.");
         }
-
+        ConcurrentHashMap<String, Entry> entries = getActiveEntries();
+        Entry entry = entries.compute(key, (k, existing) -> {
+            Entry result = existing != null ? existing : new Entry(getStatistics(k));
+            result.users++;
+            return result;
+        });
+        boolean acquired = false;
         try {
-            LOG.debug("acquiring (" + key + ")");
-            semaphore.tryAcquire(1, TimeUnit.HOURS);
-            LOG.debug("acquired (" + key + ")");
-        } catch (InterruptedException ex) {
-            LOG.error(ex.getMessage(), ex);
-            if (!Thread.currentThread().isInterrupted()) { // must be a timeout
-                LOG.error("Unlocking semaphore for {} since we've been waiting for an hour. There must be something broken.", key);
-                // Hard to tell what to do here. We try having everything waiting for this continue and hopefully crash.
-                semaphore.release();
-                while (semaphore.hasQueuedThreads()) {
-                    Thread.yield();
-                    semaphore.release();
+            LOG.debug("acquiring ({})", key);
+            acquired = entry.semaphore.tryAcquire();
+            if (!acquired) {
+                entry.statistics.contended.increment();
+                long begin = System.nanoTime();
+                try {
+                    acquired = entry.semaphore.tryAcquire(1, timeout, unit);
+                } finally {
+                    entry.statistics.waited(System.nanoTime() - begin);
                 }
             }
-            throw new java.lang.IllegalStateException("Could not acquive lock for a loong time, or we have been interrupted.", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new java.lang.IllegalStateException("Interrupted while waiting for the lock of " + key, ex);
+        } finally {
+            if (!acquired) {
+                entry.statistics.timedOut.increment();
+                unuse(entries, key, entry);
+            }
         }
-
-        // We create a fresh token so that each user gets it's own token, which might make debugging easier at times.
-        synchronized (this) {
-            token = new Token(key, semaphore);
-            activeTokens.put(token, new WeakReference<>(token));
+        if (!acquired) {
+            LOG.debug("timed out ({})", key);
+            return null;
         }
-        return token;
+        LOG.debug("acquired ({})", key);
+        entry.statistics.acquired.increment();
+        return new Token(key, entry);
     }
 
     @Override
     public void release(Token token) {
         if (token != null) {
-            LOG.debug("release (" + token.key + ")");
+            LOG.debug("release ({})", token.key);
+            token.entry.statistics.held(System.nanoTime() - token.acquired);
             token.semaphore.release();
+            ConcurrentHashMap<String, Entry> entries = activeEntries;
+            if (entries != null) {
+                unuse(entries, token.key, token.entry);
+            }
         } else {
             LOG.warn("release called with a null token");
         }
     }
 
+    /** Decrements the reference count of the entry and removes it if it's not in use anymore. */
+    protected void unuse(ConcurrentHashMap<String, Entry> entries, String key, Entry entry) {
+        entries.computeIfPresent(key, (k, existing) -> {
+            if (existing != entry) return existing;
+            return --existing.users > 0 ? existing : null;
+        });
+    }
+
+    @NotNull
+    protected ConcurrentHashMap<String, Entry> getActiveEntries() {
+        return Objects.requireNonNull(activeEntries, "Sequencer called on deactivated service");
+    }
+
+    /**
+     * @return the statistics for the prefix of the key; created if not present
+     */
+    @NotNull
+    protected Statistics getStatistics(@NotNull String key) {
+        return statistics.computeIfAbsent(statisticsKey(key), (k) -> new Statistics());
+    }
+
+    @NotNull
+    protected String statisticsKey(@NotNull String key) {
+        if (!key.startsWith("/")) {
+            return STATISTICS_OTHER_KEYS;
+        }
+        int end = 0;
+        for (int i = 0; i < STATISTICS_PATH_DEPTH && end >= 0; i++) {
+            end = key.indexOf('/', end + 1);
+        }
+        return end > 0 ? key.substring(0, end) : key;
+    }
+
+    /**
+     * @return a snapshot of the lock statistics per key prefix
+     */
+    @NotNull
+    public Map<String, Statistics> getStatistics() {
+        return new TreeMap<>(statistics);
+    }
+
+    /** Prints the statistics as configuration printer of the web console. */
+    public void printConfiguration(PrintWriter writer) {
+        ConcurrentHashMap<String, Entry> entries = activeEntries;
+        writer.println("Composum Semaphore Sequencer");
+        writer.println("active keys: " + (entries != null ? entries.size() : "(inactive)"));
+        writer.println();
+        writer.println(StringUtils.rightPad("key prefix", 40) + "  acquired contended  timedout"
+                + "  wait total ms  wait max ms  hold total ms  hold max ms");
+        for (Map.Entry<String, Statistics> item : getStatistics().entrySet()) {
+            Statistics stats = item.getValue();
+            writer.println(StringUtils.rightPad(item.getKey(), 40)
+                    + StringUtils.leftPad(Long.toString(stats.getAcquired()), 10)
+                    + StringUtils.leftPad(Long.toString(stats.getContended()), 10)
+                    + StringUtils.leftPad(Long.toString(stats.getTimedOut()), 10)
+                    + StringUtils.leftPad(Long.toString(TimeUnit.NANOSECONDS.toMillis(stats.getWaitTime())), 15)
+                    + StringUtils.leftPad(Long.toString(TimeUnit.NANOSECONDS.toMillis(stats.getMaxWaitTime())), 13)
+                    + StringUtils.leftPad(Long.toString(TimeUnit.NANOSECONDS.toMillis(stats.getHoldTime())), 15)
+                    + StringUtils.leftPad(Long.toString(TimeUnit.NANOSECONDS.toMillis(stats.getMaxHoldTime())), 13));
+        }
+    }
+
     @Activate
     protected void activate(@SuppressWarnings("UnusedParameters") ComponentContext context) {
-        WeakHashMap<Token, WeakReference<Token>> oldTokens;
+        Map<String, Entry> oldEntries;
         synchronized (this) {
-            oldTokens = activeTokens;
-            activeTokens = new WeakHashMap<>();
+            oldEntries = activeEntries;
+            activeEntries = new ConcurrentHashMap<>();
         }
-        cleanOldSemaphores(oldTokens);
+        cleanOldSemaphores(oldEntries);
     }
 
     /**
@@ -128,23 +296,23 @@ public class SemaphoreSequencer implements SequencerService<SemaphoreSequencer.T
      */
     @Deactivate
     protected void deactivate(@SuppressWarnings("UnusedParameters") ComponentContext context) {
-        Map<Token, WeakReference<Token>> semaphoresToClear = null;
+        Map<String, Entry> semaphoresToClear = null;
         synchronized (this) {
-            if (activeTokens != null) {
-                semaphoresToClear = activeTokens;
-                activeTokens = null;
+            if (activeEntries != null) {
+                semaphoresToClear = activeEntries;
+                activeEntries = null;
             }
         }
         cleanOldSemaphores(semaphoresToClear);
     }
 
-    protected void cleanOldSemaphores(Map<Token, WeakReference<Token>> tokensToClear) {
-        if (tokensToClear == null || tokensToClear.isEmpty())
+    protected void cleanOldSemaphores(Map<String, Entry> entriesToClear) {
+        if (entriesToClear == null || entriesToClear.isEmpty())
             return;
         for (int i = 0; i < 10; ++i) { // if our users try to reacquire the semaphore.
-            for (Token token : tokensToClear.keySet()) {
-                while (token.semaphore.hasQueuedThreads()) {
-                    token.semaphore.release();
+            for (Entry entry : entriesToClear.values()) {
+                while (entry.semaphore.hasQueuedThreads()) {
+                    entry.semaphore.release();
                     Thread.yield();
                 }
             }
@@ -1,6 +1,9 @@
 package com.composum.sling.core.concurrent;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
 
 /**
  * A general service to sequence potentially concurrent modifications using a key (e.g. a resource path)
@@ -19,6 +22,16 @@ public interface SequencerService<T extends SequencerService.Token> {
     @NotNull
     T acquire(@NotNull String key);
 
+    /**
+     * Like {@link #acquire(String)}, but gives up after the given timeout. The default implementation ignores the
+     * timeout and waits as long as {@link #acquire(String)}.
+     * @return the token which is necessary to release the binding; 'null' if the timeout elapsed
+     */
+    @Nullable
+    default T acquire(@NotNull String key, long timeout, @NotNull TimeUnit unit) {
+        return acquire(key);
+    }
+
     /**
      * Stops the exclusive access to the 'key' encapsulated in the token which
      * was generated by the corresponding 'acquire()'. Must be called after a successful {@link #acquire(String)}, and
@@ -24,9 +24,18 @@ import javax.jcr.observation.Event;
 import javax.jcr.observation.EventIterator;
 import javax.jcr.observation.EventListener;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * the abstract observer implementation to react on property changes
@@ -56,8 +65,18 @@ public abstract class AbstractChangeObserver implements EventListener {
                     new StringFilter.BlackList("/(jcr|sling):[^/]*$"),
                     new StringFilter.WhiteList("/jcr:(title|description|data)[^/]*$"));
 
+    public static final int DEFAULT_BATCH_SIZE = 200;
+    public static final long DEFAULT_DEBOUNCE_TIME = 1000L;
+    public static final long DEFAULT_MAX_DELAY = 10000L;
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
     protected BundleContext bundleContext;
 
+    /** the pending changes of the batch mode by the path of their target */
+    protected final Map<String, PendingChange> pendingChanges = new LinkedHashMap<>();
+    protected final BatchStatistics batchStatistics = new BatchStatistics();
+    protected volatile Thread batchWorker;
+
     // to complete for a change observer...
 
     /**
@@ -110,6 +129,48 @@ public abstract class AbstractChangeObserver implements EventListener {
         return ResourceFilter.ALL;
     }
 
+    /**
+     * extension hook to switch on the batch mode: the changes are collected across the event batches, the changes
+     * of the same target are merged while the target is changed further and the collected changes are performed
+     * by a background worker in transactions of a limited size - useful if large changes (e.g. package
+     * installations) would trigger a lot of small change transactions
+     */
+    protected boolean isBatchMode() {
+        return false;
+    }
+
+    /**
+     * extension hook to determine the maximum number of changes performed in one transaction (batch mode)
+     */
+    protected int getBatchSize() {
+        return DEFAULT_BATCH_SIZE;
+    }
+
+    /**
+     * extension hook to determine the time in milliseconds a target must be unchanged before its change is
+     * performed (batch mode)
+     */
+    protected long getDebounceTime() {
+        return DEFAULT_DEBOUNCE_TIME;
+    }
+
+    /**
+     * extension hook to determine the maximum time in milliseconds a change is delayed if its target is changed
+     * continuously (batch mode)
+     */
+    protected long getMaxDelay() {
+        return DEFAULT_MAX_DELAY;
+    }
+
+    /**
+     * extension hook to determine the maximum number of pending changes; if this number is reached, a new change is
+     * coalesced with the pending changes of the nearest common ancestor to one change of the ancestors subtree
+     * which is performed for all target nodes of the subtree (batch mode)
+     */
+    protected int getQueueCapacity() {
+        return DEFAULT_QUEUE_CAPACITY;
+    }
+
     /**
      * performs the right login and returns the resolver
      */
@@ -228,7 +289,10 @@ public abstract class AbstractChangeObserver implements EventListener {
                         }
                     }
                     // handle change actions on the detected nodes
-                    if (changedNodes.size() > 0) {
+                    if (isBatchMode() && batchWorker != null) {
+                        enqueue(changedNodes.values());
+                        changedNodes.clear();
+                    } else if (changedNodes.size() > 0) {
                         for (ChangedResource change : changedNodes.values()) {
                             try {
                                 doOnChange(resolver, change);
@@ -252,6 +316,341 @@ public abstract class AbstractChangeObserver implements EventListener {
         }
     }
 
+    // batch mode...
+
+    /**
+     * a change collected in batch mode; the resource is resolved again when the change is performed
+     */
+    protected static class PendingChange {
+
+        protected final String path;
+        /** 'true' if the change is coalesced and must be performed for all target nodes of the subtree */
+        protected final boolean subtree;
+        protected long firstChange;
+        protected long lastChange;
+        protected Calendar time;
+        protected String user;
+
+        public PendingChange(String path, Calendar time, String user) {
+            this(path, false, time, user);
+        }
+
+        public PendingChange(String path, boolean subtree, Calendar time, String user) {
+            this.path = path;
+            this.subtree = subtree;
+            this.time = time;
+            this.user = user;
+            firstChange = lastChange = System.currentTimeMillis();
+        }
+
+        public void mergeChange(Calendar time, String user) {
+            lastChange = System.currentTimeMillis();
+            if (time.after(this.time)) {
+                this.time = time;
+                this.user = user;
+            }
+        }
+
+        /**
+         * merges a pending change which is replaced by this change; the first change time is kept for the max delay
+         */
+        public void mergeChange(PendingChange other) {
+            mergeChange(other.time, other.user);
+            firstChange = Math.min(firstChange, other.firstChange);
+        }
+
+        /**
+         * @return 'true' if this change is performed for the target of the path
+         */
+        public boolean covers(String targetPath) {
+            return path.equals(targetPath) || (subtree && isDescendant(path, targetPath));
+        }
+    }
+
+    /**
+     * the counters of the batch mode
+     */
+    public static class BatchStatistics {
+
+        /** the number of changes received */
+        public final AtomicLong received = new AtomicLong();
+        /** the number of changes merged with a pending change of the same target */
+        public final AtomicLong merged = new AtomicLong();
+        /** the number of changes performed */
+        public final AtomicLong performed = new AtomicLong();
+        /** the number of transactions committed */
+        public final AtomicLong transactions = new AtomicLong();
+        /** the number of changes coalesced to the change of a subtree since the queue was full */
+        public final AtomicLong coalesced = new AtomicLong();
+
+        @Override
+        public String toString() {
+            return "received: " + received + ", merged: " + merged + ", performed: " + performed
+                    + ", transactions: " + transactions + ", coalesced: " + coalesced;
+        }
+    }
+
+    /**
+     * @return the counters of the batch mode
+     */
+    public BatchStatistics getBatchStatistics() {
+        return batchStatistics;
+    }
+
+    /**
+     * @return the number of pending changes of the batch mode
+     */
+    public int getPendingChangesCount() {
+        synchronized (pendingChanges) {
+            return pendingChanges.size();
+        }
+    }
+
+    /**
+     * adds the changes to the pending changes; never waits - the observation thread must not be blocked - but
+     * coalesces the changes to changes of subtrees if the queue is full
+     */
+    protected void enqueue(Collection<ChangedResource> changes) {
+        int capacity = getQueueCapacity();
+        synchronized (pendingChanges) {
+            for (ChangedResource change : changes) {
+                String path = change.getResource().getPath();
+                batchStatistics.received.incrementAndGet();
+                PendingChange pending = getPendingChange(path);
+                if (pending != null) {
+                    pending.mergeChange(change.getTime(), change.getUser());
+                    batchStatistics.merged.incrementAndGet();
+                } else {
+                    pending = new PendingChange(path, change.getTime(), change.getUser());
+                    if (pendingChanges.size() >= capacity && !pendingChanges.isEmpty()) {
+                        coalesce(pending);
+                    } else {
+                        pendingChanges.put(path, pending);
+                    }
+                }
+            }
+            pendingChanges.notifyAll();
+        }
+    }
+
+    /**
+     * @return the pending change which covers the target of the path - the change of the target itself or the
+     * coalesced change of an ancestor; 'null' if no such change is pending
+     */
+    protected PendingChange getPendingChange(String path) {
+        PendingChange pending = pendingChanges.get(path);
+        String ancestor = path;
+        while (pending == null && !"/".equals(ancestor)) {
+            ancestor = getParentPath(ancestor);
+            PendingChange candidate = pendingChanges.get(ancestor);
+            if (candidate != null && candidate.subtree) {
+                pending = candidate;
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * replaces the pending changes of the nearest common ancestor of a change and the pending changes by one
+     * change of the ancestors subtree (queue is full)
+     */
+    protected void coalesce(PendingChange change) {
+        String ancestor = null;
+        for (String path : pendingChanges.keySet()) {
+            String common = getCommonAncestor(path, change.path);
+            if (ancestor == null || common.length() > ancestor.length()) {
+                ancestor = common;
+            }
+        }
+        PendingChange subtree = new PendingChange(ancestor, true, change.time, change.user);
+        Iterator<PendingChange> iterator = pendingChanges.values().iterator();
+        while (iterator.hasNext()) {
+            PendingChange pending = iterator.next();
+            if (subtree.covers(pending.path)) {
+                subtree.mergeChange(pending);
+                iterator.remove();
+                batchStatistics.coalesced.incrementAndGet();
+            }
+        }
+        pendingChanges.put(ancestor, subtree);
+        LOG.debug("queue is full, changes coalesced to {}", ancestor);
+    }
+
+    protected static String getCommonAncestor(String path, String other) {
+        while (!path.equals(other) && !isDescendant(path, other)) {
+            path = getParentPath(path);
+        }
+        return path;
+    }
+
+    protected static String getParentPath(String path) {
+        int index = path.lastIndexOf('/');
+        return index > 0 ? path.substring(0, index) : "/";
+    }
+
+    protected static boolean isDescendant(String ancestor, String path) {
+        return "/".equals(ancestor) ? path.length() > 1 : path.startsWith(ancestor + "/");
+    }
+
+    /**
+     * waits for the next changes to perform: changes of unchanged targets for the debounce time, changes delayed
+     * for the max delay time or all changes if the worker is stopped
+     *
+     * @return at most 'batch size' changes; empty if the worker is stopped and all changes are taken
+     */
+    protected List<PendingChange> takeChanges() {
+        int batchSize = getBatchSize();
+        long debounceTime = getDebounceTime();
+        long maxDelay = getMaxDelay();
+        List<PendingChange> result = new ArrayList<>();
+        synchronized (pendingChanges) {
+            while (true) {
+                boolean stopped = batchWorker != Thread.currentThread();
+                long now = System.currentTimeMillis();
+                long wait = debounceTime;
+                Iterator<PendingChange> iterator = pendingChanges.values().iterator();
+                while (iterator.hasNext() && result.size() < batchSize) {
+                    PendingChange pending = iterator.next();
+                    long due = Math.min(pending.lastChange + debounceTime, pending.firstChange + maxDelay);
+                    if (stopped || due <= now) {
+                        result.add(pending);
+                        iterator.remove();
+                    } else {
+                        wait = Math.min(wait, due - now);
+                    }
+                }
+                if (!result.isEmpty() || stopped) {
+                    pendingChanges.notifyAll();
+                    return result;
+                }
+                try {
+                    pendingChanges.wait(Math.max(1L, wait));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return result;
+                }
+            }
+        }
+    }
+
+    /**
+     * the loop of the batch worker: performs the pending changes until the worker is stopped and all changes are done
+     */
+    protected void runBatchWorker() {
+        List<PendingChange> changes;
+        while (!(changes = takeChanges()).isEmpty()
+                || (batchWorker == Thread.currentThread() && !Thread.currentThread().isInterrupted())) {
+            if (!changes.isEmpty()) {
+                performChanges(changes);
+            }
+        }
+    }
+
+    /**
+     * performs a set of changes in one transaction
+     */
+    protected void performChanges(List<PendingChange> changes) {
+        try {
+            ResourceResolver resolver = getResolver();
+            if (resolver != null) {
+                try {
+                    for (PendingChange pending : changes) {
+                        Resource resource = resolver.getResource(pending.path);
+                        if (resource != null) {
+                            if (pending.subtree) {
+                                performSubtree(resolver, resource, pending);
+                            } else if (getResourceFilter().accept(resource)) {
+                                performChange(resolver, resource, pending);
+                            }
+                        }
+                    }
+                    resolver.commit();
+                    batchStatistics.transactions.incrementAndGet();
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("{} changes performed, {} pending ({})", changes.size(),
+                                getPendingChangesCount(), batchStatistics);
+                    }
+                } catch (PersistenceException ex) {
+                    LOG.error(ex.getMessage(), ex);
+                } finally {
+                    resolver.close();
+                }
+            } else {
+                LOG.warn("Can't get resolver. {} ({})", getClass().getName(), System.identityHashCode(this));
+            }
+        } catch (LoginException ex) {
+            LOG.error(ex.getMessage(), ex);
+        } catch (RuntimeException ex) {
+            LOG.error(ex.getMessage(), ex);
+        }
+    }
+
+    protected void performChange(ResourceResolver resolver, Resource resource, PendingChange pending)
+            throws PersistenceException {
+        try {
+            doOnChange(resolver, new ChangedResource(resource, pending.time, pending.user));
+            batchStatistics.performed.incrementAndGet();
+        } catch (RepositoryException ex) {
+            LOG.error(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * performs a coalesced change for all target nodes of the subtree; commits after each 'batch size' changes
+     */
+    protected void performSubtree(ResourceResolver resolver, Resource resource, PendingChange pending)
+            throws PersistenceException {
+        int batchSize = getBatchSize();
+        Deque<Resource> resources = new ArrayDeque<>();
+        resources.push(resource);
+        int count = 0;
+        while (!resources.isEmpty()) {
+            resource = resources.pop();
+            Node node = resource.adaptTo(Node.class);
+            try {
+                if (node != null && isTargetNode(node) && getResourceFilter().accept(resource)) {
+                    performChange(resolver, resource, pending);
+                    if (++count % batchSize == 0) {
+                        resolver.commit();
+                        batchStatistics.transactions.incrementAndGet();
+                    }
+                }
+            } catch (RepositoryException ex) {
+                LOG.error(ex.getMessage(), ex);
+            }
+            for (Resource child : resource.getChildren()) {
+                resources.push(child);
+            }
+        }
+    }
+
+    protected void startBatchWorker() {
+        Thread worker = new Thread(this::runBatchWorker, "composum-change-observer-" + getClass().getSimpleName());
+        worker.setDaemon(true);
+        batchWorker = worker;
+        worker.start();
+    }
+
+    /**
+     * stops the batch worker after all pending changes are performed
+     */
+    protected void stopBatchWorker() {
+        Thread worker = batchWorker;
+        if (worker != null) {
+            synchronized (pendingChanges) {
+                batchWorker = null;
+                pendingChanges.notifyAll();
+            }
+            try {
+                worker.join();
+            } catch (InterruptedException ex) {
+                // the remaining changes are dropped
+                worker.interrupt();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     /** We avoid processing external events since we can't access all data on these and we avoid duplicated processing. */
     protected boolean ignoreEvent(Event event) {
         return (event instanceof JackrabbitEvent) && ((JackrabbitEvent) event).isExternal();
@@ -294,6 +693,10 @@ public abstract class AbstractChangeObserver implements EventListener {
     @Modified
     public void activate(ComponentContext context) {
         bundleContext = context.getBundleContext();
+        stopBatchWorker();
+        if (isBatchMode()) {
+            startBatchWorker();
+        }
         try {
             Session session = getSession();
             session.getWorkspace().getObservationManager().addEventListener(
@@ -314,6 +717,7 @@ public abstract class AbstractChangeObserver implements EventListener {
         } catch (RepositoryException ex) {
             LOG.error(ex.getMessage(), ex);
         }
+        stopBatchWorker();
         LOG.info("{} deactivated ({})", getClass().getName(), System.identityHashCode(this));
     }
 }
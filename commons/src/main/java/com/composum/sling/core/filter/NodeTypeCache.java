@@ -0,0 +1,51 @@
+package com.composum.sling.core.filter;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.nodetype.NodeType;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the results of a filter check which depends only on the node types of a node - its primary type and its
+ * mixin types - so that the node type hierarchy has to be inspected only once for each combination of types and
+ * not for each filtered resource. The node type definitions are assumed to be stable while the filter is used.
+ */
+public class NodeTypeCache {
+
+    /** The maximum number of type combinations kept; the cache is dropped if that's reached. */
+    public static final int MAX_SIZE = 256;
+
+    /** A check which depends only on the node types of the node. */
+    public interface Check {
+        boolean check(@NotNull Node node) throws RepositoryException;
+    }
+
+    protected final Map<String, Boolean> results = new ConcurrentHashMap<>();
+
+    /**
+     * @return the result of the check for the node types of the node, determined once for each type combination
+     */
+    public boolean check(@NotNull Node node, @NotNull Check check) throws RepositoryException {
+        String key = key(node);
+        Boolean result = results.get(key);
+        if (result == null) {
+            result = check.check(node);
+            if (results.size() >= MAX_SIZE) {
+                results.clear();
+            }
+            results.put(key, result);
+        }
+        return result;
+    }
+
+    protected String key(@NotNull Node node) throws RepositoryException {
+        StringBuilder key = new StringBuilder(node.getPrimaryNodeType().getName());
+        for (NodeType mixinType : node.getMixinNodeTypes()) {
+            key.append(',').append(mixinType.getName());
+        }
+        return key.toString();
+    }
+}
@@ -25,20 +25,9 @@ public class NodeTypeFilters {
     public static boolean accept(Resource resource, String type) {
         try {
             if (resource != null) {
-                NodeTypeFilter filter = TYPE_FILTER_SET.get(type);
-                if (filter != null) {
-                    Node node = resource.adaptTo(Node.class);
-                    if (node != null) {
-                        if (accept(filter, node.getPrimaryNodeType())) {
-                            return true;
-                        }
-                        NodeType[] mixins = node.getMixinNodeTypes();
-                        for (NodeType mixinType : mixins) {
-                            if (accept(filter, mixinType)) {
-                                return true;
-                            }
-                        }
-                    }
+                Node node = resource.adaptTo(Node.class);
+                if (node != null) {
+                    return accept(node, type);
                 }
             }
         } catch (RepositoryException rex) {
@@ -47,6 +36,25 @@ public class NodeTypeFilters {
         return false;
     }
 
+    /**
+     * @return 'true' if the node types of the node are accepted by the predefined filter with the name 'type'
+     */
+    public static boolean accept(Node node, String type) throws RepositoryException {
+        NodeTypeFilter filter = TYPE_FILTER_SET.get(type);
+        if (filter != null) {
+            if (accept(filter, node.getPrimaryNodeType())) {
+                return true;
+            }
+            NodeType[] mixins = node.getMixinNodeTypes();
+            for (NodeType mixinType : mixins) {
+                if (accept(filter, mixinType)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     protected static boolean accept(NodeTypeFilter filter, NodeType nodeType) {
         if (nodeType != null) {
             if (filter.accept(nodeType)) {
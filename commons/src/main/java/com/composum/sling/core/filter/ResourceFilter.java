@@ -18,6 +18,7 @@ import javax.jcr.nodetype.NodeType;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 import java.util.regex.Matcher;
@@ -138,6 +139,8 @@ public interface ResourceFilter {
         protected List<String> typeNames;
         protected boolean restriction = false;
 
+        protected final transient NodeTypeCache nodeTypeCache = new NodeTypeCache();
+
         @NotNull
         public List<String> getTypeNames() {
             return typeNames;
@@ -165,29 +168,56 @@ public interface ResourceFilter {
             this.restriction = restriction;
         }
 
+        /**
+         * The node type checks are done first since their results are kept for each combination of node types;
+         * the resource type checks may have to follow the resource super types.
+         */
         @Override
         public boolean accept(Resource resource) {
             if (resource == null) { return restriction; }
+            if (acceptNodeType(resource)) {
+                return !restriction;
+            }
+            for (String type : typeNames) {
+                if (!type.startsWith(NODE_TYPE_PREFIX) && resource.isResourceType(type)) {
+                    return !restriction;
+                }
+            }
+            return restriction;
+        }
+
+        /**
+         * @return 'true' if the node of the resource matches one of the node types or {@link NodeTypeFilters}
+         */
+        protected boolean acceptNodeType(Resource resource) {
+            Node node = resource.adaptTo(Node.class);
+            if (node != null) {
+                try {
+                    return nodeTypeCache.check(node, this::isNodeType);
+                } catch (RepositoryException e) {
+                    LOG.error("Error checking node type for " + resource.getPath(), e);
+                }
+            }
+            return false;
+        }
+
+        protected boolean isNodeType(Node node) throws RepositoryException {
             for (String type : typeNames) {
                 if (type.startsWith(NODE_TYPE_PREFIX)) {
-                    if (NodeTypeFilters.accept(resource, type)) {
-                        return !restriction;
+                    if (NodeTypeFilters.accept(node, type)) {
+                        return true;
                     }
-                } else {
-                    if (!StringUtils.contains(type, "/")) {
-                        try {
-                            Node node = resource.adaptTo(Node.class);
-                            if (node != null && node.isNodeType(type)) { return !restriction; }
-                        } catch (RepositoryException e) {
-                            LOG.error("Error checking node type for " + resource.getPath(), e);
+                } else if (!StringUtils.contains(type, "/")) {
+                    try {
+                        if (node.isNodeType(type)) {
+                            return true;
                         }
-                    }
-                    if (resource.isResourceType(type)) {
-                        return !restriction;
+                    } catch (RepositoryException e) {
+                        LOG.error("Error checking node type '" + type + "' for " + node.getPath(), e);
                     }
                 }
             }
-            return restriction;
+            return false;
         }
 
         @Override
@@ -360,6 +390,8 @@ public interface ResourceFilter {
      */
     class NodeTypeFilter extends PatternFilter {
 
+        protected final transient NodeTypeCache nodeTypeCache = new NodeTypeCache();
+
         /**
          * A ResourceFilter implementation which checks for JCR nodetypes similar to {@link Node#isNodeType(String)} -
          * both primary type and all direct and inherited mixin types are checked against the filters.
@@ -383,27 +415,7 @@ public interface ResourceFilter {
                 Node node = resource.adaptTo(Node.class);
                 if (node != null) {
                     try {
-                        NodeType primaryNodeType = node.getPrimaryNodeType();
-                        if (filter.isRestriction() != filter.accept(primaryNodeType.getName())) {
-                            return !filter.isRestriction();
-                        }
-                        for (NodeType primarySuperType : primaryNodeType.getSupertypes()) {
-                            if (filter.isRestriction() != filter.accept(primarySuperType.getName())) {
-                                return !filter.isRestriction();
-                            }
-                        }
-                        NodeType[] mixinTypes = node.getMixinNodeTypes();
-                        for (NodeType mixinType : mixinTypes) {
-                            if (filter.isRestriction() != filter.accept(mixinType.getName())) {
-                                return !filter.isRestriction();
-                            }
-                            for (NodeType mixinSuperType : mixinType.getSupertypes()) {
-                                if (filter.isRestriction() != filter.accept(mixinSuperType.getName())) {
-                                    return !filter.isRestriction();
-                                }
-                            }
-                        }
-                        return filter.isRestriction();
+                        return nodeTypeCache.check(node, this::acceptNodeTypes);
                     } catch (RepositoryException e) {
                         // ok, its possible that mixin types are not available (synthetic resource)
                     }
@@ -412,6 +424,30 @@ public interface ResourceFilter {
             return false;
         }
 
+        protected boolean acceptNodeTypes(Node node) throws RepositoryException {
+            NodeType primaryNodeType = node.getPrimaryNodeType();
+            if (filter.isRestriction() != filter.accept(primaryNodeType.getName())) {
+                return !filter.isRestriction();
+            }
+            for (NodeType primarySuperType : primaryNodeType.getSupertypes()) {
+                if (filter.isRestriction() != filter.accept(primarySuperType.getName())) {
+                    return !filter.isRestriction();
+                }
+            }
+            NodeType[] mixinTypes = node.getMixinNodeTypes();
+            for (NodeType mixinType : mixinTypes) {
+                if (filter.isRestriction() != filter.accept(mixinType.getName())) {
+                    return !filter.isRestriction();
+                }
+                for (NodeType mixinSuperType : mixinType.getSupertypes()) {
+                    if (filter.isRestriction() != filter.accept(mixinSuperType.getName())) {
+                        return !filter.isRestriction();
+                    }
+                }
+            }
+            return filter.isRestriction();
+        }
+
         /**
          * Returns the string representation of the filter itself [NodeType('filter')]
          */
@@ -597,6 +633,9 @@ public interface ResourceFilter {
         /** the cached value for the 'restriction' aspect */
         protected transient Boolean restriction;
 
+        /** the cached order of evaluation for the rules which don't depend on the order, see {@link #evaluationOrder()} */
+        protected transient volatile List<ResourceFilter> evaluationOrder;
+
         /**
          * Combines a set of filter instances by a combination rule
          *
@@ -673,21 +712,21 @@ public interface ResourceFilter {
             switch (rule) {
                 case tree:
                 case or:
-                    for (ResourceFilter filter : set) {
+                    for (ResourceFilter filter : evaluationOrder()) {
                         if (filter.accept(resource)) {
                             return true;
                         }
                     }
                     return set.size() == 0;
                 case and:
-                    for (ResourceFilter filter : set) {
+                    for (ResourceFilter filter : evaluationOrder()) {
                         if (!filter.accept(resource)) {
                             return false;
                         }
                     }
                     return set.size() > 0;
                 case none:
-                    for (ResourceFilter filter : set) {
+                    for (ResourceFilter filter : evaluationOrder()) {
                         if (filter.accept(resource)) {
                             return false;
                         }
@@ -695,10 +734,11 @@ public interface ResourceFilter {
                     return true;
                 case first:
                     for (ResourceFilter filter : set) {
-                        if (filter.accept(resource) && !filter.isRestriction()) {
+                        boolean accepted = filter.accept(resource);
+                        if (accepted && !filter.isRestriction()) {
                             return true;
                         }
-                        if (!filter.accept(resource) && filter.isRestriction()) {
+                        if (!accepted && filter.isRestriction()) {
                             return false;
                         }
                     }
@@ -706,10 +746,11 @@ public interface ResourceFilter {
                 case last:
                     for (int i = set.size() - 1; i >= 0; --i) {
                         ResourceFilter filter = set.get(i);
-                        if (filter.accept(resource) && !filter.isRestriction()) {
+                        boolean accepted = filter.accept(resource);
+                        if (accepted && !filter.isRestriction()) {
                             return true;
                         }
-                        if (!filter.accept(resource) && filter.isRestriction()) {
+                        if (!accepted && filter.isRestriction()) {
                             return false;
                         }
                     }
@@ -718,6 +759,47 @@ public interface ResourceFilter {
             return isRestriction();
         }
 
+        /**
+         * Returns the filters of the set ordered by their estimated costs for the rules whose result doesn't depend
+         * on the order ('and', 'or', 'tree', 'none'), so that cheap checks of names and paths can decide before
+         * type checks are necessary. Like the 'restriction' aspect this is determined once - the set should not be
+         * changed after the filter is used.
+         */
+        protected List<ResourceFilter> evaluationOrder() {
+            List<ResourceFilter> result = evaluationOrder;
+            if (result == null) {
+                result = new ArrayList<>(set);
+                result.sort(Comparator.comparingInt(FilterSet::evaluationCost));
+                evaluationOrder = result;
+            }
+            return result;
+        }
+
+        /**
+         * @return a rough estimation of the costs to evaluate the filter: 0 for constant results, 1 for checks of
+         * the name or path, 2 for checks of properties and 3 for checks of types and content nodes
+         */
+        protected static int evaluationCost(ResourceFilter filter) {
+            if (filter instanceof AllFilter) {
+                return 0;
+            }
+            if (filter instanceof NameFilter || filter instanceof PathFilter) {
+                return 1;
+            }
+            if (filter instanceof PrimaryTypeFilter || filter instanceof ResourceTypeFilter
+                    || filter instanceof MimeTypeFilter) {
+                return 2;
+            }
+            if (filter instanceof FilterSet) {
+                int cost = 0;
+                for (ResourceFilter item : ((FilterSet) filter).set) {
+                    cost = Math.max(cost, evaluationCost(item));
+                }
+                return cost;
+            }
+            return 3;
+        }
+
         /**
          * This implements a heuristic whether the filter is a blacklist or whitelist, but <b>caution</b>: for {@link FilterSet}s
          * this is not well defined: please don't rely on this. That is: it's sensible to avoid
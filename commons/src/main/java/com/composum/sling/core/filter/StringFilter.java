@@ -8,6 +8,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * A StringFilter is useful to describe a general way to define scopes in a set of objects by key values.
@@ -95,9 +96,19 @@ public interface StringFilter {
      */
     abstract class PatternList extends FilterBase {
 
+        /**
+         * the parts of patterns which would change their meaning in an alternation of patterns: back references,
+         * quotations up to the end of the pattern and the comments flag
+         */
+        protected static final Pattern NOT_COMBINABLE = Pattern.compile("\\\\(?:[1-9]|k<|Q)|\\(\\?[a-zA-Z-]*x");
+
         /** such a filter uses a list of patterns to implement the filter function */
         protected List<Pattern> patterns;
 
+        /** the patterns merged into one pattern, see {@link #getCombinedPattern()} */
+        private transient volatile Pattern combined;
+        private transient volatile List<Pattern> combinedPatterns;
+
         /**
          * The constructor which builds a pattern list by one single string
          * with a ',' separated list of regular expression
@@ -142,6 +153,57 @@ public interface StringFilter {
             return patterns;
         }
 
+        /**
+         * Returns the patterns merged into one alternation which {@link Matcher#find()}s a substring if one of the
+         * patterns does, so a value is scanned once instead of once for each pattern.
+         *
+         * @return the merged pattern or 'null' if the patterns can't be merged without changing their meaning
+         */
+        protected Pattern getCombinedPattern() {
+            List<Pattern> current = patterns;
+            if (combinedPatterns != current) {
+                Pattern result = null;
+                if (current.size() > 1) {
+                    StringBuilder expression = new StringBuilder();
+                    for (Pattern pattern : current) {
+                        if (pattern.flags() != 0 || NOT_COMBINABLE.matcher(pattern.pattern()).find()) {
+                            expression = null;
+                            break;
+                        }
+                        if (expression.length() > 0) {
+                            expression.append('|');
+                        }
+                        expression.append("(?:").append(pattern.pattern()).append(')');
+                    }
+                    try {
+                        result = expression != null ? Pattern.compile(expression.toString()) : null;
+                    } catch (PatternSyntaxException ex) { // e.g. the same group name used in two patterns
+                        result = null;
+                    }
+                }
+                combined = result;
+                combinedPatterns = current;
+                return result;
+            }
+            return combined;
+        }
+
+        /**
+         * @return 'true' if one of the patterns finds a substring of the value
+         */
+        protected boolean find(String value) {
+            Pattern combined = getCombinedPattern();
+            if (combined != null) {
+                return combined.matcher(value).find();
+            }
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(value).find()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         /**
          * The constructor function to generate the regular expression patterns from string values.
          *
@@ -223,12 +285,7 @@ public interface StringFilter {
          */
         @Override
         public boolean accept(String value) {
-            for (Pattern pattern : patterns) {
-                if (pattern.matcher(value).find()) {
-                    return true;
-                }
-            }
-            return false;
+            return find(value);
         }
 
         /**
@@ -289,12 +346,7 @@ public interface StringFilter {
          */
         @Override
         public boolean accept(String value) {
-            for (Pattern pattern : patterns) {
-                if (pattern.matcher(value).find()) {
-                    return false;
-                }
-            }
-            return true;
+            return !find(value);
         }
 
         /**
@@ -402,10 +454,11 @@ public interface StringFilter {
                     return set.size() > 0;
                 case first:
                     for (StringFilter filter : set) {
-                        if (filter.accept(value) && !filter.isRestriction()) {
+                        boolean accepted = filter.accept(value);
+                        if (accepted && !filter.isRestriction()) {
                             return true;
                         }
-                        if (!filter.accept(value) && filter.isRestriction()) {
+                        if (!accepted && filter.isRestriction()) {
                             return false;
                         }
                     }
@@ -413,10 +466,11 @@ public interface StringFilter {
                 case last:
                     boolean result = false;
                     for (StringFilter filter : set) {
-                        if (filter.accept(value) && !filter.isRestriction()) {
+                        boolean accepted = filter.accept(value);
+                        if (accepted && !filter.isRestriction()) {
                             result = true;
                         }
-                        if (!filter.accept(value) && filter.isRestriction()) {
+                        if (!accepted && filter.isRestriction()) {
                             result = false;
                         }
                     }
@@ -52,6 +52,10 @@ public class GroovyJobExecutor extends AbstractJobExecutor<Object> {
         @AttributeDefinition(name = "Groovy setup script",
                 description = "the optional path to a custom groovy script to setup a groovy runner script object")
         String groovy_setup_script() default DEFAULT_SETUP_SCRIPT;
+
+        @AttributeDefinition(name = "Worker pool size",
+                description = "the maximum number of scripts executed at the same time; further scripts are queued")
+        int worker_pool_size() default DEFAULT_WORKER_POOL_SIZE;
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(GroovyJobExecutor.class);
@@ -62,6 +66,8 @@ public class GroovyJobExecutor extends AbstractJobExecutor<Object> {
 
     private volatile String groovySetupScript;
 
+    private volatile int workerPoolSize = DEFAULT_WORKER_POOL_SIZE;
+
     @Reference
     private ResourceResolverFactory resolverFactory;
 
@@ -89,11 +95,18 @@ public class GroovyJobExecutor extends AbstractJobExecutor<Object> {
     @Activate @Modified
     protected void activate(Configuration configuration) {
         groovySetupScript = StringUtils.defaultIfBlank(configuration.groovy_setup_script(), DEFAULT_SETUP_SCRIPT);
+        workerPoolSize = configuration.worker_pool_size();
     }
 
     @Deactivate
     protected void deactivate() {
         groovySetupScript = null;
+        shutdownWorkerPool();
+    }
+
+    @Override
+    protected int getWorkerPoolSize() {
+        return workerPoolSize;
     }
 
     @NotNull
@@ -3,9 +3,12 @@ package com.composum.sling.core.servlet;
 import com.composum.sling.core.CoreConfiguration;
 import com.composum.sling.core.ResourceHandle;
 import com.composum.sling.core.Restricted;
+import com.composum.sling.core.concurrent.JobAuditStore;
 import com.composum.sling.core.concurrent.JobFacade;
 import com.composum.sling.core.concurrent.JobUtil;
 import com.composum.sling.core.service.RestrictedService;
+import com.composum.sling.core.util.ByteRanges;
+import com.composum.sling.core.util.HttpUtil;
 import com.composum.sling.core.util.RequestUtil;
 import com.composum.sling.core.util.ResourceUtil;
 import com.composum.sling.core.util.ResponseUtil;
@@ -35,13 +38,13 @@ import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
-import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -54,8 +57,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static com.composum.sling.core.servlet.JobControlServlet.SERVICE_KEY;
 
@@ -79,6 +80,14 @@ public class JobControlServlet extends AbstractServiceServlet {
 
     public static final String SERVLET_PATH = "/bin/cpm/core/jobcontrol";
 
+    /** the parameter for the time in milliseconds an outfile request waits for new output */
+    public static final String PARAM_FOLLOW = "follow";
+
+    /** the maximum time an outfile request waits for new output */
+    public static final long MAX_FOLLOW_TIME = 30000L;
+
+    protected static final long FOLLOW_INTERVAL = 100L;
+
     public enum Extension {txt, json}
 
     public enum Operation {job, jobs, outfile, cleanup}
@@ -110,6 +119,7 @@ public class JobControlServlet extends AbstractServiceServlet {
         operations.setOperation(ServletOperationSet.Method.GET, Extension.json, Operation.job, new GetJob());
 
         // curl -r 100-125 -X GET http://localhost:9090/bin/cpm/core/jobcontrol.outfile.txt/2016/4/8/15/21/3d51ae17-ce12-4fa3-a87a-5dbfdd739093_81
+        // curl -r 1234- -X GET http://localhost:9090/bin/cpm/core/jobcontrol.outfile.txt/2016/4/8/15/21/3d51ae17-ce12-4fa3-a87a-5dbfdd739093_81?follow=10000
         operations.setOperation(ServletOperationSet.Method.GET, Extension.txt, Operation.outfile, new GetOutfile());
 
         // POST
@@ -117,6 +127,7 @@ public class JobControlServlet extends AbstractServiceServlet {
         operations.setOperation(ServletOperationSet.Method.POST, Extension.json, Operation.job, new CreateJob());
         // curl -v -u admin:admin -Fevent.job.topic=com/composum/sling/core/script/GroovyJobExecutor -Freference=/libs/hello.groovy -Fkeep=2 -X POST http://localhost:9090/bin/cpm/core/jobcontrol.cleanup.json
         // curl -v -u admin:admin -Fevent.job.topic=com/composum/sling/core/script/GroovyJobExecutor -Fkeep=2 -X POST http://localhost:9090/bin/cpm/core/jobcontrol.cleanup.json
+        // curl -v -u admin:admin -Fevent.job.topic=com/composum/sling/core/script/GroovyJobExecutor -Fdays=90 -X POST http://localhost:9090/bin/cpm/core/jobcontrol.cleanup.json
         operations.setOperation(ServletOperationSet.Method.POST, Extension.json, Operation.cleanup, new PurgeAudit());
 
         // DELETE
@@ -128,7 +139,11 @@ public class JobControlServlet extends AbstractServiceServlet {
     }
 
     /**
-     * Gets a part of the named temp. outputfile.
+     * Gets the named temp. outputfile or the requested ranges of it ('Range' header); the outfile stored in the
+     * audit is used if the job is finished. With a 'follow' parameter (a time in milliseconds) a request for the
+     * content from an offset on ('bytes=offset-') waits up to that time for output appended to the running job's
+     * file, so that the log can be tailed by long polling; an offset at the end of the output is answered with an
+     * empty content.
      */
     private class GetOutfile implements ServletOperation {
 
@@ -140,28 +155,53 @@ public class JobControlServlet extends AbstractServiceServlet {
             final JobFacade job = JobUtil.getJobById(jobManager, request.getResourceResolver(), jobId);
             if (job != null) {
                 final String path = job.getProperty("outfile", String.class);
-                final String range = request.getHeader("Range");
-                final List<Range> ranges = decodeRange(range);
+                final List<ByteRanges.Spec> ranges = ByteRanges.parse(request.getHeader(ByteRanges.HEADER_RANGE));
                 final File file = new File(path);
                 response.setCharacterEncoding("UTF-8");
                 response.setContentType("text/plain;charset=utf-8");
                 if (file.exists()) {
-                    try (final ServletOutputStream outputStream = response.getOutputStream();
-                         final InputStream inputStream = new FileInputStream(file)) {
-                        writeStream(ranges, outputStream, inputStream);
-                    } catch (FileNotFoundException e) {
+                    try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                        long length = channel.size();
+                        final long follow = Math.min(RequestUtil.getParameter(request, PARAM_FOLLOW, 0), MAX_FOLLOW_TIME);
+                        if (follow > 0 && isTail(ranges, length)) {
+                            length = awaitOutput(file, channel, ranges.get(0).first, follow);
+                        }
+                        if (isTail(ranges, length)) {
+                            sendNoOutput(response);
+                        } else {
+                            ByteRanges.send(request, response, ranges, length,
+                                    ByteRanges.etag(length, file.lastModified()),
+                                    (first, count, output) -> ByteRanges.copy(channel, first, count, output));
+                        }
+                    } catch (NoSuchFileException e) {
                         response.sendError(HttpServletResponse.SC_NOT_FOUND, path);
                     }
                 } else {
                     final ResourceResolver resolver = request.getResourceResolver();
-                    final Iterator<Resource> resources = resolver.findResources("/jcr:root/var/audit/jobs//*[outfile='" + path + "']", "xpath");
-                    if (resources.hasNext()) {
-                        final Resource audit = resources.next();
-                        final Resource outfileResource = resolver.getResource(audit, path.substring(path.lastIndexOf(File.separator) + 1));
+                    Resource audit = JobAuditStore.getAudit(resolver, job.getId());
+                    if (audit == null) { // not indexed (audits created before the index was introduced)
+                        final Iterator<Resource> resources = resolver.findResources("/jcr:root/var/audit/jobs//*[outfile='" + path + "']", "xpath");
+                        audit = resources.hasNext() ? resources.next() : null;
+                    }
+                    if (audit != null) {
+                        final Resource outfileResource = JobAuditStore.getLog(audit, path.substring(path.lastIndexOf(File.separator) + 1));
                         if (outfileResource != null) {
-                            try (final ServletOutputStream outputStream = response.getOutputStream();
-                                 final InputStream inputStream = outfileResource.adaptTo(InputStream.class)) {
-                                writeStream(ranges, outputStream, inputStream);
+                            final long length = JobAuditStore.getLogLength(outfileResource);
+                            if (isTail(ranges, length)) {
+                                sendNoOutput(response);
+                            } else {
+                                final Resource content = outfileResource.getChild(ResourceUtil.CONTENT_NODE);
+                                final Calendar lastModified = content != null
+                                        ? content.getValueMap().get(ResourceUtil.PROP_LAST_MODIFIED, Calendar.class) : null;
+                                ByteRanges.send(request, response, ranges, length,
+                                        lastModified != null ? ByteRanges.etag(length, lastModified.getTimeInMillis()) : null,
+                                        (first, count, output) -> {
+                                            try (final InputStream inputStream = JobAuditStore.openLog(outfileResource)) {
+                                                if (inputStream != null) {
+                                                    ByteRanges.copy(inputStream, first, count, output);
+                                                }
+                                            }
+                                        });
                             }
                         }
                     }
@@ -171,63 +211,41 @@ public class JobControlServlet extends AbstractServiceServlet {
             }
         }
 
-        private void writeStream(List<Range> ranges, ServletOutputStream outputStream, InputStream inputStream) throws IOException {
-            long end = Long.MAX_VALUE;
-            long pos = 0L;
-            if (!ranges.isEmpty()) {
-                final Range range1 = ranges.get(0);
-                if (range1.start != null) {
-                    pos = inputStream.skip(range1.start);
-                }
-                if (range1.end != null) {
-                    end = range1.end;
-                }
-            }
-            int read;
-            while ((read = inputStream.read()) >= 0 && !(pos > end)) {
-                outputStream.write(read);
-                pos++;
-            }
-        }
-
-        class Range {
-            Integer start;
-            Integer end;
-            Integer suffixLength;
+        /**
+         * @return true if only the content after the current end of the output is requested
+         */
+        protected boolean isTail(@Nullable final List<ByteRanges.Spec> ranges, final long length) {
+            return ranges != null && ranges.size() == 1 && ranges.get(0).isOpen() && ranges.get(0).first >= length;
         }
 
-        private List<Range> decodeRange(String rangeHeader) {
-            List<Range> ranges = new ArrayList<>();
-            if (StringUtils.isEmpty(rangeHeader)) {
-                ranges.add(new Range());
-                return ranges;
-            }
-            String byteRangeSetRegex = "(((?<byteRangeSpec>(?<firstBytePos>\\d+)-(?<lastBytePos>\\d+)?)|(?<suffixByteRangeSpec>-(?<suffixLength>\\d+)))(,|$))";
-            String byteRangesSpecifierRegex = "bytes=(?<byteRangeSet>" + byteRangeSetRegex + "+)";
-            Pattern byteRangeSetPattern = Pattern.compile(byteRangeSetRegex);
-            Pattern byteRangesSpecifierPattern = Pattern.compile(byteRangesSpecifierRegex);
-            Matcher byteRangesSpecifierMatcher = byteRangesSpecifierPattern.matcher(rangeHeader);
-            if (byteRangesSpecifierMatcher.matches()) {
-                String byteRangeSet = byteRangesSpecifierMatcher.group("byteRangeSet");
-                Matcher byteRangeSetMatcher = byteRangeSetPattern.matcher(byteRangeSet);
-                while (byteRangeSetMatcher.find()) {
-                    Range range = new Range();
-                    if (byteRangeSetMatcher.group("byteRangeSpec") != null) {
-                        String start = byteRangeSetMatcher.group("firstBytePos");
-                        String end = byteRangeSetMatcher.group("lastBytePos");
-                        range.start = Integer.valueOf(start);
-                        range.end = end == null ? null : Integer.valueOf(end);
-                    } else if (byteRangeSetMatcher.group("suffixByteRangeSpec") != null) {
-                        range.suffixLength = Integer.valueOf(byteRangeSetMatcher.group("suffixLength"));
-                    } else {
-                        return Collections.emptyList();
-                    }
-                    ranges.add(range);
+        /**
+         * Waits until output is appended after the offset, the file is removed (the job is finished) or the time
+         * is over.
+         *
+         * @return the current length of the output
+         */
+        protected long awaitOutput(@NotNull final File file, @NotNull final FileChannel channel,
+                                   final long offset, final long time) throws IOException {
+            final long end = System.currentTimeMillis() + time;
+            long length = channel.size();
+            try {
+                while (length <= offset && file.exists() && System.currentTimeMillis() < end) {
+                    Thread.sleep(FOLLOW_INTERVAL);
+                    length = channel.size();
                 }
-            } else {
-                return Collections.emptyList();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            return ranges;
+            return length;
+        }
+
+        /**
+         * The client has got all the output already - an empty response, not an error.
+         */
+        protected void sendNoOutput(@NotNull final SlingHttpServletResponse response) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setHeader(ByteRanges.HEADER_ACCEPT_RANGES, ByteRanges.UNIT_BYTES);
+            response.setHeader(HttpUtil.HEADER_CONTENT_LENGTH, "0");
         }
     }
 
@@ -251,7 +269,7 @@ public class JobControlServlet extends AbstractServiceServlet {
                     allJobs.add(new JobFacade.EventJob(job));
                 }
                 if (useAudit) {
-                    final Collection<JobFacade> auditJobs = JobUtil.getAuditJobs(selector, request.getResourceResolver());
+                    final Collection<JobFacade> auditJobs = JobUtil.getAuditJobs(selector, request.getResourceResolver(), topic.getString());
                     for (JobFacade auditJob : auditJobs) {
                         if (!containsJob(jobs, auditJob)) {
                             allJobs.add(auditJob);
@@ -321,6 +339,10 @@ public class JobControlServlet extends AbstractServiceServlet {
         }
     }
 
+    /**
+     * Removes audits of a topic: with 'keep' all but the latest audits (of a 'reference' or of each reference),
+     * with 'days' all indexed audits of the days before that number of days ago.
+     */
     private class PurgeAudit implements ServletOperation {
 
         @SuppressWarnings("ConstantConditions")
@@ -331,9 +353,19 @@ public class JobControlServlet extends AbstractServiceServlet {
                 throws RepositoryException, IOException, ServletException {
             try {
                 final ResourceResolver resolver = request.getResourceResolver();
+                final RequestParameter topic = request.getRequestParameter("event.job.topic");
+                final RequestParameter days = request.getRequestParameter("days");
+                if (days != null) {
+                    final Calendar before = Calendar.getInstance();
+                    before.add(Calendar.DAY_OF_MONTH, -Integer.parseInt(days.getString()));
+                    final int count = JobAuditStore.purge(resolver, before, topic != null ? topic.getString() : null);
+                    LOG.info("{} audits older than {} days purged", count, days.getString());
+                    if (request.getRequestParameter("keep") == null) {
+                        return;
+                    }
+                }
                 final int keep = Integer.parseInt(request.getRequestParameter("keep").getString());
                 final RequestParameter reference = request.getRequestParameter("reference");
-                final RequestParameter topic = request.getRequestParameter("event.job.topic");
                 if (reference != null) {
                     final String referenceString = reference.getString();
                     final String query = "/jcr:root/var/audit/jobs/" + topic.getString().replaceAll("/", ".") + referenceString + "/*[@slingevent:eventId]";
@@ -374,6 +406,11 @@ public class JobControlServlet extends AbstractServiceServlet {
             for (int i = 0; i < size - keep; i++) {
                 final JobFacade.AuditJob x = allAuditJobs.get(i);
                 resolver.delete(x.resource);
+                final String indexPath = JobAuditStore.indexPath(x.getId());
+                final Resource indexEntry = indexPath != null ? resolver.getResource(indexPath) : null;
+                if (indexEntry != null) {
+                    resolver.delete(indexEntry);
+                }
             }
             resolver.commit();
         }
@@ -396,15 +433,21 @@ public class JobControlServlet extends AbstractServiceServlet {
                 final String outfile = job.getProperty("outfile", String.class);
                 final String topic = job.getProperty("event.job.topic", String.class);
                 final ResourceResolver resolver = request.getResourceResolver();
-                final Iterator<Resource> resources = resolver.findResources("/jcr:root/var/audit/jobs/" + topic + "//*[slingevent:eventId='" + jobId + "']", "xpath");
+                Resource audit = JobAuditStore.getAudit(resolver, jobId);
+                if (audit == null) { // not indexed (audits created before the index was introduced)
+                    final Iterator<Resource> resources = resolver.findResources("/jcr:root/var/audit/jobs/" + topic + "//*[slingevent:eventId='" + jobId + "']", "xpath");
+                    audit = resources.hasNext() ? resources.next() : null;
+                }
                 boolean auditResourceDeleted = false;
-                if (resources.hasNext()) {
-                    final Resource audit = resources.next();
-                    if (audit != null && !ResourceUtil.isNonExistingResource(audit)) {
-                        resolver.delete(audit);
-                        resolver.commit();
-                        auditResourceDeleted = true;
+                if (audit != null && !ResourceUtil.isNonExistingResource(audit)) {
+                    resolver.delete(audit);
+                    final String indexPath = JobAuditStore.indexPath(jobId);
+                    final Resource indexEntry = indexPath != null ? resolver.getResource(indexPath) : null;
+                    if (indexEntry != null) {
+                        resolver.delete(indexEntry);
                     }
+                    resolver.commit();
+                    auditResourceDeleted = true;
                 }
                 final boolean b = new File(outfile).delete();
                 try (final JsonWriter jsonWriter = ResponseUtil.getJsonWriter(response)) {
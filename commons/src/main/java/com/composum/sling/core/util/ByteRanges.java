@@ -0,0 +1,359 @@
+package com.composum.sling.core.util;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.api.JackrabbitValue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.jcr.Binary;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Support for the delivery of content parts requested by a 'Range' header (RFC 7233) - single ranges, suffix ranges
+ * and multiple ranges (as 'multipart/byteranges') - together with the 'ETag' based conditional requests
+ * ('If-None-Match', 'If-Range').
+ */
+public class ByteRanges {
+
+    public static final String HEADER_RANGE = "Range";
+    public static final String HEADER_IF_RANGE = "If-Range";
+    public static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+    public static final String HEADER_CONTENT_RANGE = "Content-Range";
+    public static final String HEADER_ETAG = "ETag";
+
+    public static final String UNIT_BYTES = "bytes";
+
+    /** More ranges than this in one request are ignored and the whole content is sent. */
+    public static final int MAX_RANGES = 32;
+
+    protected static final Pattern RANGES_PATTERN = Pattern.compile("^\\s*bytes\\s*=(.+)$", Pattern.CASE_INSENSITIVE);
+    protected static final Pattern RANGE_PATTERN = Pattern.compile("^\\s*(?:(\\d+)\\s*-\\s*(\\d*)|-\\s*(\\d+))\\s*$");
+
+    /** A range as requested, not resolved against the content length. */
+    public static class Spec {
+
+        /** the first byte position; null for a suffix range */
+        public final Long first;
+        /** the last byte position (inclusive); null for an open range and for a suffix range */
+        public final Long last;
+        /** the number of bytes at the end for a suffix range */
+        public final Long suffixLength;
+
+        public Spec(Long first, Long last, Long suffixLength) {
+            this.first = first;
+            this.last = last;
+            this.suffixLength = suffixLength;
+        }
+
+        /** @return true for a range like 'bytes=1234-' which is requesting everything from a position on */
+        public boolean isOpen() {
+            return first != null && last == null;
+        }
+
+        /**
+         * @return the resolved range within the content or null if the range is not satisfiable
+         */
+        @Nullable
+        public Range resolve(long length) {
+            if (first != null) {
+                if (first >= length) {
+                    return null;
+                }
+                return new Range(first, last == null ? length - 1 : Math.min(last, length - 1));
+            }
+            if (suffixLength <= 0 || length <= 0) {
+                return null;
+            }
+            return new Range(Math.max(0L, length - suffixLength), length - 1);
+        }
+    }
+
+    /** A range resolved against the content length. */
+    public static class Range {
+
+        /** the first byte position */
+        public final long first;
+        /** the last byte position (inclusive) */
+        public final long last;
+
+        public Range(long first, long last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        public long getLength() {
+            return last - first + 1;
+        }
+
+        /** @return the value of the 'Content-Range' header for this range */
+        @NotNull
+        public String contentRange(long length) {
+            return UNIT_BYTES + " " + first + "-" + last + "/" + length;
+        }
+
+        @Override
+        public String toString() {
+            return first + "-" + last;
+        }
+    }
+
+    /** Writes a part of the content. */
+    @FunctionalInterface
+    public interface ContentWriter {
+
+        /**
+         * @param first  the position of the first byte to write
+         * @param length the number of bytes to write
+         * @param output the target
+         */
+        void write(long first, long length, @NotNull OutputStream output) throws IOException;
+    }
+
+    /**
+     * Parses the value of a 'Range' header.
+     *
+     * @return the requested ranges; null if no ranges or an invalid range specification is requested, so that the
+     * whole content should be delivered
+     */
+    @Nullable
+    public static List<Spec> parse(@Nullable String rangeHeader) {
+        if (StringUtils.isBlank(rangeHeader)) {
+            return null;
+        }
+        Matcher rangesMatcher = RANGES_PATTERN.matcher(rangeHeader);
+        if (!rangesMatcher.matches()) {
+            return null;
+        }
+        String[] items = StringUtils.split(rangesMatcher.group(1), ',');
+        if (items.length == 0 || items.length > MAX_RANGES) {
+            return null;
+        }
+        List<Spec> specs = new ArrayList<>(items.length);
+        try {
+            for (String item : items) {
+                Matcher matcher = RANGE_PATTERN.matcher(item);
+                if (!matcher.matches()) {
+                    return null;
+                }
+                if (matcher.group(1) != null) {
+                    long first = Long.parseLong(matcher.group(1));
+                    Long last = StringUtils.isNotEmpty(matcher.group(2)) ? Long.parseLong(matcher.group(2)) : null;
+                    if (last != null && last < first) {
+                        return null;
+                    }
+                    specs.add(new Spec(first, last, null));
+                } else {
+                    specs.add(new Spec(null, null, Long.parseLong(matcher.group(3))));
+                }
+            }
+        } catch (NumberFormatException ex) { // too large
+            return null;
+        }
+        return specs;
+    }
+
+    /**
+     * @return the satisfiable ranges of the content; empty if none of the requested ranges can be delivered
+     */
+    @NotNull
+    public static List<Range> resolve(@NotNull List<Spec> specs, long length) {
+        List<Range> ranges = new ArrayList<>(specs.size());
+        for (Spec spec : specs) {
+            Range range = spec.resolve(length);
+            if (range != null) {
+                ranges.add(range);
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * @return a strong entity tag for content identified by its length and its last modification time
+     */
+    @NotNull
+    public static String etag(long length, long lastModified) {
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    /**
+     * @return a strong entity tag for the binary value of a property: the content identity of the binary if the
+     * repository provides one (e.g. the content hash in Oak), the length and the last modification time otherwise
+     */
+    @NotNull
+    public static String etag(@NotNull Property property, long lastModified) throws RepositoryException {
+        Value value = property.getValue();
+        if (value instanceof JackrabbitValue) {
+            String contentIdentity = ((JackrabbitValue) value).getContentIdentity();
+            if (StringUtils.isNotBlank(contentIdentity)) {
+                return "\"" + contentIdentity.replaceAll("[^\\x21\\x23-\\x7e]", "") + "\"";
+            }
+        }
+        return etag(property.getLength(), lastModified);
+    }
+
+    /**
+     * @param headerValue the value of an 'If-None-Match' header: a list of entity tags or '*'
+     * @return true if the entity tag is contained in the list; weak comparison as required for 'If-None-Match'
+     */
+    public static boolean matches(@Nullable String headerValue, @NotNull String etag) {
+        if (StringUtils.isNotBlank(headerValue)) {
+            String opaque = StringUtils.removeStart(etag, "W/");
+            for (String item : StringUtils.split(headerValue, ',')) {
+                item = item.trim();
+                if ("*".equals(item) || opaque.equals(StringUtils.removeStart(item, "W/"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends the content or the requested ranges of it. Sets 'ETag' and 'Accept-Ranges'; answers an 'If-None-Match'
+     * with the current entity tag with 'not modified'. The content type has to be set before.
+     *
+     * @param request  the request with the conditional and 'Range' headers
+     * @param response the response; the status, the headers and the content are written
+     * @param specs    the requested ranges - see {@link #parse(String)} - or null to send the whole content
+     * @param length   the length of the content
+     * @param etag     the entity tag of the content; no conditional handling if null
+     * @param writer   writes the content parts
+     */
+    public static void send(@NotNull HttpServletRequest request, @NotNull HttpServletResponse response,
+                            @Nullable List<Spec> specs, long length, @Nullable String etag,
+                            @NotNull ContentWriter writer)
+            throws IOException {
+        response.setHeader(HEADER_ACCEPT_RANGES, UNIT_BYTES);
+        if (etag != null) {
+            response.setHeader(HEADER_ETAG, etag);
+            if (matches(request.getHeader(HttpUtil.HEADER_IF_NONE_MATCH), etag)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            String ifRange = request.getHeader(HEADER_IF_RANGE);
+            if (specs != null && StringUtils.isNotBlank(ifRange) && !ifRange.trim().equals(etag)) {
+                specs = null; // the client has another version - it needs the whole content
+            }
+        }
+        if (specs == null) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setHeader(HttpUtil.HEADER_CONTENT_LENGTH, Long.toString(length));
+            writer.write(0L, length, response.getOutputStream());
+            return;
+        }
+        List<Range> ranges = resolve(specs, length);
+        if (ranges.isEmpty()) {
+            response.setHeader(HEADER_CONTENT_RANGE, UNIT_BYTES + " */" + length);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        } else if (ranges.size() == 1) {
+            Range range = ranges.get(0);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HEADER_CONTENT_RANGE, range.contentRange(length));
+            response.setHeader(HttpUtil.HEADER_CONTENT_LENGTH, Long.toString(range.getLength()));
+            writer.write(range.first, range.getLength(), response.getOutputStream());
+        } else {
+            sendMultipart(response, ranges, length, writer);
+        }
+    }
+
+    protected static void sendMultipart(@NotNull HttpServletResponse response, @NotNull List<Range> ranges,
+                                        long length, @NotNull ContentWriter writer)
+            throws IOException {
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        String contentType = response.getContentType();
+        List<byte[]> heads = new ArrayList<>(ranges.size());
+        byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        long contentLength = tail.length;
+        for (Range range : ranges) {
+            byte[] head = ("\r\n--" + boundary + "\r\n"
+                    + (StringUtils.isNotBlank(contentType) ? "Content-Type: " + contentType + "\r\n" : "")
+                    + HEADER_CONTENT_RANGE + ": " + range.contentRange(length) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1);
+            heads.add(head);
+            contentLength += head.length + range.getLength();
+        }
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setHeader(HttpUtil.HEADER_CONTENT_LENGTH, Long.toString(contentLength));
+        OutputStream output = response.getOutputStream();
+        for (int i = 0; i < ranges.size(); i++) {
+            Range range = ranges.get(i);
+            output.write(heads.get(i));
+            writer.write(range.first, range.getLength(), output);
+        }
+        output.write(tail);
+    }
+
+    /**
+     * Copies a part of a file read from the requested position on; stops if the file ends before. The channel
+     * stays open, its position is changed.
+     */
+    public static void copy(@NotNull FileChannel channel, long first, long length, @NotNull OutputStream output)
+            throws IOException {
+        channel.position(first);
+        IOUtils.copyLarge(Channels.newInputStream(channel), output, 0L, length);
+    }
+
+    /**
+     * Reads a part of a binary with one stream skipped to the requested position - the streams of the repository
+     * (e.g. of Oak) skip without reading the content before; stops if the binary ends before.
+     */
+    public static void read(@NotNull Binary binary, long first, long length, @NotNull OutputStream output)
+            throws IOException {
+        try (InputStream input = binary.getStream()) {
+            if (skip(input, first)) {
+                IOUtils.copyLarge(input, output, 0L, length);
+            }
+        } catch (RepositoryException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Skips the bytes before the requested position with {@link InputStream#skip(long)} - not by reading them as
+     * {@link IOUtils#skip(InputStream, long)} does.
+     *
+     * @return false if the stream ends before the position
+     */
+    protected static boolean skip(@NotNull InputStream input, long position) throws IOException {
+        long skipped = 0L;
+        while (skipped < position) {
+            long count = input.skip(position - skipped);
+            if (count <= 0) {
+                if (input.read() < 0) { // skip() doesn't signal the end of the stream
+                    return false;
+                }
+                count = 1;
+            }
+            skipped += count;
+        }
+        return true;
+    }
+
+    /**
+     * Copies a part of a stream which has to be positioned at the start of the content.
+     */
+    public static void copy(@NotNull InputStream input, long first, long length, @NotNull OutputStream output)
+            throws IOException {
+        IOUtils.copyLarge(input, output, first, length);
+    }
+
+    private ByteRanges() {
+    }
+}
@@ -27,6 +27,50 @@ public class HttpUtil extends HttpConstants {
 
     public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
 
+    /**
+     * Checks whether an encoding is acceptable according to an {@link #HEADER_ACCEPT_ENCODING} header value,
+     * respecting quality values ('gzip;q=0' is a refusal) and the '*' wildcard.
+     *
+     * @param acceptEncoding the value of the {@link #HEADER_ACCEPT_ENCODING} header, nullable
+     * @param encoding       the content encoding to check, e.g. 'gzip'
+     * @return true if the encoding is explicitly accepted or covered by a not refused wildcard
+     */
+    public static boolean acceptsEncoding(String acceptEncoding, @NotNull String encoding) {
+        if (StringUtils.isNotBlank(acceptEncoding)) {
+            Boolean wildcard = null;
+            for (String item : StringUtils.split(acceptEncoding, ',')) {
+                String[] parts = StringUtils.split(item, ';');
+                if (parts.length > 0) {
+                    String name = parts[0].trim();
+                    boolean accepted = qualityValue(parts) > 0f;
+                    if (encoding.equalsIgnoreCase(name)) {
+                        return accepted;
+                    } else if ("*".equals(name)) {
+                        wildcard = accepted;
+                    }
+                }
+            }
+            return wildcard != null && wildcard;
+        }
+        return false;
+    }
+
+    /**
+     * @return the value of a 'q=...' parameter of a header value item split at ';'; 1 if not present or invalid
+     */
+    protected static float qualityValue(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(parameter.substring(2).trim());
+                } catch (NumberFormatException ignore) {
+                }
+            }
+        }
+        return 1f;
+    }
+
     /**
      * Checks whether we can skip transmission of a resource because of a recent enough {@link #HEADER_IF_MODIFIED_SINCE}
      * header.
@@ -0,0 +1,79 @@
+package com.composum.sling.clientlibs.processor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ErrorCollector;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+import java.util.regex.Matcher;
+
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests for {@link CssUrlMappingWriter}: the result has to be the same as mapping the whole text at once.
+ */
+public class CssUrlMappingWriterTest {
+
+    @Rule
+    public final ErrorCollector ec = new ErrorCollector();
+
+    protected static final String[] TOKENS = {"url", "url(", "u", "ur", "(", ")", "'", "\"", " ", "\n", "a",
+            "/img/b.png", "x{", "}", ";", "url( \")", "data:image/png;base64,AAAA"};
+
+    @Test
+    public void mapSimpleCss() throws IOException {
+        String css = ".a { background: url( '/img/a.png' ); }\n.b { background: url(\"b.png\") url(c.png); }";
+        ec.checkThat(mapStreaming(css, 3), is(".a { background: url( '[/img/a.png]' ); }\n" +
+                ".b { background: url(\"[b.png]\") url([c.png]); }"));
+    }
+
+    @Test
+    public void sameResultForRandomSplits() throws IOException {
+        Random random = new Random(4711);
+        for (int n = 0; n < 2000; n++) {
+            StringBuilder css = new StringBuilder();
+            int count = n % 100 == 0 ? 5000 : random.nextInt(30);
+            for (int i = 0; i < count; i++) {
+                css.append(TOKENS[random.nextInt(TOKENS.length)]);
+            }
+            ec.checkThat(mapStreaming(css.toString(), 1 + random.nextInt(n % 100 == 0 ? 3000 : 8)),
+                    is(mapComplete(css.toString())));
+        }
+    }
+
+    @Test
+    public void longUrlWithoutParenthesis() throws IOException {
+        StringBuilder css = new StringBuilder("body { background: url(data:");
+        for (int i = 0; i < 5000; i++) {
+            css.append("abcd url u");
+        }
+        css.append(") }");
+        ec.checkThat(mapStreaming(css.toString(), 100), is(mapComplete(css.toString())));
+    }
+
+    protected String mapStreaming(String css, int chunkSize) throws IOException {
+        StringWriter result = new StringWriter();
+        try (CssUrlMappingWriter writer = new CssUrlMappingWriter(result, (url) -> "[" + url + "]")) {
+            char[] chars = css.toCharArray();
+            for (int pos = 0; pos < chars.length; pos += chunkSize) {
+                writer.write(chars, pos, Math.min(chunkSize, chars.length - pos));
+            }
+        }
+        return result.toString();
+    }
+
+    /** The mapping of the complete text as done by {@link CssUrlMapper#map(String, java.io.Writer, ProcessorContext)}. */
+    protected String mapComplete(String css) {
+        StringBuilder result = new StringBuilder();
+        Matcher matcher = CssUrlMapper.URL_PATTERN.matcher(css);
+        int pos = 0;
+        while (matcher.find(pos)) {
+            result.append(css, pos, matcher.start()).append(matcher.group(1))
+                    .append("[").append(matcher.group(2)).append("]").append(matcher.group(3));
+            pos = matcher.end();
+        }
+        return result.append(css.substring(pos)).toString();
+    }
+}
@@ -0,0 +1,106 @@
+package com.composum.sling.core.concurrent;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.commons.classloader.DynamicClassLoaderManager;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ErrorCollector;
+
+import java.io.PrintWriter;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for the worker pool of the {@link AbstractJobExecutor}.
+ */
+public class AbstractJobExecutorTest {
+
+    @Rule
+    public final ErrorCollector ec = new ErrorCollector();
+
+    protected static class TestJobExecutor extends AbstractJobExecutor<String> {
+
+        @NotNull
+        @Override
+        protected ResourceResolverFactory getResolverFactory() {
+            return mock(ResourceResolverFactory.class);
+        }
+
+        @NotNull
+        @Override
+        @SuppressWarnings("unchecked")
+        protected SequencerService<SequencerService.Token> getSequencer() {
+            return mock(SequencerService.class);
+        }
+
+        @NotNull
+        @Override
+        protected DynamicClassLoaderManager getDynamicClassLoaderManager() {
+            return mock(DynamicClassLoaderManager.class);
+        }
+
+        @Override
+        protected String getJobTopic() {
+            return "test/job";
+        }
+
+        @Override
+        protected String getAuditBasePath() {
+            return AUDIT_ROOT_PATH + "test";
+        }
+
+        @Override
+        protected boolean jobExecutionEnabled(Job job) {
+            return true;
+        }
+
+        @Override
+        protected Callable<String> createCallable(Job job, JobExecutionContext context,
+                                                  ResourceResolver adminResolver, PrintWriter out) {
+            return () -> "done";
+        }
+
+        @Override
+        protected int getWorkerPoolSize() {
+            return 1;
+        }
+    }
+
+    @Test
+    public void shutdownCancelsWaitingJobs() throws Exception {
+        TestJobExecutor executor = new TestJobExecutor();
+        ExecutorService pool = executor.getWorkerPool();
+        CountDownLatch started = new CountDownLatch(1);
+        Future<?> running = pool.submit(() -> {
+            started.countDown();
+            Thread.sleep(60000L);
+            return null;
+        });
+        Future<String> waiting = pool.submit(() -> "never");
+        started.await(5, TimeUnit.SECONDS);
+
+        executor.shutdownWorkerPool();
+        ec.checkThat(pool.isTerminated(), is(true));
+        ec.checkThat(running.isDone(), is(true));
+        ec.checkThat(waiting.isCancelled(), is(true));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void noPoolAfterShutdown() {
+        TestJobExecutor executor = new TestJobExecutor();
+        executor.getWorkerPool();
+        executor.shutdownWorkerPool();
+        executor.getWorkerPool();
+    }
+}
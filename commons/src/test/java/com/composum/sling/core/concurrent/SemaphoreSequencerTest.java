@@ -0,0 +1,110 @@
+package com.composum.sling.core.concurrent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ErrorCollector;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests for the {@link SemaphoreSequencer}.
+ */
+public class SemaphoreSequencerTest {
+
+    @Rule
+    public final ErrorCollector ec = new ErrorCollector();
+
+    protected SemaphoreSequencer sequencer;
+    protected ExecutorService executor;
+
+    @Before
+    public void setup() {
+        sequencer = new SemaphoreSequencer();
+        sequencer.activate(null);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+        sequencer.deactivate(null);
+    }
+
+    @Test
+    public void timeoutReturnsNull() throws Exception {
+        SemaphoreSequencer.Token token = sequencer.acquire("/content/test/a");
+        Future<SemaphoreSequencer.Token> other = executor.submit(() ->
+                sequencer.acquire("/content/test/a", 50, TimeUnit.MILLISECONDS));
+        ec.checkThat(other.get(5, TimeUnit.SECONDS), nullValue());
+        SemaphoreSequencer.Entry entry = sequencer.activeEntries.get("/content/test/a");
+        ec.checkThat(entry.users, is(1));
+        ec.checkThat(entry.semaphore.availablePermits(), is(0));
+        SemaphoreSequencer.Statistics statistics = sequencer.getStatistics().get("/content/test/a");
+        ec.checkThat(statistics.getAcquired(), is(1L));
+        ec.checkThat(statistics.getContended(), is(1L));
+        ec.checkThat(statistics.getTimedOut(), is(1L));
+
+        sequencer.release(token);
+        ec.checkThat(entry.semaphore.availablePermits(), is(1));
+        ec.checkThat(sequencer.activeEntries.isEmpty(), is(true));
+    }
+
+    @Test
+    public void reentryAfterRelease() throws Exception {
+        SemaphoreSequencer.Token token = sequencer.acquire("/content/test/b");
+        CountDownLatch waiting = new CountDownLatch(1);
+        Future<SemaphoreSequencer.Token> other = executor.submit(() -> {
+            waiting.countDown();
+            return sequencer.acquire("/content/test/b", 5, TimeUnit.SECONDS);
+        });
+        waiting.await();
+        Thread.sleep(50);
+        sequencer.release(token);
+        SemaphoreSequencer.Token otherToken = other.get(5, TimeUnit.SECONDS);
+        ec.checkThat(otherToken, notNullValue());
+        SemaphoreSequencer.Entry entry = sequencer.activeEntries.get("/content/test/b");
+        ec.checkThat(entry.users, is(1));
+        ec.checkThat(entry.semaphore.availablePermits(), is(0));
+        // the key is still locked for a third acquisition
+        ec.checkThat(sequencer.acquire("/content/test/b", 10, TimeUnit.MILLISECONDS), nullValue());
+        sequencer.release(otherToken);
+        ec.checkThat(sequencer.activeEntries.isEmpty(), is(true));
+
+        SemaphoreSequencer.Token again = sequencer.acquire("/content/test/b", 10, TimeUnit.MILLISECONDS);
+        ec.checkThat(again, notNullValue());
+        sequencer.release(again);
+        ec.checkThat(sequencer.getStatistics().get("/content/test/b").getAcquired(), is(3L));
+    }
+
+    @Test
+    public void entriesRemovedWhenUnused() {
+        SemaphoreSequencer.Token a = sequencer.acquire("/content/test/c");
+        SemaphoreSequencer.Token b = sequencer.acquire("/content/other/d");
+        SemaphoreSequencer.Token c = sequencer.acquire("relative");
+        ec.checkThat(sequencer.activeEntries.size(), is(3));
+        sequencer.release(a);
+        sequencer.release(b);
+        ec.checkThat(sequencer.activeEntries.size(), is(1));
+        sequencer.release(c);
+        ec.checkThat(sequencer.activeEntries.isEmpty(), is(true));
+        ec.checkThat(sequencer.getStatistics().keySet().toString(),
+                is("[(other), /content/other/d, /content/test/c]"));
+    }
+
+    @Test
+    public void statisticsKeyByPathPrefix() {
+        ec.checkThat(sequencer.statisticsKey("/content/test/c/d/e"), is("/content/test/c"));
+        ec.checkThat(sequencer.statisticsKey("/content/test"), is("/content/test"));
+        ec.checkThat(sequencer.statisticsKey("some-key"), is(SemaphoreSequencer.STATISTICS_OTHER_KEYS));
+    }
+}
@@ -0,0 +1,140 @@
+package com.composum.sling.core.event;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ErrorCollector;
+
+import javax.jcr.Node;
+import javax.jcr.Session;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the batch mode of the {@link AbstractChangeObserver}.
+ */
+@SuppressWarnings("deprecation")
+public class AbstractChangeObserverTest {
+
+    @Rule
+    public final ErrorCollector ec = new ErrorCollector();
+
+    protected final List<String> performed = Collections.synchronizedList(new ArrayList<>());
+    protected final List<Integer> transactions = new ArrayList<>();
+
+    protected class BatchObserver extends AbstractChangeObserver {
+
+        protected int changes = 0;
+
+        @Override
+        protected boolean isBatchMode() {
+            return true;
+        }
+
+        @Override
+        protected int getBatchSize() {
+            return 2;
+        }
+
+        @Override
+        protected long getDebounceTime() {
+            return 50L;
+        }
+
+        @Override
+        protected String getServiceUserId() {
+            return "service";
+        }
+
+        @Override
+        protected String getObservedPath() {
+            return "/content";
+        }
+
+        @Override
+        protected void doOnChange(ResourceResolver resolver, ChangedResource change) {
+            performed.add(change.getResource().getPath() + ":" + change.getUser());
+            changes++;
+        }
+
+        @Override
+        protected boolean isTargetNode(Node node) {
+            return true;
+        }
+
+        @Override
+        protected ResourceResolver getResolver() {
+            ResourceResolver resolver = mock(ResourceResolver.class);
+            when(resolver.getResource(anyString())).thenAnswer(invocation -> resource(invocation.getArgument(0)));
+            try {
+                doAnswer(invocation -> {
+                    transactions.add(changes);
+                    changes = 0;
+                    return null;
+                }).when(resolver).commit();
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+            return resolver;
+        }
+
+        @Override
+        protected Session getSession() {
+            return null;
+        }
+    }
+
+    @Test
+    public void mergedChangesPerformedInBatches() {
+        BatchObserver observer = new BatchObserver();
+        observer.startBatchWorker();
+        observer.enqueue(Arrays.asList(
+                change(observer, "/content/a", 1000L, "alice"),
+                change(observer, "/content/b", 1000L, "bob"),
+                change(observer, "/content/a", 2000L, "carol"),
+                change(observer, "/content/c", 1000L, "alice")));
+        observer.stopBatchWorker();
+        ec.checkThat(performed, is(Arrays.asList("/content/a:carol", "/content/b:bob", "/content/c:alice")));
+        ec.checkThat(transactions, is(Arrays.asList(2, 1)));
+        ec.checkThat(observer.getBatchStatistics().received.get(), is(4L));
+        ec.checkThat(observer.getBatchStatistics().merged.get(), is(1L));
+        ec.checkThat(observer.getBatchStatistics().performed.get(), is(3L));
+        ec.checkThat(observer.getPendingChangesCount(), is(0));
+    }
+
+    @Test
+    public void debouncedChangesPerformedByWorker() throws InterruptedException {
+        BatchObserver observer = new BatchObserver();
+        observer.startBatchWorker();
+        observer.enqueue(Arrays.asList(change(observer, "/content/a", 1000L, "alice")));
+        for (int i = 0; i < 100 && performed.isEmpty(); i++) {
+            Thread.sleep(20L);
+        }
+        ec.checkThat(performed, is(Arrays.asList("/content/a:alice")));
+        observer.stopBatchWorker();
+        ec.checkThat(transactions, is(Arrays.asList(1)));
+    }
+
+    protected AbstractChangeObserver.ChangedResource change(AbstractChangeObserver observer,
+                                                            String path, long time, String user) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        return observer.new ChangedResource(resource(path), calendar, user);
+    }
+
+    protected Resource resource(String path) {
+        Resource resource = mock(Resource.class);
+        when(resource.getPath()).thenReturn(path);
+        return resource;
+    }
+}
@@ -209,6 +209,31 @@ public class ResourceFilterTest {
         assertThat(ResourceFilterMapping.fromString(""), sameInstance(ResourceFilter.ALL));
     }
 
+    /** An unknown type (e.g. an unregistered namespace prefix) must not abort the check of the other types. */
+    @Test
+    public void typeFilterSkipsUnknownTypes() throws RepositoryException {
+        NodeType nodeType = createMock(NodeType.class);
+        expect(nodeType.getName()).andReturn("nt:file").anyTimes();
+        replay(nodeType);
+        Node node = createMock(Node.class);
+        expect(node.getPrimaryNodeType()).andReturn(nodeType).anyTimes();
+        expect(node.getMixinNodeTypes()).andReturn(new NodeType[0]).anyTimes();
+        expect(node.getPath()).andReturn("/content/test/file").anyTimes();
+        expect(node.isNodeType("cpp:Page")).andThrow(new RepositoryException("unknown prefix: cpp")).anyTimes();
+        expect(node.isNodeType("nt:file")).andReturn(true).anyTimes();
+        expect(node.isNodeType(anyObject(String.class))).andReturn(false).anyTimes();
+        replay(node);
+        Resource resource = createMock(Resource.class);
+        expect(resource.adaptTo(Node.class)).andReturn(node).anyTimes();
+        expect(resource.getPath()).andReturn("/content/test/file").anyTimes();
+        expect(resource.isResourceType(anyObject(String.class))).andReturn(false).anyTimes();
+        replay(resource);
+
+        assertThat(new ResourceFilter.TypeFilter("+[cpp:Page,nt:file]").accept(resource), is(true));
+        assertThat(new ResourceFilter.TypeFilter("-[cpp:Page,nt:file]").accept(resource), is(false));
+        assertThat(new ResourceFilter.TypeFilter("+[cpp:Page,nt:folder]").accept(resource), is(false));
+    }
+
     /**
      * Verifies that the string representation is as expected and that it can be deserialized again and behaves the
      * same .
@@ -82,6 +82,21 @@ public class StringFilterTest {
         assertThat(filter.accept("nt:unstructured"), is(false));
     }
 
+    @Test
+    public void testCombinedPatterns() {
+        StringFilter.WhiteList combinable = new StringFilter.WhiteList("^(nt|sling):.*[Ff]older$", "(?i)^[a-z]+:page$");
+        assertThat(combinable.getCombinedPattern() != null, is(true));
+        assertThat(combinable.accept("sling:OrderedFolder"), is(true));
+        assertThat(combinable.accept("cq:PAGE"), is(true));
+        assertThat(combinable.accept("cq:PageContent"), is(false));
+        // the back reference would refer to another group in the combined pattern
+        StringFilter.BlackList backReference = new StringFilter.BlackList("^x", "(a)\\1");
+        assertThat(backReference.getCombinedPattern() == null, is(true));
+        assertThat(backReference.accept("baa"), is(false));
+        assertThat(backReference.accept("bab"), is(true));
+        assertThat(backReference.accept("xab"), is(false));
+    }
+
     @Test
     public void testJsonMapping() {
         JsonTest.testWriteReadWriteEquals(FIRST_RULE_SET, StringFilterTypeAdapter.GSON);
@@ -0,0 +1,150 @@
+package com.composum.sling.core.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ErrorCollector;
+import org.junit.rules.TemporaryFolder;
+
+import javax.jcr.Binary;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests for {@link ByteRanges}.
+ */
+public class ByteRangesTest {
+
+    @Rule
+    public final ErrorCollector ec = new ErrorCollector();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parseAndResolve() {
+        ec.checkThat(resolve("bytes=0-9", 10), is("[0-9]"));
+        ec.checkThat(resolve("bytes=5-", 10), is("[5-9]"));
+        ec.checkThat(resolve("bytes=5-100", 10), is("[5-9]"));
+        ec.checkThat(resolve("bytes=-3", 10), is("[7-9]"));
+        ec.checkThat(resolve("bytes=-30", 10), is("[0-9]"));
+        ec.checkThat(resolve("bytes=0-1,4-5,-2", 10), is("[0-1, 4-5, 8-9]"));
+        ec.checkThat(resolve("bytes = 1 - 2 , 3-", 10), is("[1-2, 3-9]"));
+        ec.checkThat(resolve("bytes=10-", 10), is("[]"));
+        ec.checkThat(resolve("bytes=-0", 10), is("[]"));
+        ec.checkThat(resolve(null, 10), is("null"));
+        ec.checkThat(resolve("bytes=", 10), is("null"));
+        ec.checkThat(resolve("bytes=9-3", 10), is("null"));
+        ec.checkThat(resolve("items=1-2", 10), is("null"));
+        ec.checkThat(resolve("bytes=99999999999999999999-", 10), is("null"));
+    }
+
+    @Test
+    public void openRange() {
+        List<ByteRanges.Spec> specs = ByteRanges.parse("bytes=1234-");
+        ec.checkThat(specs.get(0).isOpen(), is(true));
+        ec.checkThat(specs.get(0).first, is(1234L));
+        ec.checkThat(ByteRanges.parse("bytes=1-2").get(0).isOpen(), is(false));
+        ec.checkThat(ByteRanges.parse("bytes=-2").get(0).isOpen(), is(false));
+        ec.checkThat(ByteRanges.parse("bytes=-2").get(0).resolve(0), nullValue());
+    }
+
+    @Test
+    public void matches() {
+        String etag = ByteRanges.etag(4711L, 1234567890L);
+        ec.checkThat(ByteRanges.matches(null, etag), is(false));
+        ec.checkThat(ByteRanges.matches(etag, etag), is(true));
+        ec.checkThat(ByteRanges.matches("\"x\", W/" + etag, etag), is(true));
+        ec.checkThat(ByteRanges.matches("*", etag), is(true));
+        ec.checkThat(ByteRanges.matches(ByteRanges.etag(4712L, 1234567890L), etag), is(false));
+    }
+
+    @Test
+    public void copyFilePart() throws IOException {
+        File file = folder.newFile("output.txt");
+        Files.write(file.toPath(), "0123456789".getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ec.checkThat(copy(channel, 3, 4), is("3456"));
+            ec.checkThat(copy(channel, 0, 2), is("01"));
+            ec.checkThat(copy(channel, 8, 5), is("89"));
+            ec.checkThat(copy(channel, 12, 1), is(""));
+        }
+    }
+
+    protected String copy(FileChannel channel, long first, long length) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteRanges.copy(channel, first, length, output);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void readBinary() throws IOException {
+        Binary binary = binary("0123456789");
+        ec.checkThat(read(binary, 0, 10), is("0123456789"));
+        ec.checkThat(read(binary, 3, 4), is("3456"));
+        ec.checkThat(read(binary, 8, 5), is("89"));
+        ec.checkThat(read(binary, 10, 1), is(""));
+        ec.checkThat(read(binary, 12, 1), is(""));
+    }
+
+    protected String read(Binary binary, long first, long length) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteRanges.read(binary, first, length, output);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * a binary with a stream which returns at most 3 bytes for each read and skips at most 2 bytes to check the
+     * continued reading and skipping; positioned reads are not expected
+     */
+    protected Binary binary(String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return new Binary() {
+
+            @Override
+            public InputStream getStream() {
+                return new ByteArrayInputStream(bytes) {
+
+                    @Override
+                    public synchronized int read(byte[] b, int off, int len) {
+                        return super.read(b, off, Math.min(3, len));
+                    }
+
+                    @Override
+                    public synchronized long skip(long n) {
+                        return super.skip(Math.min(2, n));
+                    }
+                };
+            }
+
+            @Override
+            public int read(byte[] b, long position) {
+                throw new UnsupportedOperationException("positioned read");
+            }
+
+            @Override
+            public long getSize() {
+                return bytes.length;
+            }
+
+            @Override
+            public void dispose() {
+            }
+        };
+    }
+
+    protected String resolve(String header, long length) {
+        List<ByteRanges.Spec> specs = ByteRanges.parse(header);
+        return specs == null ? "null" : ByteRanges.resolve(specs, length).toString();
+    }
+}
@@ -0,0 +1,32 @@
+package com.composum.sling.core.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ErrorCollector;
+
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests for {@link HttpUtil}.
+ */
+public class HttpUtilTest {
+
+    @Rule
+    public final ErrorCollector ec = new ErrorCollector();
+
+    @Test
+    public void acceptsEncoding() {
+        ec.checkThat(HttpUtil.acceptsEncoding(null, "gzip"), is(false));
+        ec.checkThat(HttpUtil.acceptsEncoding("", "gzip"), is(false));
+        ec.checkThat(HttpUtil.acceptsEncoding("gzip", "gzip"), is(true));
+        ec.checkThat(HttpUtil.acceptsEncoding("deflate, GZIP, br", "gzip"), is(true));
+        ec.checkThat(HttpUtil.acceptsEncoding("deflate, br", "gzip"), is(false));
+        ec.checkThat(HttpUtil.acceptsEncoding("x-gzip", "gzip"), is(false));
+        ec.checkThat(HttpUtil.acceptsEncoding("gzip;q=0.5", "gzip"), is(true));
+        ec.checkThat(HttpUtil.acceptsEncoding("gzip; q=0", "gzip"), is(false));
+        ec.checkThat(HttpUtil.acceptsEncoding("gzip;q=0.0, *", "gzip"), is(false));
+        ec.checkThat(HttpUtil.acceptsEncoding("*", "gzip"), is(true));
+        ec.checkThat(HttpUtil.acceptsEncoding("br, *;q=0", "gzip"), is(false));
+        ec.checkThat(HttpUtil.acceptsEncoding("gzip;q=x", "gzip"), is(true));
+    }
+}
@@ -11,6 +11,7 @@ import com.composum.sling.nodes.servlet.SourceServlet;
 import com.composum.sling.nodes.servlet.SourceUpdateServlet;
 import com.composum.sling.nodes.servlet.VersionServlet;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.osgi.framework.Constants;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
@@ -26,6 +27,10 @@ import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The configuration service for all servlets in the core bundle.
@@ -127,6 +132,28 @@ public class NodesConfigImpl implements NodesConfiguration {
         )
         boolean node_source_advanced_attributesort() default true;
 
+        @AttributeDefinition(
+                name = "Source Export Compression Level",
+                description = "the compression level (0-9, -1: default) of the ZIP entries of the source exports (Source Servlet)"
+        )
+        int node_source_compression_level() default -1;
+
+        @AttributeDefinition(
+                name = "Source Export Stored Extensions",
+                description = "the extensions of the already compressed files which are exported without compression"
+        )
+        String[] node_source_stored_extensions() default {
+                "jpg", "jpeg", "png", "gif", "webp", "zip", "jar", "gz", "tgz", "bz2", "xz", "7z",
+                "mp3", "mp4", "m4a", "m4v", "mov", "webm", "woff", "woff2"
+        };
+
+        @AttributeDefinition(
+                name = "Source Export Writer Threads",
+                description = "the maximum number of source exports compressed and sent by a writer thread concurrently "
+                        + "to the reading of the content; further exports are written by the request thread; 0: off"
+        )
+        int node_source_export_threads() default 4;
+
         @AttributeDefinition(
                 name = "Scenes Content Root",
                 description = "the root path of the scenes content nodes"
@@ -154,6 +181,8 @@ public class NodesConfigImpl implements NodesConfiguration {
 
     private volatile boolean sourceAdvancedSortAttributes;
 
+    private volatile ThreadPoolExecutor sourceExportExecutor;
+
     @NotNull
     private Configuration getConfig() {
         return Objects.requireNonNull(config, "NodesConfigImpl is not active");
@@ -228,6 +257,23 @@ public class NodesConfigImpl implements NodesConfiguration {
         return sourceAdvancedSortAttributes;
     }
 
+    @Override
+    public int getSourceCompressionLevel() {
+        return getConfig().node_source_compression_level();
+    }
+
+    @Override
+    @NotNull
+    public String[] getSourceStoredExtensions() {
+        return getConfig().node_source_stored_extensions();
+    }
+
+    @Override
+    @Nullable
+    public Executor getSourceExportExecutor() {
+        return sourceExportExecutor;
+    }
+
     @Override
     @NotNull
     public String getScenesContentRoot() {
@@ -256,10 +302,26 @@ public class NodesConfigImpl implements NodesConfiguration {
         sourceFolderFilter = ResourceFilterMapping.fromString(configuration.node_source_folder_filter());
         sourceXmlFilter = ResourceFilterMapping.fromString(configuration.node_source_xml_filter());
         sourceAdvancedSortAttributes = configuration.node_source_advanced_attributesort();
+        shutdownSourceExportExecutor();
+        if (configuration.node_source_export_threads() > 0) {
+            // no queue: if all writers are busy an export is written by its request thread
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(configuration.node_source_export_threads(),
+                    configuration.node_source_export_threads(), 60L, TimeUnit.SECONDS, new SynchronousQueue<>());
+            executor.allowCoreThreadTimeOut(true);
+            sourceExportExecutor = executor;
+        }
+    }
+
+    protected void shutdownSourceExportExecutor() {
+        if (sourceExportExecutor != null) {
+            sourceExportExecutor.shutdown();
+            sourceExportExecutor = null;
+        }
     }
 
     @Deactivate
     protected void deactivate() {
+        shutdownSourceExportExecutor();
         properties = null;
         config = null;
         pageNodeFilter = null;
@@ -2,8 +2,11 @@ package com.composum.sling.nodes;
 
 import com.composum.sling.core.filter.ResourceFilter;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Dictionary;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
 
 /**
  * The configuration service for all servlets in the core bundle.
@@ -46,6 +49,23 @@ public interface NodesConfiguration {
     @NotNull
     ResourceFilter getSourceXmlNodesFilter();
 
+    /** The compression level of the ZIP entries of the source exports (-1: default). */
+    default int getSourceCompressionLevel() {
+        return Deflater.DEFAULT_COMPRESSION;
+    }
+
+    /** The extensions of the already compressed files which are exported without compression. */
+    @NotNull
+    default String[] getSourceStoredExtensions() {
+        return new String[0];
+    }
+
+    /** The executor of the writer threads of the source exports; 'null' if the exports are written directly. */
+    @Nullable
+    default Executor getSourceExportExecutor() {
+        return null;
+    }
+
     @NotNull
     String getScenesContentRoot();
 
@@ -0,0 +1,217 @@
+package com.composum.sling.nodes.mount.remote;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * the cache of the remote resources loaded by a remote provider shared by all resolvers of the provider;
+ * the data of the resources (the values and the values of the children) is cached, not the resource objects
+ * which are bound to the resolver of a request
+ */
+public class RemoteCache {
+
+    /**
+     * the data of a loaded resource
+     */
+    public static class Entry {
+
+        /** the values of the resource; 'null' if the resource doesn't exist */
+        @Nullable
+        protected final ValueMap values;
+        /** the values of the children; 'null' if the resource doesn't exist */
+        @Nullable
+        protected final Map<String, ValueMap> children;
+        /** the validators of the response the resource was loaded from */
+        @Nullable
+        protected final String etag;
+        @Nullable
+        protected final String lastModified;
+
+        protected volatile long validated;
+
+        protected Entry(@Nullable final ValueMap values, @Nullable final Map<String, ValueMap> children,
+                        @Nullable final String etag, @Nullable final String lastModified) {
+            this.values = values;
+            this.children = children;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            validated = System.currentTimeMillis();
+        }
+
+        public boolean exists() {
+            return values != null;
+        }
+
+        /**
+         * @return 'true' if the entry can be revalidated by a conditional request
+         */
+        public boolean isRevalidatable() {
+            return exists() && (etag != null || lastModified != null);
+        }
+
+        /**
+         * the entry is valid again (e.g. after a 'not modified' response)
+         */
+        public void touch() {
+            validated = System.currentTimeMillis();
+        }
+
+        /**
+         * transfers the cached data into the resource; the children are 'not loaded completely'
+         *
+         * @return the resource
+         */
+        @NotNull
+        protected RemoteResource restore(@NotNull final RemoteResource resource) {
+            resource.values = copy(resource, values);
+            resource.children = new LinkedHashMap<>();
+            if (children != null) {
+                for (Map.Entry<String, ValueMap> item : children.entrySet()) {
+                    RemoteResource child = new RemoteResource(resource.resolver, resource.getPath() + "/" + item.getKey());
+                    child.values = copy(child, item.getValue());
+                    resource.children.put(item.getKey(), child);
+                }
+            }
+            return resource;
+        }
+
+        /**
+         * @return the values with new instances of the binary streams (a stream can't be shared)
+         */
+        @NotNull
+        protected static ValueMap copy(@NotNull final RemoteResource resource, @Nullable final ValueMap values) {
+            if (values != null) {
+                Map<String, Object> copy = null;
+                for (Map.Entry<String, Object> entry : values.entrySet()) {
+                    if (entry.getValue() instanceof RemoteReader.RemoteBinary) {
+                        if (copy == null) {
+                            copy = new TreeMap<>(values);
+                        }
+                        copy.put(entry.getKey(), resource.resolver.provider.remoteReader.new RemoteBinary(
+                                ((RemoteReader.RemoteBinary) entry.getValue()).propertyPath));
+                    }
+                }
+                return copy != null ? new ValueMapDecorator(Collections.unmodifiableMap(copy)) : values;
+            }
+            return new ValueMapDecorator(Collections.<String, Object>emptyMap());
+        }
+    }
+
+    protected final long timeToLive;
+    protected final Map<String, Entry> entries;
+
+    /**
+     * @param timeToLive the time in milliseconds an entry is used without revalidation
+     * @param maxEntries the maximum number of cached resources
+     */
+    public RemoteCache(long timeToLive, final int maxEntries) {
+        this.timeToLive = timeToLive;
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * @return the entry of the path, maybe expired; 'null' if nothing cached for the path
+     */
+    @Nullable
+    public Entry get(@NotNull final String path) {
+        return timeToLive > 0 ? entries.get(path) : null;
+    }
+
+    /**
+     * @return 'true' if the entry can be used without revalidation
+     */
+    public boolean isValid(@NotNull final Entry entry) {
+        return System.currentTimeMillis() - entry.validated < timeToLive;
+    }
+
+    /**
+     * caches the data of a completely loaded resource
+     */
+    public void put(@NotNull final RemoteResource resource,
+                    @Nullable final String etag, @Nullable final String lastModified) {
+        if (timeToLive > 0) {
+            Map<String, ValueMap> children = new LinkedHashMap<>();
+            if (resource.children != null) {
+                for (Map.Entry<String, Resource> child : resource.children.entrySet()) {
+                    if (child.getValue() instanceof RemoteResource) {
+                        children.put(child.getKey(), snapshot(((RemoteResource) child.getValue()).values));
+                    }
+                }
+            }
+            entries.put(resource.getPath(), new Entry(snapshot(resource.values), children, etag, lastModified));
+        }
+    }
+
+    /**
+     * caches the knowledge that a resource doesn't exist
+     */
+    public void putNonExisting(@NotNull final String path) {
+        if (timeToLive > 0) {
+            entries.put(path, new Entry(null, null, null, null));
+        }
+    }
+
+    /**
+     * removes the entries of the changed paths, of their parents and of all resources below the paths
+     */
+    public void invalidate(@NotNull final Collection<String> paths) {
+        if (!paths.isEmpty()) {
+            Set<String> changed = new HashSet<>(paths);
+            Set<String> affected = new HashSet<>();
+            for (String path : changed) {
+                affected.add(path);
+                int lastSlash = path.lastIndexOf('/');
+                affected.add(lastSlash > 0 ? path.substring(0, lastSlash) : "/");
+            }
+            synchronized (entries) {
+                for (Iterator<String> iterator = entries.keySet().iterator(); iterator.hasNext(); ) {
+                    String key = iterator.next();
+                    if (affected.contains(key) || isDescendant(key, changed)) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    protected static boolean isDescendant(@NotNull String path, @NotNull final Set<String> ancestors) {
+        int lastSlash;
+        while ((lastSlash = path.lastIndexOf('/')) > 0) {
+            path = path.substring(0, lastSlash);
+            if (ancestors.contains(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NotNull
+    protected static ValueMap snapshot(@Nullable final ValueMap values) {
+        Map<String, Object> copy = new TreeMap<>();
+        if (values != null) {
+            copy.putAll(values);
+        }
+        return new ValueMapDecorator(Collections.unmodifiableMap(copy));
+    }
+}
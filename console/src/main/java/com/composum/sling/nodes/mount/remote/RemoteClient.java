@@ -12,7 +12,9 @@ import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicHeader;
 import org.apache.jackrabbit.webdav.DavConstants;
 import org.apache.jackrabbit.webdav.client.methods.HttpPropfind;
@@ -25,6 +27,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -32,6 +35,9 @@ final class RemoteClient {
 
     private static final Logger LOG = LoggerFactory.getLogger(RemoteClient.class);
 
+    /** the time in seconds a pooled connection is kept open if not used */
+    public static final long IDLE_CONNECTION_TIMEOUT = 30L;
+
     public static final Pattern REMOTE_URL_PATTERN = Pattern.compile(
             "^(?<url>(?<scheme>https?)://(?<host>[^:/]+)(:(?<port>\\d+))?(?<context>/.+)?)/?$");
 
@@ -44,7 +50,9 @@ final class RemoteClient {
     protected final HttpHost remoteHost;
     protected final String remoteUrl;
 
-    private transient HttpClientContext clientContext;
+    /** the keep-alive connections to the remote system shared by all requests of the provider */
+    protected final PoolingHttpClientConnectionManager connectionManager;
+    private transient volatile CloseableHttpClient httpClient;
 
     @NotNull
     private final List<Header> defaultHeaders;
@@ -90,6 +98,28 @@ final class RemoteClient {
                 defaultHeaders.add(new BasicHeader(parts[0], parts.length > 1 ? parts[1] : ""));
             }
         }
+
+        connectionManager = new PoolingHttpClientConnectionManager(
+                config.connection_time_to_live(), TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(config.connection_pool_size());
+        connectionManager.setDefaultMaxPerRoute(config.connection_pool_size()); // one remote host
+    }
+
+    /**
+     * closes the client and all connections to the remote system
+     */
+    public void close() {
+        CloseableHttpClient client = httpClient;
+        httpClient = null;
+        try {
+            if (client != null) {
+                client.close();
+            }
+        } catch (IOException ex) {
+            LOG.error(ex.getMessage(), ex);
+        } finally {
+            connectionManager.shutdown();
+        }
     }
 
     /**
@@ -157,29 +187,40 @@ final class RemoteClient {
     }
 
     /**
-     * @return the context for the request execution
+     * @return the context for the request execution; a new context for each request - a context can't be shared
+     * between concurrent requests
      */
     protected HttpClientContext getClientContext() {
-        if (clientContext == null) {
-            clientContext = new HttpClientContext();
-            for (RemoteClientBuilder clientBuilder : getBuilders()) {
-                clientBuilder.configure(clientContext);
-            }
+        HttpClientContext clientContext = new HttpClientContext();
+        for (RemoteClientBuilder clientBuilder : getBuilders()) {
+            clientBuilder.configure(clientContext);
         }
         return clientContext;
     }
 
     /**
-     * @return the client to load remote resources
+     * @return the client to load remote resources; built once and shared by all requests using the pooled
+     * keep-alive connections (the response entities must be consumed to release the connections)
      */
     @NotNull
     protected HttpClient buildClient() {
-        HttpClientBuilder builder = HttpClientBuilder.create()
-                .setDefaultHeaders(defaultHeaders);
-        for (RemoteClientBuilder clientBuilder : getBuilders()) {
-            clientBuilder.configure(builder);
+        CloseableHttpClient client = httpClient;
+        if (client == null) {
+            synchronized (this) {
+                if ((client = httpClient) == null) {
+                    HttpClientBuilder builder = HttpClientBuilder.create()
+                            .setDefaultHeaders(defaultHeaders)
+                            .setConnectionManager(connectionManager)
+                            .evictExpiredConnections()
+                            .evictIdleConnections(IDLE_CONNECTION_TIMEOUT, TimeUnit.SECONDS);
+                    for (RemoteClientBuilder clientBuilder : getBuilders()) {
+                        clientBuilder.configure(builder);
+                    }
+                    httpClient = client = builder.build();
+                }
+            }
         }
-        return builder.build();
+        return client;
     }
 
     /**
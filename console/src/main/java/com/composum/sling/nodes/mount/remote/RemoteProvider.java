@@ -25,6 +25,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 /**
@@ -45,6 +50,9 @@ public class RemoteProvider extends ResourceProvider<Object> {
 
     private static final Logger LOG = LoggerFactory.getLogger(RemoteProvider.class);
 
+    /** the time (milliseconds) to wait for the running prefetch requests on deactivation */
+    public static final long PREFETCH_TERMINATION_TIMEOUT = 10000L;
+
     @ObjectClassDefinition(name = "Composum Nodes Remote Resource Provider")
     public @interface Config {
 
@@ -104,6 +112,56 @@ public class RemoteProvider extends ResourceProvider<Object> {
         )
         String[] request_headers();
 
+        @AttributeDefinition(
+                name = "Connection Pool Size",
+                description = "the maximum number of (keep-alive) HTTP connections to the remote system"
+        )
+        int connection_pool_size() default 10;
+
+        @AttributeDefinition(
+                name = "Connection Time To Live",
+                description = "the maximum time (seconds) a connection is kept open; <= 0: no limit"
+        )
+        long connection_time_to_live() default 300L;
+
+        @AttributeDefinition(
+                name = "Prefetch Depth",
+                description = "the number of tree levels loaded with one request (.{depth}.json); -1: 'infinity' - "
+                        + "limited by the result limit of the remote Sling GET servlet (one level is loaded if exceeded)"
+        )
+        int prefetch_depth() default 2;
+
+        @AttributeDefinition(
+                name = "Prefetch Threads",
+                description = "the maximum number of concurrent requests to load the children of a listed resource "
+                        + "and to send the uploads of a commit; <= 1: the requests are sent one by one"
+        )
+        int prefetch_threads() default 4;
+
+        @AttributeDefinition(
+                name = "Batch Commit",
+                description = "send the compatible changes of a commit (property changes, deletions) with one request"
+        )
+        boolean commit_batch() default false;
+
+        @AttributeDefinition(
+                name = "Compress Requests",
+                description = "send the changes gzip compressed; the remote system (or a proxy) must decode the requests"
+        )
+        boolean commit_gzip() default false;
+
+        @AttributeDefinition(
+                name = "Cache Time To Live",
+                description = "the time (seconds) a loaded resource is used without revalidation; 0: no caching"
+        )
+        long cache_time_to_live() default 30L;
+
+        @AttributeDefinition(
+                name = "Cache Size",
+                description = "the maximum number of resources cached for all requests"
+        )
+        int cache_max_entries() default 10000;
+
         @AttributeDefinition()
         String webconsole_configurationFactory_nameHint()
                 default "local: {provider.root}, remote: {remote.url}, extensions: {client.configuration}";
@@ -122,6 +180,15 @@ public class RemoteProvider extends ResourceProvider<Object> {
     protected RemoteClient remoteClient;
     protected RemoteReader remoteReader;
     protected RemoteWriter remoteWriter;
+    protected RemoteCache remoteCache;
+
+    /** the number of tree levels loaded with one request; Integer.MAX_VALUE for 'infinity' */
+    protected int prefetchDepth;
+    /** the pool to load the children of a listed resource (and to send uploads) concurrently; 'null' if off */
+    protected ThreadPoolExecutor prefetchExecutor;
+
+    protected boolean batchCommit;
+    protected boolean gzipRequests;
 
     @Activate
     @Modified
@@ -137,13 +204,32 @@ public class RemoteProvider extends ResourceProvider<Object> {
         for (String rule : config.ignored_patterns()) {
             ignoredPathPatterns.add(Pattern.compile(rule.replaceAll("\\$\\{root}", localRoot)));
         }
+        if (remoteClient != null) {
+            remoteClient.close();
+        }
         remoteClient = new RemoteClient(this, config, Arrays.asList(config.client_configuration()));
         remoteReader = new RemoteReader(this);
         remoteWriter = new RemoteWriter(this);
+        remoteCache = new RemoteCache(TimeUnit.SECONDS.toMillis(config.cache_time_to_live()),
+                config.cache_max_entries());
+        prefetchDepth = config.prefetch_depth() < 0 ? Integer.MAX_VALUE : Math.max(1, config.prefetch_depth());
+        batchCommit = config.commit_batch();
+        gzipRequests = config.commit_gzip();
+        shutdownPrefetchExecutor();
+        if (config.prefetch_threads() > 1) {
+            prefetchExecutor = new ThreadPoolExecutor(config.prefetch_threads(), config.prefetch_threads(),
+                    60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new PrefetchThreadFactory());
+            prefetchExecutor.allowCoreThreadTimeOut(true);
+        }
     }
 
     @Deactivate
     protected void deactivate() {
+        shutdownPrefetchExecutor();
+        if (remoteClient != null) {
+            remoteClient.close();
+        }
+        remoteCache = null;
         remoteWriter = null;
         remoteReader = null;
         remoteClient = null;
@@ -154,6 +240,38 @@ public class RemoteProvider extends ResourceProvider<Object> {
         bundleContext = null;
     }
 
+    /**
+     * Stops the prefetch pool and waits for the running requests, so that no request uses a closed client.
+     */
+    protected void shutdownPrefetchExecutor() {
+        ThreadPoolExecutor executor = prefetchExecutor;
+        prefetchExecutor = null;
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(PREFETCH_TERMINATION_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    LOG.warn("prefetch requests of '{}' not terminated", localRoot);
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException ex) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    protected static class PrefetchThreadFactory implements ThreadFactory {
+
+        protected final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NotNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "composum-remote-prefetch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     /**
      * @return 'true' if the path is part of the local repository tree (starts with the provider root)
      */
@@ -3,10 +3,13 @@ package com.composum.sling.nodes.mount.remote;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.MalformedJsonException;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
 import org.apache.jackrabbit.JcrConstants;
 import org.apache.jackrabbit.webdav.DavException;
 import org.apache.jackrabbit.webdav.MultiStatus;
@@ -23,6 +26,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jcr.PropertyType;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -32,6 +36,7 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -40,11 +45,16 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static javax.servlet.http.HttpServletResponse.SC_MULTIPLE_CHOICES;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_ACCEPTABLE;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
 import static javax.servlet.http.HttpServletResponse.SC_NO_CONTENT;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 import static org.apache.jackrabbit.webdav.DavServletResponse.SC_MULTI_STATUS;
@@ -80,7 +90,8 @@ public class RemoteReader {
     }
 
     /**
-     * Loads the properties and children into the given resource
+     * Loads the properties and children into the given resource; a resource cached by the provider
+     * is used if it's still valid, an expired cache entry is revalidated by a conditional request
      *
      * @param resource     the resource to load / update
      * @param isKnownChild 'true' if the resource is cached already (as a child of another resource) and cannot be ignored
@@ -94,16 +105,28 @@ public class RemoteReader {
         resource.values = new ValueMapDecorator(new TreeMap<>());
         String path = resource.getPath();
         String logHint = null;
+        RemoteCache cache = provider.remoteCache;
+        RemoteCache.Entry cached = cache.get(path);
+        if (cached != null && cache.isValid(cached) && (cached.exists() || !isKnownChild)) {
+            LOG.debug("cached ({}): {}", path, cached.exists());
+            return cached.exists() ? cached.restore(resource) : null;
+        }
         HttpClient httpClient = provider.remoteClient.buildClient();
         if (!provider.ignoreIt(path)) {
-            int statusCode = loadJsonResource(resource, httpClient);
-            if (statusCode == SC_OK) {
+            int statusCode = loadJsonResource(resource, httpClient, cached);
+            if (statusCode == SC_NOT_MODIFIED && cached != null) {
+                cached.touch();
+                cached.restore(resource);
+                logHint = "--304";
+            } else if (statusCode == SC_OK) {
                 logHint = ".JSON";
             } else {
                 statusCode = loadDavResource(resource, httpClient);
                 if (statusCode == SC_OK || statusCode == SC_MULTI_STATUS) {
+                    cache.put(resource, null, null);
                     logHint = "--DAV";
                 } else if (statusCode == SC_NOT_FOUND && !isKnownChild) {
+                    cache.putNonExisting(path);
                     result = null;
                 } else {
                     resource.children = new LinkedHashMap<>();
@@ -152,8 +175,8 @@ public class RemoteReader {
         LOG.debug("DAV.load({}) - '{}'", resource.getPath(), url);
         try {
             HttpPropfind davGet = provider.remoteClient.buildPropfind(url);
+            HttpResponse response = provider.remoteClient.execute(httpClient, davGet);
             try {
-                HttpResponse response = provider.remoteClient.execute(httpClient, davGet);
                 statusCode = response.getStatusLine().getStatusCode();
                 if (statusCode == SC_MULTI_STATUS) {
                     String path = resource.getPath();
@@ -186,6 +209,8 @@ public class RemoteReader {
             } catch (DavException ex) {
                 LOG.error("DAV exception loading '{}': {}", url, ex.toString());
                 statusCode = SC_NOT_ACCEPTABLE;
+            } finally {
+                EntityUtils.consumeQuietly(response.getEntity()); // release the connection
             }
         } catch (IOException ex) {
             LOG.error("IO exception loading '{}': {}", url, ex.toString());
@@ -254,36 +279,73 @@ public class RemoteReader {
 
     @NotNull
     public String getJsonUrl(@NotNull final String path) {
+        return getJsonUrl(path, 1);
+    }
+
+    /**
+     * @param depth the number of tree levels to load; Integer.MAX_VALUE for 'infinity'
+     */
+    @NotNull
+    public String getJsonUrl(@NotNull final String path, int depth) {
         String httpUrl = provider.remoteClient.getHttpUrl(path);
-        return httpUrl.replaceAll("\\.", "%2E") + (path.endsWith("/") ? "" : "/") + ".1.json";
+        return httpUrl.replaceAll("\\.", "%2E") + (path.endsWith("/") ? "" : "/")
+                + "." + (depth == Integer.MAX_VALUE ? "infinity" : Integer.toString(depth)) + ".json";
     }
 
     /**
      * The preferred resource loading using the default Sling GET servlet to read
-     * the properties and children of the resource to load.
+     * the properties and children of the resource to load; the configured number of tree levels
+     * is loaded with one request and all resources loaded completely are cached.
      *
      * @param resource   the resource to load / update
      * @param httpClient the client instance to execute the request
-     * @return the status code of the request response
+     * @param cached     the expired cache entry of the resource to revalidate; maybe 'null'
+     * @return the status code of the request response ('not modified' if the cached entry is still valid)
      */
     protected int loadJsonResource(@NotNull final RemoteResource resource,
-                                   @NotNull final HttpClient httpClient) {
+                                   @NotNull final HttpClient httpClient,
+                                   @Nullable final RemoteCache.Entry cached) {
+        int depth = provider.prefetchDepth;
+        int statusCode = loadJsonResource(resource, httpClient, cached, depth);
+        if (statusCode == SC_MULTIPLE_CHOICES && depth > 1) {
+            // the result limit of the remote GET servlet exceeded - load one level only
+            LOG.debug("JSON.load({}) - depth {} exceeds the result limit", resource.getPath(), depth);
+            statusCode = loadJsonResource(resource, httpClient, cached, 1);
+        }
+        return statusCode;
+    }
+
+    protected int loadJsonResource(@NotNull final RemoteResource resource,
+                                   @NotNull final HttpClient httpClient,
+                                   @Nullable final RemoteCache.Entry cached, int depth) {
         int statusCode;
-        String url = getJsonUrl(resource);
+        String url = getJsonUrl(resource.getPath(), depth);
         LOG.debug("JSON.load({}) - '{}'", resource.getPath(), url);
         HttpGet httpGet = provider.remoteClient.buildHttpGet(url);
+        if (cached != null && cached.isRevalidatable()) {
+            if (cached.etag != null) {
+                httpGet.setHeader(HttpHeaders.IF_NONE_MATCH, cached.etag);
+            }
+            if (cached.lastModified != null) {
+                httpGet.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified);
+            }
+        }
         try {
             HttpResponse response = provider.remoteClient.execute(httpClient, httpGet);
-            statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode == SC_OK) {
-                try (InputStream stream = response.getEntity().getContent();
-                     InputStreamReader reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
-                     JsonReader jsonReader = new JsonReader(reader)) {
-                    loadJsonResource(resource, jsonReader);
-                    if (resource.children == null) { // no children found but searched for - store empty set
-                        resource.children = new LinkedHashMap<>();
+            try {
+                statusCode = response.getStatusLine().getStatusCode();
+                if (statusCode == SC_OK) {
+                    try (InputStream stream = response.getEntity().getContent();
+                         InputStreamReader reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
+                         JsonReader jsonReader = new JsonReader(reader)) {
+                        loadJsonResource(resource, jsonReader, depth);
                     }
+                    provider.remoteCache.put(resource, headerValue(response, HttpHeaders.ETAG),
+                            headerValue(response, HttpHeaders.LAST_MODIFIED));
+                    cacheLoadedChildren(resource);
                 }
+            } finally {
+                EntityUtils.consumeQuietly(response.getEntity()); // release the connection
             }
         } catch (MalformedJsonException mfex) {
             statusCode = SC_NOT_ACCEPTABLE;
@@ -294,8 +356,62 @@ public class RemoteReader {
         return statusCode;
     }
 
+    /**
+     * caches the resources below the resource which are loaded completely by a request of more than one level
+     */
+    protected void cacheLoadedChildren(@NotNull final RemoteResource resource) {
+        for (Resource item : resource.children.values()) {
+            if (item instanceof RemoteResource) {
+                RemoteResource child = (RemoteResource) item;
+                if (child.children != null) {
+                    provider.remoteCache.put(child, null, null);
+                    cacheLoadedChildren(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the resources which are not loaded completely concurrently (if configured); used if the children
+     * of a resource are listed - one request for each of the children would be sent anyway.
+     */
+    public void loadResources(@NotNull final Collection<Resource> resources) {
+        ThreadPoolExecutor executor = provider.prefetchExecutor;
+        if (executor != null) {
+            List<Future<?>> loading = new ArrayList<>();
+            for (Resource item : resources) {
+                if (item instanceof RemoteResource && ((RemoteResource) item).children == null) {
+                    loading.add(executor.submit(((RemoteResource) item)::children));
+                }
+            }
+            if (loading.size() > 1) {
+                LOG.debug("loading {} resources...", loading.size());
+            }
+            for (Future<?> future : loading) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    LOG.error(ex.getMessage(), ex);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    @Nullable
+    protected static String headerValue(@NotNull final HttpResponse response, @NotNull final String name) {
+        Header header = response.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    /**
+     * @param depth the number of tree levels contained in the JSON object of the resource (the resource itself
+     *              and its children: 1); the resources above the last level are loaded completely
+     */
     protected void loadJsonResource(@NotNull final RemoteResource resource,
-                                    @NotNull final JsonReader jsonReader)
+                                    @NotNull final JsonReader jsonReader, int depth)
             throws IOException {
         resource.children = null; // children == null -> not loaded completely
         resource.values.clear();
@@ -434,10 +550,10 @@ public class RemoteReader {
                             skip++;
                         } else {
                             String path = resource.getPath() + "/" + name;
-                            // load child and store it... (the children af a child should not be loaded)
+                            // load child and store it... (the children of the last level are not loaded)
                             RemoteResource child = new RemoteResource(resource.resolver, path);
                             LOG.debug("JSON.load.child({})...", path);
-                            loadJsonResource(child, jsonReader);
+                            loadJsonResource(child, jsonReader, depth - 1);
                             if (resource.children == null) {
                                 resource.children = new LinkedHashMap<>();
                             }
@@ -461,6 +577,9 @@ public class RemoteReader {
                     break;
             }
         }
+        if (depth > 0 && resource.children == null) { // no children found but searched for - store empty set
+            resource.children = new LinkedHashMap<>();
+        }
     }
 
     public static final Pattern STRING_TYPE_PREFIX = Pattern.compile("^\\{([^}]+)}(.*)$");
@@ -540,6 +659,8 @@ public class RemoteReader {
         return null;
     }
 
+    public static final int BINARY_BUFFER_SIZE = 64 * 1024;
+
     public class RemoteBinary extends InputStream {
 
         protected final String propertyPath;
@@ -558,21 +679,23 @@ public class RemoteReader {
                 LOG.error(ex.getMessage(), ex);
             }
             String url = provider.remoteClient.getHttpUrl(propertyPath);
-            HttpGet httpGet = provider.remoteClient.buildHttpGet(url);
+            httpGet = provider.remoteClient.buildHttpGet(url);
             try {
                 HttpResponse response = provider.remoteClient.execute(httpGet);
                 StatusLine statusLine = response.getStatusLine();
                 switch (statusLine.getStatusCode()) {
                     case SC_OK:
-                        content = response.getEntity().getContent();
+                        content = new BufferedInputStream(response.getEntity().getContent(), BINARY_BUFFER_SIZE);
                         break;
                     default:
                         content = new ByteArrayInputStream(new byte[0]);
+                        EntityUtils.consumeQuietly(response.getEntity());
                         release();
                         break;
                 }
             } catch (IOException ex) {
                 LOG.error("exception loading '{}': {}", url, ex.toString());
+                content = new ByteArrayInputStream(new byte[0]);
                 release();
             }
         }
@@ -596,6 +719,21 @@ public class RemoteReader {
             return content().read();
         }
 
+        @Override
+        public int read(@NotNull byte[] buffer, int offset, int length) throws IOException {
+            return content().read(buffer, offset, length);
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            return content().skip(count);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return content().available();
+        }
+
         @Override
         public void close() throws IOException {
             if (content != null) {
@@ -21,9 +21,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * the resolver of the remote Sling instance resources mounted by the resource provider;
@@ -322,6 +324,14 @@ public class RemoteResolver implements ExtendedResolver {
 
     @Override
     public void commit() throws PersistenceException {
+        // the paths changed by the commit - their state cached by the provider is outdated after the commit
+        Set<String> changedPaths = new HashSet<>();
+        for (RemoteWriter.ResourceChange change : changeSet.values()) {
+            changedPaths.add(change.resource.getPath());
+            if (change instanceof RemoteWriter.ResourceMove) {
+                changedPaths.add(((RemoteWriter.ResourceMove) change).source.getPath());
+            }
+        }
         try {
             provider.remoteWriter.commitChanges(changeSet);
         } catch (IOException ex) {
@@ -330,6 +340,7 @@ public class RemoteResolver implements ExtendedResolver {
         } finally {
             changeSet.clear();
             resourceCache.clear();
+            provider.remoteCache.invalidate(changedPaths);
         }
     }
 
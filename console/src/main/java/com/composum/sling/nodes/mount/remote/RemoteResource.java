@@ -118,13 +118,25 @@ public class RemoteResource implements Resource {
     @NotNull
     @Override
     public Iterator<Resource> listChildren() {
-        return children().values().iterator();
+        return listedChildren().values().iterator();
     }
 
     @NotNull
     @Override
     public Iterable<Resource> getChildren() {
-        return children().values();
+        return listedChildren().values();
+    }
+
+    /**
+     * the children are listed, it's expected that they are used - the children not loaded yet are loaded at once
+     *
+     * @return the set of children
+     */
+    @NotNull
+    protected Map<String, Resource> listedChildren() {
+        Map<String, Resource> children = children();
+        resolver.provider.remoteReader.loadResources(children.values());
+        return children;
     }
 
     @Nullable
@@ -5,6 +5,7 @@ import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.entity.EntityBuilder;
+import org.apache.http.client.entity.GzipCompressingEntity;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.HttpMultipartMode;
@@ -12,6 +13,7 @@ import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.entity.mime.content.ContentBody;
 import org.apache.http.entity.mime.content.InputStreamBody;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
 import org.apache.jackrabbit.JcrConstants;
 import org.apache.sling.api.resource.ModifiableValueMap;
 import org.apache.sling.api.resource.Resource;
@@ -25,6 +27,7 @@ import org.slf4j.LoggerFactory;
 import javax.jcr.PropertyType;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -33,8 +36,12 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
 public class RemoteWriter {
 
@@ -124,7 +131,222 @@ public class RemoteWriter {
     }
 
     public boolean commitChanges(@NotNull final ChangeSet changeSet) throws IOException {
-        return changeSet.commit(this);
+        return provider.batchCommit ? commitBatched(changeSet) : changeSet.commit(this);
+    }
+
+    //
+    // batched commit...
+    //
+
+    enum BatchType {single, form, delete, upload}
+
+    /**
+     * a run of compatible changes of a change set
+     */
+    protected static class Batch {
+
+        public final BatchType type;
+        public final List<ResourceChange> changes = new ArrayList<>();
+        /** the form parameters of the property changes (batch type 'form') */
+        public final List<Parameters> forms = new ArrayList<>();
+
+        public Batch(@NotNull final BatchType type) {
+            this.type = type;
+        }
+
+        public void add(@NotNull final ResourceChange change, @Nullable final Parameters form) {
+            changes.add(change);
+            forms.add(form);
+        }
+
+        public boolean commit(@NotNull final RemoteWriter writer) throws IOException {
+            if (changes.size() == 1) {
+                return changes.get(0).commit(writer);
+            }
+            switch (type) {
+                case form:
+                    return writer.postForms(changes, forms);
+                case delete:
+                    return writer.postDelete(changes);
+                case upload:
+                    return writer.commitConcurrently(changes);
+                default:
+                    boolean changesMade = false;
+                    for (ResourceChange change : changes) {
+                        changesMade = change.commit(writer) || changesMade;
+                    }
+                    return changesMade;
+            }
+        }
+    }
+
+    /**
+     * Commits the changes in their order but sends each run of compatible changes together: the property
+     * changes of several resources with one POST to a common ancestor (relative property paths), the
+     * deletions with one delete operation (':applyTo') and the uploads concurrently.
+     */
+    protected boolean commitBatched(@NotNull final ChangeSet changeSet) throws IOException {
+        boolean changesMade = false;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("commit.batched({})...", changeSet.size());
+        }
+        try {
+            Batch batch = null;
+            for (ResourceChange change : changeSet.values()) {
+                BatchType type = BatchType.single;
+                Parameters form = null;
+                if (change instanceof ResourceModify) {
+                    Map<String, ContentBody> parts = new LinkedHashMap<>();
+                    form = new Parameters();
+                    buildForm(change.resource, parts, form);
+                    if (parts.isEmpty()) { // binary properties are sent with a multipart request of their own
+                        type = BatchType.form;
+                    }
+                } else if (change instanceof ResourceDelete) {
+                    type = BatchType.delete;
+                } else if (change instanceof ResourceUpload) {
+                    type = BatchType.upload;
+                }
+                if (batch == null || batch.type != type || type == BatchType.single) {
+                    if (batch != null) {
+                        changesMade = batch.commit(this) || changesMade;
+                    }
+                    batch = new Batch(type);
+                }
+                batch.add(change, form);
+            }
+            if (batch != null) {
+                changesMade = batch.commit(this) || changesMade;
+            }
+        } finally {
+            changeSet.clear();
+        }
+        return changesMade;
+    }
+
+    /**
+     * sends the property changes of several resources with one POST to the common ancestor of the resources
+     */
+    protected boolean postForms(@NotNull final List<ResourceChange> changes, @NotNull final List<Parameters> forms) {
+        List<String> parentPaths = new ArrayList<>();
+        for (ResourceChange change : changes) {
+            parentPaths.add(parentPath(change.resource.getPath()));
+        }
+        String ancestor = commonAncestor(parentPaths);
+        Parameters parameters = new Parameters();
+        for (int i = 0; i < changes.size(); i++) {
+            ResourceChange change = changes.get(i);
+            String prefix = "./" + relativePath(ancestor, change.resource.getPath()) + "/";
+            for (NameValuePair parameter : forms.get(i)) {
+                parameters.add(prefix + parameter.getName(), parameter.getValue());
+            }
+        }
+        int statusCode = parameters.size() > 0 ? postEntity(changes.get(0), ancestor, buildForm(parameters)) : 0;
+        return logResults(changes, forms, statusCode);
+    }
+
+    /**
+     * deletes several resources with one delete operation
+     */
+    protected boolean postDelete(@NotNull final List<ResourceChange> changes) {
+        List<String> parentPaths = new ArrayList<>();
+        Parameters parameters = new Parameters();
+        parameters.add(SlingPostConstants.RP_OPERATION, SlingPostConstants.OPERATION_DELETE);
+        for (ResourceChange change : changes) {
+            parentPaths.add(parentPath(change.resource.getPath()));
+            parameters.add(SlingPostConstants.RP_APPLY_TO, provider.remotePath(change.resource.getPath()));
+        }
+        int statusCode = postEntity(changes.get(0), commonAncestor(parentPaths), buildForm(parameters));
+        return logResults(changes, null, statusCode);
+    }
+
+    /**
+     * logs the result of each change of a batch in the order of the changes; if the request of the batch
+     * has failed (no 2xx status) the failure is reported for each change of the batch
+     *
+     * @return 'true' if changes are made
+     */
+    protected boolean logResults(@NotNull final List<ResourceChange> changes, @Nullable final List<Parameters> forms,
+                                 int statusCode) {
+        boolean changesMade = false;
+        boolean succeeded = statusCode >= 200 && statusCode < 300;
+        for (int i = 0; i < changes.size(); i++) {
+            ResourceChange change = changes.get(i);
+            if (forms == null || forms.get(i).size() > 0) {
+                if (succeeded) {
+                    if (LOG.isInfoEnabled()) {
+                        LOG.info(change.getChangeType() + "({}): {} (batch of {})",
+                                change.resource.getPath(), statusCode, changes.size());
+                    }
+                    changesMade = true;
+                } else {
+                    LOG.error(change.getChangeType() + "({}): failed with {} (batch of {})",
+                            change.resource.getPath(), statusCode, changes.size());
+                }
+            }
+        }
+        return changesMade;
+    }
+
+    /**
+     * commits the changes concurrently (if configured), e.g. the uploads of independent files
+     */
+    protected boolean commitConcurrently(@NotNull final List<ResourceChange> changes) throws IOException {
+        boolean changesMade = false;
+        ThreadPoolExecutor executor = provider.prefetchExecutor;
+        if (executor == null) {
+            for (ResourceChange change : changes) {
+                changesMade = change.commit(this) || changesMade;
+            }
+        } else {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (ResourceChange change : changes) {
+                results.add(executor.submit(() -> change.commit(this)));
+            }
+            IOException exception = null;
+            for (Future<Boolean> result : results) {
+                try {
+                    changesMade = result.get() || changesMade;
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof IOException && exception == null) {
+                        exception = (IOException) ex.getCause();
+                    } else {
+                        LOG.error(ex.getMessage(), ex);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("commit interrupted");
+                }
+            }
+            if (exception != null) {
+                throw exception;
+            }
+        }
+        return changesMade;
+    }
+
+    @NotNull
+    protected static String parentPath(@NotNull final String path) {
+        return StringUtils.defaultIfEmpty(StringUtils.substringBeforeLast(path, "/"), "/");
+    }
+
+    /**
+     * @return the nearest path which is the path or an ancestor of each path
+     */
+    @NotNull
+    protected static String commonAncestor(@NotNull final List<String> paths) {
+        String ancestor = paths.get(0);
+        for (String path : paths) {
+            while (!path.equals(ancestor) && !path.startsWith(ancestor.endsWith("/") ? ancestor : ancestor + "/")) {
+                ancestor = parentPath(ancestor);
+            }
+        }
+        return ancestor;
+    }
+
+    @NotNull
+    protected static String relativePath(@NotNull final String ancestor, @NotNull final String path) {
+        return path.substring(ancestor.endsWith("/") ? ancestor.length() : ancestor.length() + 1);
     }
 
     //
@@ -333,15 +555,20 @@ public class RemoteWriter {
                             @NotNull final Parameters parameters) {
         boolean changesMade = false;
         if (parameters.size() > 0) {
-            EntityBuilder entityBuilder = EntityBuilder.create();
-            entityBuilder.setContentEncoding("UTF-8");
-            entityBuilder.setParameters(parameters);
-            postEntity(change, path, entityBuilder.build());
+            postEntity(change, path, buildForm(parameters));
             changesMade = true;
         }
         return changesMade;
     }
 
+    @NotNull
+    protected HttpEntity buildForm(@NotNull final Parameters parameters) {
+        EntityBuilder entityBuilder = EntityBuilder.create();
+        entityBuilder.setContentEncoding("UTF-8");
+        entityBuilder.setParameters(parameters);
+        return entityBuilder.build();
+    }
+
     public boolean postMultipart(@NotNull final ResourceChange change, @Nullable final String path,
                                  @NotNull final Map<String, ContentBody> parts, @NotNull final Parameters parameters) {
         boolean changesMade = false;
@@ -360,22 +587,31 @@ public class RemoteWriter {
         return changesMade;
     }
 
-    public void postEntity(@NotNull final ResourceChange change, @Nullable final String path,
-                           @NotNull final HttpEntity httpEntity) {
+    /**
+     * @return the status code of the response; -1 if the request failed
+     */
+    public int postEntity(@NotNull final ResourceChange change, @Nullable final String path,
+                          @NotNull final HttpEntity httpEntity) {
+        int statusCode = -1;
         try {
             String url = provider.remoteClient.getHttpUrl(path != null ? path : change.resource.path);
             HttpPost httpPost = provider.remoteClient.buildHttpPost(url);
-            httpPost.setEntity(httpEntity);
+            httpPost.setEntity(provider.gzipRequests ? new GzipCompressingEntity(httpEntity) : httpEntity);
             HttpResponse response = provider.remoteClient.execute(httpPost);
-            int statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode == 200) {
-                LOG.debug(change.getChangeType() + ".POST({}): {}", httpPost.getURI(), statusCode);
-            } else {
-                LOG.warn(change.getChangeType() + ".POST({}): {}", httpPost.getURI(), statusCode);
+            try {
+                statusCode = response.getStatusLine().getStatusCode();
+                if (statusCode == 200) {
+                    LOG.debug(change.getChangeType() + ".POST({}): {}", httpPost.getURI(), statusCode);
+                } else {
+                    LOG.warn(change.getChangeType() + ".POST({}): {}", httpPost.getURI(), statusCode);
+                }
+            } finally {
+                EntityUtils.consumeQuietly(response.getEntity()); // release the connection
             }
         } catch (IOException ex) {
             LOG.error(ex.getMessage(), ex);
         }
+        return statusCode;
     }
 
     //
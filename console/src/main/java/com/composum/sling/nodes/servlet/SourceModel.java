@@ -379,28 +379,38 @@ public class SourceModel extends ConsoleSlingBean {
             throws IOException, IOErrorOnCloseException, RepositoryException {
 
         String root = "jcr_root";
-        ZipOutputStream zipStream = new ZipOutputStream(output);
-        writePackageProperties(zipStream, group, packageName, version);
-        writeFilterXml(zipStream);
-        if (ResourceUtil.CONTENT_NODE.equals(getName())) {
-            Resource parent = resource.getParent();
-            if (parent != null) {
-                SourceModel parentModel = new SourceModel(config, context, parent);
-                writeParents(zipStream, root, parentModel.getResource().getParent());
-                parentModel.writeIntoZip(zipStream, root, DepthMode.DEEP);
-            }
-        } else {
-            writeParents(zipStream, root, resource.getParent());
-            writeIntoZip(zipStream, root, DepthMode.DEEP);
-        }
-        zipStream.flush();
+        SourceZipOutputStream zipStream = createZipStream(output);
         try {
-            zipStream.close();
-        } catch (IOException e) {
-            throw new IOErrorOnCloseException(e);
+            writePackageProperties(zipStream, group, packageName, version);
+            writeFilterXml(zipStream);
+            if (ResourceUtil.CONTENT_NODE.equals(getName())) {
+                Resource parent = resource.getParent();
+                if (parent != null) {
+                    SourceModel parentModel = new SourceModel(config, context, parent);
+                    writeParents(zipStream, root, parentModel.getResource().getParent());
+                    parentModel.writeIntoZip(zipStream, root, DepthMode.DEEP);
+                }
+            } else {
+                writeParents(zipStream, root, resource.getParent());
+                writeIntoZip(zipStream, root, DepthMode.DEEP);
+            }
+            zipStream.flush();
+            zipStream.close(); // throws an IOErrorOnCloseException if the final close fails
+        } finally {
+            zipStream.release();
         }
     }
 
+    /**
+     * Creates the ZIP stream of an export with the configured compression; the stream is compressed and written
+     * by a writer thread if possible, so the content is read while the entries before are compressed.
+     */
+    @NotNull
+    protected SourceZipOutputStream createZipStream(@NotNull OutputStream output) {
+        return new SourceZipOutputStream(output, config.getSourceCompressionLevel(),
+                Arrays.asList(config.getSourceStoredExtensions()), config.getSourceExportExecutor());
+    }
+
     /**
      * Returns true if the nodes siblings are ordered.
      * Works only for JCR resources - if we cannot determine this, we return 'false'.
@@ -537,10 +547,14 @@ public class SourceModel extends ConsoleSlingBean {
     public void writeArchive(@NotNull OutputStream output)
             throws IOException, RepositoryException {
 
-        ZipOutputStream zipStream = new ZipOutputStream(output);
-        writeIntoZip(zipStream, resource.getPath(), DepthMode.DEEP);
-        zipStream.flush();
-        zipStream.close();
+        SourceZipOutputStream zipStream = createZipStream(output);
+        try {
+            writeIntoZip(zipStream, resource.getPath(), DepthMode.DEEP);
+            zipStream.flush();
+            zipStream.close();
+        } finally {
+            zipStream.release();
+        }
     }
 
     /**
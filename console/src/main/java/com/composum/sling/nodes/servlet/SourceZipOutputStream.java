@@ -0,0 +1,259 @@
+package com.composum.sling.nodes.servlet;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * The ZIP stream of the source exports: the compression level is chosen per entry - already compressed files
+ * (e.g. images, archives) are written without compression. If an executor is given the compression and the
+ * output are done by a writer thread: the entries and their data are passed through a bounded queue in the
+ * order of the calls, so the content is read from the repository (on the thread of the request which owns the
+ * resolver) while the previous content is compressed and sent.
+ */
+public class SourceZipOutputStream extends ZipOutputStream {
+
+    /** the size of the data chunks passed to the writer thread */
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    /** the number of operations (data chunks) buffered for the writer thread */
+    public static final int PIPELINE_SIZE = 16;
+
+    protected interface Operation {
+
+        void perform() throws IOException;
+    }
+
+    protected static final Operation END = () -> {
+    };
+
+    protected final int level;
+    protected final Set<String> storedExtensions;
+
+    /** the operations for the writer thread; 'null' if the stream is not pipelined */
+    protected BlockingQueue<Operation> pipeline;
+    protected CountDownLatch finished;
+    /** the writer thread; the calls of the ZIP implementation to its own methods are performed directly */
+    protected volatile Thread writer;
+    protected volatile Exception failure;
+
+    protected byte[] chunk;
+    protected int count;
+    protected boolean ended;
+
+    /**
+     * @param level            the compression level of the entries, e.g. {@link Deflater#DEFAULT_COMPRESSION}
+     * @param storedExtensions the (lower case) extensions of the entries written without compression
+     * @param executor         the executor of the writer thread; 'null' or a rejecting executor: not pipelined
+     */
+    public SourceZipOutputStream(@NotNull final OutputStream output, int level,
+                                 @Nullable final Collection<String> storedExtensions,
+                                 @Nullable final Executor executor) {
+        super(output);
+        this.level = level;
+        this.storedExtensions = storedExtensions != null ? new HashSet<>(storedExtensions) : new HashSet<>();
+        if (executor != null) {
+            pipeline = new ArrayBlockingQueue<>(PIPELINE_SIZE);
+            finished = new CountDownLatch(1);
+            try {
+                executor.execute(this::writeEntries);
+                chunk = new byte[CHUNK_SIZE];
+            } catch (RejectedExecutionException ex) {
+                pipeline = null; // all writers busy - write on the calling thread
+                finished = null;
+            }
+        }
+    }
+
+    public boolean isPipelined() {
+        return pipeline != null;
+    }
+
+    /**
+     * @return the compression level for the entry
+     */
+    protected int getLevel(@NotNull final ZipEntry entry) {
+        String extension = StringUtils.substringAfterLast(entry.getName(), ".");
+        return storedExtensions.contains(extension.toLowerCase()) ? Deflater.NO_COMPRESSION : level;
+    }
+
+    @Override
+    public void putNextEntry(ZipEntry entry) throws IOException {
+        perform(() -> {
+            super.setLevel(getLevel(entry));
+            super.putNextEntry(entry);
+        });
+    }
+
+    @Override
+    public void write(int data) throws IOException {
+        write(new byte[]{(byte) data}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (pipeline != null && Thread.currentThread() != writer) {
+            while (length > 0) {
+                int size = Math.min(length, CHUNK_SIZE - count);
+                System.arraycopy(data, offset, chunk, count, size);
+                count += size;
+                offset += size;
+                length -= size;
+                if (count == CHUNK_SIZE) {
+                    flushChunk();
+                }
+            }
+        } else {
+            super.write(data, offset, length);
+        }
+    }
+
+    @Override
+    public void closeEntry() throws IOException {
+        perform(super::closeEntry);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        perform(super::flush);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        perform(super::finish);
+    }
+
+    /**
+     * closes the stream and waits for the writer thread; an error of the final close (which writes the central
+     * directory) is thrown as {@link SourceModel.IOErrorOnCloseException}, an error of the entries before as is
+     */
+    @Override
+    public void close() throws IOException {
+        if (!ended) {
+            try {
+                perform(this::closeStream);
+            } finally {
+                release();
+            }
+        }
+    }
+
+    protected void closeStream() throws IOException {
+        try {
+            super.close();
+        } catch (IOException ex) {
+            throw new SourceModel.IOErrorOnCloseException(ex);
+        }
+    }
+
+    /**
+     * ends the writer thread (if not done by closing the stream, e.g. after an exception of the export) after
+     * the pending operations (dropped after a failure) and waits for its end; the stream is not closed
+     */
+    public void release() throws IOException {
+        if (pipeline != null && !ended) {
+            ended = true;
+            try {
+                if (failure != null) {
+                    pipeline.clear(); // dropped by the writer anyway
+                }
+                while (!pipeline.offer(END, 1, TimeUnit.SECONDS)) {
+                    if (finished.getCount() == 0) {
+                        break; // writer thread interrupted
+                    }
+                }
+                finished.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("export interrupted");
+            }
+            checkFailure();
+        }
+        ended = true;
+    }
+
+    /**
+     * performs the operation or passes it to the writer thread (after the data written before)
+     */
+    protected void perform(@NotNull final Operation operation) throws IOException {
+        if (pipeline != null && Thread.currentThread() != writer) {
+            if (ended) {
+                throw new IOException("stream closed");
+            }
+            flushChunk();
+            enqueue(operation);
+        } else {
+            operation.perform();
+        }
+    }
+
+    protected void flushChunk() throws IOException {
+        if (count > 0) {
+            byte[] data = chunk;
+            int length = count;
+            enqueue(() -> super.write(data, 0, length));
+            chunk = new byte[CHUNK_SIZE];
+            count = 0;
+        }
+    }
+
+    protected void enqueue(@NotNull final Operation operation) throws IOException {
+        checkFailure();
+        try {
+            while (!pipeline.offer(operation, 1, TimeUnit.SECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("export interrupted");
+        }
+    }
+
+    protected void checkFailure() throws IOException {
+        Exception exception = failure;
+        if (exception != null) {
+            throw exception instanceof IOException ? (IOException) exception : new IOException(exception);
+        }
+    }
+
+    /**
+     * the loop of the writer thread; after a failure the remaining operations are dropped
+     */
+    protected void writeEntries() {
+        writer = Thread.currentThread();
+        try {
+            Operation operation;
+            while ((operation = pipeline.take()) != END) {
+                if (failure == null) {
+                    try {
+                        operation.perform();
+                    } catch (IOException | RuntimeException ex) {
+                        failure = ex;
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            failure = new InterruptedIOException("export interrupted");
+            Thread.currentThread().interrupt();
+        } finally {
+            writer = null;
+            finished.countDown();
+        }
+    }
+}
@@ -12,7 +12,8 @@ public interface SourceUpdateService {
 
     /**
      * Reads a ZIP from the input stream and updates the resources at the path of the entries of the zip file so that
-     * they are identical to the stream, ignoring / updating metadata.
+     * they are identical to the stream, ignoring / updating metadata. Only the differences are written; the changes
+     * of large updates are saved in portions, so an error can leave the changes saved before in place.
      *
      * @param resolver       the resolver we write to
      * @param zipInputStream contains a zip with the data to import. It needs to contain the actual content to import below jcr_root.
@@ -1,49 +1,70 @@
 package com.composum.sling.nodes.update;
 
-import com.composum.sling.core.ResourceHandle;
-import com.composum.sling.core.util.ResourceUtil;
-import org.apache.commons.collections.IteratorUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.jackrabbit.JcrConstants;
-import org.apache.jackrabbit.vault.fs.api.ProgressTrackerListener;
-import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
-import org.apache.jackrabbit.vault.fs.io.Importer;
-import org.apache.jackrabbit.vault.fs.io.ZipStreamArchive;
-import org.apache.sling.api.resource.ModifiableValueMap;
-import org.apache.sling.api.resource.PersistenceException;
-import org.apache.sling.api.resource.Resource;
+import org.apache.jackrabbit.util.ISO9075;
+import org.apache.jackrabbit.vault.util.DocViewProperty;
+import org.apache.jackrabbit.vault.util.MimeTypes;
+import org.apache.jackrabbit.vault.util.PlatformNameFormat;
 import org.apache.sling.api.resource.ResourceResolver;
-import org.apache.sling.api.resource.ValueMap;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.osgi.framework.Constants;
 import org.osgi.service.component.annotations.Component;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
+import javax.jcr.Binary;
+import javax.jcr.NamespaceException;
 import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
-import javax.jcr.nodetype.NodeDefinition;
+import javax.jcr.nodetype.NodeType;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static com.composum.sling.core.util.ResourceUtil.PROP_LAST_MODIFIED;
 import static com.composum.sling.core.util.ResourceUtil.PROP_MIXINTYPES;
 import static com.composum.sling.core.util.ResourceUtil.PROP_PRIMARY_TYPE;
 import static com.composum.sling.core.util.ResourceUtil.TYPE_LAST_MODIFIED;
 import static com.composum.sling.core.util.ResourceUtil.TYPE_SLING_FOLDER;
+import static org.apache.jackrabbit.JcrConstants.JCR_CONTENT;
+import static org.apache.jackrabbit.JcrConstants.JCR_DATA;
+import static org.apache.jackrabbit.JcrConstants.JCR_MIMETYPE;
+import static org.apache.jackrabbit.JcrConstants.NT_FILE;
+import static org.apache.jackrabbit.JcrConstants.NT_RESOURCE;
 
 
 @Component(
@@ -82,227 +103,582 @@ public class SourceUpdateServiceImpl implements SourceUpdateService {
             "rep:AccessControllable", "rep:RepoAccessControllable", "rep:Impersonatable", "rep:VersionablePaths", "rep:VersionReference", "rep:RetentionManageable", "mix:indexable"
     ));
 
+    /** the number of changes after which the changes are saved (after the current entry of the archive) */
+    public static final int SAVE_THRESHOLD = 1000;
+
+    public static final String ROOT_DIR = "jcr_root";
+    public static final String DOCVIEW_FILE = ".content.xml";
+    public static final String DOCVIEW_ROOT = "jcr:root";
+    public static final String BINARY_EXT = ".binary";
+    public static final String FILE_DIR_EXT = ".dir";
+    public static final String XML_EXT = ".xml";
+
     /**
      * {@inheritDoc}
      * <p>
-     * Make subtree equivalent to a ZIP in vault format. General strategy: we update the attributes of all nodes according to the XML documents,
-     * creating nonexistent nodes along the way, and make node which nodes were present, and which were changed.
-     * In a second pass, we recurse through the JCR tree again, delete nodes that were not present and update the lastModified
-     * properties of nodes, below which there were changes.
+     * Make subtree equivalent to a ZIP in vault format. General strategy: the entries are read from the stream and
+     * compared with the existing nodes on the fly; only the changed properties and nodes are written - nonexistent
+     * nodes are created along the way and the changes are saved in portions of about {@link #SAVE_THRESHOLD}
+     * changes (not while missing parents, created as sling:Folder, wait for their own docview). After the stream
+     * the nodes which were not present in the archive are removed, the order of the children is adjusted and the
+     * lastModified properties of nodes, below which there were changes, are updated.
      */
     @Override
     public void updateFromZip(@NotNull ResourceResolver resolver, @NotNull InputStream rawZipInputStream, @NotNull String nodePath)
             throws IOException, RepositoryException {
         Session session = Objects.requireNonNull(resolver.adaptTo(Session.class));
-        Resource tmpdir = makeTempdir(resolver);
-        final String tmpPath = tmpdir.getPath();
-
-        Importer importer;
-        ImportErrorListener errorListener = new ImportErrorListener();
-        ZipStreamArchive archive = new ZipStreamArchive(rawZipInputStream);
-        try {
-            importer = new Importer();
-            importer.getOptions().setFilter(new DefaultWorkspaceFilter());
-            importer.getOptions().setListener(errorListener);
-            archive.open(true);
-            LOG.info("Importing {}", archive.getMetaInf().getProperties());
-            importer.run(archive, session, tmpdir.getPath());
-        } catch (IOException | RepositoryException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new IOException(e);
-        } finally {
-            rawZipInputStream.close();
+        if (StringUtils.countMatches(nodePath, "/") < 3) {
+            throw new IllegalArgumentException("Suspicious / short root path: " + nodePath);
         }
-        if (importer.hasErrors()) {
-            StringBuilder buf = new StringBuilder("Errors during import: ");
-            errorListener.errors.forEach(e ->
-                    buf.append(e.getLeft()).append(" : ").append(e.getRight()).append("\n"));
-            throw new RepositoryException(buf.toString());
+        if (resolver.getResource(nodePath) == null) {
+            throw new IllegalArgumentException("Node does not exist, so we cannot update it: " + nodePath);
         }
-
-        try {
-            Resource topnode = tmpdir.getChild(nodePath.replaceFirst("^/+", ""));
-            if (topnode == null) {
-                throw new IllegalArgumentException("Archive does not contain given root path " + nodePath);
+        Update update = new Update(session, nodePath);
+        try (ZipInputStream zipStream = new ZipInputStream(rawZipInputStream)) {
+            ZipEntry entry;
+            while ((entry = zipStream.getNextEntry()) != null) {
+                update.readEntry(entry, zipStream);
+                update.saveIfNeeded();
             }
-            if (StringUtils.countMatches(nodePath, "/") < 3) {
-                throw new IllegalArgumentException("Suspicious / short root path: " + nodePath);
-            }
-            Resource resource = resolver.getResource(nodePath);
-            if (resource == null) {
-                throw new IllegalArgumentException("Node does not exist, so we cannot update it: " + nodePath);
+            // the placeholders without docview in the archive are plain folders
+            update.placeholders.clear();
+            if (update.present.isEmpty()) {
+                throw new IllegalArgumentException("Archive does not contain given root path " + nodePath);
             }
-            equalize(topnode, resource, session);
-
+            update.removeObsoleteNodes(session.getNode(nodePath));
+            update.applyOrdering();
+            update.touchLastModified();
             LOG.info("Have changes: {}", session.hasPendingChanges());
             session.save();
+        } catch (IOException | RepositoryException | RuntimeException e) {
+            LOG.error("Error at {} : {}", nodePath, e.toString());
+            throw e;
         } finally {
             session.refresh(false); // discard - if it went OK it's already saved.
-            if (resolver.getResource(tmpPath) != null) {
-                session.removeItem(tmpdir.getPath());
-            }
-            session.save();
         }
     }
 
-    protected Resource makeTempdir(ResourceResolver resolver) throws RepositoryException {
-        String path = "/tmp/composum/nodes/SourceUpdateService/" + UUID.randomUUID().toString();
-        return ResourceUtil.getOrCreateResource(resolver, path, TYPE_SLING_FOLDER);
-    }
-
-    private void equalize(@NotNull Resource templateresource, @NotNull Resource resource, Session session)
-            throws PersistenceException, RepositoryException {
-        boolean thisNodeChanged = false;
-        ValueMap templatevalues = ResourceUtil.getValueMap(templateresource);
-        ModifiableValueMap newvalues = resource.adaptTo(ModifiableValueMap.class);
-        if (newvalues == null) {
-            throw new IllegalArgumentException("Node not modifiable: " + resource.getPath());
+    /**
+     * The state of an update: the nodes present in the archive, the child order declared in the archive and the
+     * changed nodes.
+     */
+    protected class Update {
+
+        protected final Session session;
+        protected final String rootPath;
+
+        /** the paths of the nodes contained in the archive (within the root path) */
+        protected final Set<String> present = new HashSet<>();
+        /** the declared order of the children of the nodes contained in the archive */
+        protected final Map<String, List<String>> childOrder = new LinkedHashMap<>();
+        /** the paths of the nodes which are changed */
+        protected final Set<String> changed = new LinkedHashSet<>();
+        /**
+         * the paths of the missing parents created as sling:Folder whose own docview is not read yet - not saved
+         * since the docview may declare another type
+         */
+        protected final Set<String> placeholders = new HashSet<>();
+        protected int pendingChanges;
+
+        public Update(@NotNull Session session, @NotNull String rootPath) {
+            this.session = session;
+            this.rootPath = rootPath;
         }
 
-        try {
-            copyTypeInformation(templatevalues, newvalues); // first this since it might change attributes.
-            checkForSamenameSiblings(templateresource, resource);
+        // archive entries
 
-            for (Map.Entry<String, Object> entry : templatevalues.entrySet()) {
-                if (!ignoredMetadataAttributes.contains(entry.getKey()) &&
-                        !Objects.deepEquals(entry.getValue(), newvalues.get(entry.getKey()))) {
-                    thisNodeChanged = true;
-                    if (isArray(entry.getValue()) != isArray(newvalues.get(entry.getKey()))) {
-                        newvalues.remove(entry.getKey()); // strangely, we cannot change multi-value-ness with a put
+        protected void readEntry(@NotNull ZipEntry entry, @NotNull InputStream zipStream)
+                throws IOException, RepositoryException {
+            String path = getRepositoryPath(entry.getName());
+            if (path == null) {
+                return;
+            }
+            String name = StringUtils.substringAfterLast(path, "/");
+            String parentPath = getParentPath(path);
+            if (entry.isDirectory()) {
+                // the nodes are created by the content of the directories; the '{file}.dir' aggregates are no nodes
+                if (!name.endsWith(FILE_DIR_EXT) && isInScope(path) && session.nodeExists(path)) {
+                    markPresent(path);
+                }
+            } else if (DOCVIEW_FILE.equals(name)) {
+                // the '.content.xml' of a folder or of an extended file aggregate ('{file}.dir');
+                // the docview of an ancestor can contain the root node
+                String nodePath = StringUtils.removeEnd(parentPath, FILE_DIR_EXT);
+                if ((isInScope(nodePath) || isAncestorOfRoot(nodePath)) && !readDocView(nodePath, zipStream, true)) {
+                    LOG.warn("Ignoring entry {} - not a docview", entry.getName());
+                }
+            } else if (name.endsWith(XML_EXT) && (isInScope(StringUtils.removeEnd(path, XML_EXT))
+                    || isAncestorOfRoot(StringUtils.removeEnd(path, XML_EXT)))) {
+                // a node as separate XML file ('vlt:FullCoverage') or an XML file
+                File spooled = spool(zipStream);
+                try {
+                    boolean docView;
+                    try (InputStream input = new FileInputStream(spooled)) {
+                        docView = readDocView(StringUtils.removeEnd(path, XML_EXT), input, false);
+                    }
+                    if (!docView && isInScope(path)) {
+                        try (InputStream input = new FileInputStream(spooled)) {
+                            readFile(path, input);
+                        }
                     }
-                    newvalues.put(entry.getKey(), entry.getValue());
+                } finally {
+                    deleteSpooled(spooled);
                 }
+            } else if (!isInScope(path)) {
+                LOG.debug("Ignoring entry {}", entry.getName());
+            } else if (name.endsWith(BINARY_EXT)) {
+                readBinaryProperty(parentPath, StringUtils.removeEnd(name, BINARY_EXT), zipStream);
+            } else {
+                readFile(path, zipStream);
             }
+        }
 
-            for (String key : new HashSet<>(newvalues.keySet())) {
-                if (!ignoredMetadataAttributes.contains(key) && !templatevalues.containsKey(key)) {
-                    thisNodeChanged = true;
-                    newvalues.remove(key);
+        /**
+         * @return the repository path of an entry below 'jcr_root'; 'null' for other entries
+         */
+        @Nullable
+        protected String getRepositoryPath(@NotNull String entryName) {
+            if (!entryName.startsWith(ROOT_DIR + "/")) {
+                return null;
+            }
+            String path = PlatformNameFormat.getRepositoryPath(entryName.substring(ROOT_DIR.length()));
+            path = StringUtils.removeEnd(path, "/");
+            return StringUtils.isNotEmpty(path) ? path : "/";
+        }
+
+        /**
+         * Applies a docview XML to the node of the path and its descendants.
+         *
+         * @param docViewFile 'true' for a '.content.xml' which must be a docview; for other XML files each
+         *                    parse failure (a DOCTYPE, not well formed XML) declares the file as 'not a docview'
+         * @return 'false' if the XML is not a docview
+         */
+        protected boolean readDocView(@NotNull String path, @NotNull InputStream input, boolean docViewFile)
+                throws IOException, RepositoryException {
+            try {
+                SAXParserFactory factory = SAXParserFactory.newInstance();
+                factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+                SAXParser parser = factory.newSAXParser();
+                parser.parse(new FilterInputStream(input) {
+                    @Override
+                    public void close() {
+                        // the stream of the archive is closed at the end of the archive
+                    }
+                }, new DocViewHandler(this, path));
+                return true;
+            } catch (ParserConfigurationException ex) {
+                throw new IOException(ex);
+            } catch (NoDocViewException ex) {
+                return false;
+            } catch (SAXException ex) {
+                if (ex.getException() instanceof RepositoryException) {
+                    throw (RepositoryException) ex.getException();
                 }
+                if (ex.getException() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getException();
+                }
+                if (!docViewFile) {
+                    LOG.debug("Not a docview: {} - {}", path, ex.toString());
+                    return false;
+                }
+                throw new IOException("Can't parse " + path + ": " + ex.getMessage(), ex);
             }
+        }
 
-            for (Resource child : resource.getChildren()) {
-                Resource templateChild = templateresource.getChild(child.getName());
-                if (templateChild == null) {
-                    if (!noRemoveNodeNames.contains(child.getName()) && !ResourceUtil.isSyntheticResource(child)) {
-                        thisNodeChanged = true;
+        /**
+         * Updates a file - the binary data of a nt:file (created if not existing) or of an nt:resource.
+         */
+        protected void readFile(@NotNull String path, @NotNull InputStream input)
+                throws IOException, RepositoryException {
+            Node contentNode;
+            if (session.nodeExists(path)) {
+                Node file = session.getNode(path);
+                contentNode = file.hasNode(JCR_CONTENT) ? file.getNode(JCR_CONTENT) : file;
+            } else {
+                Node file = getOrCreateNode(path, NT_FILE);
+                contentNode = file.addNode(JCR_CONTENT, NT_RESOURCE);
+                contentNode.setProperty(JCR_MIMETYPE,
+                        MimeTypes.getMimeType(file.getName(), "application/octet-stream"));
+                changed(contentNode);
+            }
+            markPresent(contentNode.getPath());
+            updateBinary(contentNode, JCR_DATA, input);
+        }
+
+        protected void readBinaryProperty(@NotNull String path, @NotNull String name, @NotNull InputStream input)
+                throws IOException, RepositoryException {
+            if (session.nodeExists(path)) {
+                updateBinary(session.getNode(path), name, input);
+            } else {
+                LOG.warn("Node of binary property not available: {}/{}", path, name);
+            }
+        }
+
+        /**
+         * Sets the binary property if the content is different.
+         */
+        protected void updateBinary(@NotNull Node node, @NotNull String name, @NotNull InputStream input)
+                throws IOException, RepositoryException {
+            File spooled = spool(input);
+            try {
+                if (node.hasProperty(name)) {
+                    Property property = node.getProperty(name);
+                    if (property.getType() == PropertyType.BINARY && !property.isMultiple()) {
+                        Binary binary = property.getBinary();
                         try {
-                            resource.getResourceResolver().delete(child);
-                        } catch (PersistenceException | RuntimeException e) {
-                            LOG.error("Can't delete {}", child.getPath(), e);
-                            throw e;
+                            if (binary.getSize() == spooled.length()) {
+                                try (InputStream existing = binary.getStream();
+                                     InputStream content = new FileInputStream(spooled)) {
+                                    if (IOUtils.contentEquals(existing, content)) {
+                                        return;
+                                    }
+                                }
+                            }
+                        } finally {
+                            binary.dispose();
                         }
+                    } else {
+                        property.remove();
+                    }
+                }
+                try (InputStream content = new FileInputStream(spooled)) {
+                    Binary binary = session.getValueFactory().createBinary(content);
+                    try {
+                        node.setProperty(name, binary);
+                    } finally {
+                        binary.dispose();
                     }
-                } else {
-                    equalize(templateChild, child, session);
                 }
+                changed(node);
+            } finally {
+                deleteSpooled(spooled);
             }
+        }
 
-            // save reference order here, since we might move some nodes
-            List<Resource> templatechildren = IteratorUtils.toList(templateresource.listChildren());
+        @NotNull
+        protected File spool(@NotNull InputStream input) throws IOException {
+            File file = File.createTempFile("sourceupdate", ".tmp");
+            Files.copy(input, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return file;
+        }
 
-            for (Resource templateChild : templateresource.getChildren()) {
-                if (null == resource.getChild(templateChild.getName())) {
-                    session.move(templateChild.getPath(), resource.getPath() + "/" + templateChild.getName());
-                    thisNodeChanged = true;
+        protected void deleteSpooled(@NotNull File file) {
+            if (!file.delete()) {
+                LOG.warn("Can't delete temporary file {}", file);
+            }
+        }
+
+        // nodes
+
+        /**
+         * Updates the node according to a docview element - creates it if not existing.
+         */
+        protected void updateNode(@NotNull String path, @NotNull Attributes attributes) throws RepositoryException {
+            String primaryType = DocViewProperty.parse(PROP_PRIMARY_TYPE, attributes.getValue(PROP_PRIMARY_TYPE)).values[0];
+            Node node;
+            if (session.nodeExists(path)) {
+                node = session.getNode(path);
+                if (!node.getPrimaryNodeType().getName().equals(primaryType)) {
+                    node.setPrimaryType(primaryType);
+                    changed(node);
+                }
+            } else {
+                node = getOrCreateNode(path, primaryType);
+            }
+            placeholders.remove(path);
+            updateMixins(node, attributes.getValue(PROP_MIXINTYPES)); // first this since it might change attributes.
+
+            Set<String> declared = new HashSet<>();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                String qName = attributes.getQName(i);
+                if (qName.startsWith("xmlns")) {
+                    continue;
+                }
+                String name = ISO9075.decode(qName);
+                declared.add(name);
+                if (!ignoredMetadataAttributes.contains(name) && !PROP_PRIMARY_TYPE.equals(name)) {
+                    DocViewProperty property = DocViewProperty.parse(name, attributes.getValue(i));
+                    if (property.type == PropertyType.BINARY && !property.isMulti
+                            && (property.values.length == 0 || StringUtils.isEmpty(property.values[0]))) {
+                        continue; // the content is a separate entry ('{name}.binary')
+                    }
+                    if (property.apply(node)) {
+                        changed(node);
+                    }
                 }
             }
 
-            ensureSameOrdering(templatechildren, resource);
+            List<Property> obsolete = new ArrayList<>();
+            for (PropertyIterator properties = node.getProperties(); properties.hasNext(); ) {
+                Property property = properties.nextProperty();
+                String name = property.getName();
+                if (!declared.contains(name) && !ignoredMetadataAttributes.contains(name)
+                        && !PROP_PRIMARY_TYPE.equals(name) && !property.getDefinition().isProtected()
+                        && !isFileData(node, name)) {
+                    obsolete.add(property);
+                }
+            }
+            for (Property property : obsolete) {
+                property.remove();
+                changed(node);
+            }
+        }
 
-            if (thisNodeChanged) {
-                Resource modifcandidate = resource;
-                while (modifcandidate != null && !ResourceUtil.isNodeType(modifcandidate, TYPE_LAST_MODIFIED)) {
-                    modifcandidate = modifcandidate.getParent();
+        protected void updateMixins(@NotNull Node node, @Nullable String value) throws RepositoryException {
+            Set<String> mixins = new LinkedHashSet<>();
+            if (StringUtils.isNotBlank(value)) {
+                for (String mixin : DocViewProperty.parse(PROP_MIXINTYPES, value).values) {
+                    if (StringUtils.isNotBlank(mixin)) {
+                        mixins.add(mixin);
+                    }
                 }
-                if (modifcandidate != null) {
-                    ResourceHandle.use(modifcandidate).setProperty(PROP_LAST_MODIFIED, Calendar.getInstance());
+            }
+            for (NodeType mixin : node.getMixinNodeTypes()) {
+                if (!mixins.remove(mixin.getName()) && !noRemoveMixins.contains(mixin.getName())) {
+                    node.removeMixin(mixin.getName());
+                    changed(node);
                 }
             }
-        } catch (PersistenceException | RepositoryException | RuntimeException e) {
-            LOG.error("Error at {} : {}", resource.getPath(), e.toString());
-            throw e;
+            for (String mixin : mixins) {
+                node.addMixin(mixin);
+                changed(node);
+            }
         }
-    }
 
-    protected boolean isArray(Object value) {
-        return value != null && value.getClass().isArray();
-    }
+        /**
+         * @return 'true' for the binary data of a file which is not declared in the docview of the file
+         */
+        protected boolean isFileData(@NotNull Node node, @NotNull String name) throws RepositoryException {
+            return JCR_DATA.equals(name) && (node.isNodeType(NT_RESOURCE)
+                    || (JCR_CONTENT.equals(node.getName()) && node.getParent().isNodeType(NT_FILE)));
+        }
 
-    private void copyTypeInformation(ValueMap templatevalues, ModifiableValueMap newvalues) {
-        newvalues.put(PROP_PRIMARY_TYPE, templatevalues.get(PROP_PRIMARY_TYPE));
-        List<String> newMixins = new ArrayList<>(Arrays.asList(templatevalues.get(PROP_MIXINTYPES, new String[0])));
-        for (String mixin : newvalues.get(PROP_MIXINTYPES, new String[0])) {
-            if (noRemoveMixins.contains(mixin) && !newMixins.contains(mixin)) {
-                newMixins.add(mixin);
+        @NotNull
+        protected Node getOrCreateNode(@NotNull String path, @NotNull String primaryType) throws RepositoryException {
+            if (session.nodeExists(path)) {
+                return session.getNode(path);
             }
+            String parentPath = getParentPath(path);
+            if (!session.nodeExists(parentPath)) {
+                placeholders.add(parentPath);
+            }
+            Node parent = getOrCreateNode(parentPath, TYPE_SLING_FOLDER);
+            Node node = parent.addNode(StringUtils.substringAfterLast(path, "/"), primaryType);
+            changed(parent);
+            changed(node);
+            return node;
         }
-        if (!newMixins.isEmpty() || newvalues.containsKey(PROP_MIXINTYPES)) {
-            newvalues.put(PROP_MIXINTYPES, newMixins.toArray(new String[0]));
-        }
-    }
 
-    private void ensureSameOrdering(List<Resource> templatechildren, Resource resource) throws RepositoryException {
-        if (resource.adaptTo(Node.class).getPrimaryNodeType().hasOrderableChildNodes()) {
-            templatechildren = filterNoRemoveNodes(templatechildren);
-            Node node = Objects.requireNonNull(resource.adaptTo(Node.class));
-            List<Resource> resourcechildren = filterNoRemoveNodes(IteratorUtils.toList(resource.listChildren()));
-            if (templatechildren.size() != resourcechildren.size()) {
-                throw new IllegalStateException("Bug: template and resource of " + resource.getPath() +
-                        " should have same size now but have " + templatechildren.size() + " and " + resourcechildren.size());
-            }
-            if (resourcechildren.size() < 2) {
-                return;
+        /**
+         * Removes the nodes below the node which are not present in the archive.
+         */
+        protected void removeObsoleteNodes(@NotNull Node node) throws RepositoryException {
+            List<Node> children = new ArrayList<>();
+            for (NodeIterator iterator = node.getNodes(); iterator.hasNext(); ) {
+                children.add(iterator.nextNode());
             }
-            for (int i = 0; i < resourcechildren.size(); ++i) {
-                if (!StringUtils.equals(resourcechildren.get(i).getName(), templatechildren.get(i).getName())) {
-                    node.orderBefore(templatechildren.get(i).getName(), resourcechildren.get(i).getName());
-                    resourcechildren = filterNoRemoveNodes(IteratorUtils.toList(resource.listChildren()));
+            for (Node child : children) {
+                if (present.contains(child.getPath())) {
+                    removeObsoleteNodes(child);
+                } else if (!noRemoveNodeNames.contains(child.getName()) && !child.getDefinition().isProtected()) {
+                    try {
+                        child.remove();
+                    } catch (RepositoryException | RuntimeException e) {
+                        LOG.error("Can't delete {}", child.getPath(), e);
+                        throw e;
+                    }
+                    changed(node);
+                    saveIfNeeded();
                 }
             }
         }
-    }
 
-    private List<Resource> filterNoRemoveNodes(List<Resource> children) {
-        return children.stream().filter(r -> !noRemoveNodeNames.contains(r.getName())).collect(Collectors.toList());
-    }
-
-    private void checkForSamenameSiblings(Resource templateresource, @NotNull Resource resource)
-            throws IllegalArgumentException, RepositoryException {
-        Node node = resource.adaptTo(Node.class);
-        NodeDefinition definition = node.getDefinition();
-        if (definition.allowsSameNameSiblings()) {
-            Set<String> nodenames = new HashSet<>();
-            for (Resource child : templateresource.getChildren()) {
-                if (nodenames.contains(child.getName())) {
-                    throw new IllegalArgumentException("Equally named children not supported yet: existing resource " + templateresource.getPath() + " has two " + child.getName());
+        /**
+         * Orders the children of the orderable nodes as declared in the archive.
+         */
+        protected void applyOrdering() throws RepositoryException {
+            for (Map.Entry<String, List<String>> entry : childOrder.entrySet()) {
+                if (!session.nodeExists(entry.getKey())) {
+                    continue;
+                }
+                Node node = session.getNode(entry.getKey());
+                if (!node.getPrimaryNodeType().hasOrderableChildNodes()) {
+                    continue;
+                }
+                List<String> order = new ArrayList<>();
+                for (String name : entry.getValue()) {
+                    if (!noRemoveNodeNames.contains(name) && node.hasNode(name)) {
+                        order.add(name);
+                    }
+                }
+                List<String> current = new ArrayList<>();
+                for (NodeIterator iterator = node.getNodes(); iterator.hasNext(); ) {
+                    String name = iterator.nextNode().getName();
+                    if (order.contains(name)) {
+                        current.add(name);
+                    }
+                }
+                for (int i = 0; i < order.size(); ++i) {
+                    if (!StringUtils.equals(current.get(i), order.get(i))) {
+                        node.orderBefore(order.get(i), current.get(i));
+                        current.remove(order.get(i));
+                        current.add(i, order.get(i));
+                        changed(node);
+                    }
                 }
-                nodenames.add(child.getName());
+                saveIfNeeded();
             }
-            nodenames.clear();
-            for (Resource child : resource.getChildren()) {
-                if (nodenames.contains(child.getName())) {
-                    throw new IllegalArgumentException("Equally named children not supported yet: imported resource " + resource.getPath() + " has two " + child.getName());
+        }
+
+        /**
+         * Sets the lastModified property of the nearest mix:lastModified node (or ancestor) of the changed nodes.
+         */
+        protected void touchLastModified() throws RepositoryException {
+            Set<String> touched = new HashSet<>();
+            Calendar now = Calendar.getInstance();
+            for (String path : changed) {
+                while (path != null && !touched.contains(path)) {
+                    if (session.nodeExists(path)) {
+                        Node node = session.getNode(path);
+                        if (node.isNodeType(TYPE_LAST_MODIFIED)) {
+                            node.setProperty(PROP_LAST_MODIFIED, now);
+                            touched.add(path);
+                            break;
+                        }
+                    }
+                    path = "/".equals(path) ? null : getParentPath(path);
                 }
-                nodenames.add(child.getName());
+            }
+        }
+
+        // state
+
+        protected boolean isInScope(@NotNull String path) {
+            return path.equals(rootPath) || path.startsWith(rootPath + "/");
+        }
+
+        protected boolean isAncestorOfRoot(@NotNull String path) {
+            return "/".equals(path) || rootPath.startsWith(path + "/");
+        }
+
+        /**
+         * Marks the node and its ancestors within the root path as present in the archive.
+         */
+        protected void markPresent(@NotNull String path) {
+            while (isInScope(path) && present.add(path)) {
+                path = getParentPath(path);
+            }
+        }
+
+        protected void changed(@NotNull Node node) throws RepositoryException {
+            changed.add(node.getPath());
+            pendingChanges++;
+        }
+
+        /**
+         * Saves the changes if there are enough of them and no placeholder is pending.
+         */
+        protected void saveIfNeeded() throws RepositoryException {
+            if (pendingChanges >= SAVE_THRESHOLD && placeholders.isEmpty()) {
+                LOG.debug("Saving {} changes", pendingChanges);
+                session.save();
+                pendingChanges = 0;
             }
         }
     }
 
-    protected static class ImportErrorListener implements ProgressTrackerListener {
+    @NotNull
+    protected static String getParentPath(@NotNull String path) {
+        String parentPath = StringUtils.substringBeforeLast(path, "/");
+        return StringUtils.isNotEmpty(parentPath) ? parentPath : "/";
+    }
 
-        public final List<Pair<String, Exception>> errors = new ArrayList<>();
+    /**
+     * Thrown if an XML file is not a docview (an XML file to import as file).
+     */
+    protected static class NoDocViewException extends SAXException {
+
+        public NoDocViewException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Applies the elements of a docview XML to the nodes: an element with a primary type describes a node, an
+     * element without properties declares the position of a child only.
+     */
+    protected static class DocViewHandler extends DefaultHandler {
+
+        protected final Update update;
+        protected final String rootPath;
+
+        /** the paths of the open elements and the names of their children */
+        protected final Deque<Pair<String, List<String>>> elements = new ArrayDeque<>();
+
+        public DocViewHandler(@NotNull Update update, @NotNull String rootPath) {
+            this.update = update;
+            this.rootPath = rootPath;
+        }
 
         @Override
-        public void onMessage(Mode mode, String action, String path) {
-            LOG.debug("Import message {} : {} : {}", mode, action, path);
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            String path;
+            if (elements.isEmpty()) {
+                if (!DOCVIEW_ROOT.equals(qName)) {
+                    throw new NoDocViewException("not a docview: " + rootPath);
+                }
+                path = rootPath;
+            } else {
+                String name = ISO9075.decode(qName);
+                Pair<String, List<String>> parent = elements.peek();
+                if (parent.getRight().contains(name)) {
+                    throw new IllegalArgumentException("Equally named children not supported yet: " + parent.getLeft() + " has two " + name);
+                }
+                parent.getRight().add(name);
+                path = ("/".equals(parent.getLeft()) ? "" : parent.getLeft()) + "/" + name;
+            }
+            elements.push(Pair.of(path, new ArrayList<>()));
+            try {
+                if (elements.size() == 1) {
+                    registerNamespaces(attributes);
+                }
+                if (update.isInScope(path)) {
+                    update.markPresent(path);
+                    if (attributes.getValue(PROP_PRIMARY_TYPE) != null) { // otherwise an order declaration only
+                        update.updateNode(path, attributes);
+                    }
+                }
+            } catch (RepositoryException ex) {
+                LOG.error("Error at {} : {}", path, ex.toString());
+                throw new SAXException(ex);
+            }
         }
 
         @Override
-        public void onError(Mode mode, String path, Exception e) {
-            errors.add(Pair.of(path, e));
-            LOG.debug("Import error {} : {} : {}", mode, path, String.valueOf(e));
+        public void endElement(String uri, String localName, String qName) {
+            Pair<String, List<String>> element = elements.pop();
+            if (update.isInScope(element.getLeft()) && !element.getRight().isEmpty()) {
+                update.childOrder.put(element.getLeft(), element.getRight());
+            }
+        }
+
+        /**
+         * Registers the namespaces declared in the docview which are not known in the repository.
+         */
+        protected void registerNamespaces(@NotNull Attributes attributes) throws RepositoryException {
+            for (int i = 0; i < attributes.getLength(); i++) {
+                String qName = attributes.getQName(i);
+                if (qName.startsWith("xmlns:")) {
+                    String prefix = qName.substring("xmlns:".length());
+                    try {
+                        update.session.getNamespaceURI(prefix);
+                    } catch (NamespaceException ex) {
+                        update.session.getWorkspace().getNamespaceRegistry()
+                                .registerNamespace(prefix, attributes.getValue(i));
+                    }
+                }
+            }
         }
     }
 }
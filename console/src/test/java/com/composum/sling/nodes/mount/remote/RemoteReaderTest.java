@@ -0,0 +1,186 @@
+package com.composum.sling.nodes.mount.remote;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ErrorCollector;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the conditional and the concurrent loading of the {@link RemoteReader} against a local HTTP server.
+ */
+public class RemoteReaderTest {
+
+    public static final String ETAG = "\"v1\"";
+
+    @Rule
+    public final ErrorCollector ec = new ErrorCollector();
+
+    protected HttpServer server;
+    protected ExecutorService serverExecutor;
+    /** the JSON content of the remote resources by request path */
+    protected final Map<String, String> content = new HashMap<>();
+    /** the received requests: the path and the 'If-None-Match' header if present */
+    protected final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    /** if not null the requests of the children wait until all children are requested */
+    protected CountDownLatch childrenRequested;
+    protected final List<Boolean> concurrent = Collections.synchronizedList(new ArrayList<>());
+
+    protected RemoteProvider provider;
+    protected RemoteResolver resolver;
+
+    @Before
+    public void setup() throws IOException {
+        content.put("/content/test/.1.json", "{\"jcr:primaryType\":\"nt:unstructured\",\"title\":\"test\","
+                + "\"a\":{\"jcr:primaryType\":\"nt:unstructured\"},"
+                + "\"b\":{\"jcr:primaryType\":\"nt:unstructured\"},"
+                + "\"c\":{\"jcr:primaryType\":\"nt:unstructured\"}}");
+        for (String name : new String[]{"a", "b", "c"}) {
+            content.put("/content/test/" + name + "/.1.json",
+                    "{\"jcr:primaryType\":\"nt:unstructured\",\"name\":\"" + name + "\"}");
+        }
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        RemoteProvider.Config config = mock(RemoteProvider.Config.class);
+        when(config.provider_root()).thenReturn("/mnt/remote");
+        when(config.resolver_search_path()).thenReturn(new String[0]);
+        when(config.ignored_patterns()).thenReturn(new String[0]);
+        when(config.remote_url()).thenReturn("http://localhost:" + server.getAddress().getPort());
+        when(config.client_configuration()).thenReturn(new String[0]);
+        when(config.request_headers()).thenReturn(new String[0]);
+        when(config.connection_pool_size()).thenReturn(4);
+        when(config.connection_time_to_live()).thenReturn(60L);
+        when(config.prefetch_depth()).thenReturn(1);
+        when(config.prefetch_threads()).thenReturn(4);
+        when(config.cache_time_to_live()).thenReturn(60L);
+        when(config.cache_max_entries()).thenReturn(100);
+        provider = new RemoteProvider();
+        provider.clientSetup = mock(RemoteClientSetup.class);
+        provider.activate(null, config);
+        resolver = new RemoteResolver(provider, mock(ResourceResolver.class));
+    }
+
+    @After
+    public void teardown() {
+        provider.deactivate();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    protected void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        requests.add(path + (ifNoneMatch != null ? " " + ifNoneMatch : ""));
+        CountDownLatch latch = childrenRequested;
+        if (latch != null && path.startsWith("/content/test/") && !path.startsWith("/content/test/.")) {
+            latch.countDown();
+            try {
+                concurrent.add(latch.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        String json = content.get(path);
+        if (json == null) {
+            exchange.sendResponseHeaders(404, -1);
+        } else if (ETAG.equals(ifNoneMatch)) {
+            exchange.sendResponseHeaders(304, -1);
+        } else {
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(bytes);
+            }
+        }
+        exchange.close();
+    }
+
+    @Test
+    public void expiredEntryRevalidated() {
+        RemoteResource resource = provider.remoteReader.loadResource(
+                new RemoteResource(resolver, "/mnt/remote/content/test"), false);
+        ec.checkThat(resource != null ? resource.getValueMap().get("title", String.class) : null, is("test"));
+
+        // a valid cache entry is used without a request
+        provider.remoteReader.loadResource(new RemoteResource(resolver, "/mnt/remote/content/test"), false);
+        ec.checkThat(requests, is(Collections.singletonList("/content/test/.1.json")));
+
+        // an expired entry is revalidated with its entity tag and restored on 'not modified'
+        RemoteCache.Entry cached = provider.remoteCache.get("/mnt/remote/content/test");
+        ec.checkThat(cached != null && cached.isRevalidatable(), is(true));
+        if (cached != null) {
+            cached.validated = 0L;
+        }
+        resource = provider.remoteReader.loadResource(new RemoteResource(resolver, "/mnt/remote/content/test"), false);
+        ec.checkThat(requests, is(Arrays.asList("/content/test/.1.json", "/content/test/.1.json " + ETAG)));
+        ec.checkThat(resource != null ? resource.getValueMap().get("title", String.class) : null, is("test"));
+        ec.checkThat(resource != null ? resource.children.keySet().toString() : null, is("[a, b, c]"));
+        ec.checkThat(cached != null && provider.remoteCache.isValid(cached), is(true));
+    }
+
+    @Test
+    public void listedChildrenLoadedConcurrently() {
+        childrenRequested = new CountDownLatch(3);
+        RemoteResource resource = new RemoteResource(resolver, "/mnt/remote/content/test");
+        List<String> children = new ArrayList<>();
+        for (Resource child : resource.getChildren()) {
+            children.add(child.getName() + ":" + child.getValueMap().get("name", String.class));
+        }
+        ec.checkThat(children.toString(), is("[a:a, b:b, c:c]"));
+        ec.checkThat(new TreeSet<>(requests).toString(), is("[/content/test/.1.json, /content/test/a/.1.json, "
+                + "/content/test/b/.1.json, /content/test/c/.1.json]"));
+        // each request of a child has been received while the other children were requested
+        ec.checkThat(concurrent, is(Arrays.asList(true, true, true)));
+    }
+
+    @Test
+    public void prefetchPoolStoppedOnDeactivation() throws Exception {
+        ThreadPoolExecutor executor = provider.prefetchExecutor;
+        Thread thread = executor.getThreadFactory().newThread(() -> {
+        });
+        ec.checkThat(thread.isDaemon(), is(true));
+        ec.checkThat(thread.getName().startsWith("composum-remote-prefetch-"), is(true));
+
+        Future<?> running = executor.submit(() -> {
+            Thread.sleep(200L);
+            return null;
+        });
+        provider.deactivate();
+        ec.checkThat(running.isDone(), is(true));
+        ec.checkThat(executor.isTerminated(), is(true));
+        ec.checkThat(provider.prefetchExecutor, nullValue());
+    }
+}
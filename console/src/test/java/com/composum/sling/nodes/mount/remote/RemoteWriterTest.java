@@ -0,0 +1,148 @@
+package com.composum.sling.nodes.mount.remote;
+
+import org.apache.http.HttpEntity;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.wrappers.ModifiableValueMapDecorator;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ErrorCollector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the batched commit of the {@link RemoteWriter}.
+ */
+public class RemoteWriterTest {
+
+    @Rule
+    public final ErrorCollector ec = new ErrorCollector();
+
+    protected RemoteProvider provider;
+    protected TestWriter writer;
+    protected RemoteResolver resolver;
+
+    /** records the requests instead of sending them */
+    protected static class TestWriter extends RemoteWriter {
+
+        protected final List<String> requests = new ArrayList<>();
+        protected int statusCode = 200;
+        protected Parameters form;
+
+        public TestWriter(@NotNull final RemoteProvider provider) {
+            super(provider);
+        }
+
+        @NotNull
+        @Override
+        protected HttpEntity buildForm(@NotNull final Parameters parameters) {
+            form = parameters;
+            return super.buildForm(parameters);
+        }
+
+        @Override
+        public int postEntity(@NotNull final ResourceChange change, @Nullable final String path,
+                              @NotNull final HttpEntity httpEntity) {
+            requests.add((path != null ? path : change.resource.getPath()) + " " + form);
+            return statusCode;
+        }
+    }
+
+    @Before
+    public void setup() {
+        provider = new RemoteProvider();
+        provider.localRoot = "/mnt/remote";
+        writer = new TestWriter(provider);
+        resolver = mock(RemoteResolver.class);
+    }
+
+    @Test
+    public void batchedCommit() throws Exception {
+        provider.batchCommit = true;
+        ec.checkThat(writer.commitChanges(changeSet()), is(true));
+        ec.checkThat(writer.requests, is(Arrays.asList(
+                "/mnt/remote/content [./a/x/title=new, ./b/y/flag=on]",
+                "/mnt/remote/content/src [:operation=copy, :dest=/content/c]",
+                "/mnt/remote/content/d [:operation=delete, :applyTo=/content/d/one, :applyTo=/content/d/two/three]")));
+    }
+
+    @Test
+    public void singleRequestsByDefault() throws Exception {
+        ec.checkThat(provider.batchCommit, is(false));
+        ec.checkThat(writer.commitChanges(changeSet()), is(true));
+        ec.checkThat(writer.requests, is(Arrays.asList(
+                "/mnt/remote/content/a/x [title=new]",
+                "/mnt/remote/content/b/y [flag=on]",
+                "/mnt/remote/content/src [:operation=copy, :dest=/content/c]",
+                "/mnt/remote/content/d/one [:operation=delete]",
+                "/mnt/remote/content/d/two/three [:operation=delete]")));
+    }
+
+    @Test
+    public void failedBatchReported() throws Exception {
+        provider.batchCommit = true;
+        writer.statusCode = 500;
+        RemoteWriter.ChangeSet changeSet = new RemoteWriter.ChangeSet();
+        changeSet.addModify(resource("/mnt/remote/content/a/x", "title", "old", "new"));
+        changeSet.addModify(resource("/mnt/remote/content/b/y", "flag", null, "on"));
+        changeSet.addDelete(resource("/mnt/remote/content/d/one", null, null, null));
+        changeSet.addDelete(resource("/mnt/remote/content/d/two", null, null, null));
+        ec.checkThat(writer.commitChanges(changeSet), is(false));
+        ec.checkThat(writer.requests.size(), is(2));
+        ec.checkThat(changeSet.isEmpty(), is(true));
+
+        writer.statusCode = 201;
+        changeSet.addDelete(resource("/mnt/remote/content/d/one", null, null, null));
+        changeSet.addDelete(resource("/mnt/remote/content/d/two", null, null, null));
+        ec.checkThat(writer.commitChanges(changeSet), is(true));
+    }
+
+    @Test
+    public void commonAncestor() {
+        ec.checkThat(RemoteWriter.commonAncestor(Arrays.asList("/content/a/b", "/content/a/c", "/content/a")),
+                is("/content/a"));
+        ec.checkThat(RemoteWriter.commonAncestor(Arrays.asList("/content/ab", "/content/a")), is("/content"));
+        ec.checkThat(RemoteWriter.commonAncestor(Arrays.asList("/content", "/apps")), is("/"));
+        ec.checkThat(RemoteWriter.relativePath("/", "/content/a"), is("content/a"));
+        ec.checkThat(RemoteWriter.relativePath("/content", "/content/a/b"), is("a/b"));
+    }
+
+    protected RemoteWriter.ChangeSet changeSet() {
+        RemoteWriter.ChangeSet changeSet = new RemoteWriter.ChangeSet();
+        changeSet.addModify(resource("/mnt/remote/content/a/x", "title", "old", "new"));
+        changeSet.addModify(resource("/mnt/remote/content/b/y", "flag", null, "on"));
+        Resource source = mock(Resource.class);
+        when(source.getPath()).thenReturn("/mnt/remote/content/src");
+        changeSet.addCopy(resource("/mnt/remote/content/c", null, null, null), source);
+        changeSet.addDelete(resource("/mnt/remote/content/d/one", null, null, null));
+        changeSet.addDelete(resource("/mnt/remote/content/d/two/three", null, null, null));
+        return changeSet;
+    }
+
+    protected RemoteResource resource(@NotNull final String path, @Nullable final String name,
+                                      @Nullable final String value, @Nullable final String modified) {
+        RemoteResource resource = new RemoteResource(resolver, path);
+        if (name != null) {
+            Map<String, Object> values = new HashMap<>();
+            if (value != null) {
+                values.put(name, value);
+            }
+            resource.values = new ValueMapDecorator(values);
+            Map<String, Object> modifiedValues = new HashMap<>(values);
+            modifiedValues.put(name, modified);
+            resource.modifiedValues = new ModifiableValueMapDecorator(modifiedValues);
+        }
+        return resource;
+    }
+}
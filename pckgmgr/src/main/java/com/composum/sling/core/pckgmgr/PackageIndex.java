@@ -0,0 +1,483 @@
+package com.composum.sling.core.pckgmgr;
+
+import com.composum.sling.core.pckgmgr.util.PackageUtil;
+import com.composum.sling.core.util.JsonUtil;
+import com.google.gson.stream.JsonWriter;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.vault.packaging.JcrPackage;
+import org.apache.jackrabbit.vault.packaging.JcrPackageDefinition;
+import org.apache.jackrabbit.vault.packaging.JcrPackageManager;
+import org.apache.jackrabbit.vault.util.JcrConstants;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static com.composum.sling.core.pckgmgr.util.PackageUtil.DATE_FORMAT;
+
+/**
+ * An in-memory index of the packages in the package root which serves the package lists, the package tree and the
+ * package search of the package manager without opening each package on each request.
+ * <p>
+ * The index is built once with the session of a user - the packages visible for a user depend on its permissions,
+ * so each user has its own index - and is maintained incrementally: the observation events of the package root mark
+ * the changed paths and only the packages at these paths are read again on the next access.
+ */
+@Component(
+        service = {PackageIndex.class, ResourceChangeListener.class},
+        property = {
+                Constants.SERVICE_DESCRIPTION + "=Composum Nodes Package Index",
+                ResourceChangeListener.PATHS + "=" + PackageIndex.PACKAGE_ROOT
+        }
+)
+public class PackageIndex implements ResourceChangeListener, ExternalResourceChangeListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PackageIndex.class);
+
+    public static final String PACKAGE_ROOT = "/etc/packages";
+
+    /** the folder of the snapshots of the installed packages which are not listed */
+    public static final String SNAPSHOT_FOLDER = ".snapshot";
+
+    /** the maximum number of user indexes kept; the least recently used index is dropped if that's exceeded */
+    public static final int MAX_USERS = 32;
+
+    /** the number of changed paths which are refreshed incrementally; a complete rebuild is done if exceeded */
+    public static final int MAX_DIRTY_PATHS = 256;
+
+    protected final Map<String, UserIndex> indexes = new LinkedHashMap<String, UserIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UserIndex> eldest) {
+            return size() > MAX_USERS;
+        }
+    };
+
+    /**
+     * @return all indexed packages visible for the user of the package manager in the order of their paths
+     */
+    @Nonnull
+    public List<Entry> listPackages(@Nonnull JcrPackageManager manager) throws RepositoryException {
+        UserIndex index = getIndex(manager);
+        synchronized (index) {
+            index.refresh(manager);
+            return new ArrayList<>(index.entries.values());
+        }
+    }
+
+    /**
+     * @param path the path of the requested tree node: a group path or the path of a package ('/group/file.zip')
+     * @return the tree node built from the index as {@link PackageUtil#getTreeNode} would do it
+     */
+    @Nonnull
+    public PackageUtil.TreeNode getTreeNode(@Nonnull JcrPackageManager manager, @Nonnull String path)
+            throws RepositoryException {
+        PackageUtil.TreeNode treeNode = new PackageUtil.TreeNode(path);
+        UserIndex index = getIndex(manager);
+        synchronized (index) {
+            index.refresh(manager);
+            int lastSlash = path.lastIndexOf('/');
+            List<Entry> group = index.byGroup.get(path.substring(0, lastSlash + 1));
+            if (group != null) {
+                for (Entry entry : group) {
+                    if (treeNode.addPackage(entry.groupPath, entry.filename, entry)) {
+                        return treeNode;
+                    }
+                }
+            }
+            String groupUri = path.endsWith("/") ? path : path + "/";
+            for (List<Entry> entries : index.byGroup.subMap(groupUri, groupUri + Character.MAX_VALUE).values()) {
+                for (Entry entry : entries) {
+                    treeNode.addPackage(entry.groupPath, entry.filename, entry);
+                }
+            }
+        }
+        return treeNode;
+    }
+
+    /**
+     * Finds the packages by a search term; the term is split into words like the package properties and each word
+     * must be the prefix of a word of the group, the name, the version or the description of a found package.
+     *
+     * @return the found packages in the order of their paths
+     */
+    @Nonnull
+    public List<Entry> find(@Nonnull JcrPackageManager manager, @Nonnull String term) throws RepositoryException {
+        List<Entry> result = new ArrayList<>();
+        Set<String> tokens = tokenize(term);
+        if (!tokens.isEmpty()) {
+            UserIndex index = getIndex(manager);
+            synchronized (index) {
+                index.refresh(manager);
+                Set<String> found = null;
+                for (String token : tokens) {
+                    Set<String> matching = new HashSet<>();
+                    for (Map.Entry<String, Set<String>> item : index.tokens.tailMap(token).entrySet()) {
+                        if (!item.getKey().startsWith(token)) {
+                            break;
+                        }
+                        matching.addAll(item.getValue());
+                    }
+                    if (found == null) {
+                        found = matching;
+                    } else {
+                        found.retainAll(matching);
+                    }
+                    if (found.isEmpty()) {
+                        break;
+                    }
+                }
+                for (String path : new TreeSet<>(found)) {
+                    result.add(index.entries.get(path));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Marks a package path as changed in all indexes, e.g. after a change of a package done by the package manager
+     * itself to make the change visible before the observation event is received.
+     *
+     * @param path the path of a package or of a group folder relative to the package root; the complete index is
+     *             refreshed if the path is the root path or null
+     */
+    public void invalidate(String path) {
+        for (UserIndex index : getIndexes()) {
+            synchronized (index) {
+                if (StringUtils.isBlank(path) || "/".equals(path)) {
+                    index.stale = true;
+                } else {
+                    index.markDirty(path);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onChange(@Nonnull List<ResourceChange> changes) {
+        Collection<UserIndex> indexes = getIndexes();
+        if (!indexes.isEmpty()) {
+            for (ResourceChange change : changes) {
+                String path = change.getPath();
+                if (path.equals(PACKAGE_ROOT) || path.startsWith(PACKAGE_ROOT + "/")) {
+                    path = path.substring(PACKAGE_ROOT.length());
+                    for (UserIndex index : indexes) {
+                        synchronized (index) {
+                            if (StringUtils.isBlank(path)) {
+                                index.stale = true;
+                            } else {
+                                index.markDirty(path);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Nonnull
+    protected Collection<UserIndex> getIndexes() {
+        synchronized (indexes) {
+            return new ArrayList<>(indexes.values());
+        }
+    }
+
+    @Nonnull
+    protected UserIndex getIndex(@Nonnull JcrPackageManager manager) throws RepositoryException {
+        String userId = manager.getPackageRoot().getSession().getUserID();
+        synchronized (indexes) {
+            UserIndex index = indexes.get(userId);
+            if (index == null) {
+                index = new UserIndex();
+                indexes.put(userId, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * The index of the packages visible for one user.
+     */
+    protected static class UserIndex {
+
+        /** the packages by the path of their nodes relative to the package root */
+        protected final TreeMap<String, Entry> entries = new TreeMap<>();
+        /** the packages by their group path ('/group/') - the precomputed tree */
+        protected final TreeMap<String, List<Entry>> byGroup = new TreeMap<>();
+        /** the paths of the packages by the words of their properties - the search structure */
+        protected final TreeMap<String, Set<String>> tokens = new TreeMap<>();
+
+        protected final Set<String> dirty = new LinkedHashSet<>();
+        protected boolean stale = true;
+
+        protected void markDirty(@Nonnull String path) {
+            if (!stale && !(path + "/").contains("/" + SNAPSHOT_FOLDER + "/")) {
+                if (dirty.size() < MAX_DIRTY_PATHS) {
+                    dirty.add(path);
+                } else {
+                    stale = true;
+                }
+            }
+        }
+
+        protected void refresh(@Nonnull JcrPackageManager manager) throws RepositoryException {
+            Node root = manager.getPackageRoot();
+            if (stale) {
+                long start = System.currentTimeMillis();
+                entries.clear();
+                byGroup.clear();
+                tokens.clear();
+                dirty.clear();
+                stale = false;
+                scan(manager, root, root.getPath().length());
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("package index built for '{}': {} packages ({}ms)", root.getSession().getUserID(),
+                            entries.size(), System.currentTimeMillis() - start);
+                }
+            } else if (!dirty.isEmpty()) {
+                Session session = root.getSession();
+                String rootPath = root.getPath();
+                // collapse the changed paths to the nodes to read again: the enclosing package of a path if the
+                // path is a part of a package, the path itself otherwise
+                Set<String> targets = new TreeSet<>();
+                for (String path : dirty) {
+                    targets.add(getTarget(session, rootPath, path));
+                }
+                dirty.clear();
+                String previous = null;
+                for (String path : targets) {
+                    if (previous == null || !path.startsWith(previous + "/")) {
+                        previous = path;
+                        String end = path + "/" + Character.MAX_VALUE;
+                        for (String key : new ArrayList<>(entries.subMap(path, true, end, true).keySet())) {
+                            if (key.equals(path) || key.startsWith(path + "/")) {
+                                remove(key);
+                            }
+                        }
+                        if (session.nodeExists(rootPath + path)) {
+                            scan(manager, session.getNode(rootPath + path), rootPath.length());
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the path of the package containing the path or the path itself if it's not a part of a package
+         */
+        @Nonnull
+        protected String getTarget(@Nonnull Session session, @Nonnull String rootPath, @Nonnull String path)
+                throws RepositoryException {
+            for (String key = path; !key.isEmpty(); key = key.substring(0, key.lastIndexOf('/'))) {
+                if (entries.containsKey(key)) {
+                    return key;
+                }
+                if (!key.equals(path) && session.nodeExists(rootPath + key)) {
+                    Node node = session.getNode(rootPath + key);
+                    if (node.isNodeType(JcrConstants.NT_FILE)) {
+                        return key; // probably a package which is not complete yet
+                    }
+                }
+            }
+            return path;
+        }
+
+        protected void scan(@Nonnull JcrPackageManager manager, @Nonnull Node node, int rootPathLength)
+                throws RepositoryException {
+            if (SNAPSHOT_FOLDER.equals(node.getName())) {
+                return;
+            }
+            if (node.isNodeType(JcrConstants.NT_FILE)) {
+                JcrPackage jcrPackage = manager.open(node, false);
+                if (jcrPackage != null) {
+                    try {
+                        JcrPackageDefinition definition = jcrPackage.getDefinition();
+                        if (definition != null) {
+                            add(new Entry(node.getPath().substring(rootPathLength), jcrPackage, definition));
+                        }
+                    } finally {
+                        jcrPackage.close();
+                    }
+                }
+            } else if (node.isNodeType(JcrConstants.NT_HIERARCHYNODE) || node.getPath().length() == rootPathLength) {
+                NodeIterator children = node.getNodes();
+                while (children.hasNext()) {
+                    scan(manager, children.nextNode(), rootPathLength);
+                }
+            }
+        }
+
+        protected void add(@Nonnull Entry entry) {
+            remove(entry.path);
+            entries.put(entry.path, entry);
+            byGroup.computeIfAbsent(entry.groupPath, k -> new ArrayList<>()).add(entry);
+            for (String token : entry.tokens) {
+                tokens.computeIfAbsent(token, k -> new HashSet<>()).add(entry.path);
+            }
+        }
+
+        protected void remove(@Nonnull String path) {
+            Entry entry = entries.remove(path);
+            if (entry != null) {
+                List<Entry> group = byGroup.get(entry.groupPath);
+                if (group != null) {
+                    group.remove(entry);
+                    if (group.isEmpty()) {
+                        byGroup.remove(entry.groupPath);
+                    }
+                }
+                for (String token : entry.tokens) {
+                    Set<String> paths = tokens.get(token);
+                    if (paths != null) {
+                        paths.remove(path);
+                        if (paths.isEmpty()) {
+                            tokens.remove(token);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The immutable snapshot of the properties of a package used by the package manager views.
+     */
+    public static class Entry implements PackageUtil.TreeItem {
+
+        /** the path of the package node relative to the package root */
+        public final String path;
+        public final String group;
+        public final String name;
+        public final String version;
+        public final String description;
+        public final String groupPath;
+        public final String filename;
+        public final Calendar definitionLastModified;
+        public final Calendar lastUnpacked;
+        public final boolean includeVersions;
+        public final Calendar lastModified;
+        public final boolean installed;
+        public final boolean sealed;
+        public final boolean valid;
+
+        protected final Set<String> tokens;
+
+        public Entry(@Nonnull String path, @Nonnull JcrPackage jcrPackage, @Nonnull JcrPackageDefinition definition)
+                throws RepositoryException {
+            this.path = path;
+            group = definition.get(JcrPackageDefinition.PN_GROUP);
+            name = definition.get(JcrPackageDefinition.PN_NAME);
+            version = definition.get(JcrPackageDefinition.PN_VERSION);
+            description = definition.get(JcrPackageDefinition.PN_DESCRIPTION);
+            groupPath = PackageUtil.getGroupPath(definition);
+            filename = PackageUtil.getFilename(jcrPackage);
+            definitionLastModified = definition.getCalendar(JcrPackageDefinition.PN_LASTMODIFIED);
+            lastUnpacked = definition.getCalendar(JcrPackageDefinition.PN_LAST_UNPACKED);
+            includeVersions = definition.getBoolean("includeVersions");
+            lastModified = PackageUtil.getLastModified(jcrPackage);
+            installed = jcrPackage.isInstalled();
+            sealed = jcrPackage.isSealed();
+            valid = jcrPackage.isValid();
+            Set<String> words = new HashSet<>();
+            words.addAll(tokenize(group));
+            words.addAll(tokenize(name));
+            words.addAll(tokenize(version));
+            words.addAll(tokenize(description));
+            tokens = Collections.unmodifiableSet(words);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the tree path of the package ('/group/file.zip')
+         */
+        @Override
+        public String getPath() {
+            return groupPath + filename;
+        }
+
+        /**
+         * writes the package as tree item, the same as {@link PackageUtil.PackageItem#toJson(JsonWriter)}
+         */
+        @Override
+        public void toJson(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("definition");
+            PackageUtil.toJson(writer, group, name, version, description,
+                    definitionLastModified, lastUnpacked, includeVersions);
+            JsonUtil.jsonMapEntries(writer, PackageUtil.getTreeItemAttributes(getPath(), filename));
+            writer.endObject();
+        }
+
+        /**
+         * writes the package as item of a search result
+         */
+        public void toQueryJson(JsonWriter writer) throws IOException {
+            SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
+            writer.beginObject();
+            writer.name("state").beginObject();
+            writer.name("installed").value(installed ? "on" : "off");
+            writer.name("sealed").value(sealed ? "on" : "off");
+            writer.name("valid").value(valid ? "on" : "off");
+            writer.endObject();
+            writer.name("group").value(group);
+            writer.name("name").value(name);
+            writer.name("version").value(version);
+            writer.name("lastModified").value(lastModified != null ? dateFormat.format(lastModified.getTime()) : null);
+            writer.name("path").value(path);
+            writer.endObject();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Entry && path.equals(((Entry) other).path);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode();
+        }
+    }
+
+    /**
+     * @return the lower case words of a text - the parts separated by anything else than letters and digits
+     */
+    @Nonnull
+    protected static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (StringUtils.isNotBlank(text)) {
+            for (String token : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+                if (!token.isEmpty()) {
+                    tokens.add(token);
+                }
+            }
+        }
+        return tokens;
+    }
+}
@@ -103,6 +103,13 @@ public class PackageJobExecutor extends AbstractJobExecutor<String> {
     @Deactivate
     protected void deactivate() {
         this.config = null;
+        shutdownWorkerPool();
+    }
+
+    @Override
+    protected int getWorkerPoolSize() {
+        Configuration configuration = config;
+        return configuration != null ? configuration.worker_pool_size() : DEFAULT_WORKER_POOL_SIZE;
     }
 
     @Nonnull
@@ -345,6 +352,10 @@ public class PackageJobExecutor extends AbstractJobExecutor<String> {
         @AttributeDefinition(name = "track idle time",
                 description = "idle time in seconds for the progress tracker to check the operations end")
         int package_progress_wait() default 10;
+
+        @AttributeDefinition(name = "worker pool size",
+                description = "the maximum number of package operations executed at the same time; further operations are queued")
+        int worker_pool_size() default DEFAULT_WORKER_POOL_SIZE;
     }
 
 }
@@ -7,12 +7,14 @@ import com.composum.sling.core.concurrent.JobMonitor;
 import com.composum.sling.core.concurrent.JobUtil;
 import com.composum.sling.core.pckgmgr.util.PackageProgressTracker;
 import com.composum.sling.core.pckgmgr.util.PackageUtil;
-import com.composum.sling.core.pckgmgr.util.PackageUtil.PackageItem;
+import com.composum.sling.core.pckgmgr.util.UploadSpool;
 import com.composum.sling.core.service.ServiceRestrictions;
 import com.composum.sling.core.service.RestrictedService;
 import com.composum.sling.core.servlet.AbstractServiceServlet;
 import com.composum.sling.core.servlet.ServletOperation;
 import com.composum.sling.core.servlet.ServletOperationSet;
+import com.composum.sling.core.util.ByteRanges;
+import com.composum.sling.core.util.HttpUtil;
 import com.composum.sling.core.util.RequestUtil;
 import com.composum.sling.core.util.ResponseUtil;
 import com.composum.sling.core.util.XSS;
@@ -20,7 +22,6 @@ import com.composum.sling.nodes.NodesConfiguration;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.vault.fs.api.FilterSet;
 import org.apache.jackrabbit.vault.fs.api.ImportMode;
@@ -57,17 +58,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jcr.Binary;
+import javax.jcr.Node;
 import javax.jcr.Property;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
-import javax.jcr.query.Query;
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
@@ -75,9 +76,9 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * The servlet to provide download and upload of content packages and package definitions.
@@ -104,9 +105,14 @@ public class PackageServlet extends AbstractServiceServlet {
     public static final String SERVLET_PATH = "/bin/cpm/package";
     public static final String PARAM_GROUP = "group";
     public static final String PARAM_FORCE = "force";
+    public static final String PARAM_UPLOAD_ID = "uploadId";
+    public static final String PARAM_CHECKSUM = "checksum";
 
     private volatile long jobIdleTimeout;
 
+    private volatile UploadSpool uploadSpool;
+    private volatile long uploadMaxAge;
+
     public static final String ZIP_CONTENT_TYPE = "application/zip";
 
     public static final boolean AUTO_SAVE = true;
@@ -125,10 +131,18 @@ public class PackageServlet extends AbstractServiceServlet {
     @Reference
     private Packaging packaging;
 
+    @Reference
+    private PackageIndex packageIndex;
+
     @Activate
     @Modified
     protected void activate(Configuration configuration) {
         jobIdleTimeout = configuration.package_job_timeout();
+        String spoolDirectory = configuration.upload_spool_directory();
+        uploadSpool = new UploadSpool(StringUtils.isNotBlank(spoolDirectory) ? new File(spoolDirectory)
+                : new File(System.getProperty("java.io.tmpdir"), "composum-package-uploads"));
+        uploadMaxAge = configuration.upload_max_age() * 60L * 60L * 1000L;
+        uploadSpool.cleanup(uploadMaxAge);
     }
 
     //
@@ -152,6 +166,40 @@ public class PackageServlet extends AbstractServiceServlet {
         return operations;
     }
 
+    //
+    // the package index is updated by observation which is done asynchronously - the packages changed by this
+    // servlet are marked in the index immediately to present the changes in the subsequent requests of the client
+    //
+
+    protected void packageChanged(JcrPackageManager manager, JcrPackage jcrPackage) throws RepositoryException {
+        if (jcrPackage != null) {
+            packageChanged(getIndexPath(manager, jcrPackage));
+        }
+    }
+
+    /**
+     * @param path the path of the package node relative to the package root
+     */
+    protected void packageChanged(String path) {
+        if (StringUtils.isNotBlank(path) && !"/".equals(path)) {
+            packageIndex.invalidate(path);
+        }
+    }
+
+    /**
+     * @return the path of the package node relative to the package root - the key of the package in the index
+     */
+    protected static String getIndexPath(JcrPackageManager manager, JcrPackage jcrPackage)
+            throws RepositoryException {
+        Node node = jcrPackage.getNode();
+        if (node == null) {
+            return null;
+        }
+        String path = node.getPath();
+        String root = manager.getPackageRoot().getPath();
+        return path.startsWith(root) ? path.substring(root.length()) : path;
+    }
+
     /**
      * setup of the servlet operation set for this servlet instance
      */
@@ -210,6 +258,9 @@ public class PackageServlet extends AbstractServiceServlet {
         operations.setOperation(ServletOperationSet.Method.PUT, Extension.json,
                 Operation.update, new JsonUpdateOperation());
 
+        operations.setOperation(ServletOperationSet.Method.PUT, Extension.zip,
+                Operation.upload, new StreamUploadOperation());
+
         // DELETE
         operations.setOperation(ServletOperationSet.Method.DELETE, Extension.json,
                 Operation.delete, new DeleteOperation());
@@ -246,11 +297,10 @@ public class PackageServlet extends AbstractServiceServlet {
                          ResourceHandle resource)
                 throws RepositoryException, IOException {
             JcrPackageManager manager = PackageUtil.getPackageManager(packaging, request);
-            List<JcrPackage> jcrPackages = manager.listPackages();
             JsonWriter writer = ResponseUtil.getJsonWriter(response);
             writer.beginArray();
-            for (JcrPackage jcrPackage : jcrPackages) {
-                new PackageItem(jcrPackage).toJson(writer);
+            for (PackageIndex.Entry entry : packageIndex.listPackages(manager)) {
+                entry.toJson(writer);
             }
             writer.endArray();
         }
@@ -264,7 +314,7 @@ public class PackageServlet extends AbstractServiceServlet {
                 throws RepositoryException, IOException {
 
             JcrPackageManager manager = PackageUtil.getPackageManager(packaging, request);
-            PackageUtil.TreeNode treeNode = PackageUtil.getTreeNode(manager, request);
+            PackageUtil.TreeNode treeNode = packageIndex.getTreeNode(manager, PackageUtil.getPath(request));
 
             JsonWriter writer = ResponseUtil.getJsonWriter(response);
             treeNode.sort();
@@ -291,38 +341,8 @@ public class PackageServlet extends AbstractServiceServlet {
             if (suffix.length() > 1) {
 
                 JcrPackageManager manager = PackageUtil.getPackageManager(packaging, request);
-
-                ResourceResolver resolver = request.getResourceResolver();
-                String rootPath = manager.getPackageRoot().getPath();
-                @SuppressWarnings("deprecation")
-                Iterator<Resource> found = resolver.findResources("/jcr:root" + rootPath
-                                + "//element(*,vlt:PackageDefinition)[jcr:contains(.,'" + suffix + "')]/../..",
-                        Query.XPATH);
-
-                SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
-
-                while (found.hasNext()) {
-                    JcrPackage jcrPckg = PackageUtil.getJcrPackage(manager, found.next());
-                    if (jcrPckg != null) {
-
-                        JcrPackageDefinition pckgDef = jcrPckg.getDefinition();
-                        String group = pckgDef.get(JcrPackageDefinition.PN_GROUP);
-                        if (!group.endsWith("/.snapshot")) {
-
-                            writer.beginObject();
-                            writer.name("state").beginObject();
-                            writer.name("installed").value(jcrPckg.isInstalled() ? "on" : "off");
-                            writer.name("sealed").value(jcrPckg.isSealed() ? "on" : "off");
-                            writer.name("valid").value(jcrPckg.isValid() ? "on" : "off");
-                            writer.endObject();
-                            writer.name("group").value(group);
-                            writer.name("name").value(pckgDef.get(JcrPackageDefinition.PN_NAME));
-                            writer.name("version").value(pckgDef.get(JcrPackageDefinition.PN_VERSION));
-                            writer.name("lastModified").value(dateFormat.format(PackageUtil.getLastModified(jcrPckg).getTime()));
-                            writer.name("path").value(PackageUtil.getPackagePath(manager, jcrPckg));
-                            writer.endObject();
-                        }
-                    }
+                for (PackageIndex.Entry entry : packageIndex.find(manager, suffix)) {
+                    entry.toQueryJson(writer);
                 }
             }
             writer.endArray();
@@ -342,6 +362,7 @@ public class PackageServlet extends AbstractServiceServlet {
 
             JcrPackageManager manager = PackageUtil.getPackageManager(packaging, request);
             JcrPackage jcrPackage = manager.create(group, name, version);
+            packageChanged(manager, jcrPackage);
 
             JsonWriter writer = ResponseUtil.getJsonWriter(response);
             jsonAnswer(writer, "create", "successful", manager, jcrPackage);
@@ -384,6 +405,7 @@ public class PackageServlet extends AbstractServiceServlet {
                 JcrPackage jcrPackage = PackageUtil.getJcrPackage(manager, resource);
 
                 if (jcrPackage != null) {
+                    String indexPath = getIndexPath(manager, jcrPackage);
                     JcrPackageDefinition pckgDef = jcrPackage.getDefinition();
 
                     String group = XSS.filter(request.getParameter(PARAM_GROUP));
@@ -411,6 +433,9 @@ public class PackageServlet extends AbstractServiceServlet {
                         }
                     }
 
+                    packageChanged(indexPath);
+                    packageChanged(manager, jcrPackage);
+
                     JsonWriter writer = ResponseUtil.getJsonWriter(response);
                     jsonAnswer(writer, "update", "successful", manager, jcrPackage);
 
@@ -460,7 +485,9 @@ public class PackageServlet extends AbstractServiceServlet {
 
             if (jcrPackage != null) {
 
+                String indexPath = getIndexPath(manager, jcrPackage);
                 manager.remove(jcrPackage);
+                packageChanged(indexPath);
 
                 JsonWriter writer = ResponseUtil.getJsonWriter(response);
                 jsonAnswer(writer, "delete", "successful", manager, jcrPackage);
@@ -481,24 +508,39 @@ public class PackageServlet extends AbstractServiceServlet {
             if (jcrPackage != null) {
 
                 Property data;
-                Binary binary;
-                InputStream stream;
+                Binary content;
                 if ((data = jcrPackage.getData()) != null &&
-                        (binary = data.getBinary()) != null &&
-                        (stream = binary.getStream()) != null) {
-
-                    PackageUtil.PackageItem item = new PackageUtil.PackageItem(jcrPackage);
+                        (content = data.getBinary()) != null) {
+                    final Binary binary = content;
+                    try {
+                        PackageUtil.PackageItem item = new PackageUtil.PackageItem(jcrPackage);
+
+                        response.setHeader("Content-Disposition", "inline; filename=" + item.getFilename());
+                        Calendar lastModified = item.getLastModified();
+                        if (lastModified != null) {
+                            response.setDateHeader(HttpConstants.HEADER_LAST_MODIFIED, lastModified.getTimeInMillis());
+                        }
+                        String etag = ByteRanges.etag(data, lastModified != null ? lastModified.getTimeInMillis() : 0L);
+
+                        // 'If-Modified-Since' is only used if the client doesn't know the entity tag
+                        if (request.getHeader(HttpUtil.HEADER_IF_NONE_MATCH) == null &&
+                                HttpUtil.notModifiedSince(request.getDateHeader(HttpConstants.HEADER_IF_MODIFIED_SINCE),
+                                        lastModified)) {
+                            response.setHeader(ByteRanges.HEADER_ETAG, etag);
+                            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                            return;
+                        }
 
-                    response.setHeader("Content-Disposition", "inline; filename=" + item.getFilename());
-                    Calendar lastModified = item.getLastModified();
-                    if (lastModified != null) {
-                        response.setDateHeader(HttpConstants.HEADER_LAST_MODIFIED, lastModified.getTimeInMillis());
+                        // the parts are read from the requested position on, so that an interrupted download can
+                        // be resumed without reading the package from the start
+                        response.setContentType(ZIP_CONTENT_TYPE);
+                        List<ByteRanges.Spec> ranges = ByteRanges.parse(request.getHeader(ByteRanges.HEADER_RANGE));
+                        ByteRanges.send(request, response, ranges, binary.getSize(), etag,
+                                (first, length, output) -> ByteRanges.read(binary, first, length, output));
+                    } finally {
+                        binary.dispose();
                     }
 
-                    response.setContentType(ZIP_CONTENT_TYPE);
-                    OutputStream output = response.getOutputStream();
-                    IOUtils.copy(stream, output);
-
                 } else {
                     response.sendError(HttpServletResponse.SC_BAD_REQUEST,
                             PackageUtil.getPath(request) + " is not a package or has no content");
@@ -527,6 +569,7 @@ public class PackageServlet extends AbstractServiceServlet {
 
                 JcrPackageManager manager = PackageUtil.getPackageManager(packaging, request);
                 JcrPackage jcrPackage = manager.upload(input, force);
+                packageChanged(manager, jcrPackage);
 
                 JsonWriter writer = ResponseUtil.getJsonWriter(response);
                 jsonAnswer(writer, "upload", "successful", manager, jcrPackage);
@@ -573,6 +616,105 @@ public class PackageServlet extends AbstractServiceServlet {
         }
     }
 
+    /**
+     * The upload of a package sent as request body ('application/octet-stream' or 'application/zip') instead of a
+     * multipart form - the body is streamed into the spool file and that file is handed over to the package manager
+     * without buffering the package once more.
+     * <p>
+     * A large package can be sent in chunks: each chunk is sent with the same 'uploadId' parameter and a
+     * 'Content-Range: bytes {first}-{last}/{total}' header and has to continue the chunks received before. The
+     * answer of an incomplete upload contains the number of bytes received as 'offset' - an interrupted upload is
+     * resumed from there ('Content-Range: bytes *&#47;{total}' requests the offset without sending content). The
+     * upload ids are bound to the user. The package is installed in the package manager by the request of the
+     * chunk which completes the upload; the SHA-256 checksum of the content is returned and compared with an
+     * optional 'checksum' parameter.
+     */
+    protected class StreamUploadOperation implements ServletOperation {
+
+        @Override
+        public void doIt(SlingHttpServletRequest request, SlingHttpServletResponse response,
+                         ResourceHandle resource)
+                throws RepositoryException, IOException {
+
+            String uploadId = XSS.filter(request.getParameter(PARAM_UPLOAD_ID));
+            if (StringUtils.isBlank(uploadId)) {
+                uploadId = UUID.randomUUID().toString();
+            }
+            String rangeHeader = request.getHeader(ByteRanges.HEADER_CONTENT_RANGE);
+            UploadSpool.ContentRange range = UploadSpool.ContentRange.parse(rangeHeader);
+            if (StringUtils.isNotBlank(rangeHeader) && range == null) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "invalid content range");
+                return;
+            }
+            String user = StringUtils.defaultString(request.getResourceResolver().getUserID());
+            UploadSpool spool = uploadSpool;
+            UploadSpool.Upload upload;
+            UploadSpool.AppendResult result;
+            try {
+                if (range != null && range.first == null) {
+                    // a status request - the state of an unknown upload is not created
+                    upload = spool.findUpload(user, uploadId);
+                    uploadStatus(ResponseUtil.getJsonWriter(response),
+                            upload != null && upload.isComplete() ? "complete" : "incomplete",
+                            uploadId, upload != null ? upload.getOffset() : 0L);
+                    return;
+                }
+                if (range == null || range.first == 0L) {
+                    spool.cleanup(uploadMaxAge);
+                }
+                upload = spool.getUpload(user, uploadId);
+                result = spool.append(upload, range, request.getInputStream());
+            } catch (IllegalArgumentException ex) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+                return;
+            }
+            if (result == UploadSpool.AppendResult.conflict) {
+                response.setStatus(HttpServletResponse.SC_CONFLICT);
+            }
+            if (result != UploadSpool.AppendResult.complete) {
+                uploadStatus(ResponseUtil.getJsonWriter(response), result.name(), uploadId, upload.getOffset());
+                return;
+            }
+
+            try {
+                String checksum = upload.getChecksum();
+                String expected = request.getParameter(PARAM_CHECKSUM);
+                if (StringUtils.isNotBlank(expected) && !expected.trim().equalsIgnoreCase(checksum)) {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST, "checksum mismatch: " + checksum);
+                    return;
+                }
+                boolean force = RequestUtil.getParameter(request, PARAM_FORCE, false);
+
+                JcrPackageManager manager = PackageUtil.getPackageManager(packaging, request);
+                JcrPackage jcrPackage = manager.upload(upload.file, true, force, null);
+                packageChanged(manager, jcrPackage);
+
+                JsonWriter writer = ResponseUtil.getJsonWriter(response);
+                writer.beginObject();
+                writer.name("operation").value("upload");
+                writer.name("status").value("successful");
+                writer.name("checksum").value(checksum);
+                writer.name("path").value(PackageUtil.getPackagePath(manager, jcrPackage));
+                writer.name("package");
+                PackageUtil.toJson(writer, jcrPackage, null);
+                writer.endObject();
+
+            } finally {
+                spool.discard(upload);
+            }
+        }
+
+        protected void uploadStatus(JsonWriter writer, String status, String uploadId, long offset)
+                throws IOException {
+            writer.beginObject();
+            writer.name("operation").value("upload");
+            writer.name("status").value(status);
+            writer.name(PARAM_UPLOAD_ID).value(uploadId);
+            writer.name("offset").value(offset);
+            writer.endObject();
+        }
+    }
+
     protected class InstallOperation implements ServletOperation {
 
         @Override
@@ -608,6 +750,7 @@ public class PackageServlet extends AbstractServiceServlet {
             Job job = jobManager.addJob(PackageJobExecutor.TOPIC, jobProperties);
             final JobMonitor.IsDone isDone = new JobMonitor.IsDone(jobManager, resolver, job.getId(), jobIdleTimeout);
             if (isDone.call()) {
+                packageChanged(path);
 
                 installationDone(request, response, manager, jcrPackage, isDone);
 
@@ -662,6 +805,7 @@ public class PackageServlet extends AbstractServiceServlet {
             Job job = jobManager.addJob(PackageJobExecutor.TOPIC, jobProperties);
             final JobMonitor.IsDone isDone = new JobMonitor.IsDone(jobManager, resolver, job.getId(), jobIdleTimeout);
             if (isDone.call()) {
+                packageChanged(path);
                 uninstallationDone(request, response, manager, jcrPackage, isDone);
             } else {
                 response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Package uninstall not started!");
@@ -749,11 +893,15 @@ public class PackageServlet extends AbstractServiceServlet {
                     String packageGroup = jcrPackage.getDefinition().get(JcrPackageDefinition.PN_GROUP);
                     if (!StringUtils.isBlank(packageName) && packageName.equals(name)) {
                         if (!StringUtils.isBlank(group) && group.equals(packageGroup)) {
+                            String indexPath = getIndexPath(manager, jcrPackage);
                             manager.remove(jcrPackage);
+                            packageChanged(indexPath);
                             found = true;
                             break;
                         } else if (StringUtils.isBlank(group) && StringUtils.isBlank(packageGroup)) {
+                            String indexPath = getIndexPath(manager, jcrPackage);
                             manager.remove(jcrPackage);
+                            packageChanged(indexPath);
                             found = true;
                             break;
                         }
@@ -803,6 +951,7 @@ public class PackageServlet extends AbstractServiceServlet {
                     Job job = jobManager.addJob(PackageJobExecutor.TOPIC, jobProperties);
                     final JobMonitor.IsDone isDone = new JobMonitor.IsDone(jobManager, resolver, job.getId(), jobIdleTimeout);
                     if (isDone.call()) {
+                        packageChanged(path);
                         response.setStatus(HttpServletResponse.SC_OK);
                         try (Writer writer = response.getWriter()) {
                             writer.append("<repo>");
@@ -894,6 +1043,7 @@ public class PackageServlet extends AbstractServiceServlet {
 
                     JcrPackageManager manager = PackageUtil.getPackageManager(packaging, request);
                     JcrPackage jcrPackage = manager.upload(input, force);
+                    packageChanged(manager, jcrPackage);
 
                     installPackage(request, response, manager, jcrPackage);
 
@@ -1089,6 +1239,7 @@ public class PackageServlet extends AbstractServiceServlet {
                     filterRequest.filters.set(index, filterRequest.filter);
                     filterRequest.definition.setFilter(filterRequest.workspaceFilter, true);
                     PackageUtil.setLastModified(filterRequest.definition);
+                    packageChanged(filterRequest.manager, filterRequest.jcrPackage);
                     response.setStatus(HttpServletResponse.SC_OK);
                     response.setContentLength(0);
                 } else {
@@ -1116,6 +1267,7 @@ public class PackageServlet extends AbstractServiceServlet {
                 filterRequest.filters.add(index, filterRequest.filter);
                 filterRequest.definition.setFilter(filterRequest.workspaceFilter, true);
                 PackageUtil.setLastModified(filterRequest.definition);
+                packageChanged(filterRequest.manager, filterRequest.jcrPackage);
                 response.setStatus(HttpServletResponse.SC_OK);
                 response.setContentLength(0);
             } else {
@@ -1137,6 +1289,7 @@ public class PackageServlet extends AbstractServiceServlet {
                 filterRequest.filters.remove(index);
                 filterRequest.definition.setFilter(filterRequest.workspaceFilter, true);
                 PackageUtil.setLastModified(filterRequest.definition);
+                packageChanged(filterRequest.manager, filterRequest.jcrPackage);
                 response.setStatus(HttpServletResponse.SC_OK);
                 response.setContentLength(0);
             } else {
@@ -1257,6 +1410,14 @@ public class PackageServlet extends AbstractServiceServlet {
                 "Time in milliseconds a package job can be idle")
         long package_job_timeout() default 60L * 1000L;
 
+        @AttributeDefinition(name = "upload spool directory", description =
+                "the directory of the streamed package uploads; a folder in the temp directory if empty")
+        String upload_spool_directory() default "";
+
+        @AttributeDefinition(name = "upload max age", description =
+                "Time in hours a chunked upload is kept if it's not continued")
+        long upload_max_age() default 24L;
+
     }
 
 }
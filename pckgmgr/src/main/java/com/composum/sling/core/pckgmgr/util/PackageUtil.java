@@ -526,19 +526,7 @@ public class PackageUtil {
 
         @Override
         public void toJson(JsonWriter writer) throws RepositoryException, IOException {
-            String name = getFilename();
-            String path = getPath();
-            Map<String, Object> treeState = new LinkedHashMap<>();
-            treeState.put("loaded", Boolean.TRUE);
-            Map<String, Object> additionalAttributes = new LinkedHashMap<>();
-            additionalAttributes.put("id", path);
-            additionalAttributes.put("path", path);
-            additionalAttributes.put("name", name);
-            additionalAttributes.put("text", name);
-            additionalAttributes.put("type", "package");
-            additionalAttributes.put("state", treeState);
-            additionalAttributes.put("file", getFilename());
-            PackageUtil.toJson(writer, jcrPackage, additionalAttributes);
+            PackageUtil.toJson(writer, jcrPackage, getTreeItemAttributes(getPath(), getFilename()));
         }
 
         public String getFilename() {
@@ -585,14 +573,22 @@ public class PackageUtil {
          * @throws RepositoryException
          */
         public boolean addPackage(JcrPackage jcrPackage) throws RepositoryException {
+            PackageItem item = new PackageItem(jcrPackage);
+            return addPackage(PackageUtil.getGroupPath(jcrPackage), item.getFilename(), item);
+        }
+
+        /**
+         * adds a package item or the appropriate folder to the nodes children if it is a child of this node
+         *
+         * @param groupPath the group path of the package ('/group/')
+         * @param filename  the filename of the package
+         * @param item      the item representing the package
+         * @return true, if this package is the nodes target and a leaf - iteration can be stopped
+         */
+        public boolean addPackage(String groupPath, String filename, TreeItem item) {
             String groupUri = path.endsWith("/") ? path : path + "/";
-            String groupPath = PackageUtil.getGroupPath(jcrPackage);
             if (groupPath.startsWith(groupUri)) {
-                TreeItem item;
-                if (groupPath.equals(groupUri)) {
-                    // this node is the packages parent - use the package as node child
-                    item = new PackageItem(jcrPackage);
-                } else {
+                if (!groupPath.equals(groupUri)) {
                     // this node is a group parent - insert a folder for the subgroup
                     String name = groupPath.substring(path.length());
                     if (name.startsWith("/")) {
@@ -603,14 +599,13 @@ public class PackageUtil {
                         name = name.substring(0, nextDelimiter);
                     }
                     item = new FolderItem(groupUri + name, name);
-                }
+                } // else: this node is the packages parent - use the package as node child
                 if (!contains(item)) {
                     add(item);
                 }
                 return false;
             } else {
-                PackageItem item = new PackageItem(jcrPackage);
-                if (path.equals(groupPath + item.getFilename())) {
+                if (path.equals(groupPath + filename)) {
                     // this node (teh path) represents the package itself and is a leaf
                     isLeaf = true;
                     add(item);
@@ -663,6 +658,25 @@ public class PackageUtil {
     // JSON mapping helpers
     //
 
+    /**
+     * @param path     the tree path of the package ('/group/file.zip')
+     * @param filename the filename of the package
+     * @return the attributes of a package as item of the package tree
+     */
+    public static Map<String, Object> getTreeItemAttributes(String path, String filename) {
+        Map<String, Object> treeState = new LinkedHashMap<>();
+        treeState.put("loaded", Boolean.TRUE);
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("id", path);
+        attributes.put("path", path);
+        attributes.put("name", filename);
+        attributes.put("text", filename);
+        attributes.put("type", "package");
+        attributes.put("state", treeState);
+        attributes.put("file", filename);
+        return attributes;
+    }
+
     public static void toJson(JsonWriter writer, JcrPackage jcrPackage,
                               Map<String, Object> additionalAttributes)
             throws RepositoryException, IOException {
@@ -675,15 +689,23 @@ public class PackageUtil {
 
     public static void toJson(JsonWriter writer, JcrPackageDefinition definition)
             throws IOException {
+        toJson(writer, definition.get(JcrPackageDefinition.PN_GROUP), definition.get(JcrPackageDefinition.PN_NAME),
+                definition.get(JcrPackageDefinition.PN_VERSION), definition.get(JcrPackageDefinition.PN_DESCRIPTION),
+                definition.getCalendar(JcrPackageDefinition.PN_LASTMODIFIED),
+                definition.getCalendar(JcrPackageDefinition.PN_LAST_UNPACKED),
+                definition.getBoolean("includeVersions"));
+    }
+
+    /**
+     * writes the properties of a package definition - the properties of a definition read before
+     */
+    public static void toJson(JsonWriter writer, String group, String name, String version, String description,
+                              Calendar lastModified, Calendar lastUnpacked, boolean includeVersions)
+            throws IOException {
         SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
-        String version = definition.get(JcrPackageDefinition.PN_VERSION);
-        String description = definition.get(JcrPackageDefinition.PN_DESCRIPTION);
-        Calendar lastModified = definition.getCalendar(JcrPackageDefinition.PN_LASTMODIFIED);
-        Calendar lastUnpacked = definition.getCalendar(JcrPackageDefinition.PN_LAST_UNPACKED);
-        boolean includeVersions = definition.getBoolean("includeVersions");
         writer.beginObject();
-        writer.name(JcrPackageDefinition.PN_GROUP).value(definition.get(JcrPackageDefinition.PN_GROUP));
-        writer.name(JcrPackageDefinition.PN_NAME).value(definition.get(JcrPackageDefinition.PN_NAME));
+        writer.name(JcrPackageDefinition.PN_GROUP).value(group);
+        writer.name(JcrPackageDefinition.PN_NAME).value(name);
         if (version != null) {
             writer.name(JcrPackageDefinition.PN_VERSION).value(version);
         }
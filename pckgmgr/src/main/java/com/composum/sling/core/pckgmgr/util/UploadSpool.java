@@ -0,0 +1,373 @@
+package com.composum.sling.core.pckgmgr.util;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The spool of the streamed package uploads: the request bodies are written directly to files in the spool
+ * directory, an upload can be sent in several chunks (each with a 'Content-Range' header) which are appended to
+ * the file of the upload and the checksum of the content is computed while the content is written.
+ */
+public class UploadSpool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UploadSpool.class);
+
+    public static final String CHECKSUM_ALGORITHM = "SHA-256";
+
+    public static final String FILE_EXTENSION = ".upload";
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /** the valid upload ids - used as file names */
+    public static final Pattern UPLOAD_ID_PATTERN = Pattern.compile("^[A-Za-z0-9_\\-]{1,64}$");
+
+    /** the 'Content-Range' of an upload chunk: 'bytes {first}-{last}/{total}' or 'bytes *&#47;{total}' */
+    protected static final Pattern CONTENT_RANGE_PATTERN =
+            Pattern.compile("^\\s*bytes\\s+(?:(\\d+)-(\\d+)|\\*)/(\\d+|\\*)\\s*$", Pattern.CASE_INSENSITIVE);
+
+    /** the requested range of a chunk */
+    public static class ContentRange {
+
+        /** the position of the first byte of the chunk; null for a status request ('bytes *&#47;{total}') */
+        public final Long first;
+        /** the position of the last byte of the chunk */
+        public final Long last;
+        /** the size of the complete upload; null if not known yet */
+        public final Long total;
+
+        public ContentRange(Long first, Long last, Long total) {
+            this.first = first;
+            this.last = last;
+            this.total = total;
+        }
+
+        /** @return the number of bytes of the chunk; null for a status request */
+        public Long getLength() {
+            return first != null ? last - first + 1 : null;
+        }
+
+        /**
+         * @return the range or null if the header value is not a valid chunk range
+         */
+        public static ContentRange parse(String value) {
+            if (StringUtils.isNotBlank(value)) {
+                Matcher matcher = CONTENT_RANGE_PATTERN.matcher(value);
+                if (matcher.matches()) {
+                    try {
+                        Long first = matcher.group(1) != null ? Long.parseLong(matcher.group(1)) : null;
+                        Long last = matcher.group(2) != null ? Long.parseLong(matcher.group(2)) : null;
+                        Long total = !"*".equals(matcher.group(3)) ? Long.parseLong(matcher.group(3)) : null;
+                        if ((first == null || first <= last) && (total == null || last == null || last < total)) {
+                            return new ContentRange(first, last, total);
+                        }
+                    } catch (NumberFormatException ignore) {
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /** the result of appending a chunk */
+    public enum AppendResult {
+        /** the chunk doesn't continue the upload (or the upload is installed already) - not written */
+        conflict,
+        /** the chunk is written, the upload is not complete yet */
+        incomplete,
+        /** the chunk has completed the upload - the caller is responsible for the installation of the upload */
+        complete
+    }
+
+    /** the state of an upload */
+    public static class Upload {
+
+        public final String id;
+        public final File file;
+
+        /** the key of the upload - the id is bound to the user */
+        protected final String key;
+
+        protected MessageDigest digest;
+        protected long offset;
+        protected Long total;
+        /** set by the chunk which completes the upload; no further chunks are accepted */
+        protected boolean installing;
+
+        protected Upload(String key, String id, File file) {
+            this.key = key;
+            this.id = id;
+            this.file = file;
+            offset = file.length();
+        }
+
+        /** @return the number of bytes received */
+        public long getOffset() {
+            return offset;
+        }
+
+        /** @return the size of the complete upload if known */
+        public Long getTotal() {
+            return total;
+        }
+
+        public boolean isComplete() {
+            return total != null && offset >= total;
+        }
+
+        /** @return the hex encoded checksum of the content received; to be used if the upload is complete */
+        @Nonnull
+        public String getChecksum() throws IOException {
+            byte[] hash = digest().digest();
+            digest = null; // the digest is reset by building the hash
+            StringBuilder builder = new StringBuilder();
+            for (byte b : hash) {
+                builder.append(String.format("%02x", b & 0xff));
+            }
+            return builder.toString();
+        }
+
+        /**
+         * @return the digest of the content received; computed from the file if the state of the upload is not
+         * available, e.g. after an interrupted chunk
+         */
+        @Nonnull
+        protected MessageDigest digest() throws IOException {
+            if (digest == null) {
+                MessageDigest fileDigest = newDigest();
+                if (file.exists()) {
+                    try (InputStream input = new DigestInputStream(new FileInputStream(file), fileDigest)) {
+                        IOUtils.copyLarge(input, new OutputStream() {
+                            @Override
+                            public void write(int b) {
+                            }
+
+                            @Override
+                            public void write(@Nonnull byte[] b, int off, int len) {
+                            }
+                        }, new byte[BUFFER_SIZE]);
+                    }
+                }
+                digest = fileDigest;
+                offset = file.length();
+            }
+            return digest;
+        }
+
+        /**
+         * Appends a chunk to the upload; the chunk has to start at the current offset.
+         *
+         * @param length the size of the chunk; null if the content is read up to its end
+         * @throws IllegalArgumentException if the content is shorter or longer than the given length; the
+         *                                  content is not appended in this case
+         */
+        protected void append(@Nonnull InputStream input, Long length, Long total) throws IOException {
+            MessageDigest current = digest();
+            long start = offset;
+            long count;
+            try (OutputStream output = new FileOutputStream(file, true)) {
+                InputStream content = new DigestInputStream(input, current);
+                count = length != null
+                        ? IOUtils.copyLarge(content, output, 0L, length, new byte[BUFFER_SIZE])
+                        : IOUtils.copyLarge(content, output, new byte[BUFFER_SIZE]);
+                offset += count;
+            } catch (IOException ex) {
+                // the written content and the digest can differ - the digest is built from the file again
+                digest = null;
+                offset = file.length();
+                throw ex;
+            }
+            if (length != null && (count != length || input.read() >= 0)) {
+                truncate(start);
+                throw new IllegalArgumentException("the size of the chunk doesn't match its content range");
+            }
+            if (total != null) {
+                this.total = total;
+            }
+        }
+
+        /**
+         * Removes the content after the given size; the digest is built from the file again.
+         */
+        protected void truncate(long size) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(size);
+            }
+            digest = null;
+            offset = size;
+        }
+    }
+
+    protected final File directory;
+
+    protected final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+
+    public UploadSpool(@Nonnull File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param user the id of the user who sends the upload
+     * @return the state of the upload; a new upload if the upload is not known - kept only if content is appended
+     */
+    @Nonnull
+    public Upload getUpload(@Nonnull String user, @Nonnull String id) throws IOException {
+        String key = getKey(user, id);
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("can't create upload spool directory '" + directory.getPath() + "'");
+        }
+        return uploads.computeIfAbsent(key, k -> new Upload(k, id, getFile(user, id)));
+    }
+
+    /**
+     * @param user the id of the user who sends the upload
+     * @return the state of the upload; null if nothing of the upload is received
+     */
+    @Nullable
+    public Upload findUpload(@Nonnull String user, @Nonnull String id) {
+        String key = getKey(user, id);
+        Upload upload = uploads.get(key);
+        if (upload == null) {
+            File file = getFile(user, id);
+            if (file.exists()) { // spooled before the state was lost, e.g. after a restart
+                upload = uploads.computeIfAbsent(key, k -> new Upload(k, id, file));
+            }
+        }
+        return upload;
+    }
+
+    /**
+     * Writes a chunk of an upload to the spool file of the upload.
+     *
+     * @param upload the upload
+     * @param range  the range of the chunk, the chunk must start at the current offset of the upload;
+     *               null for a complete upload
+     * @param input  the content of the chunk
+     * @return the state of the upload after the chunk; only one chunk of an upload can be {@link AppendResult#complete}
+     * @throws IllegalArgumentException if the content doesn't match the size of the range - not written
+     */
+    @Nonnull
+    public AppendResult append(@Nonnull Upload upload, @Nullable ContentRange range, @Nonnull InputStream input)
+            throws IOException {
+        synchronized (upload) {
+            if (upload.installing) {
+                return AppendResult.conflict;
+            }
+            try {
+                if (range == null) {
+                    // the upload is sent at once - a previous attempt is discarded
+                    discard(upload);
+                    uploads.put(upload.key, upload);
+                    upload.append(input, null, null);
+                    upload.total = upload.offset;
+                } else {
+                    if (range.first == null) {
+                        throw new IllegalArgumentException("no chunk range");
+                    }
+                    if (range.first != upload.getOffset()) {
+                        return AppendResult.conflict;
+                    }
+                    upload.append(input, range.getLength(), range.total);
+                }
+            } finally {
+                if (upload.offset == 0L) {
+                    discard(upload); // nothing received - no state is kept
+                }
+            }
+            if (upload.isComplete()) {
+                upload.installing = true;
+                return AppendResult.complete;
+            }
+            return AppendResult.incomplete;
+        }
+    }
+
+    /**
+     * Removes the state and the file of an upload.
+     */
+    public void discard(@Nonnull Upload upload) {
+        synchronized (upload) {
+            uploads.remove(upload.key, upload);
+            if (upload.file.exists() && !upload.file.delete()) {
+                LOG.warn("can't delete upload file '{}'", upload.file.getPath());
+            }
+            upload.digest = null;
+            upload.offset = 0L;
+            upload.total = null;
+            upload.installing = false;
+        }
+    }
+
+    /**
+     * Removes the spooled uploads which are not continued for the given time.
+     */
+    public void cleanup(long maxAge) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+        if (files != null) {
+            long limit = System.currentTimeMillis() - maxAge;
+            for (File file : files) {
+                if (file.lastModified() < limit) {
+                    uploads.values().removeIf(upload -> upload.file.equals(file));
+                    if (!file.delete()) {
+                        LOG.warn("can't delete upload file '{}'", file.getPath());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the key of an upload of a user
+     * @throws IllegalArgumentException if the id is not a valid upload id
+     */
+    @Nonnull
+    protected String getKey(@Nonnull String user, @Nonnull String id) {
+        if (!UPLOAD_ID_PATTERN.matcher(id).matches()) {
+            throw new IllegalArgumentException("invalid upload id '" + id + "'");
+        }
+        return user + "/" + id;
+    }
+
+    /**
+     * @return the spool file of an upload; the file name contains a hash of the user (which can contain any
+     * character)
+     */
+    @Nonnull
+    protected File getFile(@Nonnull String user, @Nonnull String id) {
+        byte[] hash = newDigest().digest(user.getBytes(StandardCharsets.UTF_8));
+        StringBuilder name = new StringBuilder(id).append('-');
+        for (int i = 0; i < 8; i++) {
+            name.append(String.format("%02x", hash[i] & 0xff));
+        }
+        return new File(directory, name.append(FILE_EXTENSION).toString());
+    }
+
+    @Nonnull
+    protected static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.composum.sling.core.pckgmgr;
+
+import com.composum.sling.core.pckgmgr.util.PackageUtil;
+import org.apache.jackrabbit.vault.packaging.JcrPackage;
+import org.apache.jackrabbit.vault.packaging.JcrPackageDefinition;
+import org.apache.jackrabbit.vault.packaging.JcrPackageManager;
+import org.apache.jackrabbit.vault.util.JcrConstants;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ErrorCollector;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link PackageIndex} with a package manager mocked on a simple node tree.
+ */
+public class PackageIndexTest {
+
+    @Rule
+    public final ErrorCollector ec = new ErrorCollector();
+
+    /** the mocked nodes by their paths */
+    protected final Map<String, Node> nodes = new TreeMap<>();
+
+    protected Session session;
+    protected JcrPackageManager manager;
+    protected PackageIndex index;
+
+    @Before
+    public void setup() throws RepositoryException {
+        session = mock(Session.class);
+        when(session.getUserID()).thenReturn("admin");
+        when(session.nodeExists(anyString())).thenAnswer(invocation -> nodes.containsKey(invocation.getArgument(0)));
+        when(session.getNode(anyString())).thenAnswer(invocation -> nodes.get(invocation.getArgument(0)));
+        manager = mock(JcrPackageManager.class);
+        Node root = folder(PackageIndex.PACKAGE_ROOT);
+        when(manager.getPackageRoot()).thenReturn(root);
+        index = new PackageIndex();
+
+        addPackage("acme/site", "website-content", "1.2.0", "The content of the website");
+        addPackage("acme/site", "website-config", "1.2.0", "The configuration of the website");
+        addPackage("acme/lib", "core-library", "2.0", "Core libraries");
+        addPackage("other", "website-assets", "0.1", null);
+    }
+
+    @Test
+    public void findByWordPrefixes() throws RepositoryException {
+        ec.checkThat(find("web"), is("[/acme/site/website-config-1.2.0.zip, /acme/site/website-content-1.2.0.zip, "
+                + "/other/website-assets-0.1.zip]"));
+        ec.checkThat(find("web cont"), is("[/acme/site/website-content-1.2.0.zip]"));
+        ec.checkThat(find("ACME lib"), is("[/acme/lib/core-library-2.0.zip]"));
+        ec.checkThat(find("configuration"), is("[/acme/site/website-config-1.2.0.zip]"));
+        ec.checkThat(find("web lib"), is("[]"));
+        ec.checkThat(find(" - "), is("[]"));
+    }
+
+    @Test
+    public void listAndGroupTree() throws RepositoryException {
+        ec.checkThat(list(), is("[/acme/lib/core-library-2.0.zip, /acme/site/website-config-1.2.0.zip, "
+                + "/acme/site/website-content-1.2.0.zip, /other/website-assets-0.1.zip]"));
+        ec.checkThat(tree("/"), is("[acme, other]"));
+        ec.checkThat(tree("/acme"), is("[lib, site]"));
+        ec.checkThat(tree("/acme/site"), is("[website-config, website-content]"));
+        PackageUtil.TreeNode leaf = index.getTreeNode(manager, "/acme/lib/core-library-2.0.zip");
+        ec.checkThat(leaf.isLeaf(), is(true));
+        ec.checkThat(leaf.get(0).getPath(), is("/acme/lib/core-library-2.0.zip"));
+    }
+
+    @Test
+    public void changesVisibleAfterInvalidation() throws RepositoryException {
+        ec.checkThat(find("new"), is("[]"));
+        addPackage("acme/site", "new-package", "1.0", null);
+        ec.checkThat(find("new"), is("[]")); // no change event received
+        index.invalidate("/acme/site/new-package-1.0.zip");
+        ec.checkThat(find("new"), is("[/acme/site/new-package-1.0.zip]"));
+        ec.checkThat(tree("/acme/site"), is("[website-config, website-content, new-package]"));
+
+        nodes.remove(PackageIndex.PACKAGE_ROOT + "/acme/site/website-config-1.2.0.zip");
+        index.invalidate("/acme/site/website-config-1.2.0.zip");
+        ec.checkThat(find("web"), is("[/acme/site/website-content-1.2.0.zip, /other/website-assets-0.1.zip]"));
+
+        // a changed group is read again completely
+        addPackage("other", "more-assets", "0.2", null);
+        index.invalidate("/other");
+        ec.checkThat(tree("/other"), is("[more-assets, website-assets]"));
+
+        // the complete index is read again without a path
+        addPackage("acme/lib", "extra-library", "1.0", null);
+        index.invalidate(null);
+        ec.checkThat(find("extra"), is("[/acme/lib/extra-library-1.0.zip]"));
+    }
+
+    protected String find(String term) throws RepositoryException {
+        List<String> paths = new ArrayList<>();
+        for (PackageIndex.Entry entry : index.find(manager, term)) {
+            paths.add(entry.path);
+        }
+        return paths.toString();
+    }
+
+    protected String list() throws RepositoryException {
+        List<String> paths = new ArrayList<>();
+        for (PackageIndex.Entry entry : index.listPackages(manager)) {
+            paths.add(entry.getPath());
+        }
+        return paths.toString();
+    }
+
+    protected String tree(String path) throws RepositoryException {
+        List<String> names = new ArrayList<>();
+        for (PackageUtil.TreeItem item : index.getTreeNode(manager, path)) {
+            names.add(item.getName());
+        }
+        return names.toString();
+    }
+
+    protected void addPackage(String group, String name, String version, String description)
+            throws RepositoryException {
+        String path = PackageIndex.PACKAGE_ROOT + "/" + group + "/" + name + "-" + version + ".zip";
+        String parentPath = path.substring(0, path.lastIndexOf('/'));
+        while (!nodes.containsKey(parentPath)) {
+            folder(parentPath);
+            parentPath = parentPath.substring(0, parentPath.lastIndexOf('/'));
+        }
+        Node node = node(path);
+        when(node.isNodeType(JcrConstants.NT_FILE)).thenReturn(true);
+        Map<String, String> properties = new HashMap<>();
+        properties.put(JcrPackageDefinition.PN_GROUP, group);
+        properties.put(JcrPackageDefinition.PN_NAME, name);
+        properties.put(JcrPackageDefinition.PN_VERSION, version);
+        properties.put(JcrPackageDefinition.PN_DESCRIPTION, description);
+        JcrPackageDefinition definition = mock(JcrPackageDefinition.class);
+        when(definition.get(anyString())).thenAnswer(invocation -> properties.get(invocation.getArgument(0)));
+        JcrPackage jcrPackage = mock(JcrPackage.class);
+        when(jcrPackage.getNode()).thenReturn(node);
+        when(jcrPackage.getDefinition()).thenReturn(definition);
+        when(manager.open(node, false)).thenReturn(jcrPackage);
+    }
+
+    protected Node folder(String path) throws RepositoryException {
+        Node node = node(path);
+        when(node.isNodeType(JcrConstants.NT_HIERARCHYNODE)).thenReturn(true);
+        when(node.getNodes()).thenAnswer(invocation -> {
+            List<Node> children = new ArrayList<>();
+            for (Map.Entry<String, Node> entry : nodes.entrySet()) {
+                if (entry.getKey().startsWith(path + "/") && entry.getKey().indexOf('/', path.length() + 1) < 0) {
+                    children.add(entry.getValue());
+                }
+            }
+            Iterator<Node> iterator = children.iterator();
+            NodeIterator nodeIterator = mock(NodeIterator.class);
+            when(nodeIterator.hasNext()).thenAnswer(i -> iterator.hasNext());
+            when(nodeIterator.nextNode()).thenAnswer(i -> iterator.next());
+            return nodeIterator;
+        });
+        return node;
+    }
+
+    protected Node node(String path) throws RepositoryException {
+        Node node = mock(Node.class);
+        when(node.getPath()).thenReturn(path);
+        when(node.getName()).thenReturn(path.substring(path.lastIndexOf('/') + 1));
+        when(node.getSession()).thenReturn(session);
+        nodes.put(path, node);
+        return node;
+    }
+}
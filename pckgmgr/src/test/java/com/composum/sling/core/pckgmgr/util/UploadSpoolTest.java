@@ -0,0 +1,155 @@
+package com.composum.sling.core.pckgmgr.util;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ErrorCollector;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+/**
+ * Tests for the {@link UploadSpool}.
+ */
+public class UploadSpoolTest {
+
+    /** the SHA-256 of 'helloworld' */
+    public static final String CHECKSUM = "936a185caaa266bb9cbe981e9e05cb78cd732b0b3280eb944412bb6f8f8f07af";
+
+    @Rule
+    public final ErrorCollector ec = new ErrorCollector();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    protected UploadSpool spool;
+
+    @Before
+    public void setup() {
+        spool = new UploadSpool(folder.getRoot());
+    }
+
+    @Test
+    public void parseContentRange() {
+        UploadSpool.ContentRange range = UploadSpool.ContentRange.parse("bytes 0-99/200");
+        ec.checkThat(range.first, is(0L));
+        ec.checkThat(range.last, is(99L));
+        ec.checkThat(range.total, is(200L));
+        ec.checkThat(range.getLength(), is(100L));
+        range = UploadSpool.ContentRange.parse(" Bytes 100-199/* ");
+        ec.checkThat(range.first, is(100L));
+        ec.checkThat(range.total, nullValue());
+        range = UploadSpool.ContentRange.parse("bytes */200");
+        ec.checkThat(range.first, nullValue());
+        ec.checkThat(range.getLength(), nullValue());
+        ec.checkThat(range.total, is(200L));
+        ec.checkThat(UploadSpool.ContentRange.parse(null), nullValue());
+        ec.checkThat(UploadSpool.ContentRange.parse(""), nullValue());
+        ec.checkThat(UploadSpool.ContentRange.parse("bytes 100-99/200"), nullValue());
+        ec.checkThat(UploadSpool.ContentRange.parse("bytes 0-200/200"), nullValue());
+        ec.checkThat(UploadSpool.ContentRange.parse("bytes 0-/200"), nullValue());
+        ec.checkThat(UploadSpool.ContentRange.parse("items 0-1/2"), nullValue());
+        ec.checkThat(UploadSpool.ContentRange.parse("bytes 0-99999999999999999999/*"), nullValue());
+    }
+
+    @Test
+    public void appendChunks() throws IOException {
+        UploadSpool.Upload upload = spool.getUpload("admin", "test-1");
+        ec.checkThat(append(upload, "bytes 0-4/10", "hello"), is(UploadSpool.AppendResult.incomplete));
+        ec.checkThat(upload.getOffset(), is(5L));
+        // a repeated chunk doesn't continue the upload
+        ec.checkThat(append(upload, "bytes 0-4/10", "hello"), is(UploadSpool.AppendResult.conflict));
+        ec.checkThat(upload.getOffset(), is(5L));
+        ec.checkThat(spool.findUpload("admin", "test-1") == upload, is(true));
+        ec.checkThat(spool.findUpload("other", "test-1"), nullValue());
+
+        ec.checkThat(append(upload, "bytes 5-9/10", "world"), is(UploadSpool.AppendResult.complete));
+        ec.checkThat(upload.isComplete(), is(true));
+        // the upload is completed only once
+        ec.checkThat(append(upload, "bytes 5-9/10", "world"), is(UploadSpool.AppendResult.conflict));
+        ec.checkThat(upload.getChecksum(), is(CHECKSUM));
+
+        spool.discard(upload);
+        ec.checkThat(upload.file.exists(), is(false));
+        ec.checkThat(spool.uploads.isEmpty(), is(true));
+    }
+
+    @Test
+    public void resumeFromSpoolFile() throws IOException {
+        UploadSpool.Upload upload = spool.getUpload("admin", "test-2");
+        ec.checkThat(append(upload, "bytes 0-4/10", "hello"), is(UploadSpool.AppendResult.incomplete));
+
+        // the state is lost, e.g. by a restart
+        spool = new UploadSpool(folder.getRoot());
+        upload = spool.findUpload("admin", "test-2");
+        ec.checkThat(upload.getOffset(), is(5L));
+        ec.checkThat(append(upload, "bytes 5-9/10", "world"), is(UploadSpool.AppendResult.complete));
+        ec.checkThat(upload.getChecksum(), is(CHECKSUM));
+    }
+
+    @Test
+    public void chunkSizeMismatch() throws IOException {
+        UploadSpool.Upload upload = spool.getUpload("admin", "test-3");
+        ec.checkThat(appendRejected(upload, "bytes 0-4/10", "hel"), is(true));
+        ec.checkThat(upload.getOffset(), is(0L));
+        ec.checkThat(spool.findUpload("admin", "test-3"), nullValue());
+
+        upload = spool.getUpload("admin", "test-3");
+        ec.checkThat(append(upload, "bytes 0-4/10", "hello"), is(UploadSpool.AppendResult.incomplete));
+        ec.checkThat(appendRejected(upload, "bytes 5-9/10", "world!"), is(true));
+        ec.checkThat(appendRejected(upload, "bytes 5-9/10", "wor"), is(true));
+        ec.checkThat(upload.getOffset(), is(5L));
+        ec.checkThat(upload.file.length(), is(5L));
+        ec.checkThat(upload.isComplete(), is(false));
+        ec.checkThat(append(upload, "bytes 5-9/10", "world"), is(UploadSpool.AppendResult.complete));
+        ec.checkThat(upload.getChecksum(), is(CHECKSUM));
+    }
+
+    @Test
+    public void unknownUploadNotKept() throws IOException {
+        ec.checkThat(spool.findUpload("admin", "test-4"), nullValue());
+        UploadSpool.Upload upload = spool.getUpload("admin", "test-4");
+        ec.checkThat(append(upload, "bytes 5-9/10", "world"), is(UploadSpool.AppendResult.conflict));
+        ec.checkThat(spool.uploads.isEmpty(), is(true));
+        ec.checkThat(upload.file.exists(), is(false));
+    }
+
+    @Test
+    public void completeUpload() throws IOException {
+        UploadSpool.Upload upload = spool.getUpload("admin", "test-5");
+        ec.checkThat(append(upload, "bytes 0-4/10", "hello"), is(UploadSpool.AppendResult.incomplete));
+        // sent at once: the previous attempt is replaced
+        ec.checkThat(spool.append(upload, null, stream("helloworld")), is(UploadSpool.AppendResult.complete));
+        ec.checkThat(upload.getTotal(), is(10L));
+        ec.checkThat(upload.getChecksum(), is(CHECKSUM));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidUploadId() throws IOException {
+        spool.getUpload("admin", "../test");
+    }
+
+    protected UploadSpool.AppendResult append(UploadSpool.Upload upload, String range, String content)
+            throws IOException {
+        return spool.append(upload, UploadSpool.ContentRange.parse(range), stream(content));
+    }
+
+    protected boolean appendRejected(UploadSpool.Upload upload, String range, String content) throws IOException {
+        try {
+            append(upload, range, content);
+            return false;
+        } catch (IllegalArgumentException ex) {
+            return true;
+        }
+    }
+
+    protected InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -156,6 +156,11 @@ public class AbstractClientlibTest {
                 return DEFAULT_CACHE_ROOT;
             }
 
+            @Override
+            public String clientlibs_file_cache() {
+                return "";
+            }
+
             @Override
             public boolean clientlibs_minified_use() {
                 return AbstractClientlibTest.this.useMinifiedFiles;
@@ -171,6 +176,21 @@ public class AbstractClientlibTest {
                 return 60;
             }
 
+            @Override
+            public int clientlibs_resolver_cache_size() {
+                return 1000;
+            }
+
+            @Override
+            public int clientlibs_category_cache_size() {
+                return 500;
+            }
+
+            @Override
+            public int clientlibs_hash_cache_size() {
+                return 500;
+            }
+
             @Override
             public int clientlibs_threadpool_min() {
                 return 10;
@@ -180,6 +200,16 @@ public class AbstractClientlibTest {
             public int clientlibs_threadpool_max() {
                 return 20;
             }
+
+            @Override
+            public boolean clientlibs_processing_push() {
+                return true;
+            }
+
+            @Override
+            public int clientlibs_processing_parallelism() {
+                return 4;
+            }
         };
 
         configurationService = context.registerService(ClientlibConfiguration.class, () -> serviceConfig);
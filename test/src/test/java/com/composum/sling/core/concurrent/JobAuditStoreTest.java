@@ -0,0 +1,94 @@
+package com.composum.sling.core.concurrent;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ErrorCollector;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static com.composum.sling.core.util.ResourceUtil.CONTENT_NODE;
+import static com.composum.sling.core.util.ResourceUtil.PROP_MIME_TYPE;
+import static com.composum.sling.core.util.ResourceUtil.PROP_PRIMARY_TYPE;
+import static com.composum.sling.core.util.ResourceUtil.TYPE_SLING_FOLDER;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+/**
+ * Tests for the storage of the job output in the {@link JobAuditStore}.
+ */
+public class JobAuditStoreTest {
+
+    @Rule
+    public final SlingContext context = new SlingContext(ResourceResolverType.JCR_OAK);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public final ErrorCollector ec = new ErrorCollector();
+
+    protected ResourceResolver resolver;
+    protected Resource audit;
+
+    @Before
+    public void setup() throws Exception {
+        resolver = context.resourceResolver();
+        audit = context.create().resource(context.uniqueRoot().content() + "/audit",
+                PROP_PRIMARY_TYPE, TYPE_SLING_FOLDER);
+        resolver.commit();
+    }
+
+    @Test
+    public void storedLogReadBack() throws Exception {
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            output.append("line ").append(i).append(" of the job output - \u00e4\u00f6\u00fc\n");
+        }
+        byte[] bytes = output.toString().getBytes(StandardCharsets.UTF_8);
+        File file = folder.newFile("slingjob123.txt");
+        FileUtils.writeByteArrayToFile(file, bytes);
+
+        JobAuditStore.storeLog(resolver, audit, file.getName(), file);
+        resolver.commit();
+
+        Resource logFile = JobAuditStore.getLog(audit, file.getName());
+        ec.checkThat(logFile, notNullValue());
+        if (logFile != null) {
+            // the stored file is a consistent gzip file for the browser and downloads
+            ec.checkThat(logFile.getName(), is("slingjob123.txt.gz"));
+            ec.checkThat(logFile.getChild(CONTENT_NODE).getValueMap().get(PROP_MIME_TYPE, String.class),
+                    is(JobAuditStore.MIME_TYPE_GZIP));
+            ec.checkThat(JobAuditStore.getLogLength(logFile), is((long) bytes.length));
+            try (InputStream input = JobAuditStore.openLog(logFile)) {
+                ec.checkThat(IOUtils.toString(input, StandardCharsets.UTF_8), is(output.toString()));
+            }
+        }
+    }
+
+    @Test
+    public void uncompressedLogReadBack() throws Exception {
+        byte[] bytes = "the output of an older job\n".getBytes(StandardCharsets.UTF_8);
+        context.load().binaryFile(new ByteArrayInputStream(bytes), audit.getPath() + "/slingjob456.txt", "text/plain");
+        resolver.commit();
+
+        Resource logFile = JobAuditStore.getLog(audit, "slingjob456.txt");
+        ec.checkThat(logFile, notNullValue());
+        if (logFile != null) {
+            ec.checkThat(JobAuditStore.getLogLength(logFile), is((long) bytes.length));
+            try (InputStream input = JobAuditStore.openLog(logFile)) {
+                ec.checkThat(IOUtils.toByteArray(input), is(bytes));
+            }
+        }
+    }
+}
@@ -7,6 +7,8 @@ import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
 import org.apache.sling.testing.mock.sling.junit.SlingContext;
 import org.junit.After;
@@ -95,6 +97,11 @@ public class LazyCreationServiceImplTest {
                 public int lazycreation_maximumlockwait() {
                     return 2;
                 }
+
+                @Override
+                public String[] lazycreation_observed_paths() {
+                    return new String[0];
+                }
             };
         }};
         executor = Executors.newFixedThreadPool(20);
@@ -270,6 +277,75 @@ public class LazyCreationServiceImplTest {
         initCount.clear(); // avoid the check in teardown since it doesn't fit here - this deliberately initializes something twice
     }
 
+    /**
+     * A waiter for the initialization is woken up by the change event of the resource (e.g. the initialization on
+     * another cluster node) and not by the polling; no signal is kept after the wait.
+     */
+    @Test
+    public void testWaiterWokenByChangeEvent() throws Exception {
+        setup(NOSEQUENCER);
+        final LazyCreationServiceImpl service = (LazyCreationServiceImpl) lazyCreationService;
+        service.activate(context.bundleContext(), configuration(10, "/content"));
+        try {
+            final String path = context.uniqueRoot().content() + "/observed";
+            final ResourceResolver resolver = context.resourceResolver();
+            context.create().resource(path, ITEM_PROPS);
+            resolver.commit(); // created but not initialized
+            final ResourceResolver waiterResolver = resourceResolverFactory.getAdministrativeResourceResolver(null);
+            Future<Resource> waiter = executor.submit(new Callable<Resource>() {
+                @Override
+                public Resource call() throws Exception {
+                    return service.waitForInitialization(waiterResolver, path);
+                }
+            });
+            // the polling steps are 100, 300, 700, 1500 ms - the waiter is in the 1500 ms step then
+            Thread.sleep(1700);
+            assertTrue(service.initializationSignals.containsKey(path));
+            ResourceHandle.use(resolver.getResource(path)).setProperty(PROP_LAST_MODIFIED, Calendar.getInstance());
+            resolver.commit();
+            long begin = System.currentTimeMillis();
+            ResourceChangeListener observer = context.bundleContext().getService(
+                    service.changeListenerRegistration.getReference());
+            observer.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.CHANGED, path,
+                    true, null, null, null)));
+            assertNotNull(waiter.get(10, TimeUnit.SECONDS));
+            long timing = System.currentTimeMillis() - begin;
+            assertTrue("Woken up by polling instead of the event? timing=" + timing, timing < 600);
+            assertTrue(service.initializationSignals.toString(), service.initializationSignals.isEmpty());
+            waiterResolver.close();
+
+            // a waiter which gives up doesn't leave its signal
+            final String uninitialized = context.uniqueRoot().content() + "/uninitialized";
+            context.create().resource(uninitialized, ITEM_PROPS);
+            resolver.commit();
+            service.activate(context.bundleContext(), configuration(1, "/content"));
+            assertNull(service.waitForInitialization(resolver, uninitialized));
+            assertTrue(service.initializationSignals.toString(), service.initializationSignals.isEmpty());
+        } finally {
+            service.deactivate();
+        }
+    }
+
+    protected LazyCreationServiceImpl.Configuration configuration(final int maximumLockWait,
+                                                                  final String... observedPaths) {
+        return new LazyCreationServiceImpl.Configuration() {
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return LazyCreationServiceImpl.Configuration.class;
+            }
+
+            @Override
+            public int lazycreation_maximumlockwait() {
+                return maximumLockWait;
+            }
+
+            @Override
+            public String[] lazycreation_observed_paths() {
+                return observedPaths;
+            }
+        };
+    }
+
     /**
      * Delay by a random time between 3/4 and 5/4 * delay milliseconds.
      */
@@ -0,0 +1,146 @@
+package com.composum.sling.nodes.servlet;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ErrorCollector;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Tests for the {@link SourceZipOutputStream}.
+ */
+public class SourceZipOutputStreamTest {
+
+    @Rule
+    public final ErrorCollector ec = new ErrorCollector();
+
+    protected final ExecutorService executor = Executors.newFixedThreadPool(1);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void pipelinedEntriesInOrder() throws IOException {
+        byte[] binary = new byte[3 * SourceZipOutputStream.CHUNK_SIZE + 17];
+        new Random(42).nextBytes(binary);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SourceZipOutputStream zipStream = new SourceZipOutputStream(out, Deflater.BEST_SPEED,
+                Arrays.asList("jpg"), executor);
+        ec.checkThat(zipStream.isPipelined(), is(true));
+        for (int i = 0; i < 20; i++) {
+            zipStream.putNextEntry(new ZipEntry("folder/" + i + "/.content.xml"));
+            zipStream.write(("<jcr:root index=\"" + i + "\"/>").getBytes());
+            zipStream.closeEntry();
+            zipStream.putNextEntry(new ZipEntry("folder/" + i + "/image.jpg"));
+            IOUtils.copy(new ByteArrayInputStream(binary), zipStream);
+            zipStream.closeEntry();
+        }
+        zipStream.close();
+
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream zipInput = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zipInput.getNextEntry()) != null) {
+                names.add(entry.getName());
+                byte[] content = IOUtils.toByteArray(zipInput);
+                if (entry.getName().endsWith(".jpg")) {
+                    ec.checkThat(Arrays.equals(content, binary), is(true));
+                } else {
+                    ec.checkThat(new String(content), is("<jcr:root index=\"" + (names.size() / 2) + "\"/>"));
+                }
+            }
+        }
+        ec.checkThat(names.size(), is(40));
+        ec.checkThat(names.get(0), is("folder/0/.content.xml"));
+        ec.checkThat(names.get(39), is("folder/19/image.jpg"));
+    }
+
+    @Test
+    public void storedExtensionsNotCompressed() throws IOException {
+        byte[] text = new byte[100000]; // very well compressible
+        Arrays.fill(text, (byte) 'x');
+        ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        try (SourceZipOutputStream zipStream = new SourceZipOutputStream(stored, Deflater.DEFAULT_COMPRESSION,
+                Arrays.asList("jpg"), null)) {
+            zipStream.putNextEntry(new ZipEntry("image.jpg"));
+            zipStream.write(text);
+            zipStream.closeEntry();
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (SourceZipOutputStream zipStream = new SourceZipOutputStream(compressed, Deflater.DEFAULT_COMPRESSION,
+                Arrays.asList("jpg"), null)) {
+            zipStream.putNextEntry(new ZipEntry("text.txt"));
+            zipStream.write(text);
+            zipStream.closeEntry();
+        }
+        ec.checkThat(stored.size() > text.length, is(true));
+        ec.checkThat(compressed.size(), lessThan(text.length / 10));
+    }
+
+    @Test
+    public void closeFailureReported() throws IOException {
+        for (ExecutorService writer : Arrays.asList(executor, null)) {
+            OutputStream unclosable = new ByteArrayOutputStream() {
+                @Override
+                public void close() throws IOException {
+                    throw new IOException("closed by client");
+                }
+            };
+            SourceZipOutputStream zipStream = new SourceZipOutputStream(unclosable, Deflater.DEFAULT_COMPRESSION,
+                    null, writer);
+            ec.checkThat(zipStream.isPipelined(), is(writer != null));
+            try {
+                zipStream.putNextEntry(new ZipEntry("entry"));
+                zipStream.write("content".getBytes());
+                zipStream.closeEntry();
+                zipStream.close();
+                ec.addError(new AssertionError("close failure not reported"));
+            } catch (SourceModel.IOErrorOnCloseException ex) {
+                ec.checkThat(ex.getCause().getMessage(), is("closed by client"));
+            } finally {
+                zipStream.release();
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void writerFailureReported() throws IOException {
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("broken pipe");
+            }
+        };
+        SourceZipOutputStream zipStream = new SourceZipOutputStream(failing, Deflater.DEFAULT_COMPRESSION,
+                null, executor);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                zipStream.putNextEntry(new ZipEntry("entry" + i));
+                zipStream.write(new byte[SourceZipOutputStream.CHUNK_SIZE]);
+                zipStream.closeEntry();
+            }
+            zipStream.close();
+        } finally {
+            zipStream.release();
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.composum.sling.nodes.update;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.commons.JcrUtils;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ErrorCollector;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.apache.jackrabbit.JcrConstants.JCR_LASTMODIFIED;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests for {@link SourceUpdateServiceImpl}.
+ */
+public class SourceUpdateServiceImplTest {
+
+    public static final String ROOT_PATH = "/content/test/update";
+
+    /** the prefix of the archive entries of the root node */
+    public static final String ROOT = "jcr_root" + ROOT_PATH + "/";
+
+    /** a lastModified long before the updates of the test */
+    public static final long OLD = 946684800000L;
+
+    @Rule
+    public final SlingContext context = new SlingContext(ResourceResolverType.JCR_OAK);
+
+    @Rule
+    public final ErrorCollector ec = new ErrorCollector();
+
+    protected ResourceResolver resolver;
+    protected Session session;
+    protected SourceUpdateService service;
+
+    @Before
+    public void setup() throws Exception {
+        resolver = context.resourceResolver();
+        session = resolver.adaptTo(Session.class);
+        JcrUtils.getOrCreateByPath(ROOT_PATH, "nt:unstructured", session);
+        session.save();
+        service = new SourceUpdateServiceImpl();
+    }
+
+    @Test
+    public void unchangedPropertiesNotWritten() throws Exception {
+        byte[] archive = archive(ROOT + ".content.xml", docView("title=\"Title\" count=\"{Long}3\" tags=\"[a,b]\"",
+                "<child jcr:primaryType=\"nt:unstructured\" x=\"1\"/>"));
+        service.updateFromZip(resolver, stream(archive), ROOT_PATH);
+        Node root = session.getNode(ROOT_PATH);
+        ec.checkThat(root.getProperty("title").getString(), is("Title"));
+        ec.checkThat(root.getProperty("count").getType(), is(PropertyType.LONG));
+        ec.checkThat(root.getProperty("count").getLong(), is(3L));
+        ec.checkThat(root.getProperty("tags").getValues().length, is(2));
+        ec.checkThat(root.getProperty("child/x").getString(), is("1"));
+
+        resetLastModified(ROOT_PATH);
+        service.updateFromZip(resolver, stream(archive), ROOT_PATH);
+        ec.checkThat(lastModified(ROOT_PATH), is(OLD));
+
+        service.updateFromZip(resolver, stream(archive(ROOT + ".content.xml", docView(
+                "title=\"Changed\" count=\"{Long}3\" tags=\"[a,b]\"",
+                "<child jcr:primaryType=\"nt:unstructured\" x=\"1\"/>"))), ROOT_PATH);
+        ec.checkThat(session.getNode(ROOT_PATH).getProperty("title").getString(), is("Changed"));
+        ec.checkThat(lastModified(ROOT_PATH) > OLD, is(true));
+    }
+
+    @Test
+    public void unchangedBinaryNotRewritten() throws Exception {
+        String contentPath = ROOT_PATH + "/file.txt/jcr:content";
+        byte[] archive = archive(ROOT + "file.txt", "hello");
+        service.updateFromZip(resolver, stream(archive), ROOT_PATH);
+        ec.checkThat(session.getNode(ROOT_PATH + "/file.txt").getPrimaryNodeType().getName(), is("nt:file"));
+        ec.checkThat(session.getNode(contentPath).getProperty("jcr:mimeType").getString(), is("text/plain"));
+        ec.checkThat(data(contentPath + "/jcr:data"), is("hello"));
+
+        resetLastModified(contentPath);
+        service.updateFromZip(resolver, stream(archive), ROOT_PATH);
+        ec.checkThat(lastModified(contentPath), is(OLD));
+        ec.checkThat(data(contentPath + "/jcr:data"), is("hello"));
+
+        service.updateFromZip(resolver, stream(archive(ROOT + "file.txt", "hello!")), ROOT_PATH);
+        ec.checkThat(data(contentPath + "/jcr:data"), is("hello!"));
+        ec.checkThat(lastModified(contentPath) > OLD, is(true));
+    }
+
+    @Test
+    public void obsoleteNodesAndPropertiesRemoved() throws Exception {
+        JcrUtils.getOrCreateByPath(ROOT_PATH + "/manual", "nt:unstructured", session);
+        session.save();
+        service.updateFromZip(resolver, stream(archive(ROOT + ".content.xml", docView("x=\"1\" y=\"2\"",
+                "<a jcr:primaryType=\"nt:unstructured\" z=\"3\"/><b jcr:primaryType=\"nt:unstructured\"/>"))),
+                ROOT_PATH);
+        ec.checkThat(session.nodeExists(ROOT_PATH + "/manual"), is(false));
+        ec.checkThat(session.propertyExists(ROOT_PATH + "/y"), is(true));
+        ec.checkThat(session.propertyExists(ROOT_PATH + "/a/z"), is(true));
+        ec.checkThat(session.nodeExists(ROOT_PATH + "/b"), is(true));
+
+        service.updateFromZip(resolver, stream(archive(ROOT + ".content.xml", docView("x=\"1\"",
+                "<a jcr:primaryType=\"nt:unstructured\"/>"))), ROOT_PATH);
+        ec.checkThat(session.getProperty(ROOT_PATH + "/x").getString(), is("1"));
+        ec.checkThat(session.propertyExists(ROOT_PATH + "/y"), is(false));
+        ec.checkThat(session.nodeExists(ROOT_PATH + "/a"), is(true));
+        ec.checkThat(session.propertyExists(ROOT_PATH + "/a/z"), is(false));
+        ec.checkThat(session.nodeExists(ROOT_PATH + "/b"), is(false));
+    }
+
+    @Test
+    public void childOrderApplied() throws Exception {
+        service.updateFromZip(resolver, stream(archive(ROOT + ".content.xml", docView("",
+                "<a jcr:primaryType=\"nt:unstructured\"/><b jcr:primaryType=\"nt:unstructured\"/>"
+                        + "<c jcr:primaryType=\"nt:unstructured\"/>"))), ROOT_PATH);
+        ec.checkThat(childNames(ROOT_PATH), is("[a, b, c]"));
+
+        // 'b' is declared as position only, its content is a separate docview
+        service.updateFromZip(resolver, stream(archive(
+                ROOT + ".content.xml", docView("",
+                        "<c jcr:primaryType=\"nt:unstructured\"/><a jcr:primaryType=\"nt:unstructured\"/><b/>"),
+                ROOT + "b/.content.xml", docView("", ""))), ROOT_PATH);
+        ec.checkThat(childNames(ROOT_PATH), is("[c, a, b]"));
+    }
+
+    @Test
+    public void fileAggregateAndDirectories() throws Exception {
+        String contentPath = ROOT_PATH + "/file.txt/jcr:content";
+        byte[] archive = archive(
+                ROOT, null,
+                ROOT + "file.txt", "content",
+                ROOT + "file.txt.dir/", null,
+                ROOT + "file.txt.dir/.content.xml", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                        + "<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\" "
+                        + "xmlns:nt=\"http://www.jcp.org/jcr/nt/1.0\" jcr:primaryType=\"nt:file\">"
+                        + "<jcr:content jcr:primaryType=\"nt:resource\" jcr:mixinTypes=\"[mix:title]\" "
+                        + "jcr:title=\"Text\" jcr:mimeType=\"text/plain\"/></jcr:root>",
+                ROOT + "empty/", null);
+        service.updateFromZip(resolver, stream(archive), ROOT_PATH);
+        ec.checkThat(childNames(ROOT_PATH), is("[file.txt]"));
+        Node content = session.getNode(contentPath);
+        ec.checkThat(content.isNodeType("mix:title"), is(true));
+        ec.checkThat(content.getProperty("jcr:title").getString(), is("Text"));
+        ec.checkThat(data(contentPath + "/jcr:data"), is("content"));
+
+        resetLastModified(contentPath);
+        service.updateFromZip(resolver, stream(archive), ROOT_PATH);
+        ec.checkThat(lastModified(contentPath), is(OLD));
+        ec.checkThat(data(contentPath + "/jcr:data"), is("content"));
+    }
+
+    @Test
+    public void binaryPropertyEntries() throws Exception {
+        byte[] archive = archive(
+                ROOT + ".content.xml", docView("", "<bin jcr:primaryType=\"nt:unstructured\" data=\"{Binary}\"/>"),
+                ROOT + "bin/data.binary", "binary content");
+        service.updateFromZip(resolver, stream(archive), ROOT_PATH);
+        ec.checkThat(session.getProperty(ROOT_PATH + "/bin/data").getType(), is(PropertyType.BINARY));
+        ec.checkThat(data(ROOT_PATH + "/bin/data"), is("binary content"));
+
+        resetLastModified(ROOT_PATH);
+        service.updateFromZip(resolver, stream(archive), ROOT_PATH);
+        ec.checkThat(lastModified(ROOT_PATH), is(OLD));
+        ec.checkThat(data(ROOT_PATH + "/bin/data"), is("binary content"));
+    }
+
+    @Test
+    public void parentTypeFromLaterDocView() throws Exception {
+        service.updateFromZip(resolver, stream(archive(
+                ROOT + "parent/child/.content.xml", docView("x=\"1\"", ""),
+                ROOT + "parent/.content.xml", docView("title=\"Parent\"", "<child/>"))), ROOT_PATH);
+        Node parent = session.getNode(ROOT_PATH + "/parent");
+        ec.checkThat(parent.getPrimaryNodeType().getName(), is("nt:unstructured"));
+        ec.checkThat(parent.getProperty("title").getString(), is("Parent"));
+        ec.checkThat(session.getProperty(ROOT_PATH + "/parent/child/x").getString(), is("1"));
+    }
+
+    @Test
+    public void xmlFilesWhichAreNoDocViews() throws Exception {
+        String svg = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.1//EN\" "
+                + "\"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\">\n"
+                + "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"10\" height=\"10\"/>";
+        String broken = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<data><open></data>";
+        service.updateFromZip(resolver, stream(archive(
+                ROOT + ".content.xml", docView("", ""),
+                ROOT + "icon.xml", svg,
+                ROOT + "broken.xml", broken)), ROOT_PATH);
+        ec.checkThat(childNames(ROOT_PATH), is("[icon.xml, broken.xml]"));
+        ec.checkThat(data(ROOT_PATH + "/icon.xml/jcr:content/jcr:data"), is(svg));
+        ec.checkThat(data(ROOT_PATH + "/broken.xml/jcr:content/jcr:data"), is(broken));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rootNotInArchive() throws Exception {
+        service.updateFromZip(resolver, stream(archive(
+                "jcr_root/content/test/other/.content.xml", docView("", ""))), ROOT_PATH);
+    }
+
+    /**
+     * @return the docview of a nt:unstructured node with mix:lastModified
+     */
+    protected String docView(String attributes, String children) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\" xmlns:nt=\"http://www.jcp.org/jcr/nt/1.0\" "
+                + "xmlns:mix=\"http://www.jcp.org/jcr/mix/1.0\" jcr:primaryType=\"nt:unstructured\" "
+                + "jcr:mixinTypes=\"[mix:lastModified]\" " + attributes + ">" + children + "</jcr:root>";
+    }
+
+    /**
+     * @param entries the names and the content of the entries; 'null' for directories
+     */
+    protected byte[] archive(String... entries) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (int i = 0; i < entries.length; i += 2) {
+                zip.putNextEntry(new ZipEntry(entries[i]));
+                if (entries[i + 1] != null) {
+                    zip.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                }
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    protected InputStream stream(byte[] archive) {
+        return new ByteArrayInputStream(archive);
+    }
+
+    protected String data(String propertyPath) throws Exception {
+        try (InputStream stream = session.getProperty(propertyPath).getBinary().getStream()) {
+            return IOUtils.toString(stream, StandardCharsets.UTF_8);
+        }
+    }
+
+    protected String childNames(String path) throws RepositoryException {
+        List<String> names = new ArrayList<>();
+        for (NodeIterator iterator = session.getNode(path).getNodes(); iterator.hasNext(); ) {
+            names.add(iterator.nextNode().getName());
+        }
+        return names.toString();
+    }
+
+    protected long lastModified(String path) throws RepositoryException {
+        return session.getNode(path).getProperty(JCR_LASTMODIFIED).getDate().getTimeInMillis();
+    }
+
+    protected void resetLastModified(String path) throws RepositoryException {
+        Calendar old = Calendar.getInstance();
+        old.setTimeInMillis(OLD);
+        session.getNode(path).setProperty(JCR_LASTMODIFIED, old);
+        session.save();
+    }
+}
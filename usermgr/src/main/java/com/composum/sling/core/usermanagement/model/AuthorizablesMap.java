@@ -1,16 +1,15 @@
 package com.composum.sling.core.usermanagement.model;
 
 import com.composum.sling.core.usermanagement.service.Authorizables;
+import com.composum.sling.core.usermanagement.service.MembershipIndex;
 import com.google.gson.stream.JsonWriter;
 import org.apache.jackrabbit.api.security.user.Authorizable;
-import org.apache.jackrabbit.api.security.user.Group;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.jcr.RepositoryException;
 import java.io.IOException;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Set;
 
 public abstract class AuthorizablesMap extends AuthorizablesView {
@@ -88,32 +87,27 @@ public abstract class AuthorizablesMap extends AuthorizablesView {
         }
     }
 
+    /**
+     * adds the relations of all authorizables which are declared members of the target (found by the membership
+     * index) and match the selector and the filter
+     */
     protected void addSourceRelations(@Nullable final Class<? extends Authorizable> selector,
                                       @Nullable final Authorizables.Filter filter,
                                       @NotNull final AuthorizableModel target, @NotNull final Set<String> done)
             throws RepositoryException {
-        Set<Authorizable> sources = context.getService().findAuthorizables(
-                context, selector, null, authorizable
-                        -> (filter == null || filter.accept(authorizable))
-                        && isSourceOfTarget(authorizable, target.getId()));
-        for (Authorizable source : sources) {
-            if (done.add(source.getID())) {
+        Authorizables service = context.getService();
+        MembershipIndex membershipIndex = service.getMembershipIndex(context);
+        for (String sourceId : membershipIndex.getDeclaredMembers(target.getId())) {
+            Authorizable source = service.getAuthorizable(context, sourceId);
+            if (source != null
+                    && (selector == null || selector.isInstance(source))
+                    && (filter == null || filter.accept(source))
+                    && done.add(source.getID())) {
                 sourceRelations.add(new AuthorizablesGraph.Relation(addNode(source), target));
             }
         }
     }
 
-    protected boolean isSourceOfTarget(Authorizable source, String targetId)
-            throws RepositoryException {
-        Iterator<Group> targets = source.declaredMemberOf();
-        while (targets.hasNext()) {
-            if (targetId.equals(targets.next().getID())) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     public void toJson(@NotNull final JsonWriter writer) throws IOException {
         writer.beginObject();
         if (singleFocus != null) {
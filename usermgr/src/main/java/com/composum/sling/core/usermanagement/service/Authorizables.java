@@ -146,6 +146,12 @@ public interface Authorizables {
                                                  @Nullable Filter filter)
             throws RepositoryException;
 
+    /**
+     * @return the index of the group memberships of all authorizables visible in the context
+     */
+    @NotNull MembershipIndex getMembershipIndex(@NotNull Context context)
+            throws RepositoryException;
+
     @NotNull <T extends Authorizable> Collection<T> loadAuthorizables(@NotNull Context context,
                                                                       @NotNull Class<T> selector,
                                                                       @NotNull Set<String> idSet)
@@ -0,0 +1,45 @@
+package com.composum.sling.core.usermanagement.service;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The declared members of all groups by the ids of the groups: the members of a group are found by a lookup
+ * instead of scanning all authorizables.
+ * <p>
+ * The service users are contained as declared members of the users and principals they are mapped to - the same
+ * way as the {@link ServiceUser} presents them.
+ */
+public class MembershipIndex {
+
+    protected final Map<String, Set<String>> declaredMembers = new HashMap<>();
+
+    protected final long created = System.currentTimeMillis();
+
+    /**
+     * Adds a declared membership; used to build the index before it's used.
+     */
+    public void addMembership(@NotNull final String memberId, @NotNull final String groupId) {
+        declaredMembers.computeIfAbsent(groupId, k -> new LinkedHashSet<>()).add(memberId);
+    }
+
+    /**
+     * @return the time when the index was built
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * @return the ids of the declared members of a group
+     */
+    @NotNull
+    public Set<String> getDeclaredMembers(@NotNull final String id) {
+        return Collections.unmodifiableSet(declaredMembers.getOrDefault(id, Collections.emptySet()));
+    }
+}
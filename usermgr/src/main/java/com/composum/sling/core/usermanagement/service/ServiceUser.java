@@ -43,16 +43,25 @@ public class ServiceUser implements Authorizable {
         this.mapping = mapping;
         serviceName = mapping.getServiceName();
         serviceInfo = mapping.getSubServiceName();
+        id = getId(mapping);
         if (StringUtils.isNotBlank(serviceInfo)) {
-            id = serviceName + ":" + serviceInfo;
             path = SERVICE_USER_ROOT + "/" + serviceName.replace('.', '/') + "/" + serviceInfo;
         } else {
-            id = serviceName;
             path = SERVICE_USER_ROOT + "/" + serviceName.replace('.', '/');
         }
         principal = new ServicePrincipal();
     }
 
+    /**
+     * @return the id of the service user of a mapping: '{serviceName}' or '{serviceName}:{subServiceName}'
+     */
+    public static String getId(Mapping mapping) {
+        String serviceInfo = mapping.getSubServiceName();
+        return StringUtils.isNotBlank(serviceInfo)
+                ? mapping.getServiceName() + ":" + serviceInfo
+                : mapping.getServiceName();
+    }
+
     /**
      * to avoid a possible endless loop during construction the relations are set up in a separate step
      */
@@ -1,16 +1,22 @@
 package com.composum.sling.core.usermanagement.service.impl;
 
 import com.composum.sling.core.usermanagement.service.Authorizables;
+import com.composum.sling.core.usermanagement.service.MembershipIndex;
 import com.composum.sling.core.usermanagement.service.ServiceUser;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.api.security.user.Authorizable;
+import org.apache.jackrabbit.api.security.user.Group;
 import org.apache.jackrabbit.api.security.user.Query;
 import org.apache.jackrabbit.api.security.user.QueryBuilder;
 import org.apache.jackrabbit.api.security.user.UserManager;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
 import org.apache.sling.serviceusermapping.Mapping;
 import org.apache.sling.serviceusermapping.ServiceUserMapper;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.osgi.framework.Constants;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
@@ -21,25 +27,136 @@ import javax.jcr.RepositoryException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.regex.Pattern;
 
-@Component
-public class AuthorizablesImpl implements Authorizables {
+@Component(
+        service = {Authorizables.class, ResourceChangeListener.class},
+        property = {
+                Constants.SERVICE_DESCRIPTION + "=Composum Nodes Authorizables Service",
+                ResourceChangeListener.PATHS + "=" + AuthorizablesImpl.AUTHORIZABLES_ROOT
+        }
+)
+public class AuthorizablesImpl implements Authorizables, ResourceChangeListener, ExternalResourceChangeListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(AuthorizablesImpl.class);
 
+    public static final String AUTHORIZABLES_ROOT = "/home";
+
+    /** the login tokens below the users are changed with each login and don't affect the memberships */
+    public static final String TOKENS_NODE = ".tokens";
+
+    /** the principal of the group which contains all authorizables implicitly */
+    public static final String EVERYONE = "everyone";
+
+    /** the maximum number of membership indexes (one per user) kept */
+    public static final int MAX_INDEXES = 8;
+
+    /**
+     * the maximum age of a membership index in milliseconds - the service user mappings are not observed and
+     * the index is built again after this time to reflect their changes
+     */
+    public static final long MAX_INDEX_AGE = 10L * 60L * 1000L;
+
     @Reference
     protected ServiceUserMapper serviceUserMapper;
 
-    private boolean incompatibleServiceMapper = false;
+    private volatile boolean incompatibleServiceMapper = false;
+
+    protected final Map<String, MembershipIndex> membershipIndexes =
+            new LinkedHashMap<String, MembershipIndex>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, MembershipIndex> eldest) {
+                    return size() > MAX_INDEXES;
+                }
+            };
+
+    /** counts the changes of the authorizables; an index built during a change is not kept (guarded by the map) */
+    protected long membershipGeneration;
 
     @Activate
     protected void activate() {
         incompatibleServiceMapper = false;
+        mappingIndex = null;
+        clearMembershipIndexes();
+    }
+
+    @Override
+    public void onChange(@NotNull final List<ResourceChange> changes) {
+        for (ResourceChange change : changes) {
+            if (!change.getPath().contains("/" + TOKENS_NODE)) {
+                clearMembershipIndexes();
+                return;
+            }
+        }
+    }
+
+    protected void clearMembershipIndexes() {
+        synchronized (membershipIndexes) {
+            membershipGeneration++;
+            membershipIndexes.clear();
+        }
+    }
+
+    /**
+     * The index is built with the session of the context, since the visible authorizables depend on the
+     * permissions of the user - one index is kept for each user until an authorizable is changed.
+     */
+    @Override
+    @NotNull
+    public MembershipIndex getMembershipIndex(@NotNull final Context context)
+            throws RepositoryException {
+        String userId = context.getSession() != null ? context.getSession().getUserID() : "";
+        MembershipIndex index;
+        long generation;
+        synchronized (membershipIndexes) {
+            index = membershipIndexes.get(userId);
+            generation = membershipGeneration;
+        }
+        if (index == null || index.getCreated() < System.currentTimeMillis() - MAX_INDEX_AGE) {
+            index = buildMembershipIndex(context);
+            synchronized (membershipIndexes) {
+                // an index built while the authorizables were changed may miss the change - not kept
+                if (generation == membershipGeneration) {
+                    membershipIndexes.put(userId, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    @NotNull
+    protected MembershipIndex buildMembershipIndex(@NotNull final Context context)
+            throws RepositoryException {
+        long start = System.currentTimeMillis();
+        MembershipIndex index = new MembershipIndex();
+        Iterator<Authorizable> groups = findAuthorizables(context, Group.class, null);
+        while (groups.hasNext()) {
+            Authorizable authorizable = groups.next();
+            if (authorizable instanceof Group && !EVERYONE.equals(authorizable.getPrincipal().getName())) {
+                Iterator<Authorizable> members = ((Group) authorizable).getDeclaredMembers();
+                while (members.hasNext()) {
+                    index.addMembership(members.next().getID(), authorizable.getID());
+                }
+            }
+        }
+        for (ServiceUser serviceUser : findServiceUsers(context, ServiceUser.class, null)) {
+            Iterator<Group> targets = serviceUser.declaredMemberOf();
+            while (targets.hasNext()) {
+                index.addMembership(serviceUser.getID(), targets.next().getID());
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("membership index built ({}ms)", System.currentTimeMillis() - start);
+        }
+        return index;
     }
 
     @Nullable
@@ -137,28 +254,102 @@ public class AuthorizablesImpl implements Authorizables {
         return Collections.emptyIterator();
     }
 
+    /**
+     * The index of the active service user mappings by the id of their service users; the index is kept until
+     * the mappings of the service user mapper are changed.
+     */
+    protected static class MappingIndex {
+
+        /** the characters which are not used literally in a name pattern */
+        protected static final String PATTERN_CHARS = "%.*+?[](){}|\\^$";
+
+        protected final List<Mapping> mappings;
+        protected final Map<String, Mapping> byId = new HashMap<>();
+        protected final TreeMap<String, List<Mapping>> sorted = new TreeMap<>();
+
+        public MappingIndex(@NotNull final List<Mapping> mappings) {
+            this.mappings = new ArrayList<>(mappings);
+            for (Mapping mapping : this.mappings) {
+                String id = ServiceUser.getId(mapping);
+                byId.putIfAbsent(id, mapping);
+                sorted.computeIfAbsent(id, k -> new ArrayList<>()).add(mapping);
+            }
+        }
+
+        @Nullable
+        public Mapping get(@NotNull final String id) {
+            return byId.get(id);
+        }
+
+        /**
+         * @param nameQueryPattern the name pattern ('%' as wildcard) or null to find all mappings
+         * @return the mappings with a service user id matching the pattern in the order of the ids
+         */
+        @NotNull
+        public List<Mapping> find(@Nullable final String nameQueryPattern) {
+            List<Mapping> result = new ArrayList<>();
+            if (StringUtils.isBlank(nameQueryPattern)) {
+                for (List<Mapping> mappings : sorted.values()) {
+                    result.addAll(mappings);
+                }
+            } else if (StringUtils.containsNone(nameQueryPattern, PATTERN_CHARS)) {
+                List<Mapping> mappings = sorted.get(nameQueryPattern);
+                if (mappings != null) {
+                    result.addAll(mappings);
+                }
+            } else {
+                // only the ids starting with the literal prefix of the pattern are checked
+                int prefixEnd = StringUtils.indexOfAny(nameQueryPattern, PATTERN_CHARS);
+                String prefix = nameQueryPattern.substring(0, prefixEnd);
+                Pattern namePattern = Pattern.compile("^" + nameQueryPattern.replaceAll("%", ".*") + "$");
+                for (Map.Entry<String, List<Mapping>> entry :
+                        sorted.subMap(prefix, true, prefix + Character.MAX_VALUE, true).entrySet()) {
+                    if (namePattern.matcher(entry.getKey()).matches()) {
+                        result.addAll(entry.getValue());
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    private volatile MappingIndex mappingIndex;
+
+    /**
+     * @return the index of the active mappings; null if the service user mapper doesn't provide the mappings
+     */
+    @Nullable
+    protected MappingIndex getMappingIndex() {
+        if (!incompatibleServiceMapper) {
+            try {
+                List<Mapping> mappings = serviceUserMapper.getActiveMappings();
+                MappingIndex index = mappingIndex;
+                if (index == null || !index.mappings.equals(mappings)) {
+                    mappingIndex = index = new MappingIndex(mappings);
+                }
+                return index;
+            } catch (NoSuchMethodError nsme) { // ensure compatibility to AEM <6.5
+                incompatibleServiceMapper = true;
+                LOG.warn("incompatible ServiceUserMapper - no service user support (" + nsme + ")");
+            }
+        }
+        return null;
+    }
+
     @NotNull
     protected List<ServiceUser> findServiceUsers(@NotNull final Context context,
                                                  @Nullable final Class<? extends Authorizable> selector,
                                                  @Nullable final String nameQueryPattern)
             throws RepositoryException {
         List<ServiceUser> serviceUsers = new ArrayList<>();
-        if (!incompatibleServiceMapper && (selector == null || selector.equals(ServiceUser.class))) {
-            Pattern namePattern = StringUtils.isNotBlank(nameQueryPattern)
-                    ? Pattern.compile("^" + nameQueryPattern.replaceAll("%", ".*") + "$")
-                    : null;
-            try {
-                List<Mapping> mappings = serviceUserMapper.getActiveMappings();
-                for (Mapping mapping : mappings) {
+        if (selector == null || selector.equals(ServiceUser.class)) {
+            MappingIndex index = getMappingIndex();
+            if (index != null) {
+                for (Mapping mapping : index.find(nameQueryPattern)) {
                     ServiceUser service = new ServiceUser(context, mapping);
-                    if (namePattern == null || namePattern.matcher(service.getID()).matches()) {
-                        service.initialize(context);
-                        serviceUsers.add(service);
-                    }
+                    service.initialize(context);
+                    serviceUsers.add(service);
                 }
-            } catch (NoSuchMethodError nsme) { // ensure compatibility to AEM <6.5
-                incompatibleServiceMapper = true;
-                LOG.warn("incompatible ServiceUserMapper - no service user support (" + nsme + ")");
             }
         }
         return serviceUsers;
@@ -167,13 +358,8 @@ public class AuthorizablesImpl implements Authorizables {
     @Nullable
     protected ServiceUser getServiceUser(@NotNull final Context context, @NotNull final String id)
             throws RepositoryException {
-        List<Mapping> mappings = serviceUserMapper.getActiveMappings();
-        for (Mapping mapping : mappings) {
-            ServiceUser service = new ServiceUser(context, mapping);
-            if (id.equals(service.getID())) {
-                return service;
-            }
-        }
-        return null;
+        MappingIndex index = getMappingIndex();
+        Mapping mapping = index != null ? index.get(id) : null;
+        return mapping != null ? new ServiceUser(context, mapping) : null;
     }
 }
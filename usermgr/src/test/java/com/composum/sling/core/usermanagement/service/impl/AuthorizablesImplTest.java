@@ -0,0 +1,107 @@
+package com.composum.sling.core.usermanagement.service.impl;
+
+import com.composum.sling.core.usermanagement.service.Authorizables;
+import com.composum.sling.core.usermanagement.service.MembershipIndex;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ErrorCollector;
+
+import javax.jcr.Session;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the membership indexes of the {@link AuthorizablesImpl}.
+ */
+public class AuthorizablesImplTest {
+
+    @Rule
+    public final ErrorCollector ec = new ErrorCollector();
+
+    protected TestAuthorizables service;
+
+    /** builds an index with one membership and performs an optional action during the build */
+    protected static class TestAuthorizables extends AuthorizablesImpl {
+
+        protected int builds;
+        protected Runnable duringBuild;
+
+        @NotNull
+        @Override
+        protected MembershipIndex buildMembershipIndex(@NotNull final Context context) {
+            builds++;
+            MembershipIndex index = new MembershipIndex();
+            index.addMembership("user", "group");
+            if (duringBuild != null) {
+                duringBuild.run();
+            }
+            return index;
+        }
+    }
+
+    @Before
+    public void setup() {
+        service = new TestAuthorizables();
+        service.activate();
+    }
+
+    @Test
+    public void indexKeptUntilChange() throws Exception {
+        Authorizables.Context context = context("admin");
+        MembershipIndex index = service.getMembershipIndex(context);
+        ec.checkThat(index.getDeclaredMembers("group"), is(Collections.singleton("user")));
+        ec.checkThat(index.getDeclaredMembers("user").isEmpty(), is(true));
+        ec.checkThat(service.getMembershipIndex(context), sameInstance(index));
+        ec.checkThat(service.getMembershipIndex(context("other")), not(sameInstance(index)));
+        ec.checkThat(service.builds, is(2));
+
+        service.onChange(Collections.singletonList(change("/home/users/a/admin/.tokens/2024")));
+        ec.checkThat(service.getMembershipIndex(context), sameInstance(index));
+        ec.checkThat(service.builds, is(2));
+
+        service.onChange(Collections.singletonList(change("/home/groups/g/group")));
+        MembershipIndex rebuilt = service.getMembershipIndex(context);
+        ec.checkThat(rebuilt, not(sameInstance(index)));
+        ec.checkThat(service.getMembershipIndex(context), sameInstance(rebuilt));
+        ec.checkThat(service.builds, is(3));
+    }
+
+    @Test
+    public void indexBuiltDuringChangeNotKept() throws Exception {
+        Authorizables.Context context = context("admin");
+        service.duringBuild = () -> service.onChange(Collections.singletonList(change("/home/users/a/added")));
+        MembershipIndex stale = service.getMembershipIndex(context);
+        service.duringBuild = null;
+        MembershipIndex index = service.getMembershipIndex(context);
+        ec.checkThat(index, not(sameInstance(stale)));
+        ec.checkThat(service.getMembershipIndex(context), sameInstance(index));
+        ec.checkThat(service.builds, is(2));
+    }
+
+    protected Authorizables.Context context(String userId) {
+        Session session = mock(Session.class);
+        when(session.getUserID()).thenReturn(userId);
+        ResourceResolver resolver = mock(ResourceResolver.class);
+        when(resolver.adaptTo(Session.class)).thenReturn(session);
+        SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+        when(request.getResourceResolver()).thenReturn(resolver);
+        return new Authorizables.Context(service, request, mock(SlingHttpServletResponse.class));
+    }
+
+    protected static ResourceChange change(String path) {
+        ResourceChange change = mock(ResourceChange.class);
+        when(change.getPath()).thenReturn(path);
+        return change;
+    }
+}
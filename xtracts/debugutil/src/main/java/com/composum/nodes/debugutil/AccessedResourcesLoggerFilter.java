@@ -1,6 +1,7 @@
 package com.composum.nodes.debugutil;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -8,6 +9,9 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -19,7 +23,6 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 
-import org.apache.commons.collections4.IterableUtils;
 import org.apache.commons.collections4.IteratorUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
@@ -45,14 +48,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Tries to log most resources that are accessed during a request.
+ * Tries to log most resources that are accessed during a request. In the sampling mode only some requests are
+ * instrumented - every n-th request and the next request of a path prefix after a slow request - and the resource
+ * accesses are aggregated into histograms per path prefix and resource type instead of being logged; the top
+ * entries are printed in the 'Status' section of the web console ('Composum Resource Accesses').
  */
 @Component(
         service = {Filter.class},
         property = {
                 Constants.SERVICE_DESCRIPTION + "=Composum Nodes Debugutil Resource Access Logging Filter",
                 "sling.filter.scope=REQUEST",
-                "service.ranking:Integer=" + 4910
+                "service.ranking:Integer=" + 4910,
+                "felix.webconsole.label=composum-resource-accesses",
+                "felix.webconsole.title=Composum Resource Accesses",
+                "felix.webconsole.configprinter.modes=always"
         },
         configurationPolicy = ConfigurationPolicy.REQUIRE
 )
@@ -63,15 +72,40 @@ public class AccessedResourcesLoggerFilter implements Filter {
 
     protected static final Pattern INTERESTING_PATHS = Pattern.compile("^/(libs|apps|content|conf|var|public|preview).*");
 
+    /** The maximum number of request path prefixes remembered as slow to instrument their next request. */
+    protected static final int MAX_SLOW_PREFIXES = 1000;
+
     @Reference
     private ServletResolver servletResolver;
 
+    protected final AtomicLong requestCount = new AtomicLong();
+
+    /** The statistics of the sampling mode; null if the sampling mode is not active. */
+    protected volatile Sampling sampling;
+
+    protected static class Sampling {
+
+        protected final ResourceAccessStatistics accesses;
+        protected final ResourceAccessStatistics requests;
+        /** The path prefixes of slow requests not instrumented; the next request of such a prefix is instrumented. */
+        protected final Map<String, Boolean> slowPrefixes = new ConcurrentHashMap<>();
+
+        protected Sampling(Configuration config) {
+            accesses = new ResourceAccessStatistics(config.sampling_path_depth(), config.sampling_max_keys());
+            requests = new ResourceAccessStatistics(config.sampling_path_depth(), config.sampling_max_keys());
+        }
+    }
+
     @Override
     public void doFilter(ServletRequest rawRequest, ServletResponse rawResponse, FilterChain chain) throws IOException, ServletException {
-        if (config != null && config.enabled() && LOG.isInfoEnabled()) {
+        Configuration config = this.config;
+        Sampling sampling = this.sampling;
+        if (sampling != null) {
+            doSampling(rawRequest, rawResponse, chain, config, sampling);
+        } else if (config != null && config.enabled() && LOG.isInfoEnabled()) {
             SlingHttpServletRequest request = determineRequestImpl(rawRequest);
             ResourceResolver resourceResolver = request.getResourceResolver();
-            LoggingResourceResolver loggingResourceResolver = new LoggingResourceResolver(resourceResolver);
+            LoggingResourceResolver loggingResourceResolver = new LoggingResourceResolver(resourceResolver, null);
             try {
                 switchResolver(request, loggingResourceResolver);
                 chain.doFilter(rawRequest, rawResponse);
@@ -87,6 +121,56 @@ public class AccessedResourcesLoggerFilter implements Filter {
         }
     }
 
+    /**
+     * The sampling mode: the duration of each request is recorded (that's cheap), the resource accesses are recorded
+     * only for the sampled requests.
+     */
+    protected void doSampling(ServletRequest rawRequest, ServletResponse rawResponse, FilterChain chain,
+                              Configuration config, Sampling sampling) throws IOException, ServletException {
+        SlingHttpServletRequest request = determineRequestImpl(rawRequest);
+        Resource requestResource = request != null ? request.getResource() : null;
+        String path = requestResource != null ? requestResource.getPath() : null;
+        String prefix = sampling.requests.pathPrefix(path);
+        int rate = config.sampling_rate();
+        boolean instrumented = request != null && ((rate > 0 && requestCount.incrementAndGet() % rate == 0)
+                || sampling.slowPrefixes.remove(prefix) != null);
+        long start = System.nanoTime();
+        if (instrumented) {
+            ResourceResolver resourceResolver = request.getResourceResolver();
+            try {
+                switchResolver(request, new LoggingResourceResolver(resourceResolver, sampling.accesses));
+                chain.doFilter(rawRequest, rawResponse);
+            } finally {
+                switchResolver(request, resourceResolver);
+            }
+        } else {
+            chain.doFilter(rawRequest, rawResponse);
+        }
+        long duration = System.nanoTime() - start;
+        sampling.requests.record(path, requestResource != null ? requestResource.getResourceType() : null, duration);
+        long threshold = config.sampling_slow_threshold();
+        if (!instrumented && threshold > 0 && TimeUnit.NANOSECONDS.toMillis(duration) >= threshold
+                && sampling.slowPrefixes.size() < MAX_SLOW_PREFIXES) {
+            sampling.slowPrefixes.put(prefix, Boolean.TRUE);
+        }
+    }
+
+    /** Prints the statistics of the sampling mode as configuration printer of the web console. */
+    public void printConfiguration(PrintWriter writer) {
+        Configuration config = this.config;
+        Sampling sampling = this.sampling;
+        writer.println("Composum Resource Accesses");
+        if (sampling != null) {
+            writer.println("requests: " + requestCount.get() + ", sampling rate: 1/" + config.sampling_rate()
+                    + ", slow threshold: " + config.sampling_slow_threshold() + "ms");
+            writer.println();
+            sampling.requests.print(writer, "Requests", config.sampling_top());
+            sampling.accesses.print(writer, "Resource accesses of the sampled requests", config.sampling_top());
+        } else {
+            writer.println("(sampling mode not active)");
+        }
+    }
+
     private SlingHttpServletRequest determineRequestImpl(ServletRequest request) {
         while (request instanceof SlingHttpServletRequestWrapper) {
             request = ((SlingHttpServletRequestWrapper) request).getSlingRequest();
@@ -132,23 +216,64 @@ public class AccessedResourcesLoggerFilter implements Filter {
 
     @ObjectClassDefinition(
             name = "Composum Nodes Debugutil Resource Access Logging Filter",
-            description = "Tries to log most resources that are accessed during a request. This is logged at INFO level for com.composum.nodes.debugutil.AccessedResourcesLoggerFilter ."
+            description = "Tries to log most resources that are accessed during a request. This is logged at INFO level for com.composum.nodes.debugutil.AccessedResourcesLoggerFilter ." +
+                    " In the sampling mode the accesses of some requests are aggregated instead, see the 'Status' section of the web console."
     )
     public @interface Configuration {
         @AttributeDefinition(
                 description = "Enable the servlet"
         )
         boolean enabled() default false;
+
+        @AttributeDefinition(
+                name = "Sampling",
+                description = "Aggregates the accesses of the sampled requests per path prefix and resource type instead of logging all accesses; usable under load"
+        )
+        boolean sampling() default false;
+
+        @AttributeDefinition(
+                name = "Sampling Rate",
+                description = "Every n-th request is sampled; 0: only the requests after slow requests"
+        )
+        int sampling_rate() default 100;
+
+        @AttributeDefinition(
+                name = "Slow Threshold",
+                description = "If a request which is not sampled takes longer (in ms), the next request of the same path prefix is sampled; 0: off"
+        )
+        long sampling_slow_threshold() default 1000L;
+
+        @AttributeDefinition(
+                name = "Path Depth",
+                description = "The number of path segments used to aggregate the paths"
+        )
+        int sampling_path_depth() default 3;
+
+        @AttributeDefinition(
+                name = "Max Keys",
+                description = "The maximum number of path prefix / resource type keys; further keys are aggregated as '(other)'"
+        )
+        int sampling_max_keys() default 5000;
+
+        @AttributeDefinition(
+                name = "Top Entries",
+                description = "The number of entries printed in the web console"
+        )
+        int sampling_top() default 50;
     }
 
     @Activate
     @Modified
     protected void activate(Configuration config) {
         this.config = config;
+        // a changed configuration starts new statistics
+        this.sampling = config.enabled() && config.sampling() ? new Sampling(config) : null;
+        requestCount.set(0L);
     }
 
     @Deactivate
     protected void deactivate() {
+        this.sampling = null;
         this.config = null;
     }
 
@@ -156,8 +281,12 @@ public class AccessedResourcesLoggerFilter implements Filter {
 
         private final Set<String> paths = new TreeSet<>();
 
-        public LoggingResourceResolver(ResourceResolver resourceResolver) {
+        /** The statistics of the sampling mode; the accesses are recorded there instead of the paths if present. */
+        private final ResourceAccessStatistics statistics;
+
+        public LoggingResourceResolver(ResourceResolver resourceResolver, ResourceAccessStatistics statistics) {
             super(resourceResolver);
+            this.statistics = statistics;
         }
 
         public String resourceAccesses() {
@@ -169,7 +298,19 @@ public class AccessedResourcesLoggerFilter implements Filter {
         }
 
         protected Resource log(Resource resource) {
-            if (resource != null && INTERESTING_PATHS.matcher(resource.getPath()).matches()) {
+            return log(resource, 0L);
+        }
+
+        /**
+         * @param start the start of the access (System.nanoTime()); 0 if the time is not known
+         */
+        protected Resource log(Resource resource, long start) {
+            if (statistics != null) {
+                if (resource != null) {
+                    statistics.record(resource.getPath(), resource.getResourceType(),
+                            start != 0L ? System.nanoTime() - start : 0L);
+                }
+            } else if (resource != null && INTERESTING_PATHS.matcher(resource.getPath()).matches()) {
                 paths.add(resource.getPath());
             }
             return resource;
@@ -177,34 +318,57 @@ public class AccessedResourcesLoggerFilter implements Filter {
 
         protected Iterator<Resource> log(Iterator<Resource> listChildren) {
             if (listChildren != null) {
-                listChildren = IteratorUtils.transformedIterator(listChildren, this::log);
+                if (statistics != null) {
+                    // the time to retrieve each child is recorded
+                    final Iterator<Resource> children = listChildren;
+                    listChildren = new Iterator<Resource>() {
+
+                        @Override
+                        public boolean hasNext() {
+                            return children.hasNext();
+                        }
+
+                        @Override
+                        public Resource next() {
+                            long start = System.nanoTime();
+                            return log(children.next(), start);
+                        }
+                    };
+                } else {
+                    listChildren = IteratorUtils.transformedIterator(listChildren, this::log);
+                }
             }
             return listChildren;
         }
 
         @Override
         public Resource resolve(HttpServletRequest request, String absPath) {
-            return log(super.resolve(request, absPath));
+            long start = System.nanoTime();
+            return log(super.resolve(request, absPath), start);
         }
 
         @Override
         public Resource resolve(String absPath) {
-            return log(super.resolve(absPath));
+            long start = System.nanoTime();
+            return log(super.resolve(absPath), start);
         }
 
         @Override
         public Resource resolve(HttpServletRequest request) {
-            return log(super.resolve(request));
+            long start = System.nanoTime();
+            return log(super.resolve(request), start);
         }
 
         @Override
         public Resource getResource(String path) {
-            return log(super.getResource(path));
+            long start = System.nanoTime();
+            return log(super.getResource(path), start);
         }
 
         @Override
         public Resource getResource(Resource base, String path) {
-            return log(super.getResource(base, path));
+            long start = System.nanoTime();
+            return log(super.getResource(base, path), start);
         }
 
         @Override
@@ -214,12 +378,14 @@ public class AccessedResourcesLoggerFilter implements Filter {
 
         @Override
         public Resource getParent(Resource child) {
-            return log(super.getParent(child));
+            long start = System.nanoTime();
+            return log(super.getParent(child), start);
         }
 
         @Override
         public Iterable<Resource> getChildren(Resource parent) {
-            return IterableUtils.transformedIterable(super.getChildren(parent), this::log);
+            Iterable<Resource> children = super.getChildren(parent);
+            return children != null ? () -> log(children.iterator()) : null;
         }
 
         @Override
@@ -229,24 +395,30 @@ public class AccessedResourcesLoggerFilter implements Filter {
 
         @Override
         public ResourceResolver clone(Map<String, Object> authenticationInfo) throws LoginException {
-            return new LoggingResourceResolver(super.clone(authenticationInfo));
+            return new LoggingResourceResolver(super.clone(authenticationInfo), statistics);
         }
 
         @Override
         public void delete(Resource resource) throws PersistenceException {
-            LOG.info("Deleted: {}", resource != null ? resource.getPath() : null);
+            if (statistics == null) {
+                LOG.info("Deleted: {}", resource != null ? resource.getPath() : null);
+            }
             super.delete(log(resource));
         }
 
         @Override
         public Resource create(Resource parent, String name, Map<String, Object> properties) throws PersistenceException {
-            LOG.info("Created: {}/{}", parent != null ? parent.getPath() : null, name);
+            if (statistics == null) {
+                LOG.info("Created: {}/{}", parent != null ? parent.getPath() : null, name);
+            }
             return log(super.create(parent, name, properties));
         }
 
         @Override
         public Resource move(String srcAbsPath, String destAbsPath) throws PersistenceException {
-            LOG.info("Moved: {} -> {}", srcAbsPath, destAbsPath);
+            if (statistics == null) {
+                LOG.info("Moved: {} -> {}", srcAbsPath, destAbsPath);
+            }
             return log(super.move(srcAbsPath, destAbsPath));
         }
 
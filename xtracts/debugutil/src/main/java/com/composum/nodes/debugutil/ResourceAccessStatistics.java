@@ -0,0 +1,170 @@
+package com.composum.nodes.debugutil;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Aggregated counts and timings keyed by path prefix (the first segments of the path) and resource type. The
+ * recording doesn't lock - the histograms are updated with atomic counters, so the statistics can be collected
+ * under load and printed anytime.
+ */
+public class ResourceAccessStatistics {
+
+    /** The key used for all accesses if the maximum number of keys is reached. */
+    public static final String OTHER_KEY = "(other)";
+
+    /** The number of buckets of the histograms; bucket i counts the durations below 2^i microseconds. */
+    public static final int BUCKETS = 24;
+
+    /** A lock-free histogram of durations. */
+    public static final class Histogram {
+
+        protected final LongAdder count = new LongAdder();
+        protected final LongAdder totalTime = new LongAdder();
+        protected final AtomicLong maxTime = new AtomicLong();
+        protected final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        public void record(long nanos) {
+            count.increment();
+            totalTime.add(nanos);
+            maxTime.accumulateAndGet(nanos, Math::max);
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            buckets.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1));
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalTime() {
+            return totalTime.sum();
+        }
+
+        public long getMaxTime() {
+            return maxTime.get();
+        }
+
+        /**
+         * @return the upper bound of the bucket containing the percentile in nanoseconds (at most the maximum); an approximation
+         */
+        public long getPercentile(double percentile) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += (counts[i] = buckets.get(i));
+            }
+            long limit = (long) Math.ceil(total * percentile);
+            long sum = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                sum += counts[i];
+                if (sum >= limit && sum > 0) {
+                    return i < BUCKETS - 1 ? Math.min(TimeUnit.MICROSECONDS.toNanos(1L << i), getMaxTime()) : getMaxTime();
+                }
+            }
+            return 0L;
+        }
+    }
+
+    protected final int pathDepth;
+    protected final int maxKeys;
+
+    protected final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    protected final long started = System.currentTimeMillis();
+
+    /**
+     * @param pathDepth the number of path segments used to aggregate the paths
+     * @param maxKeys   the maximum number of keys; further keys are aggregated as {@link #OTHER_KEY}
+     */
+    public ResourceAccessStatistics(int pathDepth, int maxKeys) {
+        this.pathDepth = pathDepth;
+        this.maxKeys = maxKeys;
+    }
+
+    public void record(String path, String resourceType, long nanos) {
+        getHistogram(key(path, resourceType)).record(nanos);
+    }
+
+    protected Histogram getHistogram(String key) {
+        Histogram histogram = histograms.get(key);
+        if (histogram == null) {
+            if (histograms.size() >= maxKeys) {
+                key = OTHER_KEY;
+            }
+            histogram = histograms.computeIfAbsent(key, (k) -> new Histogram());
+        }
+        return histogram;
+    }
+
+    protected String key(String path, String resourceType) {
+        return pathPrefix(path) + " " + StringUtils.defaultIfBlank(resourceType, "-");
+    }
+
+    protected String pathPrefix(String path) {
+        if (path == null || !path.startsWith("/")) {
+            return OTHER_KEY;
+        }
+        int end = 0;
+        for (int i = 0; i < pathDepth && end >= 0; i++) {
+            end = path.indexOf('/', end + 1);
+        }
+        return end > 0 ? path.substring(0, end) : path;
+    }
+
+    /**
+     * @return the keys with the highest values of the given aspect, e.g. the count or the total time
+     */
+    public List<Map.Entry<String, Histogram>> getTop(int count, ToLongFunction<Histogram> aspect) {
+        // the values are taken once - the histograms are changing while sorting
+        Map<Map.Entry<String, Histogram>, Long> values = new HashMap<>();
+        for (Map.Entry<String, Histogram> item : histograms.entrySet()) {
+            values.put(item, aspect.applyAsLong(item.getValue()));
+        }
+        List<Map.Entry<String, Histogram>> result = new ArrayList<>(values.keySet());
+        result.sort(Comparator.comparing((Map.Entry<String, Histogram> item) -> values.get(item)).reversed());
+        return result.size() > count ? new ArrayList<>(result.subList(0, count)) : result;
+    }
+
+    /** Prints the keys with the highest total time and the keys with the highest count. */
+    public void print(PrintWriter writer, String title, int count) {
+        writer.println(title + " - " + histograms.size() + " keys since "
+                + new Date(started));
+        writer.println();
+        writer.println("top " + count + " by total time:");
+        printTable(writer, getTop(count, Histogram::getTotalTime));
+        writer.println();
+        writer.println("top " + count + " by count:");
+        printTable(writer, getTop(count, Histogram::getCount));
+        writer.println();
+    }
+
+    protected void printTable(PrintWriter writer, List<Map.Entry<String, Histogram>> entries) {
+        writer.println(StringUtils.rightPad("path prefix / resource type", 80)
+                + "     count  total ms  avg us  p50 us  p90 us  p99 us    max us");
+        for (Map.Entry<String, Histogram> item : entries) {
+            Histogram histogram = item.getValue();
+            long count = histogram.getCount();
+            writer.println(StringUtils.rightPad(item.getKey(), 80)
+                    + StringUtils.leftPad(Long.toString(count), 10)
+                    + StringUtils.leftPad(Long.toString(TimeUnit.NANOSECONDS.toMillis(histogram.getTotalTime())), 10)
+                    + StringUtils.leftPad(Long.toString(count > 0
+                    ? TimeUnit.NANOSECONDS.toMicros(histogram.getTotalTime() / count) : 0), 8)
+                    + StringUtils.leftPad(Long.toString(TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(0.5))), 8)
+                    + StringUtils.leftPad(Long.toString(TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(0.9))), 8)
+                    + StringUtils.leftPad(Long.toString(TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(0.99))), 8)
+                    + StringUtils.leftPad(Long.toString(TimeUnit.NANOSECONDS.toMicros(histogram.getMaxTime())), 10));
+        }
+    }
+}